@@ -0,0 +1,153 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import geometry.Point;
+import geometry.TestCube;
+import math.Vector;
+import physics.BodyBox;
+import physics.Broadphase;
+import physics.CollisionDetection;
+import physics.DynamicAABBTree;
+import physics.PhysicsBody;
+import physics.PhysicsFace;
+import physics.SweepAndPrune;
+
+/**
+ * Times the first two stages of collision detection as the number of bodies grows. The bodies are spread out so the
+ * density stays the same, like a bigger map with more props on it, and a few of them move before every run.
+ * Compares one region for the whole world against the grid, sweep and prune, and the dynamic AABB tree.
+ * @author Isaac Zachmann
+ *
+ */
+public class BroadphaseBenchmark {
+
+	/**
+	 * The side length of the cubes
+	 */
+	private static final float CUBE_SIZE = 1;
+
+	/**
+	 * How many cubes there are per 1000 cubic units of world
+	 */
+	private static final float DENSITY = 2;
+
+	/**
+	 * The size of the grid cells to test
+	 */
+	private static final float CELL_SIZE = 10;
+
+	/**
+	 * How many times to run each test after warming up
+	 */
+	private static final int RUNS = 5;
+
+	/**
+	 * The fraction of bodies that move a little before each run, the rest stay still like rubble on the floor
+	 */
+	private static final float MOVING_FRACTION = 0.05f;
+
+	public static void main(String[] args){
+		TestCube template = new TestCube(Point.ORIGIN, CUBE_SIZE);
+		System.out.println("bodies\tone region (ms)\tgrid (ms)\tsweep and prune (ms)\ttree (ms)"
+				+"\tpairs (one region)\tpairs (grid)\tpairs (sweep and prune)\tpairs (tree)");
+		for(int count = 250; count <= 8000; count *= 2){
+			List<PhysicsBody> bodies = makeBodies(template.physicsBody, count, new Random(count));
+			long[] single = time(bodies, Float.MAX_VALUE);
+			long[] grid = time(bodies, CELL_SIZE);
+			long[] sweep = time(bodies, new SweepAndPrune());
+			long[] tree = time(bodies, new DynamicAABBTree());
+			System.out.println(count+"\t"+(single[0]/1000000f)+"\t"+(grid[0]/1000000f)+"\t"+(sweep[0]/1000000f)+"\t"+(tree[0]/1000000f)
+					+"\t"+single[1]+"\t"+grid[1]+"\t"+sweep[1]+"\t"+tree[1]);
+		}
+	}
+
+	/**
+	 * Runs stage1 and stage2 and returns the best time out of all the runs
+	 * @param bodies the bodies to test
+	 * @param cellSize the size of the cells for stage1
+	 * @return the best time in nanoseconds and the number of pairs found
+	 */
+	private static long[] time(List<PhysicsBody> bodies, float cellSize){
+		Random random = new Random(bodies.size());
+		long best = Long.MAX_VALUE;
+		long pairs = 0;
+		for(int i = 0; i < RUNS + 2; i++){
+			moveSome(bodies, random, null);
+			long start = System.nanoTime();
+			List<BodyBox[]> result = CollisionDetection.stage2(CollisionDetection.stage1(bodies, cellSize));
+			long end = System.nanoTime();
+			if(i >= 2){//first two runs are warm up
+				best = Math.min(best, end - start);
+			}
+			pairs = result.size();
+		}
+		return new long[]{best, pairs};
+	}
+
+	/**
+	 * Runs the broadphase and returns the best time out of all the runs
+	 * @param bodies the bodies to test
+	 * @param broadphase the broadphase to add the bodies to
+	 * @return the best time in nanoseconds and the number of pairs found
+	 */
+	private static long[] time(List<PhysicsBody> bodies, Broadphase broadphase){
+		for(PhysicsBody body : bodies){
+			broadphase.addBody(body);
+		}
+		Random random = new Random(bodies.size());
+		long best = Long.MAX_VALUE;
+		long pairs = 0;
+		for(int i = 0; i < RUNS + 2; i++){
+			moveSome(bodies, random, broadphase);
+			long start = System.nanoTime();
+			List<BodyBox[]> result = broadphase.findPairs();
+			long end = System.nanoTime();
+			if(i >= 2){//first two runs are warm up, and the first one sorts everything
+				best = Math.min(best, end - start);
+			}
+			pairs = result.size();
+		}
+		return new long[]{best, pairs};
+	}
+
+	/**
+	 * Moves MOVING_FRACTION of the bodies a small random amount
+	 * @param bodies the bodies
+	 * @param random the random numbers to use
+	 * @param broadphase the broadphase to tell about the bodies that moved, or null
+	 */
+	private static void moveSome(List<PhysicsBody> bodies, Random random, Broadphase broadphase){
+		int count = (int)(bodies.size()*MOVING_FRACTION);
+		for(int i = 0; i < count; i++){
+			PhysicsBody body = bodies.get(random.nextInt(bodies.size()));
+			body.move(new Vector(
+					(random.nextFloat() - .5f)*CUBE_SIZE, (random.nextFloat() - .5f)*CUBE_SIZE, (random.nextFloat() - .5f)*CUBE_SIZE));
+			if(broadphase != null){
+				broadphase.bodyMoved(body);
+			}
+		}
+	}
+
+	/**
+	 * Makes copies of the template spread out randomly in a cube big enough to keep the density the same
+	 * @param template the body to copy
+	 * @param count the number of bodies to make
+	 * @param random the random numbers to use
+	 * @return the new bodies
+	 */
+	private static List<PhysicsBody> makeBodies(PhysicsBody template, int count, Random random){
+		float worldSize = (float)Math.cbrt(count/DENSITY*1000);
+		List<PhysicsBody> bodies = new ArrayList<PhysicsBody>();
+		//the local faces never change, so every copy can use the same ones
+		PhysicsFace[] templateFaces = template.getLocalFaces();
+		for(int i = 0; i < count; i++){
+			PhysicsBody body = new PhysicsBody(templateFaces, template.getMass(), template.getLocalCentroid(), template.getMomentOfInertia());
+			body.move(new Vector(random.nextFloat()*worldSize, random.nextFloat()*worldSize, random.nextFloat()*worldSize));
+			bodies.add(body);
+		}
+		return bodies;
+	}
+}
@@ -0,0 +1,191 @@
+package benchmark;
+
+import java.util.Random;
+
+import geometry.Face;
+import geometry.FaceIntersection;
+import geometry.Point;
+import geometry.TriangleArrays;
+import math.Ray;
+import math.Vector;
+import physics.PhysicsFace;
+import physics.PhysicsFaceIntersection;
+import physics.PhysicsMesh;
+
+/**
+ * Times the two paths that test a lot of faces: the face against face test of collision detection, and the ray against face test
+ * of checking if a point is inside a body. Each one is timed working everything out from the points every time (the old way),
+ * and with the numbers cached on the PhysicsFaces. The cached collision test is also timed with the cache updated before every
+ * run, like every face moved, since that is what it costs in a step where everything is moving.
+ * The faces are from two spheres that overlap, so some of the pairs really do touch.
+ * @author Isaac Zachmann
+ *
+ */
+public class FaceCacheBenchmark {
+
+	/**
+	 * The number of rings and segments of the spheres
+	 */
+	private static final int SEGMENTS = 24;
+
+	/**
+	 * How many random points to test for the point in body path
+	 */
+	private static final int POINTS = 20000;
+
+	/**
+	 * How many times to run each test after warming up
+	 */
+	private static final int RUNS = 5;
+
+	public static void main(String[] args){
+		PhysicsFace[] faces1 = makeSphere(SEGMENTS, 0, 0, 0).toFaces();
+		PhysicsFace[] faces2 = makeSphere(SEGMENTS, 1.2f, .3f, .1f).toFaces();
+		System.out.println("faces per sphere: "+faces1.length+", face pairs: "+(faces1.length*faces1.length));
+		System.out.println("path\ttime (ms)\tresult");
+		long[] old = timeCollision(faces1, faces2, 0);
+		long[] cached = timeCollision(faces1, faces2, 1);
+		long[] updated = timeCollision(faces1, faces2, 2);
+		System.out.println("collision, recomputed\t"+(old[0]/1000000f)+"\t"+old[1]+" points");
+		System.out.println("collision, cached\t"+(cached[0]/1000000f)+"\t"+cached[1]+" points");
+		System.out.println("collision, cached + update\t"+(updated[0]/1000000f)+"\t"+updated[1]+" points");
+
+		Point[] points = new Point[POINTS];
+		Random random = new Random(1);
+		for(int i = 0; i < POINTS; i++){
+			points[i] = new Point(random.nextFloat()*2 - 1, random.nextFloat()*2 - 1, random.nextFloat()*2 - 1);
+		}
+		TriangleArrays triangles = new TriangleArrays(faces1);
+		for(int way = 0; way < 3; way++){
+			long[] result = timePointInBody(faces1, triangles, points, way);
+			String name = way == 0 ? "point in body, recomputed" : way == 1 ? "point in body, triangle arrays" : "point in body, cached";
+			System.out.println(name+"\t"+(result[0]/1000000f)+"\t"+result[1]+" inside");
+		}
+	}
+
+	/**
+	 * Tests every face of one sphere against every face of the other and returns the best time out of all the runs
+	 * @param faces1 the faces of the first sphere
+	 * @param faces2 the faces of the second sphere
+	 * @param way 0 for Face.doFacesIntersect, 1 for PhysicsFace.doFacesIntersect, 2 for that after updating the caches
+	 * @return the best time in nanoseconds and the number of points found
+	 */
+	private static long[] timeCollision(PhysicsFace[] faces1, PhysicsFace[] faces2, int way){
+		long best = Long.MAX_VALUE;
+		long found = 0;
+		for(int run = 0; run < RUNS + 2; run++){
+			found = 0;
+			long start = System.nanoTime();
+			if(way == 2){
+				for(PhysicsFace face : faces1){
+					face.updateCache();
+				}
+				for(PhysicsFace face : faces2){
+					face.updateCache();
+				}
+			}
+			for(PhysicsFace face1 : faces1){
+				for(PhysicsFace face2 : faces2){
+					if(way == 0){
+						FaceIntersection intersection = Face.doFacesIntersect(face1, face2);
+						if(intersection != null){
+							found += intersection.points.length;
+						}
+					} else {
+						PhysicsFaceIntersection intersection = PhysicsFace.doFacesIntersect(face1, face2);
+						if(intersection != null){
+							found += intersection.points.length;
+						}
+					}
+				}
+			}
+			long end = System.nanoTime();
+			if(run >= 2){//first two runs are warm up
+				best = Math.min(best, end - start);
+			}
+		}
+		return new long[]{best, found};
+	}
+
+	/**
+	 * Checks which points are inside the sphere by counting how many faces a ray from each point goes through
+	 * @param faces the faces of the sphere
+	 * @param triangles the same faces as arrays
+	 * @param points the points to test
+	 * @param way 0 for Ray.intersectsFace, 1 for TriangleArrays.countHits, 2 for PhysicsFace.intersectRay (the same test on the
+	 * edges cached on the faces)
+	 * @return the best time in nanoseconds and the number of points inside
+	 */
+	private static long[] timePointInBody(PhysicsFace[] faces, TriangleArrays triangles, Point[] points, int way){
+		Vector direction = new Vector(1, 0, 0);
+		long best = Long.MAX_VALUE;
+		long inside = 0;
+		for(int run = 0; run < RUNS + 2; run++){
+			inside = 0;
+			long start = System.nanoTime();
+			for(Point point : points){
+				int hits = 0;
+				if(way == 0){
+					for(PhysicsFace face : faces){
+						if(Ray.intersectsFace(point, direction, face) != null){
+							hits++;
+						}
+					}
+				} else if(way == 1){
+					hits = triangles.countHits(point.x, point.y, point.z, 1, 0, 0, 0, triangles.size(), Float.POSITIVE_INFINITY);
+				} else {
+					for(PhysicsFace face : faces){
+						if(face.intersectRay(point.x, point.y, point.z, 1, 0, 0) > 0){
+							hits++;
+						}
+					}
+				}
+				if(hits % 2 == 1){
+					inside++;
+				}
+			}
+			long end = System.nanoTime();
+			if(run >= 2){//first two runs are warm up
+				best = Math.min(best, end - start);
+			}
+		}
+		return new long[]{best, inside};
+	}
+
+	/**
+	 * Makes a sphere with a radius of 1 out of rings of triangles
+	 * @param segments the number of rings, and the number of segments around each ring
+	 * @param x the x of the center
+	 * @param y the y of the center
+	 * @param z the z of the center
+	 * @return the mesh
+	 */
+	private static PhysicsMesh makeSphere(int segments, float x, float y, float z){
+		float[] vertices = new float[(segments + 1)*segments*3];
+		for(int ring = 0; ring <= segments; ring++){
+			double down = Math.PI*ring/segments;
+			for(int around = 0; around < segments; around++){
+				double turn = 2*Math.PI*around/segments;
+				int v = (ring*segments + around)*3;
+				vertices[v] = x + (float)(Math.sin(down)*Math.cos(turn));
+				vertices[v+1] = y + (float)Math.cos(down);
+				vertices[v+2] = z + (float)(Math.sin(down)*Math.sin(turn));
+			}
+		}
+		int[] indices = new int[segments*segments*6];
+		int i = 0;
+		for(int ring = 0; ring < segments; ring++){
+			for(int around = 0; around < segments; around++){
+				int a = ring*segments + around, b = ring*segments + (around + 1) % segments;
+				int c = a + segments, d = b + segments;
+				indices[i++] = a;
+				indices[i++] = b;
+				indices[i++] = c;
+				indices[i++] = b;
+				indices[i++] = d;
+				indices[i++] = c;
+			}
+		}
+		return new PhysicsMesh(vertices, indices);
+	}
+}
@@ -0,0 +1,82 @@
+package benchmark;
+
+import java.io.FileNotFoundException;
+import java.util.Random;
+
+import geometry.ObjectImporter;
+import geometry.Point;
+import math.Vector;
+import physics.BoxShape;
+import physics.MassProperties;
+import physics.PhysicsBody;
+import physics.PhysicsMesh;
+
+/**
+ * Times MassProperties.calculate against the old way of picking random points inside the body (MassProperties.estimate), and
+ * checks that they agree with MassProperties.validate. The meshes are a box turned so its inertia tensor isn't diagonal, the
+ * .obj files given as arguments (torus.obj if there are none) and one triangle, which has no volume so the estimate gives up.
+ * @author Isaac Zachmann
+ *
+ */
+public class MassPropertiesBenchmark {
+
+	/**
+	 * How far the estimate can be off (see MassProperties.validate) before the mesh is reported as not matching
+	 */
+	private static final float TOLERANCE = .05f;
+
+	/**
+	 * How many times to run calculate after warming up
+	 */
+	private static final int RUNS = 5;
+
+	public static void main(String[] args) throws FileNotFoundException{
+		String[] files = args.length > 0 ? args : new String[]{"torus.obj"};
+		System.out.println("mesh\tcalculate (ms)\testimate (ms)\tcentroid error\tinertia error\tresult");
+		check("turned box", turnedBox());
+		for(String file : files){
+			check(file, new ObjectImporter(file).mesh);
+		}
+		check("one triangle", new PhysicsMesh(new float[]{0, 0, 0, 1, 0, 0, 0, 1, 0}, new int[]{0, 1, 2}));
+	}
+
+	/**
+	 * Times both ways for one mesh and prints how far apart they are
+	 * @param name the name to print
+	 * @param mesh the mesh
+	 */
+	private static void check(String name, PhysicsMesh mesh){
+		MassProperties properties = null;
+		long best = Long.MAX_VALUE;
+		for(int run = 0; run < RUNS + 2; run++){
+			long start = System.nanoTime();
+			properties = MassProperties.calculate(mesh, 10);
+			long end = System.nanoTime();
+			if(run >= 2){//first two runs are warm up
+				best = Math.min(best, end - start);
+			}
+		}
+		long start = System.nanoTime();
+		float[] errors = properties.validate(mesh, PhysicsBody.CENTROID_ACCURACY, new Random(1));
+		long end = System.nanoTime();
+		if(errors == null){
+			System.out.println(name+"\t"+(best/1000000f)+"\t"+((end - start)/1000000f)+"\t-\t-\tno points inside, estimate gave up");
+			return;
+		}
+		boolean matches = errors[0] <= TOLERANCE && errors[1] <= TOLERANCE;
+		System.out.println(name+"\t"+(best/1000000f)+"\t"+((end - start)/1000000f)+"\t"+errors[0]+"\t"+errors[1]+"\t"+
+				(matches ? "ok" : "DOES NOT MATCH"));
+	}
+
+	/**
+	 * Makes a box that is longer on one side, turned around a tilted axis and moved away from the origin
+	 * @return the mesh of the box
+	 */
+	private static PhysicsMesh turnedBox(){
+		PhysicsBody body = new PhysicsBody(new BoxShape(new Point(0, 0, 0), 2, .5f, 1).toMesh());
+		body.rotate(new Vector(.4f, .7f, -.3f));
+		body.move(new Vector(3, -1, 2));
+		//the world faces of the body are the box turned and moved
+		return PhysicsMesh.fromFaces(body.getFaces());
+	}
+}
@@ -0,0 +1,99 @@
+package benchmark;
+
+import geometry.Point;
+import geometry.TestCube;
+import math.Vector;
+import physics.Force;
+import physics.PhysicsBody;
+import physics.PhysicsEngine;
+
+/**
+ * Drops stacks of cubes onto a floor and steps them at the rate the game runs at, with the default number of solver
+ * iterations, then checks that every stack stays standing and falls asleep. Both the mesh contacts and the convex contacts
+ * are tested. A stack that walks sideways more than MAX_DRIFT or never falls asleep is reported. The default iterations are
+ * picked so 8 cubes stand, 12 shows where they stop being enough and PhysicsEngine.setSolverIterations has to go up.
+ * @author Isaac Zachmann
+ *
+ */
+public class StackingBenchmark {
+
+	/**
+	 * The steps per second, the same as GameEngine.TARGET_UPS
+	 */
+	private static final int STEPS_PER_SECOND = 30;
+
+	/**
+	 * How many seconds every stack is run for
+	 */
+	private static final float SECONDS = 20;
+
+	/**
+	 * How far the sides of the cubes of the stack are from their centers (what TestCube calls the side length), the floor is
+	 * twice as big
+	 */
+	private static final float HALF_SIZE = 1;
+
+	/**
+	 * The space between the cubes when they are dropped
+	 */
+	private static final float GAP = .02f;
+
+	/**
+	 * How far in meters any cube can move sideways before the stack counts as falling over
+	 */
+	private static final float MAX_DRIFT = .25f;
+
+	public static void main(String[] args){
+		System.out.println("cubes\tcontacts\tstep (ms)\tmost drift\tsink at the end\tasleep after (s)\tresult");
+		for(int cubes = 4; cubes <= 12; cubes += 4){
+			run(cubes, false);
+			run(cubes, true);
+		}
+	}
+
+	/**
+	 * Runs one stack and prints how it went
+	 * @param cubes how many cubes are in the stack
+	 * @param convex if the cubes and floor are convex bodies
+	 */
+	private static void run(int cubes, boolean convex){
+		PhysicsEngine engine = new PhysicsEngine(1);
+		//the top of the floor is at 0
+		PhysicsBody floor = new TestCube(Point.ORIGIN, HALF_SIZE*2).physicsBody;
+		floor.setFloor(true);
+		floor.setConvex(convex);
+		floor.setPosition(new Point(0, -HALF_SIZE*2, 0));
+		engine.addBody(floor);
+		PhysicsBody[] stack = new PhysicsBody[cubes];
+		for(int i = 0; i < cubes; i++){
+			PhysicsBody body = new TestCube(Point.ORIGIN, HALF_SIZE).physicsBody;
+			body.setConvex(convex);
+			body.setPosition(new Point(0, HALF_SIZE + (HALF_SIZE*2 + GAP)*i, 0));
+			engine.addBody(body);
+			body.applyForce(new Force(new Vector(0, -body.getMass()*9.8f, 0), Float.MAX_VALUE, body.getCentroid()));
+			stack[i] = body;
+		}
+
+		int steps = (int)(SECONDS*STEPS_PER_SECOND);
+		float drift = 0;
+		int asleep = -1;
+		long time = 0;
+		for(int step = 0; step < steps; step++){
+			long start = System.nanoTime();
+			engine.step(1f/STEPS_PER_SECOND);
+			time += System.nanoTime() - start;
+			for(int i = 0; i < cubes; i++){
+				Point position = stack[i].getPosition();
+				drift = Math.max(drift, (float)Math.sqrt(position.x*position.x + position.z*position.z));
+			}
+			if(asleep < 0 && engine.getAwakeBodyCount() == 0){
+				asleep = step;
+			}
+		}
+		//how far the top cube is under where it would be if every cube was resting right on the one under it
+		float sink = HALF_SIZE + HALF_SIZE*2*(cubes - 1) - stack[cubes - 1].getPosition().y;
+		String result = drift > MAX_DRIFT ? "FELL OVER" : asleep < 0 ? "NEVER FELL ASLEEP" : "ok";
+		System.out.println(cubes+"\t"+(convex ? "convex" : "mesh")+"\t"+(time/1000000f/steps)+"\t"+drift+"\t"+sink+"\t"+
+				(asleep < 0 ? "-" : String.valueOf(asleep/(float)STEPS_PER_SECOND))+"\t"+result);
+	}
+}
@@ -0,0 +1,171 @@
+package benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import geometry.Face;
+import geometry.FaceIntersection;
+import geometry.Point;
+import geometry.TriangleArrays;
+import geometry.TriangleIntersection;
+import physics.PhysicsFace;
+import physics.PhysicsFaceIntersection;
+
+/**
+ * Times the triangle against triangle test in pairs per second. Every triangle of a cloud of random triangles is tested against
+ * every other one, but not itself since a face is never tested against itself. Most pairs are far apart (like the pairs in a
+ * leaf of a face tree that don't touch) and some go through each other. Tests the old test as a baseline, which shoots a ray
+ * along each of the six sides and then removes the repeated points, then Face.doFacesIntersect, which works out the planes
+ * every time, PhysicsFace.doFacesIntersect, which uses the planes cached on the faces, and PhysicsFace.intersectSegment,
+ * which also doesn't make anything for the pairs that touch.
+ * @author Isaac Zachmann
+ *
+ */
+public class TriangleIntersectionBenchmark {
+
+	/**
+	 * The number of triangles
+	 */
+	private static final int TRIANGLES = 2000;
+
+	/**
+	 * The longest a side of a triangle can be, the triangles are in a cube with sides of 1
+	 */
+	private static final float TRIANGLE_SIZE = .1f;
+
+	/**
+	 * How many times to run each test after warming up
+	 */
+	private static final int RUNS = 5;
+
+	public static void main(String[] args){
+		Random random = new Random(1);
+		PhysicsFace[] faces = new PhysicsFace[TRIANGLES];
+		for(int i = 0; i < TRIANGLES; i++){
+			Point a = new Point(random.nextFloat(), random.nextFloat(), random.nextFloat());
+			faces[i] = new PhysicsFace(a, near(a, random), near(a, random));
+		}
+		long pairs = (long)TRIANGLES*(TRIANGLES - 1);
+		System.out.println("test\tpairs per second\tpairs that touch");
+		String[] names = {"old six side test", "Face.doFacesIntersect", "PhysicsFace.doFacesIntersect", "PhysicsFace.intersectSegment"};
+		for(int way = 0; way < names.length; way++){
+			long[] result = time(faces, way);
+			String name = names[way];
+			System.out.println(name+"\t"+(long)(pairs/(result[0]/1e9))+"\t"+result[1]);
+		}
+	}
+
+	/**
+	 * Tests every pair of faces and returns the best time out of all the runs
+	 * @param faces the faces
+	 * @param way which test to use, see main
+	 * @return the best time in nanoseconds and the number of pairs that touch
+	 */
+	private static long[] time(PhysicsFace[] faces, int way){
+		float[] segment = new float[TriangleIntersection.BUFFER_SIZE];
+		long best = Long.MAX_VALUE;
+		long touching = 0;
+		for(int run = 0; run < RUNS + 2; run++){
+			touching = 0;
+			long start = System.nanoTime();
+			for(PhysicsFace face1 : faces){
+				for(PhysicsFace face2 : faces){
+					if(face1 == face2){
+						continue;
+					}
+					if(way == 0){
+						FaceIntersection intersection = oldDoFacesIntersect(face1, face2);
+						if(intersection != null){
+							touching++;
+						}
+					} else if(way == 1){
+						FaceIntersection intersection = Face.doFacesIntersect(face1, face2);
+						if(intersection != null){
+							touching++;
+						}
+					} else if(way == 2){
+						PhysicsFaceIntersection intersection = PhysicsFace.doFacesIntersect(face1, face2);
+						if(intersection != null){
+							touching++;
+						}
+					} else if(PhysicsFace.intersectSegment(face1, face2, segment) > 0){
+						touching++;
+					}
+				}
+			}
+			long end = System.nanoTime();
+			if(run >= 2){//first two runs are warm up
+				best = Math.min(best, end - start);
+			}
+		}
+		return new long[]{best, touching};
+	}
+
+	/**
+	 * The test Face.doFacesIntersect used before TriangleIntersection, kept here so there is something to compare to.
+	 * Shoots a ray along each side of both faces at the other face and then removes the points that are repeated.
+	 * @param face1 the first face to test
+	 * @param face2 the second face to test
+	 * @return an array of Points where the faces intersect, null if the faces do not intersect
+	 */
+	private static FaceIntersection oldDoFacesIntersect(Face face1, Face face2){
+		//each side can hit the other face at most once, so there are at most 6 points
+		Point[] intersections = new Point[6];
+		int count = 0;
+		count = addSideIntersection(face1.point1, face1.point2, face2, intersections, count);
+		count = addSideIntersection(face1.point2, face1.point3, face2, intersections, count);
+		count = addSideIntersection(face1.point3, face1.point1, face2, intersections, count);
+		count = addSideIntersection(face2.point1, face2.point2, face1, intersections, count);
+		count = addSideIntersection(face2.point2, face2.point3, face1, intersections, count);
+		count = addSideIntersection(face2.point3, face2.point1, face1, intersections, count);
+		if(count > 0){
+			//Remove repeats, keeping the first of each
+			int unique = 0;
+			for(int i = 0; i < count; i++){
+				boolean repeat = false;
+				for(int j = 0; j < unique; j++){
+					if(intersections[i].equals(intersections[j])){
+						repeat = true;
+						break;
+					}
+				}
+				if(!repeat){
+					intersections[unique++] = intersections[i];
+				}
+			}
+			return new FaceIntersection(Arrays.copyOf(intersections, unique), face1, face2);
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Tests if the side of a face from start to end goes through the other face, and if it does adds the point to the array
+	 * @param start the first point of the side
+	 * @param end the second point of the side
+	 * @param face the other face
+	 * @param intersections the points found so far
+	 * @param count the number of points found so far
+	 * @return the new number of points found
+	 */
+	private static int addSideIntersection(Point start, Point end, Face face, Point[] intersections, int count){
+		float dx = end.x - start.x, dy = end.y - start.y, dz = end.z - start.z;
+		//the side is the direction, so t from 0 to 1 is on the side
+		float t = TriangleArrays.intersect(start.x, start.y, start.z, dx, dy, dz, face);
+		if(t > 0 && t <= 1){
+			intersections[count++] = new Point(start.x + t*dx, start.y + t*dy, start.z + t*dz);
+		}
+		return count;
+	}
+
+	/**
+	 * Makes a random point close to another point
+	 * @param point the point to be close to
+	 * @param random the random numbers to use
+	 * @return the new point
+	 */
+	private static Point near(Point point, Random random){
+		return new Point(point.x + (random.nextFloat() - .5f)*TRIANGLE_SIZE, point.y + (random.nextFloat() - .5f)*TRIANGLE_SIZE,
+				point.z + (random.nextFloat() - .5f)*TRIANGLE_SIZE);
+	}
+}
@@ -1,5 +1,7 @@
 package engine;
 
+import physics.PhysicsThread;
+
 public class GameEngine implements Runnable {
 
 	public static final int TARGET_FPS = 100;
@@ -16,6 +18,9 @@ public class GameEngine implements Runnable {
 
 	private final MouseInput mouseInput;
 
+	// Optional, runs the physics on its own thread so a slow physics update doesn't drop frames
+	private PhysicsThread physicsThread;
+
 	// Constructor used to set everything up by setting the values
 	public GameEngine(String windowTitle, int width, int height, boolean vSync, IGameLogic gameLogic) throws Exception {
 		gameLoopThread = new Thread(this, "GAME_LOOP_THREAD");
@@ -25,6 +30,17 @@ public class GameEngine implements Runnable {
 		timer = new Timer();
 	}
 
+	/**
+	 * Runs the physics on its own thread while the game is running, at the rate of the physics engine instead of TARGET_UPS.
+	 * The game logic should read the bodies in render from physicsThread.getLatestState(), which never waits for the physics.
+	 * Must be set before start().
+	 * 
+	 * @param physicsThread the physics thread, or null to not use one
+	 */
+	public void setPhysicsThread(PhysicsThread physicsThread) {
+		this.physicsThread = physicsThread;
+	}
+
 	public void start() {
 		// Mac and Windows Compatability
 		String osName = System.getProperty("os.name");
@@ -58,6 +74,9 @@ public class GameEngine implements Runnable {
 		timer.init();
 		mouseInput.init(window);
 		gameLogic.init(window);
+		if (physicsThread != null) {
+			physicsThread.start();
+		}
 		// Go to gameLoop
 	}
 
@@ -83,6 +102,11 @@ public class GameEngine implements Runnable {
 				accumulator -= interval;
 			}
 
+			//if the physics thread died stop throws what killed it, which ends the game like an exception here would
+			if (physicsThread != null && !physicsThread.isRunning()) {
+				physicsThread.stop();
+			}
+
 			//Goes to IGameLogic and calls window.update
 			render();
 
@@ -94,7 +118,13 @@ public class GameEngine implements Runnable {
 	}
 
 	protected void cleanup() {
-		gameLogic.cleanup();
+		try {
+			if (physicsThread != null) {
+				physicsThread.stop();
+			}
+		} finally {
+			gameLogic.cleanup();
+		}
 	}
 	//If the system finished its processes before the target refresh rate then pause for 1ms
 	private void sync() {
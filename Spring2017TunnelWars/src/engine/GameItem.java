@@ -3,6 +3,8 @@ package engine;
 import org.joml.Vector3f;
 
 import engine.graph.Mesh;
+import geometry.Point;
+import physics.PhysicsBody;
 
 public class GameItem {
 
@@ -56,6 +58,43 @@ public class GameItem {
 		this.rotation.z = z;
 	}
 
+	/**
+	 * Moves the item to where the physics body is, blended between the last two physics steps. The mesh of the item has to
+	 * be the local mesh of the body.
+	 * 
+	 * @param body the body the item shows
+	 * @param alpha the interpolation alpha from PhysicsEngine.getInterpolationAlpha()
+	 */
+	public void setTransform(PhysicsBody body, float alpha) {
+		Point position = body.getInterpolatedPosition(alpha);
+		float[] q = body.getInterpolatedOrientation(alpha);
+		float w = q[0], x = q[1], y = q[2], z = q[3];
+		// rotation matrix from the quaternion, the same one the physics turns the faces with
+		float m00 = 1 - 2 * (y * y + z * z), m01 = 2 * (x * y - w * z), m02 = 2 * (x * z + w * y);
+		float m10 = 2 * (x * y + w * z), m11 = 1 - 2 * (x * x + z * z), m12 = 2 * (y * z - w * x);
+		float m20 = 2 * (x * z - w * y), m21 = 2 * (y * z + w * x), m22 = 1 - 2 * (x * x + y * y);
+		// the body turns around its center of mass but the item turns around its origin, so move it by how far the center of
+		// mass would have moved: world = m*(local - centroid) + centroid + position
+		Point c = body.getLocalCentroid();
+		setPosition(position.x + c.x - (m00 * c.x + m01 * c.y + m02 * c.z),
+				position.y + c.y - (m10 * c.x + m11 * c.y + m12 * c.z),
+				position.z + c.z - (m20 * c.x + m21 * c.y + m22 * c.z));
+		// Transformation turns items by rotateX(-x) then rotateY(-y) then rotateZ(-z), so m = Rx(a)*Ry(b)*Rz(c) with a = -x,
+		// b = -y and c = -z
+		float a, cz;
+		double cosB = Math.sqrt(m00 * m00 + m01 * m01);
+		float b = (float) Math.atan2(m02, cosB);
+		if (cosB > 1e-6) {
+			a = (float) Math.atan2(-m12, m22);
+			cz = (float) Math.atan2(-m01, m00);
+		} else {
+			// turned straight up or down, x and z turn around the same axis so put it all in x
+			a = (float) Math.atan2(m21, m11);
+			cz = 0;
+		}
+		setRotation((float) Math.toDegrees(-a), (float) Math.toDegrees(-b), (float) Math.toDegrees(-cz));
+	}
+
 	public Mesh getMesh() {
 		return mesh;
 	}
@@ -1,8 +1,5 @@
 package geometry;
 
-import math.Ray;
-import math.Vector;
-
 /**
  * Not really sure if this is right, but this class makes a triangular face based on three points
  * @author Isaac
@@ -61,16 +58,27 @@ public class Face {
 	 * @return true if the point is on the face and false if it's not. Really it is not that complicated
 	 */
 	public boolean isPointOnFace(Point point) {
+		return isPointOnFace(point.x, point.y, point.z);
+	}
+
+	/**
+	 * Tests to see if the point at x, y, z is on this face, same as isPointOnFace(Point) without needing a Point
+	 * @param x the x of the point
+	 * @param y the y of the point
+	 * @param z the z of the point
+	 * @return true if the point is on the face and false if it's not
+	 */
+	public boolean isPointOnFace(float x, float y, float z) {
 		//Step one
-		Vector side1 = new Vector(point1, point2);
-		Vector side2 = new Vector(point1, point3);
-		Vector pointToPoint = new Vector(point1, point);
+		float side1x = point2.x - point1.x, side1y = point2.y - point1.y, side1z = point2.z - point1.z;
+		float side2x = point3.x - point1.x, side2y = point3.y - point1.y, side2z = point3.z - point1.z;
+		float toPointx = x - point1.x, toPointy = y - point1.y, toPointz = z - point1.z;
 		//Step two
-		float dot1to1 = Vector.dotMultiply(side1, side1);
-		float dot1to2 = Vector.dotMultiply(side1, side2);
-		float dot1toPoint = Vector.dotMultiply(side1, pointToPoint);
-		float dot2to2 = Vector.dotMultiply(side2, side2);
-		float dot2toPoint = Vector.dotMultiply(side2, pointToPoint);
+		float dot1to1 = side1x*side1x + side1y*side1y + side1z*side1z;
+		float dot1to2 = side1x*side2x + side1y*side2y + side1z*side2z;
+		float dot1toPoint = side1x*toPointx + side1y*toPointy + side1z*toPointz;
+		float dot2to2 = side2x*side2x + side2y*side2y + side2z*side2z;
+		float dot2toPoint = side2x*toPointx + side2y*toPointy + side2z*toPointz;
 		//Step 3 (compute)
 		float denominator = dot1to1 * dot2to2 - dot1to2 * dot1to2;
 		float u = (dot2to2 * dot1toPoint - dot1to2 * dot2toPoint)/denominator;
@@ -80,116 +88,22 @@ public class Face {
 
 	/**
 	 * Tests to see if the two specified faces intersect and returns the points at which they intersect.
-	 * It returns points where the edge of one face intersects the face, edge, or vertex of the other.
-	 * Does NOT return the line on which the intersection occurs, but this line could be calculated if two points are returned.
-	 * NOTE: needs to be tested, rounded before but changed back to 
+	 * The faces go through each other along a segment, and the points are the two ends of it (one point if they only touch at
+	 * a point). Faces in the same plane don't count. See TriangleIntersection.
 	 * @param face1 the first face to test
 	 * @param face2 the second face to test
-	 * @return an array of Points where the faces intersect, null if the faces do not intersect
+	 * @return the ends of the segment where the faces intersect, null if the faces do not intersect
 	 */
 	public static FaceIntersection doFacesIntersect(Face face1, Face face2){
-		//Point[] result = new Point[3];
-		Ray side1a = new Ray(face1.point1, new Vector(face1.point1, face1.point2));
-		Ray side2a = new Ray(face1.point2, new Vector(face1.point2, face1.point3));
-		Ray side3a = new Ray(face1.point3, new Vector(face1.point3, face1.point1));
-
-		Ray side1b = new Ray(face2.point1, new Vector(face2.point1, face2.point2));
-		Ray side2b = new Ray(face2.point2, new Vector(face2.point2, face2.point3));
-		Ray side3b = new Ray(face2.point3, new Vector(face2.point3, face2.point1));
-
-		Point[] intersections = new Point[0];
-		Point testPoint = null;
-		if((testPoint = side1a.intersectsFace(face2)) != null ){	
-			if(Point.distance(face1.point1, testPoint) <= Point.distance(face1.point1, face1.point2)){
-				//Probably better way to add to end of array
-				Point[] old = intersections;
-				intersections = new Point[intersections.length + 1];
-				for(int i = 0; i < old.length; i++){
-					intersections[i] = old[i];
-				}
-				intersections[intersections.length - 1] = testPoint;
-			}
-		}
-		if((testPoint = side2a.intersectsFace(face2)) != null ){
-			if(Point.distance(face1.point2, testPoint) <= Point.distance(face1.point2, face1.point3)){
-				Point[] old = intersections;
-				intersections = new Point[intersections.length + 1];
-				for(int i = 0; i < old.length; i++){
-					intersections[i] = old[i];
-				}
-				intersections[intersections.length - 1] = testPoint;
-			}
-		}
-		if((testPoint = side3a.intersectsFace(face2)) != null ){
-			if(Point.distance(face1.point3, testPoint) <= Point.distance(face1.point3, face1.point1)){
-				Point[] old = intersections;
-				intersections = new Point[intersections.length + 1];
-				for(int i = 0; i < old.length; i++){
-					intersections[i] = old[i];
-				}
-				intersections[intersections.length - 1] = testPoint;			
-			}
-		}
-
-		if((testPoint = side1b.intersectsFace(face1)) != null ){
-			if(Point.distance(face2.point1, testPoint) <= Point.distance(face2.point1, face2.point2)){
-				Point[] old = intersections;
-				intersections = new Point[intersections.length + 1];
-				for(int i = 0; i < old.length; i++){
-					intersections[i] = old[i];
-				}
-				intersections[intersections.length - 1] = testPoint;
-			}
-		}
-		if((testPoint = side2b.intersectsFace(face1)) != null ){
-			if(Point.distance(face2.point2, testPoint) <= Point.distance(face2.point2, face2.point3)){
-				Point[] old = intersections;
-				intersections = new Point[intersections.length + 1];
-				for(int i = 0; i < old.length; i++){
-					intersections[i] = old[i];
-				}
-				intersections[intersections.length - 1] = testPoint;
-			}
-		}
-		if((testPoint = side3b.intersectsFace(face1)) != null ){
-			if(Point.distance(face2.point3, testPoint) <= Point.distance(face2.point3, face2.point1)){
-				Point[] old = intersections;
-				intersections = new Point[intersections.length + 1];
-				for(int i = 0; i < old.length; i++){
-					intersections[i] = old[i];
-				}
-				intersections[intersections.length - 1] = testPoint;
-			}
-		}
-		if(intersections.length > 0){
-			//Remove repeats... Also probably a lot better way to do this. ArrayLists would be easier but should run a speed comparison b4 implementing
-			//Also might not need necessary for real physics. 
-			for(int i = 0; i < intersections.length; i++){
-				for(int i2 = 0; i2 < intersections.length; i2++){
-					/*if(((Math.abs(intersections[i].x - intersections[i2].x))<Point.ERROR) && 
-							(Math.abs(intersections[i].y - intersections[i2].y)<Point.ERROR) && 
-							(Math.abs(intersections[i].z - intersections[i2].z)<Point.ERROR) && 
-							i != i2){*/
-					if(intersections[i].equals(intersections[i2])){
-						Point[] old = intersections;
-						intersections = new Point[intersections.length-1];
-						int oc = 0;
-						int nc = 0;
-						while(oc < old.length){
-							if(oc == i2){
-								oc++;
-							} else {
-								intersections[nc] = old[oc];
-								oc++;
-								nc++;
-							}
-						}
-					}
-				}
-			}
-			return new FaceIntersection(intersections, face1, face2);
-		} else {
+		float[] segment = new float[TriangleIntersection.BUFFER_SIZE];
+		int count = TriangleIntersection.intersect(face1, face2, segment);
+		if(count == 0){
 			return null;
 		}
+		Point[] points = new Point[count];
+		for(int i = 0; i < count; i++){
+			points[i] = new Point(segment[i*3], segment[i*3+1], segment[i*3+2]);
+		}
+		return new FaceIntersection(points, face1, face2);
 	}
 }
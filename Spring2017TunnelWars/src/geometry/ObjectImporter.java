@@ -6,8 +6,11 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import physics.PhysicsMesh;
+
 /**
  * A class to read wavefront obj files (.obj) and store them as their points faces, etc.
  * NOTE: needs work, currently only creates faces and vertices!
@@ -21,6 +24,17 @@ public class ObjectImporter {
 	public List<Integer> arrayIndicies = new ArrayList<Integer>();
 	public static float[] floatVerticies = null;
 	public static int[] indicies = null;
+
+	/**
+	 * The path of the .obj file this object was loaded from
+	 */
+	public String fileName;
+
+	/**
+	 * The object as an indexed mesh for physics, every vertex only once
+	 */
+	public PhysicsMesh mesh;
+
 	/**
 	 * 
 	 * @param ArrayList<Integers>
@@ -41,8 +55,14 @@ public class ObjectImporter {
 	 * @throws FileNotFoundException
 	 */
 	public ObjectImporter(String fileName) throws FileNotFoundException{
+		this.fileName = fileName;
 		File file = new File(fileName);
 		BufferedReader in = new BufferedReader(new FileReader(file));
+		//the vertices of just this file. verticies is shared by every file, so its indices don't start at 0 for the second file
+		List<Point> objectVerticies = new ArrayList<Point>();
+		float[] meshVerticies = new float[3*64];
+		int[] meshIndicies = new int[3*64];
+		int meshIndexCount = 0;
 		try {
 			String line = null;
 			//read until end of file
@@ -51,19 +71,33 @@ public class ObjectImporter {
 				switch(split1[0]){
 				case "v":
 				{
-					verticies.add(new Point(
+					Point vertex = new Point(
 							Float.parseFloat(split1[1]),
 							Float.parseFloat(split1[2]),
 							Float.parseFloat(split1[3])
-							));
+							);
+					verticies.add(vertex);
+					int v = objectVerticies.size();
+					objectVerticies.add(vertex);
+					if(v*3 + 3 > meshVerticies.length){
+						meshVerticies = Arrays.copyOf(meshVerticies, meshVerticies.length*2);
+					}
+					meshVerticies[v*3] = vertex.x;
+					meshVerticies[v*3+1] = vertex.y;
+					meshVerticies[v*3+2] = vertex.z;
 					break;
 				}case "f":
 				{
 					Point[] pts = new Point[3]; //get ready to make 3 points
 					for(int i = 1; i < 4; i++){ //go through the line starting after "f" every space
 						String[] split2 = split1[i].split("/"); //split every point into v, vt, and vn. only v is used now
-						pts[i-1] = verticies.get(Integer.parseInt(split2[0])-1); //the first one of the "/" split is a v for the face. i-1 bc i is shifted to skip f
+						int v = Integer.parseInt(split2[0])-1;
+						pts[i-1] = objectVerticies.get(v); //the first one of the "/" split is a v for the face. i-1 bc i is shifted to skip f
 						arrayIndicies.add(Integer.parseInt(split2[0]));
+						if(meshIndexCount == meshIndicies.length){
+							meshIndicies = Arrays.copyOf(meshIndicies, meshIndicies.length*2);
+						}
+						meshIndicies[meshIndexCount++] = v;
 					}
 					faces.add(new Face(pts));
 					break;
@@ -94,6 +128,7 @@ public class ObjectImporter {
 		}
 		
 		
+		mesh = new PhysicsMesh(Arrays.copyOf(meshVerticies, objectVerticies.size()*3), Arrays.copyOf(meshIndicies, meshIndexCount));
 		floatVerticies = Point.pointFloatBuffer(verticies);
 		indicies = listToArray(arrayIndicies);
 		//System.out.println(floatVerticies.length);
@@ -1,6 +1,7 @@
 package geometry;
 
 import math.Vector;
+import physics.BoxShape;
 import physics.PhysicsBody;
 import physics.PhysicsFace;
 
@@ -21,18 +22,18 @@ public class TestCube {
 	public Point location;
 	
 	/**
-	 * Creates a test cube
+	 * Creates a test cube. All the faces are wound the same way so the mesh is closed.
 	 * @param position the center of the cube
 	 * @param sideLength the length of one side of the cube
 	 */
 	public TestCube(Point position, float sideLength){
 		//Vector radius = new Vector(sideLength, sideLength, sideLength);
 		PhysicsFace face1 = new PhysicsFace(new Point(position, new Vector(sideLength, sideLength, sideLength)),
-				new Point(position, new Vector(sideLength, sideLength, -sideLength)), 
-				new Point(position, new Vector(sideLength, -sideLength, -sideLength)));
+				new Point(position, new Vector(sideLength, -sideLength, -sideLength)), 
+				new Point(position, new Vector(sideLength, sideLength, -sideLength)));
 		PhysicsFace face2 = new PhysicsFace(new Point(position, new Vector(sideLength, -sideLength, -sideLength)),
-				new Point(position, new Vector(sideLength, -sideLength, sideLength)), 
-				new Point(position, new Vector(sideLength, sideLength, sideLength)));
+				new Point(position, new Vector(sideLength, sideLength, sideLength)), 
+				new Point(position, new Vector(sideLength, -sideLength, sideLength)));
 		
 		PhysicsFace face3 = new PhysicsFace(new Point(position, new Vector(-sideLength, sideLength, sideLength)),
 				new Point(position, new Vector(-sideLength, sideLength, -sideLength)), 
@@ -42,11 +43,11 @@ public class TestCube {
 				new Point(position, new Vector(-sideLength, sideLength, sideLength)));
 		
 		PhysicsFace face5 = new PhysicsFace(new Point(position, new Vector(sideLength, sideLength, sideLength)),
-				new Point(position, new Vector(-sideLength, sideLength, sideLength)), 
-				new Point(position, new Vector(-sideLength, sideLength, -sideLength)));
+				new Point(position, new Vector(-sideLength, sideLength, -sideLength)), 
+				new Point(position, new Vector(-sideLength, sideLength, sideLength)));
 		PhysicsFace face6 = new PhysicsFace(new Point(position, new Vector(-sideLength, sideLength, -sideLength)),
-				new Point(position, new Vector(sideLength, sideLength, -sideLength)), 
-				new Point(position, new Vector(sideLength, sideLength, sideLength)));
+				new Point(position, new Vector(sideLength, sideLength, sideLength)), 
+				new Point(position, new Vector(sideLength, sideLength, -sideLength)));
 		
 		PhysicsFace face7 = new PhysicsFace(new Point(position, new Vector(sideLength, -sideLength, sideLength)),
 				new Point(position, new Vector(-sideLength, -sideLength, sideLength)), 
@@ -56,11 +57,11 @@ public class TestCube {
 				new Point(position, new Vector(sideLength, -sideLength, sideLength)));
 		
 		PhysicsFace face9 = new PhysicsFace(new Point(position, new Vector(sideLength, sideLength, sideLength)),
-				new Point(position, new Vector(sideLength, -sideLength, sideLength)), 
-				new Point(position, new Vector(-sideLength, -sideLength, sideLength)));
+				new Point(position, new Vector(-sideLength, -sideLength, sideLength)), 
+				new Point(position, new Vector(sideLength, -sideLength, sideLength)));
 		PhysicsFace face10 = new PhysicsFace(new Point(position, new Vector(-sideLength, -sideLength, sideLength)),
-				new Point(position, new Vector(-sideLength, sideLength, sideLength)), 
-				new Point(position, new Vector(sideLength, sideLength, sideLength)));
+				new Point(position, new Vector(sideLength, sideLength, sideLength)), 
+				new Point(position, new Vector(-sideLength, sideLength, sideLength)));
 		
 		PhysicsFace face11 = new PhysicsFace(new Point(position, new Vector(sideLength, sideLength, -sideLength)),
 				new Point(position, new Vector(sideLength, -sideLength, -sideLength)), 
@@ -70,6 +71,8 @@ public class TestCube {
 				new Point(position, new Vector(sideLength, sideLength, -sideLength)));
 		
 		physicsBody = new PhysicsBody(new PhysicsFace[]{face1,face2,face3,face4,face5,face6,face7,face8,face9,face10,face11,face12}); 
+		//collides as a box with the other cubes instead of testing the triangles
+		physicsBody.setShape(new BoxShape(position, sideLength, sideLength, sideLength));
 	}
 
 }
@@ -0,0 +1,215 @@
+package geometry;
+
+/**
+ * Keeps a lot of triangles as arrays of floats, one array for every number (struct of arrays), with the two edges of every
+ * triangle worked out ahead of time. Testing a ray against a triangle (Moller-Trumbore) then only needs a few cross and dot
+ * products on numbers that are next to each other in memory, with no Vectors or Points made.
+ * The static intersect method is the same test for one triangle given as numbers, for code that doesn't keep the edges.
+ * NOTE: the edges are only worked out in set, so call it again for a triangle after its points move.
+ * @author Isaac Zachmann
+ *
+ */
+public final class TriangleArrays {
+
+	/**
+	 * The first point of every triangle
+	 */
+	private float[] ax, ay, az;
+
+	/**
+	 * The edge from the first point to the second of every triangle
+	 */
+	private float[] e1x, e1y, e1z;
+
+	/**
+	 * The edge from the first point to the third of every triangle
+	 */
+	private float[] e2x, e2y, e2z;
+
+	/**
+	 * The number of triangles
+	 */
+	private int count;
+
+	/**
+	 * Creates arrays for a number of triangles, all of them empty (every point at 0) until set
+	 * @param count the number of triangles
+	 */
+	public TriangleArrays(int count){
+		this.count = count;
+		ax = new float[count];
+		ay = new float[count];
+		az = new float[count];
+		e1x = new float[count];
+		e1y = new float[count];
+		e1z = new float[count];
+		e2x = new float[count];
+		e2y = new float[count];
+		e2z = new float[count];
+	}
+
+	/**
+	 * Creates arrays for the faces, in the same order
+	 * @param faces the faces
+	 */
+	public TriangleArrays(Face[] faces){
+		this(faces.length);
+		for(int i = 0; i < faces.length; i++){
+			set(i, faces[i]);
+		}
+	}
+
+	/**
+	 * Creates arrays for an indexed mesh, in the order of the triangles
+	 * @param vertices the vertices, 3 floats each
+	 * @param indices the triangles, 3 vertex indices each
+	 */
+	public TriangleArrays(float[] vertices, int[] indices){
+		this(indices.length/3);
+		for(int i = 0; i < count; i++){
+			int a = indices[i*3]*3, b = indices[i*3+1]*3, c = indices[i*3+2]*3;
+			set(i, vertices[a], vertices[a+1], vertices[a+2], vertices[b], vertices[b+1], vertices[b+2], vertices[c], vertices[c+1], vertices[c+2]);
+		}
+	}
+
+	/**
+	 * Sets a triangle to a face and works out its edges
+	 * @param i the index of the triangle
+	 * @param face the face
+	 */
+	public void set(int i, Face face){
+		Point a = face.point1, b = face.point2, c = face.point3;
+		set(i, a.x, a.y, a.z, b.x, b.y, b.z, c.x, c.y, c.z);
+	}
+
+	/**
+	 * Sets a triangle to three points and works out its edges
+	 * @param i the index of the triangle
+	 */
+	public void set(int i, float x1, float y1, float z1, float x2, float y2, float z2, float x3, float y3, float z3){
+		ax[i] = x1;
+		ay[i] = y1;
+		az[i] = z1;
+		e1x[i] = x2 - x1;
+		e1y[i] = y2 - y1;
+		e1z[i] = z2 - z1;
+		e2x[i] = x3 - x1;
+		e2y[i] = y3 - y1;
+		e2z[i] = z3 - z1;
+	}
+
+	/**
+	 * Gets the number of triangles
+	 * @return the count
+	 */
+	public int size(){
+		return count;
+	}
+
+	/**
+	 * Finds where the line through o in the direction d hits a triangle from either side
+	 * @param i the index of the triangle
+	 * @return how far along the line the hit is in lengths of d (negative if it is behind o), NaN if it misses
+	 */
+	public float intersect(int i, float ox, float oy, float oz, float dx, float dy, float dz){
+		return intersect(ox, oy, oz, dx, dy, dz, ax[i], ay[i], az[i], e1x[i], e1y[i], e1z[i], e2x[i], e2y[i], e2z[i]);
+	}
+
+	/**
+	 * Tests one ray against the triangles from to to and writes where it hits each one. This is the batch version of intersect:
+	 * every array is read in order, so it is fast for a lot of triangles.
+	 * @param from the first triangle
+	 * @param to one past the last triangle
+	 * @param t where the hit on each triangle is put, at t[i - from]. NaN for triangles that aren't hit.
+	 * @return the number of triangles hit in front of o (t more than 0)
+	 */
+	public int intersectAll(float ox, float oy, float oz, float dx, float dy, float dz, int from, int to, float[] t){
+		int hits = 0;
+		for(int i = from; i < to; i++){
+			float hit = intersect(ox, oy, oz, dx, dy, dz, ax[i], ay[i], az[i], e1x[i], e1y[i], e1z[i], e2x[i], e2y[i], e2z[i]);
+			t[i - from] = hit;
+			if(hit > 0){
+				hits++;
+			}
+		}
+		return hits;
+	}
+
+	/**
+	 * Counts how many of the triangles from to to a ray goes through. Useful for checking if a point is inside a closed mesh.
+	 * @param from the first triangle
+	 * @param to one past the last triangle
+	 * @param maxT the farthest to look, in lengths of d
+	 * @return the number of triangles hit with t more than 0 and up to maxT
+	 */
+	public int countHits(float ox, float oy, float oz, float dx, float dy, float dz, int from, int to, float maxT){
+		int hits = 0;
+		for(int i = from; i < to; i++){
+			float hit = intersect(ox, oy, oz, dx, dy, dz, ax[i], ay[i], az[i], e1x[i], e1y[i], e1z[i], e2x[i], e2y[i], e2z[i]);
+			if(hit > 0 && hit <= maxT){
+				hits++;
+			}
+		}
+		return hits;
+	}
+
+	/**
+	 * Finds the first of the triangles from to to that a ray hits
+	 * @param from the first triangle
+	 * @param to one past the last triangle
+	 * @param maxT the farthest to look, in lengths of d
+	 * @param distance how far along the ray the hit is, put in distance[0] if something is hit
+	 * @return the index of the closest triangle hit with t from 0 to maxT, -1 if none are
+	 */
+	public int closest(float ox, float oy, float oz, float dx, float dy, float dz, int from, int to, float maxT, float[] distance){
+		int best = -1;
+		for(int i = from; i < to; i++){
+			float hit = intersect(ox, oy, oz, dx, dy, dz, ax[i], ay[i], az[i], e1x[i], e1y[i], e1z[i], e2x[i], e2y[i], e2z[i]);
+			if(hit >= 0 && hit <= maxT){
+				maxT = hit;
+				best = i;
+			}
+		}
+		if(best >= 0){
+			distance[0] = maxT;
+		}
+		return best;
+	}
+
+	/**
+	 * Finds where the line through o in the direction d hits the triangle with first point a and edges e1 and e2, from either side
+	 * (Moller-Trumbore). Points on the edges of the triangle count as hits.
+	 * @return how far along the line the hit is in lengths of d (negative if it is behind o), NaN if it misses or the line is
+	 * in the plane of the triangle
+	 */
+	public static float intersect(float ox, float oy, float oz, float dx, float dy, float dz,
+			float ax, float ay, float az, float e1x, float e1y, float e1z, float e2x, float e2y, float e2z){
+		float px = dy*e2z - dz*e2y, py = dz*e2x - dx*e2z, pz = dx*e2y - dy*e2x;
+		float det = e1x*px + e1y*py + e1z*pz;
+		if(det == 0){
+			return Float.NaN;
+		}
+		float inv = 1/det;
+		float sx = ox - ax, sy = oy - ay, sz = oz - az;
+		float u = (sx*px + sy*py + sz*pz)*inv;
+		if(u < 0 || u > 1){
+			return Float.NaN;
+		}
+		float qx = sy*e1z - sz*e1y, qy = sz*e1x - sx*e1z, qz = sx*e1y - sy*e1x;
+		float v = (dx*qx + dy*qy + dz*qz)*inv;
+		if(v < 0 || u + v > 1){
+			return Float.NaN;
+		}
+		return (e2x*qx + e2y*qy + e2z*qz)*inv;
+	}
+
+	/**
+	 * Same as intersect for the triangle of a face, working out the edges from its points
+	 * @param face the face
+	 * @return how far along the line the hit is in lengths of d, NaN if it misses
+	 */
+	public static float intersect(float ox, float oy, float oz, float dx, float dy, float dz, Face face){
+		Point a = face.point1, b = face.point2, c = face.point3;
+		return intersect(ox, oy, oz, dx, dy, dz, a.x, a.y, a.z, b.x - a.x, b.y - a.y, b.z - a.z, c.x - a.x, c.y - a.y, c.z - a.z);
+	}
+}
@@ -0,0 +1,175 @@
+package geometry;
+
+/**
+ * Finds where two triangles go through each other (Moller's interval test). If two triangles that aren't in the same plane touch,
+ * they touch along a line segment that is on the line where their planes meet. Each triangle crosses that line in a segment too,
+ * and the answer is where those two segments overlap.
+ * The test throws out most pairs early: if all the points of one triangle are on the same side of the plane of the other, they
+ * can't touch, and that only takes three dot products.
+ * Nothing is made, the answer is written into a float array that can be used again for every pair.
+ * NOTE: triangles in the same plane are never counted as touching, same as Face.doFacesIntersect always did.
+ * @author Isaac Zachmann
+ *
+ */
+public final class TriangleIntersection {
+
+	/**
+	 * The size the output array has to be. The first 6 floats are the answer, the rest is used while working it out.
+	 */
+	public static final int BUFFER_SIZE = 12;
+
+	private TriangleIntersection(){
+	}
+
+	/**
+	 * Finds the segment where two faces go through each other, working out the planes of the faces
+	 * @param face1 the first face
+	 * @param face2 the second face
+	 * @param out where the segment is put: x, y, z of the first end then of the second end. Must be at least BUFFER_SIZE long.
+	 * @return the number of ends written: 0 if the faces don't touch, 1 if they touch at one point, 2 for a segment
+	 */
+	public static int intersect(Face face1, Face face2, float[] out){
+		Point a = face1.point1, b = face1.point2, c = face1.point3;
+		float n1x = (b.y - a.y)*(c.z - a.z) - (b.z - a.z)*(c.y - a.y);
+		float n1y = (b.z - a.z)*(c.x - a.x) - (b.x - a.x)*(c.z - a.z);
+		float n1z = (b.x - a.x)*(c.y - a.y) - (b.y - a.y)*(c.x - a.x);
+		a = face2.point1;
+		b = face2.point2;
+		c = face2.point3;
+		float n2x = (b.y - a.y)*(c.z - a.z) - (b.z - a.z)*(c.y - a.y);
+		float n2y = (b.z - a.z)*(c.x - a.x) - (b.x - a.x)*(c.z - a.z);
+		float n2z = (b.x - a.x)*(c.y - a.y) - (b.y - a.y)*(c.x - a.x);
+		float d1 = n1x*face1.point1.x + n1y*face1.point1.y + n1z*face1.point1.z;
+		float d2 = n2x*face2.point1.x + n2y*face2.point1.y + n2z*face2.point1.z;
+		return intersect(face1, n1x, n1y, n1z, d1, face2, n2x, n2y, n2z, d2, out);
+	}
+
+	/**
+	 * Finds the segment where two faces go through each other, with planes that were already worked out. A point p is on the plane
+	 * of a face when n dot p equals d. The normals don't have to be unit vectors.
+	 * @param face1 the first face
+	 * @param n1x the x of the normal of the first face
+	 * @param n1y the y of the normal of the first face
+	 * @param n1z the z of the normal of the first face
+	 * @param d1 the plane offset of the first face
+	 * @param face2 the second face
+	 * @param n2x the x of the normal of the second face
+	 * @param n2y the y of the normal of the second face
+	 * @param n2z the z of the normal of the second face
+	 * @param d2 the plane offset of the second face
+	 * @param out where the segment is put: x, y, z of the first end then of the second end. Must be at least BUFFER_SIZE long.
+	 * @return the number of ends written: 0 if the faces don't touch, 1 if they touch at one point, 2 for a segment
+	 */
+	public static int intersect(Face face1, float n1x, float n1y, float n1z, float d1,
+			Face face2, float n2x, float n2y, float n2z, float d2, float[] out){
+		Point a1 = face1.point1, b1 = face1.point2, c1 = face1.point3;
+		Point a2 = face2.point1, b2 = face2.point2, c2 = face2.point3;
+		//how far the points of face1 are from the plane of face2, times the length of the normal
+		float da1 = n2x*a1.x + n2y*a1.y + n2z*a1.z - d2;
+		float db1 = n2x*b1.x + n2y*b1.y + n2z*b1.z - d2;
+		float dc1 = n2x*c1.x + n2y*c1.y + n2z*c1.z - d2;
+		if(sameSide(da1, db1, dc1)){
+			return 0;
+		}
+		float da2 = n1x*a2.x + n1y*a2.y + n1z*a2.z - d1;
+		float db2 = n1x*b2.x + n1y*b2.y + n1z*b2.z - d1;
+		float dc2 = n1x*c2.x + n1y*c2.y + n1z*c2.z - d1;
+		if(sameSide(da2, db2, dc2)){
+			return 0;
+		}
+		//where each face crosses the plane of the other, both are on the line where the planes meet
+		planeCrossing(a1, b1, c1, da1, db1, dc1, out, 0);
+		planeCrossing(a2, b2, c2, da2, db2, dc2, out, 6);
+		//the direction of that line, every point on it is placed by its dot product with this
+		float lx = n1y*n2z - n1z*n2y, ly = n1z*n2x - n1x*n2z, lz = n1x*n2y - n1y*n2x;
+		float s1 = lx*out[0] + ly*out[1] + lz*out[2], e1 = lx*out[3] + ly*out[4] + lz*out[5];
+		float s2 = lx*out[6] + ly*out[7] + lz*out[8], e2 = lx*out[9] + ly*out[10] + lz*out[11];
+		//the index of the low and high end of each interval
+		int low1 = s1 <= e1 ? 0 : 3, high1 = 3 - low1;
+		int low2 = s2 <= e2 ? 6 : 9, high2 = 15 - low2;
+		float lowValue1 = Math.min(s1, e1), highValue1 = Math.max(s1, e1);
+		float lowValue2 = Math.min(s2, e2), highValue2 = Math.max(s2, e2);
+		if(lowValue1 > highValue2 || lowValue2 > highValue1){
+			return 0;
+		}
+		int low = lowValue1 >= lowValue2 ? low1 : low2;
+		int high = highValue1 <= highValue2 ? high1 : high2;
+		float lowX = out[low], lowY = out[low+1], lowZ = out[low+2];
+		float highX = out[high], highY = out[high+1], highZ = out[high+2];
+		out[0] = lowX;
+		out[1] = lowY;
+		out[2] = lowZ;
+		if(lowX == highX && lowY == highY && lowZ == highZ){
+			return 1;
+		}
+		out[3] = highX;
+		out[4] = highY;
+		out[5] = highZ;
+		return 2;
+	}
+
+	/**
+	 * Checks if a triangle can't touch a plane: all its points are on the same side, or all are on the plane
+	 */
+	private static boolean sameSide(float a, float b, float c){
+		return (a > 0 && b > 0 && c > 0) || (a < 0 && b < 0 && c < 0) || (a == 0 && b == 0 && c == 0);
+	}
+
+	/**
+	 * Finds the segment where a triangle crosses a plane. The triangle has to have points on both sides of the plane or on it.
+	 * If it only touches the plane at one point, both ends are that point.
+	 * @param a the first point of the triangle
+	 * @param b the second point
+	 * @param c the third point
+	 * @param da the distance from a to the plane
+	 * @param db the distance from b to the plane
+	 * @param dc the distance from c to the plane
+	 * @param out where to put the two ends
+	 * @param offset where in out to put them
+	 */
+	private static void planeCrossing(Point a, Point b, Point c, float da, float db, float dc, float[] out, int offset){
+		int end = offset;
+		if(da == 0){
+			end = put(out, end, offset, a.x, a.y, a.z);
+		}
+		if(db == 0){
+			end = put(out, end, offset, b.x, b.y, b.z);
+		}
+		if(dc == 0){
+			end = put(out, end, offset, c.x, c.y, c.z);
+		}
+		end = putCrossing(a, b, da, db, out, end, offset);
+		end = putCrossing(b, c, db, dc, out, end, offset);
+		end = putCrossing(c, a, dc, da, out, end, offset);
+		if(end == offset + 3){
+			out[end] = out[offset];
+			out[end+1] = out[offset+1];
+			out[end+2] = out[offset+2];
+		}
+	}
+
+	/**
+	 * Puts the point where the side from a to b crosses the plane, if it does
+	 */
+	private static int putCrossing(Point a, Point b, float da, float db, float[] out, int end, int offset){
+		if((da > 0 && db < 0) || (da < 0 && db > 0)){
+			float t = da/(da - db);
+			return put(out, end, offset, a.x + t*(b.x - a.x), a.y + t*(b.y - a.y), a.z + t*(b.z - a.z));
+		}
+		return end;
+	}
+
+	/**
+	 * Puts a point at end if there is room for it (two points from offset)
+	 * @return where the next point goes
+	 */
+	private static int put(float[] out, int end, int offset, float x, float y, float z){
+		if(end >= offset + 6){
+			return end;
+		}
+		out[end] = x;
+		out[end+1] = y;
+		out[end+2] = z;
+		return end + 3;
+	}
+}
@@ -2,6 +2,7 @@ package math;
 
 import geometry.Face;
 import geometry.Point;
+import geometry.TriangleArrays;
 
 /**
  * A class to define a ray
@@ -39,32 +40,19 @@ public class Ray {
 	 * @return the point of the intersection, null if the face and ray do not intersect
 	 */
 	public Point intersectsFace(Face face){
-		//help: http://www.cs.princeton.edu/courses/archive/fall00/cs426/lectures/raycast/sld017.htm
-		//https://www.siggraph.org/education/materials/HyperGraph/raytrace/rtinter0.htm
-		//Step 1: face to plane: (equation for plane is ax+by+cz=d where vec (a,b,c) is normal vec
-		Vector v1 = new Vector(face.point1, face.point2);
-		Vector v2 = new Vector(face.point2, face.point3);
-		Vector normal = Vector.corssMultiply(v1, v2);
-		float a = normal.xComponent;
-		float b = normal.yComponent;
-		float c = normal.zComponent;
-		float d = a*face.point1.x + b*face.point1.y + c*face.point1.z;
-		//Step 2: plug ray (R(t)=Ro+t*Rd (which means x=xo+t*xd) into plane and solve for t
-		Vector Rd = direction.getUnitVector();
-		float t = (-a*initalPoint.x-b*initalPoint.y-c*initalPoint.z+d)/(a*Rd.xComponent+b*Rd.yComponent+c*Rd.zComponent);
-		if(t <= 0){
-			return null; //no intersect bc face is behind ray
-		}
-		//Step 3: now that we have t, solve for x, y, and z
-		Point result = new Point(initalPoint.x+t*Rd.xComponent, 
-				initalPoint.y+t*Rd.yComponent, 
-				initalPoint.z+t*Rd.zComponent);
-		//Step 4: make sure intersection is on face
-		if(face.isPointOnFace(result)){
-			return result;
-		}else{
-			return null;
-		}
+		return intersectsFace(initalPoint, direction, face, false);
+	}
+
+	/**
+	 * Determines where the ray starting at point going in the direction intersects the specified face.
+	 * Same as making a Ray and calling intersectsFace(face), but does not make the Ray.
+	 * @param point the initial point of the ray
+	 * @param dir the direction of the ray
+	 * @param face the face to test an intersection with
+	 * @return the point of the intersection, null if the face and ray do not intersect
+	 */
+	public static Point intersectsFace(Point point, Vector dir, Face face){
+		return intersectsFace(point, dir, face, false);
 	}
 	
 	/**
@@ -75,37 +63,43 @@ public class Ray {
 	public float distanceFromPointToLine(Point point){
 		//http://onlinemschool.com/math/library/analytic_geometry/p_line/
 		//ignore "/" bc using unit vector
-		return (Vector.corssMultiply(new Vector(point, initalPoint), direction.getUnitVector())).getMagnitude();
+		float tx = initalPoint.x - point.x, ty = initalPoint.y - point.y, tz = initalPoint.z - point.z;
+		float dx = direction.xComponent, dy = direction.yComponent, dz = direction.zComponent;
+		float length = (float)Math.sqrt(dx*dx + dy*dy + dz*dz);
+		if(length > 0){
+			dx /= length;
+			dy /= length;
+			dz /= length;
+		}
+		float cx = ty*dz - tz*dy, cy = tz*dx - tx*dz, cz = tx*dy - ty*dx;
+		return (float)Math.sqrt(cx*cx + cy*cy + cz*cz);
 	}
 	
 	/**
 	 * Tests to see if the line that this Ray lies on intersects the specified face. Useful for collision detection
 	 * NOTE: may error if line is tangent to face?
-	 * NOTE: This code is similar to the ray intersects face, perhaps simplification can be done?
 	 * @param face the face to test intersection of
 	 * @return the point at the intersection
 	 */
 	public Point lineIntersectsFace(Face face){
-		//Just like ray, execept we ignore t
-		Vector v1 = new Vector(face.point1, face.point2);
-		Vector v2 = new Vector(face.point2, face.point3);
-		Vector normal = Vector.corssMultiply(v1, v2);
-		float a = normal.xComponent;
-		float b = normal.yComponent;
-		float c = normal.zComponent;
-		float d = a*face.point1.x + b*face.point1.y + c*face.point1.z;
-		//Step 2: plug ray (R(t)=Ro+t*Rd (wich means x=xo+t*xd) into plane and solve for t
-		Vector Rd = direction.getUnitVector();
-		float t = (-a*initalPoint.x-b*initalPoint.y-c*initalPoint.z+d)/(a*Rd.xComponent+b*Rd.yComponent+c*Rd.zComponent);
-		//Step 3: now that we have t, solve for x, y, and z
-		Point result = new Point(initalPoint.x+t*Rd.xComponent, 
-				initalPoint.y+t*Rd.yComponent, 
-				initalPoint.z+t*Rd.zComponent);
-		//Step 4: make sure intersection is on face
-		if(face.isPointOnFace(result)){
-			return result;
-		}else{
-			return null;
+		return intersectsFace(initalPoint, direction, face, true);
+	}
+
+	/**
+	 * Finds where a ray or line intersects a face with the Moller-Trumbore test in TriangleArrays. The only thing made is the point
+	 * that is returned.
+	 * @param point the initial point of the ray
+	 * @param dir the direction of the ray
+	 * @param face the face to test an intersection with
+	 * @param line true to also find intersections behind the initial point (the whole line), false for just the ray
+	 * @return the point of the intersection, null if there isn't one
+	 */
+	private static Point intersectsFace(Point point, Vector dir, Face face, boolean line){
+		float dx = dir.xComponent, dy = dir.yComponent, dz = dir.zComponent;
+		float t = TriangleArrays.intersect(point.x, point.y, point.z, dx, dy, dz, face);
+		if(Float.isNaN(t) || (!line && t <= 0)){
+			return null; //missed, or the face is behind the ray
 		}
+		return new Point(point.x + t*dx, point.y + t*dy, point.z + t*dz);
 	}
 }
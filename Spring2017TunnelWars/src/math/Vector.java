@@ -4,15 +4,23 @@ import geometry.Point;
 
 /**
  * A class for Vectors and vector math
+ * The static methods like addVectors return a new vector every time. For code that runs a lot, like the physics update, there are
+ * also versions that write the answer into a vector you give them (like add(a, b, dest)) and versions that change the vector
+ * itself (like add(vec)). Keep a scratch vector in a field and reuse it with these so nothing new has to be made.
+ * NOTE: only use the methods that change a vector on vectors you made yourself. Getters like PhysicsBody.getLinearVelocity
+ * give back a copy, so changing what they return doesn't change the body.
  * @author Isaac Zachmann
  *
  */
 public class Vector {
 	
 	/**
-	 * Defines a vector with zero as all components
+	 * Makes a new vector with zero as all components. It is a new one every time, so it can be changed.
+	 * @return the zero vector
 	 */
-	public static final Vector ZERO_VECTOR = new Vector(0,0,0);
+	public static Vector zero(){
+		return new Vector(0, 0, 0);
+	}
 	
 	/**
 	 * The x-component of the vector
@@ -70,7 +78,15 @@ public class Vector {
 	 */
 	public float getMagnitude() {
 		//sqrt(x^2 + y^2 + z^2) distance formula
-		return (float) Math.sqrt(Math.pow(xComponent, 2) + Math.pow(yComponent, 2) + Math.pow(zComponent, 2));
+		return (float) Math.sqrt(xComponent*xComponent + yComponent*yComponent + zComponent*zComponent);
+	}
+
+	/**
+	 * Gets the magnitude of the vector squared. Faster than getMagnitude() because there is no square root, useful for comparing lengths.
+	 * @return the magnitude of the vector squared
+	 */
+	public float getMagnitudeSquared() {
+		return xComponent*xComponent + yComponent*yComponent + zComponent*zComponent;
 	}
 	
 	/**
@@ -215,6 +231,157 @@ public class Vector {
 		}
 	}
 
+	/**
+	 * Sets the components of this vector
+	 * @param x the x-component
+	 * @param y the y-component
+	 * @param z the z-component
+	 * @return this vector
+	 */
+	public Vector set(float x, float y, float z){
+		xComponent = x;
+		yComponent = y;
+		zComponent = z;
+		return this;
+	}
+
+	/**
+	 * Sets this vector to the same components as another vector
+	 * @param vec the vector to copy
+	 * @return this vector
+	 */
+	public Vector set(Vector vec){
+		return set(vec.xComponent, vec.yComponent, vec.zComponent);
+	}
+
+	/**
+	 * Sets this vector to go from pointA to pointB, like the Vector(pointA, pointB) constructor
+	 * @param pointA The start position of the vector
+	 * @param pointB The ending position of the vector
+	 * @return this vector
+	 */
+	public Vector set(Point pointA, Point pointB){
+		return set(pointB.x - pointA.x, pointB.y - pointA.y, pointB.z - pointA.z);
+	}
+
+	/**
+	 * Adds vec to this vector
+	 * @param vec the vector to add
+	 * @return this vector
+	 */
+	public Vector add(Vector vec){
+		return add(this, vec, this);
+	}
+
+	/**
+	 * Subtracts vec from this vector
+	 * @param vec the vector to subtract
+	 * @return this vector
+	 */
+	public Vector subtract(Vector vec){
+		return subtract(this, vec, this);
+	}
+
+	/**
+	 * Multiplies this vector by a scalar
+	 * @param scalar the quantity to multiply by
+	 * @return this vector
+	 */
+	public Vector scale(float scalar){
+		return scale(this, scalar, this);
+	}
+
+	/**
+	 * Changes this vector to have a magnitude of one. A vector with no magnitude is left as it is.
+	 * @return this vector
+	 */
+	public Vector normalize(){
+		return normalize(this, this);
+	}
+
+	/**
+	 * Adds vecA and vecB and puts the result in dest. dest can be vecA or vecB.
+	 * @param vecA the fist vector to add
+	 * @param vecB the second vector to add
+	 * @param dest the vector to put the result in
+	 * @return dest (vecA+vecB)
+	 */
+	public static Vector add(Vector vecA, Vector vecB, Vector dest){
+		return dest.set(vecA.xComponent+vecB.xComponent, vecA.yComponent+vecB.yComponent, vecA.zComponent+vecB.zComponent);
+	}
+
+	/**
+	 * Subtracts vecB from vecA and puts the result in dest. dest can be vecA or vecB.
+	 * @param vecA the minuend vector
+	 * @param vecB the subtrahend vector
+	 * @param dest the vector to put the result in
+	 * @return dest (vecA-vecB)
+	 */
+	public static Vector subtract(Vector vecA, Vector vecB, Vector dest){
+		return dest.set(vecA.xComponent-vecB.xComponent, vecA.yComponent-vecB.yComponent, vecA.zComponent-vecB.zComponent);
+	}
+
+	/**
+	 * Multiplies vecA by scalar and puts the result in dest. dest can be vecA.
+	 * @param vecA the vector to be multiplied by scalar
+	 * @param scalar the quantity to multiply vecA by
+	 * @param dest the vector to put the result in
+	 * @return dest (vecA*scalar)
+	 */
+	public static Vector scale(Vector vecA, float scalar, Vector dest){
+		return dest.set(vecA.xComponent*scalar, vecA.yComponent*scalar, vecA.zComponent*scalar);
+	}
+
+	/**
+	 * Element multiplies vecA by vecB and puts the result in dest, see elementMultiply(vecA, vecB). dest can be vecA or vecB.
+	 * @param vecA The first vector to multiply elements of
+	 * @param vecB The second vector to multiply elements of
+	 * @param dest the vector to put the result in
+	 * @return dest (vecA.x*vecB.x, vecA.y*vecB.y, vecA.z*vecB.z)
+	 */
+	public static Vector elementMultiply(Vector vecA, Vector vecB, Vector dest){
+		return dest.set(vecA.xComponent*vecB.xComponent, vecA.yComponent*vecB.yComponent, vecA.zComponent*vecB.zComponent);
+	}
+
+	/**
+	 * Element divides vecA by vecB and puts the result in dest, see elementDivide(vecA, vecB). dest can be vecA or vecB.
+	 * @param vecA The first vector to divide elements of
+	 * @param vecB The second vector to divide elements of
+	 * @param dest the vector to put the result in
+	 * @return dest (vecA.x/vecB.x, vecA.y/vecB.y, vecA.z/vecB.z)
+	 */
+	public static Vector elementDivide(Vector vecA, Vector vecB, Vector dest){
+		return dest.set(vecA.xComponent/vecB.xComponent, vecA.yComponent/vecB.yComponent, vecA.zComponent/vecB.zComponent);
+	}
+
+	/**
+	 * Cross multiplies vecA by vecB and puts the result in dest, see corssMultiply(vecA, vecB). dest can be vecA or vecB.
+	 * @param vecA the first vector to multiply
+	 * @param vecB the second vector to multiply
+	 * @param dest the vector to put the result in
+	 * @return dest (vecA x vecB)
+	 */
+	public static Vector cross(Vector vecA, Vector vecB, Vector dest){
+		return dest.set(
+				vecA.yComponent*vecB.zComponent - vecA.zComponent*vecB.yComponent, 
+				vecA.zComponent*vecB.xComponent - vecA.xComponent*vecB.zComponent,
+				vecA.xComponent*vecB.yComponent - vecA.yComponent*vecB.xComponent);
+	}
+
+	/**
+	 * Puts the unit vector of vecA in dest. If vecA has no magnitude dest is set to vecA. dest can be vecA.
+	 * @param vecA the vector to get the direction of
+	 * @param dest the vector to put the result in
+	 * @return dest, with a magnitude of one
+	 */
+	public static Vector normalize(Vector vecA, Vector dest){
+		float magnitudeSquared = vecA.getMagnitudeSquared();
+		if(magnitudeSquared == 0){
+			return dest.set(vecA);
+		}
+		return scale(vecA, (float)(1/Math.sqrt(magnitudeSquared)), dest);
+	}
+
 	/**
 	 * Creates and returns a vector with the same direction, but a magnitude of one
 	 * @return a unit vector
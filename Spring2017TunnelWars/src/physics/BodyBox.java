@@ -25,6 +25,16 @@ public class BodyBox {
 	 * the max point of the box; largest x, y, and z
 	 */
 	private Point max = null;
+
+	/**
+	 * The center of the sphere around the body in world space
+	 */
+	private float sphereX, sphereY, sphereZ;
+
+	/**
+	 * The radius of the sphere around the body
+	 */
+	private float sphereRadius;
 	
 	/**
 	 * Creates a new box around the physics body
@@ -32,35 +42,65 @@ public class BodyBox {
 	 */
 	public BodyBox(PhysicsBody body){
 		this.body = body;
-		float sX = body.faces.get(0).point1.x;
-		float bX = body.faces.get(0).point1.x;//set to values that could actully exist rather than 0
-		float sY = body.faces.get(0).point1.y;
-		float bY = body.faces.get(0).point1.y;
-		float sZ = body.faces.get(0).point1.z;
-		float bZ = body.faces.get(0).point1.z;
-		for(PhysicsFace f : body.faces){
-			for(Point p : f.getPoints()){
-				if(p.x < sX){
-					sX = p.x;
-				} else if(p.x > bX){
-					bX = p.x;
-				}
-				
-				if(p.y < sY){
-					sY = p.y;
-				} else if(p.y > bY){
-					bY = p.y;
-				}
-				
-				if(p.z < sZ){
-					sZ = p.z;
-				} else if(p.z > bZ){
-					bZ = p.z;
-				}
-			}
+		min = new Point(0, 0, 0);
+		max = new Point(0, 0, 0);
+		update();
+	}
+	
+	/**
+	 * Fits the box around the body again. Call this after the body moves. Changes min and max instead of making new points.
+	 * The box comes from the box around the body in local space (see PhysicsBody.localBounds) instead of the points, so it
+	 * costs the same for any mesh: the middle is moved like a point and each half size is spread over the world axes by how
+	 * much the rotation turns it onto them. It can be a little bigger than the points need when the body is rotated.
+	 * For bullets the box goes around the whole path of the body in the last step, so the broadphase finds everything
+	 * it could have gone through.
+	 */
+	public void update(){
+		BodyStore s = body.store;
+		int i = body.index;
+		float w = s.orientationW[i], x = s.orientationX[i], y = s.orientationY[i], z = s.orientationZ[i];
+		//rotation matrix from the quaternion
+		float m00 = 1 - 2*(y*y + z*z), m01 = 2*(x*y - w*z), m02 = 2*(x*z + w*y);
+		float m10 = 2*(x*y + w*z), m11 = 1 - 2*(x*x + z*z), m12 = 2*(y*z - w*x);
+		float m20 = 2*(x*z - w*y), m21 = 2*(y*z + w*x), m22 = 1 - 2*(x*x + y*y);
+		float[] b = body.localBounds;
+		Point c = body.getLocalCentroid();
+		float lx = (b[0] + b[3])/2 - c.x, ly = (b[1] + b[4])/2 - c.y, lz = (b[2] + b[5])/2 - c.z;
+		float ex = (b[3] - b[0])/2, ey = (b[4] - b[1])/2, ez = (b[5] - b[2])/2;
+		//world = rotation*(local - localCentroid) + localCentroid + position, the same as the world points
+		float wx = m00*lx + m01*ly + m02*lz + c.x + s.positionX[i];
+		float wy = m10*lx + m11*ly + m12*lz + c.y + s.positionY[i];
+		float wz = m20*lx + m21*ly + m22*lz + c.z + s.positionZ[i];
+		float rx = Math.abs(m00)*ex + Math.abs(m01)*ey + Math.abs(m02)*ez;
+		float ry = Math.abs(m10)*ex + Math.abs(m11)*ey + Math.abs(m12)*ez;
+		float rz = Math.abs(m20)*ex + Math.abs(m21)*ey + Math.abs(m22)*ez;
+		float sX = wx - rx, bX = wx + rx;
+		float sY = wy - ry, bY = wy + ry;
+		float sZ = wz - rz, bZ = wz + rz;
+		sphereX = wx;
+		sphereY = wy;
+		sphereZ = wz;
+		sphereRadius = body.boundingRadius;
+		if(body.isBullet()){
+			float moveX = s.moveX[i], moveY = s.moveY[i], moveZ = s.moveZ[i];
+			//the sphere goes around the spheres at both ends of the path
+			sphereX -= moveX/2;
+			sphereY -= moveY/2;
+			sphereZ -= moveZ/2;
+			sphereRadius += (float)Math.sqrt(moveX*moveX + moveY*moveY + moveZ*moveZ)/2;
+			sX = Math.min(sX, sX - moveX);
+			sY = Math.min(sY, sY - moveY);
+			sZ = Math.min(sZ, sZ - moveZ);
+			bX = Math.max(bX, bX - moveX);
+			bY = Math.max(bY, bY - moveY);
+			bZ = Math.max(bZ, bZ - moveZ);
 		}
-		min = new Point(sX, sY, sZ);
-		max = new Point(bX, bY, bZ);
+		min.x = sX;
+		min.y = sY;
+		min.z = sZ;
+		max.x = bX;
+		max.y = bY;
+		max.z = bZ;
 	}
 	
 	@Override
@@ -81,12 +121,68 @@ public class BodyBox {
 	}
 	
 	/**
-	 * Checks to see if two BodyBoxes are intersecting
+	 * Gets the minimum point of the box
+	 * @return the point with the smallest x, y, and z
+	 */
+	public Point getMin(){
+		return min;
+	}
+	
+	/**
+	 * Gets the maximum point of the box
+	 * @return the point with the largest x, y, and z
+	 */
+	public Point getMax(){
+		return max;
+	}
+	
+	/**
+	 * Finds how far along a ray it goes into a box (slab test). The inverse of the direction is passed in so it is only worked out
+	 * once for every box a ray is tested against.
+	 * @param ox the x of the start of the ray
+	 * @param oy the y of the start of the ray
+	 * @param oz the z of the start of the ray
+	 * @param invX 1 over the x of the direction
+	 * @param invY 1 over the y of the direction
+	 * @param invZ 1 over the z of the direction
+	 * @param minX the smallest x of the box
+	 * @param minY the smallest y of the box
+	 * @param minZ the smallest z of the box
+	 * @param maxX the largest x of the box
+	 * @param maxY the largest y of the box
+	 * @param maxZ the largest z of the box
+	 * @param maxT the farthest to look, in lengths of the direction
+	 * @return true if the ray goes into the box between 0 and maxT
+	 */
+	static boolean rayHitsBox(float ox, float oy, float oz, float invX, float invY, float invZ,
+			float minX, float minY, float minZ, float maxX, float maxY, float maxZ, float maxT){
+		float t1 = (minX - ox)*invX, t2 = (maxX - ox)*invX;
+		float near = Math.min(t1, t2), far = Math.max(t1, t2);
+		t1 = (minY - oy)*invY;
+		t2 = (maxY - oy)*invY;
+		near = Math.max(near, Math.min(t1, t2));
+		far = Math.min(far, Math.max(t1, t2));
+		t1 = (minZ - oz)*invZ;
+		t2 = (maxZ - oz)*invZ;
+		near = Math.max(near, Math.min(t1, t2));
+		far = Math.min(far, Math.max(t1, t2));
+		//NaN from 0*infinity when the ray is in the plane of a side counts as a hit
+		return !(near > far || far < 0 || near > maxT);
+	}
+
+	/**
+	 * Checks to see if two BodyBoxes are intersecting. The spheres around the bodies are checked first, the boxes of rotated
+	 * bodies are loose so lots of pairs only overlap at the corners of the boxes.
 	 * @param b1 the first BodyBox
 	 * @param b2 the second BodyBox
 	 * @return true if the bodies are intersecting, false if otherwise
 	 */
 	public static boolean areBoxesIntersecting(BodyBox b1, BodyBox b2){
+		float dx = b1.sphereX - b2.sphereX, dy = b1.sphereY - b2.sphereY, dz = b1.sphereZ - b2.sphereZ;
+		float reach = b1.sphereRadius + b2.sphereRadius;
+		if(dx*dx + dy*dy + dz*dz > reach*reach){
+			return false;
+		}
 		if((b1.min.x <= b2.max.x && b1.max.x >= b2.min.x) &&
 				(b1.min.y <= b2.max.y && b1.max.y >= b2.min.y) && 
 				(b1.min.z <= b2.max.z && b1.max.z >= b2.min.z)){
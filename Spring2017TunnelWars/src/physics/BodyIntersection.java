@@ -26,6 +26,41 @@ public class BodyIntersection {
 	 */
 	public PhysicsBody body2;
 	
+	/**
+	 * For two convex bodies (see PhysicsBody.setConvex): where they touch, points1[i] is on body1 and points2[i] on body2.
+	 * The deepest is first. If they are not touching yet these are the closest points. null for bodies that collide with
+	 * their triangles.
+	 */
+	public Point[] points1, points2;
+	
+	/**
+	 * For two convex bodies: what made each point (which corner of which body), so the solver can tell it is the same point
+	 * next step
+	 */
+	long[] features;
+	
+	/**
+	 * For two convex bodies: the unit normal pointing from body2 to body1. null for bodies that collide with their triangles.
+	 */
+	public Vector normal;
+	
+	/**
+	 * For a round body (body1) touching the triangles of a mesh (body2): the normal of each point, since every triangle pushes
+	 * its own way. normal is the normal of the deepest point. null if all the points have the same normal.
+	 */
+	public Vector[] normals;
+	
+	/**
+	 * For a round body touching the triangles of a mesh: the triangle of body2 each point is on. null if body2 is convex.
+	 */
+	PhysicsFace[] faces;
+	
+	/**
+	 * For two convex bodies: how far the bodies go into each other along the normal in meters, negative if they are close
+	 * but not touching yet
+	 */
+	public float depth;
+	
 	/**
 	 * Creates an intersection from a point and two bodies
 	 * @param faces the faces at which the bodies are intersecting
@@ -38,11 +73,54 @@ public class BodyIntersection {
 		this.body2 = body2;
 	}
 	
+	/**
+	 * Creates an intersection between two convex bodies, found with GJK and EPA. It has no face intersections.
+	 * @param body1 the first body intersecting
+	 * @param body2 the second body intersecting
+	 * @param points1 the points of body1 where they touch
+	 * @param points2 the points of body2 where they touch
+	 * @param features what made each point
+	 * @param normal the unit normal from body2 to body1
+	 * @param depth how far the bodies go into each other at the deepest point
+	 * @param normals the normal of each point, or null if they all use normal
+	 * @param faces the triangle of body2 each point is on, or null if body2 is convex
+	 */
+	BodyIntersection(PhysicsBody body1, PhysicsBody body2, Point[] points1, Point[] points2, long[] features, Vector normal, float depth,
+			Vector[] normals, PhysicsFace[] faces){
+		this(new PhysicsFaceIntersection[0], body1, body2);
+		this.points1 = points1;
+		this.points2 = points2;
+		this.features = features;
+		this.normal = normal;
+		this.depth = depth;
+		this.normals = normals;
+		this.faces = faces;
+	}
+	
+	/**
+	 * Checks if the intersection is between two convex bodies, so it has a normal and depth instead of face intersections
+	 * @return true if it was found with GJK and EPA
+	 */
+	public boolean isConvex(){
+		return normal != null;
+	}
+	
 	/**
 	 * Calculates and returns the average bounciness of the collision by taking the average restitution of the intersecting faces
 	 * @return the restitution of the collision, taking in to account all colliding faces of both bodies
 	 */
 	public float getAverageRestitution(){
+		if(isConvex()){
+			float restitution2 = 0;
+			if(faces == null){
+				restitution2 = body2.getShape().restitution;
+			} else {
+				for(PhysicsFace face : faces){
+					restitution2 += face.restitution/faces.length;
+				}
+			}
+			return (body1.getShape().restitution + restitution2)/2;
+		}
 		float totalRestitution = 0;
 		int totalFaces = 0;
 		for(PhysicsFaceIntersection intersection : intersections){
@@ -58,7 +136,14 @@ public class BodyIntersection {
 	 * @return the point of intersection for the two bodies
 	 */
 	public Point getAverageImpactPoint(){
-		Vector totalPoint = Vector.ZERO_VECTOR;
+		if(isConvex()){
+			Vector total = Vector.zero();
+			for(int i = 0; i < points1.length; i++){
+				total = Vector.addVectors(total, Point.midpoint(points1[i], points2[i]).toVector());
+			}
+			return new Point(Point.ORIGIN, Vector.multiplyVectorByScalar(total, 1f/points1.length));
+		}
+		Vector totalPoint = Vector.zero();
 		int numOfPoints = 0;
 		for(FaceIntersection intersection : intersections){
 			for(Point p : intersection.points){
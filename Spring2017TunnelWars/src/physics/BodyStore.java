@@ -0,0 +1,350 @@
+package physics;
+
+import java.util.Arrays;
+
+/**
+ * Holds the motion of physics bodies as columns of floats instead of as Vector and Point objects in every body.
+ * Each body is one row, the same index in every array. Keeping the numbers next to each other lets the physics engine
+ * integrate every body in simple loops without making any new objects.
+ * A PhysicsBody always belongs to one store. Bodies that are not in a physics world have their own store with one row,
+ * when they are added to a world their row is copied into the world's store.
+ * @author Isaac Zachmann
+ *
+ */
+final class BodyStore {
+
+	/**
+	 * The number of rows that are used
+	 */
+	int count = 0;
+
+	/**
+	 * The body of each row
+	 */
+	PhysicsBody[] bodies;
+
+	/**
+	 * The position of each body
+	 */
+	float[] positionX, positionY, positionZ;
+
+	/**
+	 * The position of each body at the start of the last physics step, used to blend between steps when drawing
+	 */
+	float[] previousPositionX, previousPositionY, previousPositionZ;
+
+	/**
+	 * The orientation of each body as a unit quaternion (w, x, y, z)
+	 */
+	float[] orientationW, orientationX, orientationY, orientationZ;
+
+	/**
+	 * The orientation of each body at the start of the last physics step
+	 */
+	float[] previousOrientationW, previousOrientationX, previousOrientationY, previousOrientationZ;
+
+	/**
+	 * The linear velocity of each body in m/s
+	 */
+	float[] velocityX, velocityY, velocityZ;
+
+	/**
+	 * The angular velocity of each body in rad/s
+	 */
+	float[] angularVelocityX, angularVelocityY, angularVelocityZ;
+
+	/**
+	 * The acceleration of each body from the last update
+	 */
+	float[] accelerationX, accelerationY, accelerationZ;
+
+	/**
+	 * The angular acceleration of each body from the last update
+	 */
+	float[] angularAccelerationX, angularAccelerationY, angularAccelerationZ;
+
+	/**
+	 * The net force on each body, filled in by the engine before integrating
+	 */
+	float[] forceX, forceY, forceZ;
+
+	/**
+	 * The net torque on each body, filled in by the engine before integrating
+	 */
+	float[] torqueX, torqueY, torqueZ;
+
+	/**
+	 * How far each body moved in the last update, so the faces can be moved after
+	 */
+	float[] moveX, moveY, moveZ;
+
+	/**
+	 * How far each body rotated in the last update
+	 */
+	float[] turnX, turnY, turnZ;
+
+	/**
+	 * The mass of each body in kilograms
+	 */
+	float[] mass;
+
+	/**
+	 * 1/mass of each body, 0 for floors
+	 */
+	float[] inverseMass;
+
+	/**
+	 * 1/moment of inertia around each axis, 0 for floors
+	 */
+	float[] inverseInertiaX, inverseInertiaY, inverseInertiaZ;
+
+	/**
+	 * 1 if the body moves, 0 if it is a floor. Multiplied into the motion so floors don't need an if in the loops.
+	 */
+	float[] dynamic;
+
+	/**
+	 * 1 if the body is awake, 0 if it is sleeping
+	 */
+	float[] awake;
+
+	/**
+	 * 1 if the body is awake and not a floor, so it is integrated. Always dynamic*awake, see updateMoving.
+	 */
+	float[] moving;
+
+	/**
+	 * How long each body has been slower than its sleep thresholds in seconds
+	 */
+	float[] restTime;
+
+	/**
+	 * Every column above, in the same order in every store. Rows are copied and cleared with this so no column gets left out,
+	 * a new column only has to be added here (in allocate).
+	 */
+	private float[][] columns;
+
+	/**
+	 * The bodies whose pose changed since the engine last told the broadphase, see PhysicsBody.poseChanged
+	 */
+	PhysicsBody[] movedBodies = new PhysicsBody[16];
+
+	/**
+	 * The number of bodies in movedBodies
+	 */
+	int movedCount = 0;
+
+	/**
+	 * Creates an empty store
+	 * @param capacity how many rows to make room for at first
+	 */
+	BodyStore(int capacity){
+		allocate(Math.max(1, capacity));
+	}
+
+	/**
+	 * Makes a new row for the body with everything set to 0. The body must not be in another store yet.
+	 * @param body the body of the row
+	 * @return the index of the new row
+	 */
+	int add(PhysicsBody body){
+		if(count == bodies.length){
+			allocate(count*2);
+		}
+		int i = count++;
+		bodies[i] = body;
+		//the row can be left over from a body that was removed
+		for(float[] column : columns){
+			column[i] = 0;
+		}
+		orientationW[i] = 1;
+		previousOrientationW[i] = 1;
+		dynamic[i] = 1;
+		awake[i] = 1;
+		moving[i] = 1;
+		return i;
+	}
+
+	/**
+	 * Copies the row of the body from the store it is in now to the end of this store, and points the body at this store.
+	 * The row in the old store is removed.
+	 * @param body the body to move here
+	 */
+	void moveHere(PhysicsBody body){
+		BodyStore from = body.store;
+		int j = body.index;
+		int i = add(body);
+		for(int k = 0; k < columns.length; k++){
+			columns[k][i] = from.columns[k][j];
+		}
+		from.remove(j);
+		body.store = this;
+		body.index = i;
+		//the old store's list of moved bodies isn't looked at any more, the broadphase gets the body with addBody
+		body.poseQueued = false;
+	}
+
+	/**
+	 * Adds a body to the list of bodies that moved
+	 * @param body the body, which is in this store
+	 */
+	void addMoved(PhysicsBody body){
+		if(movedCount == movedBodies.length){
+			movedBodies = Arrays.copyOf(movedBodies, movedCount*2);
+		}
+		movedBodies[movedCount++] = body;
+	}
+
+	/**
+	 * Sets if a body is awake and updates its moving column
+	 * @param i the row of the body
+	 * @param isAwake true to wake it, false to put it to sleep
+	 */
+	void setAwake(int i, boolean isAwake){
+		awake[i] = isAwake ? 1 : 0;
+		restTime[i] = isAwake ? 0 : restTime[i];
+		updateMoving(i);
+	}
+
+	/**
+	 * Makes the moving column match the dynamic and awake columns again
+	 * @param i the row of the body
+	 */
+	void updateMoving(int i){
+		moving[i] = dynamic[i]*awake[i];
+	}
+
+	/**
+	 * Remembers the position and orientation of some rows as the state before the next step
+	 * @param from the first row
+	 * @param to one past the last row
+	 */
+	void savePrevious(int from, int to){
+		System.arraycopy(positionX, from, previousPositionX, from, to - from);
+		System.arraycopy(positionY, from, previousPositionY, from, to - from);
+		System.arraycopy(positionZ, from, previousPositionZ, from, to - from);
+		System.arraycopy(orientationW, from, previousOrientationW, from, to - from);
+		System.arraycopy(orientationX, from, previousOrientationX, from, to - from);
+		System.arraycopy(orientationY, from, previousOrientationY, from, to - from);
+		System.arraycopy(orientationZ, from, previousOrientationZ, from, to - from);
+	}
+
+	/**
+	 * Turns the orientation of a body by a rotation vector (the axis times the angle in rad), around the world axes
+	 * @param i the row of the body
+	 * @param x the x of the rotation vector
+	 * @param y the y of the rotation vector
+	 * @param z the z of the rotation vector
+	 */
+	void rotateOrientation(int i, float x, float y, float z){
+		float angle = (float)Math.sqrt(x*x + y*y + z*z);
+		if(angle == 0){
+			return;
+		}
+		float sin = (float)Math.sin(angle/2)/angle;
+		float dw = (float)Math.cos(angle/2), dx = x*sin, dy = y*sin, dz = z*sin;
+		float w = orientationW[i], qx = orientationX[i], qy = orientationY[i], qz = orientationZ[i];
+		//new orientation = rotation * old orientation
+		orientationW[i] = dw*w - dx*qx - dy*qy - dz*qz;
+		orientationX[i] = dw*qx + dx*w + dy*qz - dz*qy;
+		orientationY[i] = dw*qy - dx*qz + dy*w + dz*qx;
+		orientationZ[i] = dw*qz + dx*qy - dy*qx + dz*w;
+	}
+
+	/**
+	 * Removes a row by moving the last row into its place
+	 * @param i the row to remove
+	 */
+	void remove(int i){
+		int last = --count;
+		if(i != last){
+			copyRow(last, i);
+			bodies[i].index = i;
+		}
+		bodies[last] = null;
+	}
+
+	/**
+	 * Copies every column of one row to another row of this store
+	 * @param from the row to copy
+	 * @param to the row to write over
+	 */
+	private void copyRow(int from, int to){
+		bodies[to] = bodies[from];
+		for(float[] column : columns){
+			column[to] = column[from];
+		}
+	}
+
+	/**
+	 * Makes every column the new size, keeping the rows that are used
+	 * @param capacity the new number of rows
+	 */
+	private void allocate(int capacity){
+		bodies = bodies == null ? new PhysicsBody[capacity] : Arrays.copyOf(bodies, capacity);
+		positionX = grow(positionX, capacity);
+		positionY = grow(positionY, capacity);
+		positionZ = grow(positionZ, capacity);
+		previousPositionX = grow(previousPositionX, capacity);
+		previousPositionY = grow(previousPositionY, capacity);
+		previousPositionZ = grow(previousPositionZ, capacity);
+		orientationW = grow(orientationW, capacity);
+		orientationX = grow(orientationX, capacity);
+		orientationY = grow(orientationY, capacity);
+		orientationZ = grow(orientationZ, capacity);
+		previousOrientationW = grow(previousOrientationW, capacity);
+		previousOrientationX = grow(previousOrientationX, capacity);
+		previousOrientationY = grow(previousOrientationY, capacity);
+		previousOrientationZ = grow(previousOrientationZ, capacity);
+		velocityX = grow(velocityX, capacity);
+		velocityY = grow(velocityY, capacity);
+		velocityZ = grow(velocityZ, capacity);
+		angularVelocityX = grow(angularVelocityX, capacity);
+		angularVelocityY = grow(angularVelocityY, capacity);
+		angularVelocityZ = grow(angularVelocityZ, capacity);
+		accelerationX = grow(accelerationX, capacity);
+		accelerationY = grow(accelerationY, capacity);
+		accelerationZ = grow(accelerationZ, capacity);
+		angularAccelerationX = grow(angularAccelerationX, capacity);
+		angularAccelerationY = grow(angularAccelerationY, capacity);
+		angularAccelerationZ = grow(angularAccelerationZ, capacity);
+		forceX = grow(forceX, capacity);
+		forceY = grow(forceY, capacity);
+		forceZ = grow(forceZ, capacity);
+		torqueX = grow(torqueX, capacity);
+		torqueY = grow(torqueY, capacity);
+		torqueZ = grow(torqueZ, capacity);
+		moveX = grow(moveX, capacity);
+		moveY = grow(moveY, capacity);
+		moveZ = grow(moveZ, capacity);
+		turnX = grow(turnX, capacity);
+		turnY = grow(turnY, capacity);
+		turnZ = grow(turnZ, capacity);
+		mass = grow(mass, capacity);
+		inverseMass = grow(inverseMass, capacity);
+		inverseInertiaX = grow(inverseInertiaX, capacity);
+		inverseInertiaY = grow(inverseInertiaY, capacity);
+		inverseInertiaZ = grow(inverseInertiaZ, capacity);
+		dynamic = grow(dynamic, capacity);
+		awake = grow(awake, capacity);
+		moving = grow(moving, capacity);
+		restTime = grow(restTime, capacity);
+		columns = new float[][]{positionX, positionY, positionZ, previousPositionX, previousPositionY, previousPositionZ,
+				orientationW, orientationX, orientationY, orientationZ, previousOrientationW, previousOrientationX,
+				previousOrientationY, previousOrientationZ, velocityX, velocityY, velocityZ,
+				angularVelocityX, angularVelocityY, angularVelocityZ, accelerationX, accelerationY, accelerationZ,
+				angularAccelerationX, angularAccelerationY, angularAccelerationZ, forceX, forceY, forceZ, torqueX, torqueY, torqueZ,
+				moveX, moveY, moveZ, turnX, turnY, turnZ, mass, inverseMass, inverseInertiaX, inverseInertiaY, inverseInertiaZ,
+				dynamic, awake, moving, restTime};
+	}
+
+	/**
+	 * Copies a column into a bigger array
+	 * @param column the column, or null for a new store
+	 * @param capacity the new size
+	 * @return the new column
+	 */
+	private static float[] grow(float[] column, int capacity){
+		return column == null ? new float[capacity] : Arrays.copyOf(column, capacity);
+	}
+}
@@ -0,0 +1,97 @@
+package physics;
+
+import geometry.Point;
+import math.Matrix;
+
+/**
+ * A box, lined up with the axes of the body's local space (so it turns with the body, an oriented box). Two boxes are tested
+ * with the separating axis test: they don't touch if there is a direction they don't overlap along, and for boxes only 15
+ * directions have to be tried (the 3 axes of each box and the 9 cross products of one axis from each).
+ * @author Isaac Zachmann
+ *
+ */
+public final class BoxShape extends ConvexShape {
+
+	/**
+	 * The triangles of the mesh of a box, into the corners from the constructor, wound so the normals point out
+	 */
+	private static final int[] MESH_INDICES = {
+			1, 3, 7, 1, 7, 5,//+x
+			0, 4, 6, 0, 6, 2,//-x
+			2, 6, 7, 2, 7, 3,//+y
+			0, 1, 5, 0, 5, 4,//-y
+			4, 5, 7, 4, 7, 6,//+z
+			0, 2, 3, 0, 3, 1};//-z
+
+	/**
+	 * The center of the box in local space
+	 */
+	final float centerX, centerY, centerZ;
+
+	/**
+	 * Half the length of each side
+	 */
+	final float halfX, halfY, halfZ;
+
+	/**
+	 * The 8 corners in local space, corner i is at + along x if bit 0 of i is set, + along y for bit 1 and + along z for bit 2
+	 */
+	private final float[] corners = new float[24];
+
+	/**
+	 * Makes a box
+	 * @param center the center in the local space of the body
+	 * @param halfX half the length of the side along x, in meters
+	 * @param halfY half the length of the side along y
+	 * @param halfZ half the length of the side along z
+	 */
+	public BoxShape(Point center, float halfX, float halfY, float halfZ){
+		if(halfX <= 0 || halfY <= 0 || halfZ <= 0){
+			throw new IllegalArgumentException("the sides of a box have to be longer than 0");
+		}
+		centerX = center.x;
+		centerY = center.y;
+		centerZ = center.z;
+		this.halfX = halfX;
+		this.halfY = halfY;
+		this.halfZ = halfZ;
+		for(int i = 0; i < 8; i++){
+			corners[i*3] = centerX + ((i & 1) != 0 ? halfX : -halfX);
+			corners[i*3+1] = centerY + ((i & 2) != 0 ? halfY : -halfY);
+			corners[i*3+2] = centerZ + ((i & 4) != 0 ? halfZ : -halfZ);
+		}
+	}
+
+	@Override
+	public void support(float dx, float dy, float dz, float[] out){
+		out[0] = dx >= 0 ? centerX + halfX : centerX - halfX;
+		out[1] = dy >= 0 ? centerY + halfY : centerY - halfY;
+		out[2] = dz >= 0 ? centerZ + halfZ : centerZ - halfZ;
+	}
+
+	@Override
+	public MassProperties getMassProperties(float density){
+		float volume = 8*halfX*halfY*halfZ;
+		float mass = density*volume;
+		Matrix tensor = new Matrix(3, 3);
+		tensor.setItemAt(mass*(halfY*halfY + halfZ*halfZ)/3, 0, 0);
+		tensor.setItemAt(mass*(halfX*halfX + halfZ*halfZ)/3, 1, 1);
+		tensor.setItemAt(mass*(halfX*halfX + halfY*halfY)/3, 2, 2);
+		return new MassProperties(volume, mass, new Point(centerX, centerY, centerZ), tensor);
+	}
+
+	@Override
+	public PhysicsMesh toMesh(){
+		return new PhysicsMesh(corners.clone(), MESH_INDICES.clone());
+	}
+
+	@Override
+	int getType(){
+		return BOX;
+	}
+
+	@Override
+	float[] getCorners(){
+		return corners;
+	}
+}
@@ -0,0 +1,64 @@
+package physics;
+
+import java.util.List;
+
+/**
+ * Does the first two stages of collision detection together: finds the pairs of bodies whose boxes are touching.
+ * Unlike CollisionDetection.stage1 and stage2, a broadphase keeps its data between ticks so it can use the work it did last tick.
+ * @author Isaac Zachmann
+ *
+ */
+public interface Broadphase {
+
+	/**
+	 * Told about every body whose box a ray goes through
+	 */
+	interface RayCallback {
+		/**
+		 * Called for a body whose box the ray goes through
+		 * @param body the body
+		 * @param maxT the farthest the ray is looking right now
+		 * @return the new farthest to look, the distance of the hit if the ray hit the body, otherwise maxT
+		 */
+		float hit(PhysicsBody body, float maxT);
+	}
+
+	/**
+	 * Starts keeping track of the body
+	 * @param body the body to add
+	 */
+	void addBody(PhysicsBody body);
+
+	/**
+	 * Stops keeping track of the body
+	 * @param body the body to remove
+	 */
+	void removeBody(PhysicsBody body);
+
+	/**
+	 * Tells the broadphase that a body moved or rotated since the last findPairs, so its box has to be fit again.
+	 * PhysicsEngine does this for its bodies, call it yourself when using a broadphase on its own.
+	 * @param body the body that moved
+	 */
+	void bodyMoved(PhysicsBody body);
+
+	/**
+	 * Updates the boxes of the bodies that moved and finds the ones that are touching. Should be called once every tick.
+	 * @return the pairs of boxes that are intersecting, every unordered pair only once (same as the result from stage2)
+	 */
+	List<BodyBox[]> findPairs();
+
+	/**
+	 * Finds the bodies whose boxes a ray goes through, using the boxes from the last findPairs. Doesn't change anything, so more than
+	 * one thread can cast rays at the same time as long as findPairs isn't running.
+	 * @param ox the x of the start of the ray
+	 * @param oy the y of the start of the ray
+	 * @param oz the z of the start of the ray
+	 * @param dx the x of the direction
+	 * @param dy the y of the direction
+	 * @param dz the z of the direction
+	 * @param maxT the farthest to look, in lengths of the direction
+	 * @param callback told about every body the ray could hit, and makes the ray shorter when it hits one
+	 */
+	void raycast(float ox, float oy, float oz, float dx, float dy, float dz, float maxT, RayCallback callback);
+}
@@ -0,0 +1,95 @@
+package physics;
+
+import geometry.Point;
+import math.Matrix;
+
+/**
+ * A capsule: every point that is within a radius of a segment, so a cylinder with half a sphere on each end. The segment is
+ * along the local y axis. Good for players, the round bottom slides over bumps in the ground and it can't tip over on an edge.
+ * @author Isaac Zachmann
+ *
+ */
+public final class CapsuleShape extends ConvexShape {
+
+	/**
+	 * The center of the capsule in local space
+	 */
+	final float centerX, centerY, centerZ;
+
+	/**
+	 * Half the length of the segment, the capsule is 2*(halfHeight + radius) tall
+	 */
+	final float halfHeight;
+
+	/**
+	 * The radius of the capsule
+	 */
+	final float radius;
+
+	/**
+	 * Makes a capsule standing up along y
+	 * @param center the center in the local space of the body
+	 * @param halfHeight half the length of the straight part in meters
+	 * @param radius the radius in meters
+	 */
+	public CapsuleShape(Point center, float halfHeight, float radius){
+		if(radius <= 0 || halfHeight < 0){
+			throw new IllegalArgumentException("a capsule needs a radius more than 0 and a height of at least 0");
+		}
+		centerX = center.x;
+		centerY = center.y;
+		centerZ = center.z;
+		this.halfHeight = halfHeight;
+		this.radius = radius;
+	}
+
+	@Override
+	public void support(float dx, float dy, float dz, float[] out){
+		float length = (float)Math.sqrt(dx*dx + dy*dy + dz*dz);
+		float end = dy >= 0 ? halfHeight : -halfHeight;
+		if(length == 0){
+			out[0] = centerX + radius;
+			out[1] = centerY + end;
+			out[2] = centerZ;
+			return;
+		}
+		out[0] = centerX + dx*radius/length;
+		out[1] = centerY + end + dy*radius/length;
+		out[2] = centerZ + dz*radius/length;
+	}
+
+	@Override
+	public MassProperties getMassProperties(float density){
+		double height = 2*halfHeight;
+		double cylinder = density*Math.PI*radius*radius*height;
+		double ends = density*4*Math.PI*radius*radius*radius/3;
+		//the two half spheres are moved out to the ends of the cylinder (parallel axis theorem)
+		double across = cylinder*(height*height/12 + radius*radius/4) +
+				ends*(2*radius*radius/5 + height*height/4 + 3*height*radius/8);
+		double along = cylinder*radius*radius/2 + ends*2*radius*radius/5;
+		Matrix tensor = new Matrix(3, 3);
+		tensor.setItemAt(across, 0, 0);
+		tensor.setItemAt(along, 1, 1);
+		tensor.setItemAt(across, 2, 2);
+		float mass = (float)(cylinder + ends);
+		return new MassProperties(mass/density, mass, new Point(centerX, centerY, centerZ), tensor);
+	}
+
+	@Override
+	public PhysicsMesh toMesh(){
+		return SphereShape.roundMesh(centerX, centerY, centerZ, radius, halfHeight);
+	}
+
+	@Override
+	int getType(){
+		return CAPSULE;
+	}
+
+	@Override
+	float getRadiusAround(float x, float y, float z){
+		//the farthest point is on the half sphere at one of the ends
+		float dx = centerX - x, dz = centerZ - z;
+		float dy = Math.abs(centerY - y) + halfHeight;
+		return (float)Math.sqrt(dx*dx + dy*dy + dz*dz) + radius;
+	}
+}
@@ -1,11 +1,12 @@
 package physics;
 
-import geometry.Face;
-import geometry.FaceIntersection;
 import geometry.Point;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * A class to contain static methods for collision detection
@@ -21,35 +22,109 @@ public class CollisionDetection {
 	public static final int GLOBAL_REGION = 1000;
 
 	/**
-	 * Runs the first and stage of collision detection. In this stages groups of bodies are returned if they are in the same global region of
-	 * GLOBAL_REGION by GLOBAL_REGION by GLOBAL_REGION units. 
-	 * NOTE: right now, no global regions
+	 * The most pairs one thread collides at a time in stage3 with a pool
+	 */
+	private static final int PAIRS_PER_TASK = 8;
+
+	/**
+	 * The most bodies one thread gets ready at a time in stage3 with a pool
+	 */
+	private static final int BODIES_PER_TASK = 32;
+
+	/**
+	 * The kind of a body without a convex shape, which collides with its triangles. It goes after the kinds of ConvexShape.
+	 */
+	private static final int MESH = ConvexShape.TYPES;
+
+	/**
+	 * The test to use for each pair of kinds of bodies (see collide), by the kind of the first body then the second.
+	 * null means the triangles of the two bodies are tested against each other.
+	 */
+	private static final PairTest[][] pairTests = new PairTest[MESH + 1][MESH + 1];
+
+	static {
+		//any two convex shapes can use GJK and EPA, the pairs with a faster test are set after
+		for(int i = 0; i < MESH; i++){
+			for(int j = 0; j < MESH; j++){
+				pairTests[i][j] = (collision, body1, body2) -> collision.convex.collide(body1, body2);
+			}
+		}
+		setPairTest(ConvexShape.SPHERE, ConvexShape.SPHERE, (collision, body1, body2) -> collision.sphereSphere(body1, body2));
+		setPairTest(ConvexShape.SPHERE, ConvexShape.BOX, (collision, body1, body2) -> collision.sphereBox(body1, body2));
+		setPairTest(ConvexShape.BOX, ConvexShape.BOX, (collision, body1, body2) -> collision.boxBox(body1, body2));
+		setPairTest(ConvexShape.SPHERE, MESH, (collision, body1, body2) -> collision.roundTriangles(body1, body2));
+		setPairTest(ConvexShape.CAPSULE, MESH, (collision, body1, body2) -> collision.roundTriangles(body1, body2));
+	}
+
+	/**
+	 * The working space of each thread for the tests of convex pairs
+	 */
+	private static final ThreadLocal<PrimitiveCollision> collisions = new ThreadLocal<PrimitiveCollision>(){
+		@Override
+		protected PrimitiveCollision initialValue(){
+			return new PrimitiveCollision();
+		}
+	};
+
+	/**
+	 * A test for a pair of bodies
+	 */
+	interface PairTest {
+		/**
+		 * Tests the pair
+		 * @param collision the working space of this thread
+		 * @param body1 the first body, its kind is the first index into pairTests
+		 * @param body2 the second body
+		 * @return the intersection, null if they don't intersect
+		 */
+		BodyIntersection collide(PrimitiveCollision collision, PhysicsBody body1, PhysicsBody body2);
+	}
+
+	/**
+	 * Runs the first stage of collision detection with cells of GLOBAL_REGION by GLOBAL_REGION by GLOBAL_REGION units.
 	 * @param bodies bodies to test the intersection
 	 * @return bodies that are in the same global region
+	 * @see #stage1(List, float)
 	 */
 	public static List<BodyBox[]> stage1(List<PhysicsBody> bodies){
-		List<BodyBox> bodyBoxes = new ArrayList<BodyBox>();
+		return stage1(bodies, GLOBAL_REGION);
+	}
+
+	/**
+	 * Runs the first stage of collision detection. In this stage the bodies are put into a uniform grid of cells and one group is
+	 * returned for every occupied cell. A body is in every cell its box overlaps, so two bodies that are touching always share at
+	 * least one group. Only bodies in the same group need to be compared in stage2.
+	 * @param bodies bodies to test the intersection
+	 * @param cellSize the length of one side of a cell
+	 * @return groups of bodies that are in the same cell
+	 */
+	public static List<BodyBox[]> stage1(List<PhysicsBody> bodies, float cellSize){
+		SpatialHashGrid grid = new SpatialHashGrid(cellSize);
 		for(PhysicsBody b : bodies){
-			bodyBoxes.add(new BodyBox(b));
+			grid.insert(new BodyBox(b));
 		}
-		List<BodyBox[]> returnVal = new ArrayList<BodyBox[]>();
-		returnVal.add(bodyBoxes.toArray(new BodyBox[bodyBoxes.size()]));
-		return returnVal;
+		return grid.getGroups();
 	}
 
 	/**
-	 * Runs second stage of collision detection.
-	 * Note: needs improvement
+	 * Runs second stage of collision detection. Every unordered pair of touching boxes is returned once, even if the two
+	 * bodies share more than one group.
+	 * Note: this is still O(n^2) in each group, use a Broadphase when there are a lot of bodies in one place
 	 * @param bodies the physics bodies to test (result from stage1)
 	 * @return the body boxes of objects that could be colliding. Returns an array of arrays, each has 2 boxes that are intersecting
 	 */
 	public static List<BodyBox[]> stage2(List<BodyBox[]> boxes){
 		List<BodyBox[]> intersecting = new ArrayList<BodyBox[]>();
+		Set<Long> found = new HashSet<Long>();
 		for(BodyBox[] tests : boxes){
-			for(BodyBox b1 : tests){
-				for(BodyBox b2 : tests){
-					if(BodyBox.areBoxesIntersecting(b1, b2) && !b1.equals(b2)){
-						intersecting.add(new BodyBox[]{b1,b2});
+			for(int i = 0; i < tests.length; i++){
+				for(int j = i + 1; j < tests.length; j++){
+					BodyBox b1 = tests[i];
+					BodyBox b2 = tests[j];
+					if(b1.getBody() != b2.getBody() && BodyBox.areBoxesIntersecting(b1, b2)){
+						if(boxes.size() == 1 || found.add(pairKey(b1.getBody(), b2.getBody()))){
+							intersecting.add(new BodyBox[]{b1,b2});
+						}
 					}
 				}
 			}
@@ -58,28 +133,123 @@ public class CollisionDetection {
 	}
 
 	/**
-	 * The final stage of collision detection to verify two bodies are or are not intersecting
+	 * Makes a number for a pair of bodies that is the same no matter what order the bodies are in
+	 * @param b1 the first body
+	 * @param b2 the second body
+	 * @return the key of the pair
+	 */
+	static long pairKey(PhysicsBody b1, PhysicsBody b2){
+		int low = Math.min(b1.id, b2.id);
+		int high = Math.max(b1.id, b2.id);
+		return ((long)low << 32) | (high & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * The final stage of collision detection to verify two bodies are or are not intersecting.
+	 * The face trees of the two bodies are walked down together so only faces whose boxes overlap are tested. Pairs with a
+	 * convex shape use the test for their kinds of shapes instead (see collide).
 	 * @param intersecting The bodies to test. Each array of physics bodies should be two bodies to test(result from stage2)
 	 * @return a list of all the intersections of the input bodies
 	 */
 	public static List<BodyIntersection> stage3(List<BodyBox[]> intersecting){
 		List<BodyIntersection> bodyIntersections = new ArrayList<BodyIntersection>();
 		for(BodyBox[] b : intersecting){
-			List<PhysicsFaceIntersection> faceIntersections = new ArrayList<PhysicsFaceIntersection>();
-			FaceIntersection newFaceIntersection;
-			for(PhysicsFace face1 : b[0].getBody().faces){
-				for(PhysicsFace face2 : b[1].getBody().faces){
-					if((newFaceIntersection = Face.doFacesIntersect(face1, face2)) != null){
-						faceIntersections.add(new PhysicsFaceIntersection(newFaceIntersection));
-					}
-				}
+			BodyIntersection intersection = collide(b);
+			if(intersection != null){
+				bodyIntersections.add(intersection);
+			}
+		}
+		return bodyIntersections;
+	}
+
+	/**
+	 * The same as stage3(intersecting), but the pairs are split between the threads of the pool.
+	 * The intersections come back in the same order as the pairs, the same as with one thread.
+	 * @param intersecting the pairs of boxes from stage 2 or a Broadphase
+	 * @param pool the threads to use, or null to do it all on this thread
+	 * @return the intersections between the bodies
+	 */
+	public static List<BodyIntersection> stage3(final List<BodyBox[]> intersecting, ForkJoinPool pool){
+		if(pool == null){
+			return stage3(intersecting);
+		}
+		//the world faces are updated the first time they are needed, which isn't safe to do from two threads
+		//at once, so get every body ready first. Each body is only in the list once, so this part can be split up too.
+		//The face trees are in local space and shared by the bodies of a mesh, so they never need updating.
+		Set<PhysicsBody> seen = new HashSet<PhysicsBody>();
+		final List<PhysicsBody> bodies = new ArrayList<PhysicsBody>();
+		for(BodyBox[] b : intersecting){
+			if(b[0].getBody().isConvex() && b[1].getBody().isConvex()){
+				continue;//doesn't use the face trees
+			}
+			if(seen.add(b[0].getBody())){
+				bodies.add(b[0].getBody());
+			}
+			if(seen.add(b[1].getBody())){
+				bodies.add(b[1].getBody());
+			}
+		}
+		RangeTask.run(pool, bodies.size(), BODIES_PER_TASK, (from, to) -> {
+			for(int i = from; i < to; i++){
+				bodies.get(i).getWorldFaces();
 			}
-			if(faceIntersections.size() > 0){
-				bodyIntersections.add(new BodyIntersection(faceIntersections.toArray(new PhysicsFaceIntersection[0]), b[0].getBody(), b[1].getBody()));
+		});
+		//each pair puts its answer in its own spot, then they are put together in order
+		final BodyIntersection[] results = new BodyIntersection[intersecting.size()];
+		RangeTask.run(pool, results.length, PAIRS_PER_TASK, (from, to) -> {
+			for(int i = from; i < to; i++){
+				results[i] = collide(intersecting.get(i));
+			}
+		});
+		List<BodyIntersection> bodyIntersections = new ArrayList<BodyIntersection>();
+		for(BodyIntersection intersection : results){
+			if(intersection != null){
+				bodyIntersections.add(intersection);
 			}
 		}
 		return bodyIntersections;
 	}
+
+	/**
+	 * Finds where two bodies intersect. The test comes from pairTests by the kinds of the two bodies: spheres and boxes have their
+	 * own tests against each other, spheres and capsules are tested against the triangles of a body that isn't convex, other
+	 * convex pairs use GJK and EPA and anything else the faces (see PrimitiveCollision and ConvexCollision).
+	 * @param b the boxes of the two bodies
+	 * @return the intersection, null if they don't intersect
+	 */
+	private static BodyIntersection collide(BodyBox[] b){
+		PairTest test = pairTests[getKind(b[0].getBody())][getKind(b[1].getBody())];
+		if(test != null){
+			return test.collide(collisions.get(), b[0].getBody(), b[1].getBody());
+		}
+		List<PhysicsFaceIntersection> faceIntersections = new ArrayList<PhysicsFaceIntersection>();
+		FaceTree.collide(b[0].getBody(), b[1].getBody(), faceIntersections);
+		if(faceIntersections.size() > 0){
+			return new BodyIntersection(faceIntersections.toArray(new PhysicsFaceIntersection[0]), b[0].getBody(), b[1].getBody());
+		}
+		return null;
+	}
+
+	/**
+	 * Sets the test for a pair of kinds of bodies, both ways around
+	 * @param kind1 the kind of the first body the test takes
+	 * @param kind2 the kind of the second body
+	 * @param test the test
+	 */
+	private static void setPairTest(int kind1, int kind2, PairTest test){
+		pairTests[kind1][kind2] = test;
+		//the other way around just swaps the bodies, an intersection works either way
+		pairTests[kind2][kind1] = (collision, body1, body2) -> test.collide(collision, body2, body1);
+	}
+
+	/**
+	 * Gets the kind of a body for pairTests
+	 * @param body the body
+	 * @return the type of its convex shape, or MESH
+	 */
+	private static int getKind(PhysicsBody body){
+		return body.isConvex() ? body.getShape().getType() : MESH;
+	}
 	/*Below is old way for 3, not really sure how its supposed to work but dont think it does
 	//look for intersection by all three sides on both bodies
 	Point intersection = new Ray(face2.point1, new Vector(face2.point1, face2.point2)).lineIntersectsFace(face1);
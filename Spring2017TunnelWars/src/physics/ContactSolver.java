@@ -0,0 +1,858 @@
+package physics;
+
+import geometry.Point;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import math.Vector;
+
+/**
+ * Solves the contacts between bodies with sequential impulses. Every pair of touching bodies has a manifold of up to
+ * MAX_CONTACTS points. The manifolds are kept from step to step by the pair, and every contact point is kept by the
+ * feature that made it (the two triangles and which end of their intersection), so the impulses from the last step can be
+ * applied again at the start of the next one (warm starting). With warm starting a stack of bodies needs far fewer
+ * iterations to stop jittering.
+ * Two convex bodies come with their points and normal already found (see ConvexCollision), the rest is the same.
+ * The impulses change the velocities in the store right away. The velocity the solver aims for takes in how far the
+ * acceleration of the last step will move the bodies in the next one (the integrator moves a body by a*t^2/2 as well as v*t),
+ * otherwise a resting body sinks a little every step and the stack has to be pushed back up.
+ * Penetration is pushed out with a small extra velocity (Baumgarte stabilization) instead of moving the bodies.
+ * @author Isaac Zachmann
+ *
+ */
+final class ContactSolver {
+
+	/**
+	 * The most contact points one pair of bodies keeps. 4 is enough for a box resting on a face.
+	 */
+	static final int MAX_CONTACTS = 4;
+
+	/**
+	 * The most different triangle normals tried when finding the normal of a contact
+	 */
+	private static final int MAX_NORMALS = 32;
+
+	/**
+	 * How close in meters a new contact has to be to an old one to take its impulses when no old contact has the same feature
+	 */
+	private static final float WARM_START_DISTANCE = .05f;
+
+	/**
+	 * The default number of times every contact is solved in one step. A stack of 8 boxes at 30 steps a second (the
+	 * default of GameEngine) needs about this many to stand still and fall asleep, with 10 it walks sideways and topples.
+	 */
+	static final int DEFAULT_ITERATIONS = 30;
+
+	/**
+	 * How much of the penetration is fixed in one step, 0 to 1. Higher values push bodies out faster but add energy.
+	 */
+	private static final float BAUMGARTE = .2f;
+
+	/**
+	 * How far bodies can go into each other in meters before they are pushed out. Keeps resting contacts from jittering.
+	 */
+	private static final float SLOP = .005f;
+
+	/**
+	 * Bodies only bounce if they hit faster than this in m/s, otherwise resting bodies would never stop bouncing
+	 */
+	private static final float BOUNCE_VELOCITY = 1;
+
+	/**
+	 * The manifolds from the last step, keyed by CollisionDetection.pairKey
+	 */
+	private Map<Long, Manifold> manifolds = new HashMap<Long, Manifold>();
+
+	/**
+	 * The manifolds that are touching this step, in the order of the intersections so the results are always the same
+	 */
+	private List<Manifold> active = new ArrayList<Manifold>();
+
+	/**
+	 * The number of times every contact is solved in one step
+	 */
+	int iterations = DEFAULT_ITERATIONS;
+
+	/**
+	 * Updates the manifolds from the intersections of this step and changes the velocities of the bodies so they
+	 * don't go into each other any more
+	 * @param intersections the intersections from stage 3 of collision detection
+	 * @param store the store of the bodies
+	 * @param dt the length of the step in seconds
+	 */
+	void solve(List<BodyIntersection> intersections, BodyStore store, float dt){
+		active.clear();
+		for(BodyIntersection intersection : intersections){
+			long key = CollisionDetection.pairKey(intersection.body1, intersection.body2);
+			Manifold manifold = manifolds.get(key);
+			if(manifold == null){
+				manifold = new Manifold();
+				manifolds.put(key, manifold);
+			}
+			manifold.update(intersection);
+			if(manifold.count > 0){
+				active.add(manifold);
+			}
+		}
+		//pairs that stopped touching lose their impulses
+		Iterator<Manifold> it = manifolds.values().iterator();
+		while(it.hasNext()){
+			Manifold manifold = it.next();
+			if(!manifold.touching){
+				it.remove();
+			}
+			manifold.touching = false;
+		}
+
+		for(Manifold manifold : active){
+			manifold.prepare(store, dt);
+		}
+		for(Manifold manifold : active){
+			manifold.warmStart(store);
+		}
+		for(int i = 0; i < iterations; i++){
+			for(Manifold manifold : active){
+				manifold.solve(store);
+			}
+		}
+	}
+
+	/**
+	 * One point where two bodies touch
+	 */
+	private static final class Contact {
+		/**
+		 * The feature that made the point, the same from step to step while the same triangles touch
+		 */
+		long feature;
+
+		/**
+		 * Where the bodies touch
+		 */
+		float x, y, z;
+
+		/**
+		 * The normal, pointing from body2 to body1
+		 */
+		float nx, ny, nz;
+
+		/**
+		 * How far the bodies go into each other along the normal
+		 */
+		float depth;
+
+		/**
+		 * The friction and restitution of the two triangles
+		 */
+		float friction, restitution;
+
+		/**
+		 * The total impulse along the normal and the two tangents this step, kept for warm starting
+		 */
+		float normalImpulse, tangentImpulse1, tangentImpulse2;
+
+		/**
+		 * From the center of mass of each body to the point
+		 */
+		float r1x, r1y, r1z, r2x, r2y, r2z;
+
+		/**
+		 * The directions of friction
+		 */
+		float t1x, t1y, t1z, t2x, t2y, t2z;
+
+		/**
+		 * 1 over the effective mass along the normal and tangents
+		 */
+		float normalMass, tangentMass1, tangentMass2;
+
+		/**
+		 * The velocity along the normal the solver aims for, to push out penetration and to bounce
+		 */
+		float bias;
+
+		/**
+		 * How fast the acceleration from the last step will move body1 away from body2 along the normal at the point in the next
+		 * step. The integrator moves a body by v*t + a*t^2/2, so the velocity that keeps the point still is -a*t/2.
+		 */
+		float drift;
+	}
+
+	/**
+	 * The contacts between one pair of bodies
+	 */
+	private static final class Manifold {
+		/**
+		 * The bodies, body1 always has the lower id so the normal always points the same way for the same pair
+		 */
+		PhysicsBody body1, body2;
+
+		/**
+		 * The contacts, only the first count are used
+		 */
+		Contact[] contacts = new Contact[MAX_CONTACTS];
+
+		/**
+		 * The contacts from the last step, swapped with contacts every update
+		 */
+		Contact[] oldContacts = new Contact[MAX_CONTACTS];
+
+		/**
+		 * The number of contacts this step and last step
+		 */
+		int count = 0, oldCount = 0;
+
+		/**
+		 * If the bodies were touching this step
+		 */
+		boolean touching = false;
+
+		/**
+		 * The world inverse inertia tensor of each body this step, row by row
+		 */
+		float[] inverseInertia1 = new float[9], inverseInertia2 = new float[9];
+
+		/**
+		 * Every contact point found from the intersection, before picking the best MAX_CONTACTS. The contacts are kept from step to
+		 * step and only the first candidateCount are used, so finding them doesn't make garbage.
+		 */
+		Contact[] candidates = new Contact[8];
+
+		/**
+		 * The number of candidates this step
+		 */
+		int candidateCount = 0;
+
+		/**
+		 * The points of the triangles of each body that touch, for finding the normal. A vertex shared by two triangles is in
+		 * here twice, which doesn't change the separating axis test.
+		 */
+		Point[] points1 = new Point[24], points2 = new Point[24];
+
+		/**
+		 * The number of points of each body
+		 */
+		int pointCount1 = 0, pointCount2 = 0;
+
+		/**
+		 * The normal findNormal found, pointing from body2 to body1, and the depth along it
+		 */
+		float normalX, normalY, normalZ, normalDepth;
+
+		/**
+		 * The different normals to try, 3 floats each
+		 */
+		float[] normals = new float[MAX_NORMALS*3];
+
+		/**
+		 * The number of normals to try
+		 */
+		int normalCount = 0;
+
+		Manifold(){
+			for(int i = 0; i < MAX_CONTACTS; i++){
+				contacts[i] = new Contact();
+				oldContacts[i] = new Contact();
+			}
+		}
+
+		/**
+		 * Finds the contact points of this step from the face intersections and keeps the impulses of the ones that were
+		 * there last step too
+		 * @param intersection the intersection of the bodies this step
+		 */
+		void update(BodyIntersection intersection){
+			touching = true;
+			boolean swap = intersection.body1.id > intersection.body2.id;
+			body1 = swap ? intersection.body2 : intersection.body1;
+			body2 = swap ? intersection.body1 : intersection.body2;
+
+			candidateCount = 0;
+			if(intersection.isConvex()){
+				addConvexCandidates(intersection, swap);
+			} else {
+				for(PhysicsFaceIntersection faces : intersection.intersections){
+					PhysicsFace face1 = swap ? faces.face2 : faces.face1;
+					PhysicsFace face2 = swap ? faces.face1 : faces.face2;
+					addCandidates(faces.points, face1, face2);
+				}
+				if(candidateCount > 0){
+					findNormal(intersection, swap);
+					for(int i = 0; i < candidateCount; i++){
+						Contact contact = candidates[i];
+						contact.nx = normalX;
+						contact.ny = normalY;
+						contact.nz = normalZ;
+						contact.depth = normalDepth;
+					}
+				}
+			}
+
+			Contact[] temp = oldContacts;
+			oldContacts = contacts;
+			contacts = temp;
+			oldCount = count;
+			count = 0;
+			pickContacts();
+
+			//warm start from the contact made by the same feature last step, or if the triangles changed (a box face is two
+			//triangles, so the point can move from one to the other) from the closest old contact
+			for(int i = 0; i < count; i++){
+				Contact contact = contacts[i];
+				contact.normalImpulse = 0;
+				contact.tangentImpulse1 = 0;
+				contact.tangentImpulse2 = 0;
+				Contact match = null;
+				float closest = WARM_START_DISTANCE*WARM_START_DISTANCE;
+				for(int j = 0; j < oldCount; j++){
+					Contact old = oldContacts[j];
+					if(old.feature == contact.feature){
+						match = old;
+						break;
+					}
+					float dx = old.x - contact.x, dy = old.y - contact.y, dz = old.z - contact.z;
+					float distance = dx*dx + dy*dy + dz*dz;
+					if(distance < closest){
+						closest = distance;
+						match = old;
+					}
+				}
+				if(match != null){
+					contact.normalImpulse = match.normalImpulse;
+					contact.tangentImpulse1 = match.tangentImpulse1;
+					contact.tangentImpulse2 = match.tangentImpulse2;
+				}
+			}
+		}
+
+		/**
+		 * Gets the next unused candidate, making more if all of them are used
+		 * @return the candidate, with the values from whatever step used it last
+		 */
+		private Contact nextCandidate(){
+			if(candidateCount == candidates.length){
+				candidates = Arrays.copyOf(candidates, candidateCount*2);
+			}
+			Contact contact = candidates[candidateCount];
+			if(contact == null){
+				contact = new Contact();
+				candidates[candidateCount] = contact;
+			}
+			candidateCount++;
+			return contact;
+		}
+
+		/**
+		 * Makes contacts for the points where two triangles intersect. The normal and depth are filled in later by findNormal.
+		 * @param points the points where the triangles intersect
+		 * @param face1 the triangle of body1
+		 * @param face2 the triangle of body2
+		 */
+		private void addCandidates(Point[] points, PhysicsFace face1, PhysicsFace face2){
+			if(points == null || points.length == 0){
+				return;
+			}
+			for(int p = 0; p < points.length && p < 2; p++){
+				Contact contact = nextCandidate();
+				contact.feature = ((long)face1.triangle << 33) ^ ((long)face2.triangle << 1) ^ p;
+				contact.x = points[p].x;
+				contact.y = points[p].y;
+				contact.z = points[p].z;
+				contact.friction = (float)Math.sqrt(face1.friction*face2.friction);
+				contact.restitution = Math.max(face1.restitution, face2.restitution);
+			}
+		}
+
+		/**
+		 * Makes contacts for two convex bodies, or a round body and the triangles of a mesh, from the points ConvexCollision
+		 * found. They already have the normal, so findNormal isn't needed.
+		 * @param intersection the intersection of the bodies this step
+		 * @param swap if the bodies of the intersection are the other way around from body1 and body2
+		 */
+		private void addConvexCandidates(BodyIntersection intersection, boolean swap){
+			float sign = swap ? -1 : 1;
+			ConvexShape shape1 = intersection.body1.getShape(), shape2 = intersection.body2.getShape();
+			Point[] points1 = swap ? intersection.points2 : intersection.points1;
+			Point[] points2 = swap ? intersection.points1 : intersection.points2;
+			for(int i = 0; i < points1.length; i++){
+				Vector normal = intersection.normals == null ? intersection.normal : intersection.normals[i];
+				float nx = normal.getX()*sign, ny = normal.getY()*sign, nz = normal.getZ()*sign;
+				//every point gets the depth of the pair like findNormal does, with a depth for each point a box that is tipped a
+				//little is pushed harder on one side and a stack rocks instead of falling asleep. Points on different triangles
+				//push different ways, so those each get their own.
+				float depth = intersection.depth;
+				if(intersection.normals != null){
+					depth = (points2[i].x - points1[i].x)*nx + (points2[i].y - points1[i].y)*ny + (points2[i].z - points1[i].z)*nz;
+				}
+				float friction2 = intersection.faces == null ? shape2.friction : intersection.faces[i].friction;
+				float restitution2 = intersection.faces == null ? shape2.restitution : intersection.faces[i].restitution;
+				Contact contact = nextCandidate();
+				contact.feature = intersection.features[i];
+				setConvexContact(contact, points1[i], points2[i], nx, ny, nz, depth, (float)Math.sqrt(shape1.friction*friction2),
+						Math.max(shape1.restitution, restitution2));
+			}
+		}
+
+		/**
+		 * Fills in a contact of two convex bodies from the points of the bodies
+		 * @param contact the contact
+		 * @param point1 the point of body1
+		 * @param point2 the point of body2
+		 * @param depth how far the bodies go into each other, negative if they aren't touching yet
+		 */
+		private static void setConvexContact(Contact contact, Point point1, Point point2, float nx, float ny, float nz,
+				float depth, float friction, float restitution){
+			contact.x = (point1.x + point2.x)/2;
+			contact.y = (point1.y + point2.y)/2;
+			contact.z = (point1.z + point2.z)/2;
+			contact.nx = nx;
+			contact.ny = ny;
+			contact.nz = nz;
+			contact.depth = depth;
+			contact.friction = friction;
+			contact.restitution = restitution;
+		}
+
+		/**
+		 * Finds the normal of the contact with a separating axis test over the triangles that touch. Every triangle normal
+		 * (the normals of body1 turned around) is tried, and the one the bodies overlap the least along is the normal.
+		 * That is the direction they can be pulled apart the easiest. Looking at single triangle pairs doesn't work, the side
+		 * of a box sitting on another box is in the same plane as the side of the box under it.
+		 * @param intersection the intersection of the bodies
+		 * @param swap if the bodies of the intersection are the other way around from body1 and body2
+		 */
+		private void findNormal(BodyIntersection intersection, boolean swap){
+			pointCount1 = 0;
+			pointCount2 = 0;
+			normalCount = 0;
+			int needed = intersection.intersections.length*3;
+			if(points1.length < needed){
+				points1 = new Point[needed*2];
+				points2 = new Point[needed*2];
+			}
+			for(PhysicsFaceIntersection faces : intersection.intersections){
+				PhysicsFace face1 = swap ? faces.face2 : faces.face1;
+				PhysicsFace face2 = swap ? faces.face1 : faces.face2;
+				points1[pointCount1++] = face1.point1;
+				points1[pointCount1++] = face1.point2;
+				points1[pointCount1++] = face1.point3;
+				points2[pointCount2++] = face2.point1;
+				points2[pointCount2++] = face2.point2;
+				points2[pointCount2++] = face2.point3;
+				addNormal(face2, 1);
+				addNormal(face1, -1);
+			}
+			normalX = 0;
+			normalY = 1;
+			normalZ = 0;
+			float bestDepth = Float.POSITIVE_INFINITY;
+			for(int i = 0; i < normalCount; i++){
+				float nx = normals[i*3], ny = normals[i*3+1], nz = normals[i*3+2];
+				//how far the top of body2 goes past the bottom of body1 along the normal
+				float max2 = Float.NEGATIVE_INFINITY;
+				for(int j = 0; j < pointCount2; j++){
+					Point p = points2[j];
+					max2 = Math.max(max2, p.x*nx + p.y*ny + p.z*nz);
+				}
+				float min1 = Float.POSITIVE_INFINITY;
+				for(int j = 0; j < pointCount1; j++){
+					Point p = points1[j];
+					min1 = Math.min(min1, p.x*nx + p.y*ny + p.z*nz);
+				}
+				float depth = max2 - min1;
+				if(depth < bestDepth){
+					bestDepth = depth;
+					normalX = nx;
+					normalY = ny;
+					normalZ = nz;
+				}
+			}
+			normalDepth = Math.max(0, bestDepth);
+		}
+
+		/**
+		 * Adds the normal of a face to the normals to try, if it isn't almost the same as one that is there already
+		 * @param face the face
+		 * @param sign 1 to use the normal, -1 to turn it around
+		 */
+		private void addNormal(PhysicsFace face, float sign){
+			if(normalCount == MAX_NORMALS){
+				return;
+			}
+			float ax = face.point2.x - face.point1.x, ay = face.point2.y - face.point1.y, az = face.point2.z - face.point1.z;
+			float bx = face.point3.x - face.point1.x, by = face.point3.y - face.point1.y, bz = face.point3.z - face.point1.z;
+			float nx = ay*bz - az*by, ny = az*bx - ax*bz, nz = ax*by - ay*bx;
+			float length = (float)Math.sqrt(nx*nx + ny*ny + nz*nz);
+			if(length == 0){
+				return;
+			}
+			nx *= sign/length;
+			ny *= sign/length;
+			nz *= sign/length;
+			for(int i = 0; i < normalCount; i++){
+				if(normals[i*3]*nx + normals[i*3+1]*ny + normals[i*3+2]*nz > .999f){
+					return;
+				}
+			}
+			normals[normalCount*3] = nx;
+			normals[normalCount*3+1] = ny;
+			normals[normalCount*3+2] = nz;
+			normalCount++;
+		}
+
+		/**
+		 * Picks at most MAX_CONTACTS candidates that cover the contact area the best, so for a box on a face it ends up with
+		 * the corners no matter what order the candidates came in. The first is the candidate farthest from the middle of all
+		 * of them (a corner), the second the one farthest from it, the third the one that makes the biggest triangle with
+		 * those two and the last the one that adds the most area to that triangle. Starting from whatever candidate came first
+		 * could pick the middle of an edge, and then the box is held up more on one side and walks. A candidate has to beat
+		 * the best one by a little to take its place, so the corners of a box that are all as far don't trade places every
+		 * step. If there aren't more candidates than MAX_CONTACTS they are all kept in the order they came in.
+		 */
+		private void pickContacts(){
+			int size = candidateCount;
+			if(size <= MAX_CONTACTS){
+				for(int i = 0; i < size; i++){
+					copy(candidates[i], contacts[count++]);
+				}
+				return;
+			}
+			float mx = 0, my = 0, mz = 0;
+			for(int i = 0; i < size; i++){
+				mx += candidates[i].x;
+				my += candidates[i].y;
+				mz += candidates[i].z;
+			}
+			mx /= size;
+			my /= size;
+			mz /= size;
+			int pick = 0;
+			float best = -1;
+			for(int i = 0; i < size; i++){
+				Contact c = candidates[i];
+				float dx = c.x - mx, dy = c.y - my, dz = c.z - mz;
+				float distance = dx*dx + dy*dy + dz*dz;
+				if(distance > best*1.001f){
+					best = distance;
+					pick = i;
+				}
+			}
+			Contact a = candidates[pick];
+			copy(a, contacts[count++]);
+
+			pick = -1;
+			best = 1e-8f;
+			for(int i = 0; i < size; i++){
+				Contact c = candidates[i];
+				float dx = c.x - a.x, dy = c.y - a.y, dz = c.z - a.z;
+				float distance = dx*dx + dy*dy + dz*dz;
+				if(distance > best*1.001f){
+					best = distance;
+					pick = i;
+				}
+			}
+			if(pick < 0){
+				return;
+			}
+			Contact b = candidates[pick];
+			copy(b, contacts[count++]);
+			float abx = b.x - a.x, aby = b.y - a.y, abz = b.z - a.z;
+
+			//twice the area of the triangle a, b, c is the length of ab x ac
+			pick = -1;
+			best = 1e-12f;
+			float nx = 0, ny = 0, nz = 0;
+			for(int i = 0; i < size; i++){
+				Contact c = candidates[i];
+				float acx = c.x - a.x, acy = c.y - a.y, acz = c.z - a.z;
+				float cx = aby*acz - abz*acy, cy = abz*acx - abx*acz, cz = abx*acy - aby*acx;
+				float area = cx*cx + cy*cy + cz*cz;
+				if(area > best*1.001f){
+					best = area;
+					pick = i;
+					nx = cx;
+					ny = cy;
+					nz = cz;
+				}
+			}
+			if(pick < 0){
+				return;
+			}
+			Contact c = candidates[pick];
+			copy(c, contacts[count++]);
+
+			//the area a point outside an edge of the triangle adds is the cross product of the edge and the point, along
+			//the normal of the triangle turned around (it is negative for points inside the edge)
+			pick = -1;
+			best = 1e-12f;
+			for(int i = 0; i < size; i++){
+				Contact d = candidates[i];
+				float added = Math.max(outside(a, b, d, nx, ny, nz), Math.max(outside(b, c, d, nx, ny, nz), outside(c, a, d, nx, ny, nz)));
+				if(added > best*1.001f){
+					best = added;
+					pick = i;
+				}
+			}
+			if(pick >= 0){
+				copy(candidates[pick], contacts[count++]);
+			}
+		}
+
+		/**
+		 * Gets how much area a point adds outside one edge of a triangle, scaled by the length of the normal
+		 * @param from the start of the edge
+		 * @param to the end of the edge, going around the triangle the way the normal says
+		 * @param point the point
+		 * @return more than 0 if the point is outside the edge
+		 */
+		private static float outside(Contact from, Contact to, Contact point, float nx, float ny, float nz){
+			float ex = to.x - from.x, ey = to.y - from.y, ez = to.z - from.z;
+			float px = point.x - from.x, py = point.y - from.y, pz = point.z - from.z;
+			return -((ey*pz - ez*py)*nx + (ez*px - ex*pz)*ny + (ex*py - ey*px)*nz);
+		}
+
+		/**
+		 * Gets ready to solve: finds the lever arms, the effective masses, the bias velocity and the drift of every contact
+		 * @param s the store of the bodies
+		 * @param dt the length of the step
+		 */
+		void prepare(BodyStore s, float dt){
+			int i1 = body1.index, i2 = body2.index;
+			float im1 = s.inverseMass[i1]*s.moving[i1], im2 = s.inverseMass[i2]*s.moving[i2];
+			worldInverseInertia(s, i1, inverseInertia1);
+			worldInverseInertia(s, i2, inverseInertia2);
+			Point c1 = body1.getLocalCentroid(), c2 = body2.getLocalCentroid();
+			float c1x = c1.x + s.positionX[i1], c1y = c1.y + s.positionY[i1], c1z = c1.z + s.positionZ[i1];
+			float c2x = c2.x + s.positionX[i2], c2y = c2.y + s.positionY[i2], c2z = c2.z + s.positionZ[i2];
+			float m1 = s.moving[i1]*dt/2, m2 = s.moving[i2]*dt/2;
+			for(int i = 0; i < count; i++){
+				Contact c = contacts[i];
+				c.r1x = c.x - c1x;
+				c.r1y = c.y - c1y;
+				c.r1z = c.z - c1z;
+				c.r2x = c.x - c2x;
+				c.r2y = c.y - c2y;
+				c.r2z = c.z - c2z;
+				//two directions at right angles to the normal for friction
+				if(Math.abs(c.nx) > .57735f){
+					c.t1x = c.ny;
+					c.t1y = -c.nx;
+					c.t1z = 0;
+				} else {
+					c.t1x = 0;
+					c.t1y = c.nz;
+					c.t1z = -c.ny;
+				}
+				float length = (float)Math.sqrt(c.t1x*c.t1x + c.t1y*c.t1y + c.t1z*c.t1z);
+				c.t1x /= length;
+				c.t1y /= length;
+				c.t1z /= length;
+				c.t2x = c.ny*c.t1z - c.nz*c.t1y;
+				c.t2y = c.nz*c.t1x - c.nx*c.t1z;
+				c.t2z = c.nx*c.t1y - c.ny*c.t1x;
+
+				c.normalMass = inverse(im1 + im2 + angularMass(c, c.nx, c.ny, c.nz));
+				c.tangentMass1 = inverse(im1 + im2 + angularMass(c, c.t1x, c.t1y, c.t1z));
+				c.tangentMass2 = inverse(im1 + im2 + angularMass(c, c.t2x, c.t2y, c.t2z));
+
+				//a contact of convex bodies that aren't touching yet lets them come together by the gap this step, but no faster
+				c.bias = c.depth < 0 ? c.depth/dt : BAUMGARTE/dt*Math.max(0, c.depth - SLOP);
+				float vn = relativeVelocity(s, c, c.nx, c.ny, c.nz);
+				if(vn < -BOUNCE_VELOCITY){
+					c.bias = Math.max(c.bias, -c.restitution*vn);
+				}
+
+				//a + alpha x r of both bodies, times t/2, along the normal
+				float ax = (s.accelerationX[i1] + s.angularAccelerationY[i1]*c.r1z - s.angularAccelerationZ[i1]*c.r1y)*m1 -
+						(s.accelerationX[i2] + s.angularAccelerationY[i2]*c.r2z - s.angularAccelerationZ[i2]*c.r2y)*m2;
+				float ay = (s.accelerationY[i1] + s.angularAccelerationZ[i1]*c.r1x - s.angularAccelerationX[i1]*c.r1z)*m1 -
+						(s.accelerationY[i2] + s.angularAccelerationZ[i2]*c.r2x - s.angularAccelerationX[i2]*c.r2z)*m2;
+				float az = (s.accelerationZ[i1] + s.angularAccelerationX[i1]*c.r1y - s.angularAccelerationY[i1]*c.r1x)*m1 -
+						(s.accelerationZ[i2] + s.angularAccelerationX[i2]*c.r2y - s.angularAccelerationY[i2]*c.r2x)*m2;
+				c.drift = ax*c.nx + ay*c.ny + az*c.nz;
+			}
+		}
+
+		/**
+		 * Applies the impulses from the last step again
+		 * @param s the store of the bodies
+		 */
+		void warmStart(BodyStore s){
+			for(int i = 0; i < count; i++){
+				Contact c = contacts[i];
+				float px = c.nx*c.normalImpulse + c.t1x*c.tangentImpulse1 + c.t2x*c.tangentImpulse2;
+				float py = c.ny*c.normalImpulse + c.t1y*c.tangentImpulse1 + c.t2y*c.tangentImpulse2;
+				float pz = c.nz*c.normalImpulse + c.t1z*c.tangentImpulse1 + c.t2z*c.tangentImpulse2;
+				applyImpulse(s, c, px, py, pz);
+			}
+		}
+
+		/**
+		 * Runs one iteration over the contacts. Friction first, then the normal, since the normal matters more. The normal aims for
+		 * the bias once the drift is added, so a resting point doesn't move in the next step.
+		 * @param s the store of the bodies
+		 */
+		void solve(BodyStore s){
+			for(int i = 0; i < count; i++){
+				Contact c = contacts[i];
+				float maxFriction = c.friction*c.normalImpulse;
+
+				float lambda = -relativeVelocity(s, c, c.t1x, c.t1y, c.t1z)*c.tangentMass1;
+				float old = c.tangentImpulse1;
+				c.tangentImpulse1 = Math.max(-maxFriction, Math.min(maxFriction, old + lambda));
+				lambda = c.tangentImpulse1 - old;
+				applyImpulse(s, c, c.t1x*lambda, c.t1y*lambda, c.t1z*lambda);
+
+				lambda = -relativeVelocity(s, c, c.t2x, c.t2y, c.t2z)*c.tangentMass2;
+				old = c.tangentImpulse2;
+				c.tangentImpulse2 = Math.max(-maxFriction, Math.min(maxFriction, old + lambda));
+				lambda = c.tangentImpulse2 - old;
+				applyImpulse(s, c, c.t2x*lambda, c.t2y*lambda, c.t2z*lambda);
+
+				//the total normal impulse can only push, never pull
+				lambda = (c.bias - c.drift - relativeVelocity(s, c, c.nx, c.ny, c.nz))*c.normalMass;
+				old = c.normalImpulse;
+				c.normalImpulse = Math.max(0, old + lambda);
+				lambda = c.normalImpulse - old;
+				applyImpulse(s, c, c.nx*lambda, c.ny*lambda, c.nz*lambda);
+			}
+		}
+
+		/**
+		 * Gets how fast body1 moves away from body2 at the contact along a direction
+		 * @param s the store of the bodies
+		 * @param c the contact
+		 * @param dx the x of the direction
+		 * @param dy the y of the direction
+		 * @param dz the z of the direction
+		 * @return the relative velocity along the direction
+		 */
+		private float relativeVelocity(BodyStore s, Contact c, float dx, float dy, float dz){
+			int i1 = body1.index, i2 = body2.index;
+			float w1x = s.angularVelocityX[i1], w1y = s.angularVelocityY[i1], w1z = s.angularVelocityZ[i1];
+			float w2x = s.angularVelocityX[i2], w2y = s.angularVelocityY[i2], w2z = s.angularVelocityZ[i2];
+			//v + w x r for both bodies
+			float vx = s.velocityX[i1] + w1y*c.r1z - w1z*c.r1y - s.velocityX[i2] - (w2y*c.r2z - w2z*c.r2y);
+			float vy = s.velocityY[i1] + w1z*c.r1x - w1x*c.r1z - s.velocityY[i2] - (w2z*c.r2x - w2x*c.r2z);
+			float vz = s.velocityZ[i1] + w1x*c.r1y - w1y*c.r1x - s.velocityZ[i2] - (w2x*c.r2y - w2y*c.r2x);
+			return vx*dx + vy*dy + vz*dz;
+		}
+
+		/**
+		 * Applies an impulse to body1 at the contact, and the opposite impulse to body2. Floors and sleeping bodies don't move.
+		 * @param s the store of the bodies
+		 * @param c the contact
+		 * @param px the x of the impulse
+		 * @param py the y of the impulse
+		 * @param pz the z of the impulse
+		 */
+		private void applyImpulse(BodyStore s, Contact c, float px, float py, float pz){
+			int i1 = body1.index, i2 = body2.index;
+			float im1 = s.inverseMass[i1]*s.moving[i1], im2 = s.inverseMass[i2]*s.moving[i2];
+			s.velocityX[i1] += px*im1;
+			s.velocityY[i1] += py*im1;
+			s.velocityZ[i1] += pz*im1;
+			s.velocityX[i2] -= px*im2;
+			s.velocityY[i2] -= py*im2;
+			s.velocityZ[i2] -= pz*im2;
+			if(s.moving[i1] != 0){
+				addAngular(s, i1, inverseInertia1, c.r1y*pz - c.r1z*py, c.r1z*px - c.r1x*pz, c.r1x*py - c.r1y*px);
+			}
+			if(s.moving[i2] != 0){
+				addAngular(s, i2, inverseInertia2, -(c.r2y*pz - c.r2z*py), -(c.r2z*px - c.r2x*pz), -(c.r2x*py - c.r2y*px));
+			}
+		}
+
+		/**
+		 * Changes the angular velocity of a body by an angular impulse
+		 * @param s the store
+		 * @param i the row of the body
+		 * @param inverseInertia the world inverse inertia of the body
+		 * @param lx the x of the angular impulse
+		 * @param ly the y of the angular impulse
+		 * @param lz the z of the angular impulse
+		 */
+		private static void addAngular(BodyStore s, int i, float[] inverseInertia, float lx, float ly, float lz){
+			s.angularVelocityX[i] += inverseInertia[0]*lx + inverseInertia[1]*ly + inverseInertia[2]*lz;
+			s.angularVelocityY[i] += inverseInertia[3]*lx + inverseInertia[4]*ly + inverseInertia[5]*lz;
+			s.angularVelocityZ[i] += inverseInertia[6]*lx + inverseInertia[7]*ly + inverseInertia[8]*lz;
+		}
+
+		/**
+		 * Gets how much the rotation of both bodies adds to the inverse effective mass along a direction at the contact,
+		 * (I1^-1 (r1 x d)) x r1 . d + (I2^-1 (r2 x d)) x r2 . d
+		 * @param c the contact
+		 * @param dx the x of the direction
+		 * @param dy the y of the direction
+		 * @param dz the z of the direction
+		 * @return the angular part of the inverse effective mass
+		 */
+		private float angularMass(Contact c, float dx, float dy, float dz){
+			return angularMass(inverseInertia1, c.r1x, c.r1y, c.r1z, dx, dy, dz) + angularMass(inverseInertia2, c.r2x, c.r2y, c.r2z, dx, dy, dz);
+		}
+
+		/**
+		 * The angular part of the inverse effective mass of one body, which is |r x d|^2 in the metric of the inverse inertia
+		 */
+		private static float angularMass(float[] m, float rx, float ry, float rz, float dx, float dy, float dz){
+			float ax = ry*dz - rz*dy, ay = rz*dx - rx*dz, az = rx*dy - ry*dx;
+			float bx = m[0]*ax + m[1]*ay + m[2]*az;
+			float by = m[3]*ax + m[4]*ay + m[5]*az;
+			float bz = m[6]*ax + m[7]*ay + m[8]*az;
+			return ax*bx + ay*by + az*bz;
+		}
+
+		/**
+		 * Turns the inverse moment of inertia around the local axes into world axes, R * diag * R^T. 0 for bodies that don't move.
+		 * @param s the store
+		 * @param i the row of the body
+		 * @param dest where to put the matrix, row by row
+		 */
+		private static void worldInverseInertia(BodyStore s, int i, float[] dest){
+			float w = s.orientationW[i], x = s.orientationX[i], y = s.orientationY[i], z = s.orientationZ[i];
+			float moving = s.moving[i];
+			float dx = s.inverseInertiaX[i]*moving, dy = s.inverseInertiaY[i]*moving, dz = s.inverseInertiaZ[i]*moving;
+			//the rows of R are (r00 r01 r02) and so on, R * diag * R^T is symmetric so only the upper half is worked out
+			float r00 = 1 - 2*(y*y + z*z), r01 = 2*(x*y - w*z), r02 = 2*(x*z + w*y);
+			float r10 = 2*(x*y + w*z), r11 = 1 - 2*(x*x + z*z), r12 = 2*(y*z - w*x);
+			float r20 = 2*(x*z - w*y), r21 = 2*(y*z + w*x), r22 = 1 - 2*(x*x + y*y);
+			dest[0] = r00*dx*r00 + r01*dy*r01 + r02*dz*r02;
+			dest[1] = r00*dx*r10 + r01*dy*r11 + r02*dz*r12;
+			dest[2] = r00*dx*r20 + r01*dy*r21 + r02*dz*r22;
+			dest[4] = r10*dx*r10 + r11*dy*r11 + r12*dz*r12;
+			dest[5] = r10*dx*r20 + r11*dy*r21 + r12*dz*r22;
+			dest[8] = r20*dx*r20 + r21*dy*r21 + r22*dz*r22;
+			dest[3] = dest[1];
+			dest[6] = dest[2];
+			dest[7] = dest[5];
+		}
+
+		/**
+		 * Gets 1/value, or 0 if the value is 0 (two bodies that can't move)
+		 */
+		private static float inverse(float value){
+			return value > 0 ? 1/value : 0;
+		}
+
+		/**
+		 * Copies a candidate into a contact of the manifold
+		 */
+		private static void copy(Contact from, Contact to){
+			to.feature = from.feature;
+			to.x = from.x;
+			to.y = from.y;
+			to.z = from.z;
+			to.nx = from.nx;
+			to.ny = from.ny;
+			to.nz = from.nz;
+			to.depth = from.depth;
+			to.friction = from.friction;
+			to.restitution = from.restitution;
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package physics;
+
+import geometry.Point;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Stops bullets from going through thin things. A fast body can move further than a wall is thick in one step, so at the end of
+ * the step it isn't touching the wall and the normal collision detection never sees it. For bodies set as bullets the box in the
+ * broadphase goes around the whole path of the step (see BodyBox.update), and for every pair with a bullet this finds the first
+ * time in the step the two bodies touch (time of impact). The bullet is then moved back to just past that time, so it is barely
+ * inside the other body and the contact solver stops it like any other contact.
+ * The time of impact is found by casting a ray from every point of the bullet along its path against the faces of the other body,
+ * and from every point of the other body backwards along the path against the faces of the bullet. That finds a point going
+ * through a face, but not an edge going through an edge.
+ * NOTE: only the movement of the bullet is swept, not its rotation, and the other body is kept where it is at the end of the step.
+ * That is exact for a bullet hitting something that doesn't move, which is what it is for.
+ * @author Isaac Zachmann
+ *
+ */
+final class ContinuousCollision {
+
+	/**
+	 * How far past the time of impact a bullet is put, in meters, so the bodies overlap a little and the narrow phase finds the contact
+	 */
+	static final float SKIN = .01f;
+
+	/**
+	 * The first time of impact of every row of the store in this step, 1 if it doesn't hit anything
+	 */
+	private float[] impactTimes = new float[0];
+
+	/**
+	 * Finds the first time each bullet in the pairs hits something and moves it back to there. Call this after the broadphase and
+	 * before the narrow phase.
+	 * @param pairs the pairs from the broadphase
+	 * @param s the store of the bodies
+	 */
+	void sweepBullets(List<BodyBox[]> pairs, BodyStore s){
+		boolean any = false;
+		for(BodyBox[] pair : pairs){
+			if(isSwept(pair[0].getBody()) || isSwept(pair[1].getBody())){
+				any = true;
+				break;
+			}
+		}
+		if(!any){
+			return;
+		}
+		if(impactTimes.length < s.count){
+			impactTimes = new float[s.bodies.length];
+		}
+		Arrays.fill(impactTimes, 0, s.count, 1);
+		for(BodyBox[] pair : pairs){
+			PhysicsBody body1 = pair[0].getBody(), body2 = pair[1].getBody();
+			if(isSwept(body1)){
+				impactTimes[body1.index] = Math.min(impactTimes[body1.index], timeOfImpact(body1, pair[0], body2));
+			}
+			if(isSwept(body2)){
+				impactTimes[body2.index] = Math.min(impactTimes[body2.index], timeOfImpact(body2, pair[1], body1));
+			}
+		}
+		for(int i = 0; i < s.count; i++){
+			float t = impactTimes[i];
+			if(t >= 1){
+				continue;
+			}
+			float moveX = s.moveX[i], moveY = s.moveY[i], moveZ = s.moveZ[i];
+			float length = (float)Math.sqrt(moveX*moveX + moveY*moveY + moveZ*moveZ);
+			t = Math.min(1, t + SKIN/length);
+			float back = 1 - t;
+			s.positionX[i] -= moveX*back;
+			s.positionY[i] -= moveY*back;
+			s.positionZ[i] -= moveZ*back;
+			s.moveX[i] = moveX*t;
+			s.moveY[i] = moveY*t;
+			s.moveZ[i] = moveZ*t;
+			s.bodies[i].poseChanged();
+		}
+	}
+
+	/**
+	 * Checks if a body needs to be swept this step
+	 */
+	private static boolean isSwept(PhysicsBody body){
+		BodyStore s = body.store;
+		int i = body.index;
+		return body.isBullet() && body.isMoving() && (s.moveX[i] != 0 || s.moveY[i] != 0 || s.moveZ[i] != 0);
+	}
+
+	/**
+	 * Finds the first time in the step that the bullet touches the other body
+	 * @param bullet the bullet, at the end of its step
+	 * @param bulletBox the box of the bullet, around its whole path
+	 * @param other the other body, which is kept at the end of its step
+	 * @return the time of impact from 0 (the start of the step) to 1 (the end), 1 if they don't touch
+	 */
+	static float timeOfImpact(PhysicsBody bullet, BodyBox bulletBox, PhysicsBody other){
+		BodyStore s = bullet.store;
+		int b = bullet.index, o = other.index;
+		//how far the bullet moved compared to the other body
+		float dx = s.moveX[b], dy = s.moveY[b], dz = s.moveZ[b];
+		if(other.isMoving()){
+			dx -= s.moveX[o];
+			dy -= s.moveY[o];
+			dz -= s.moveZ[o];
+		}
+		if(dx == 0 && dy == 0 && dz == 0){
+			return 1;
+		}
+		float[] first = {1};
+		//points of the bullet going into the faces of the other body
+		for(Point p : bullet.getWorldPoints()){
+			FaceTree.raycast(other, p.x - dx, p.y - dy, p.z - dz, dx, dy, dz, first[0], first);
+		}
+		//points of the other body going into the faces of the bullet, seen from the bullet
+		Point min = bulletBox.getMin(), max = bulletBox.getMax();
+		for(Point q : other.getWorldPoints()){
+			if(q.x < min.x || q.y < min.y || q.z < min.z || q.x > max.x || q.y > max.y || q.z > max.z){
+				continue;
+			}
+			FaceTree.raycast(bullet, q.x + dx, q.y + dy, q.z + dz, -dx, -dy, -dz, first[0], first);
+		}
+		return first[0];
+	}
+}
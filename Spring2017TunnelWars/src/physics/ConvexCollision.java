@@ -0,0 +1,1052 @@
+package physics;
+
+import geometry.Point;
+
+import java.util.Arrays;
+
+import math.Vector;
+
+/**
+ * Collision detection between two bodies with convex shapes, using GJK and EPA on the Minkowski difference of the shapes
+ * (every point of body1 minus every point of body2). The bodies touch if the difference has the origin inside it.
+ * GJK walks a simplex (a point, segment, triangle or tetrahedron of points of the difference) towards the origin. If the
+ * bodies are apart it finds the closest points and how far apart they are, and most pairs that are far apart are thrown out
+ * after one or two support points. If the bodies go into each other GJK ends with a tetrahedron around the origin, and EPA
+ * grows it into a polytope until the face closest to the origin is on the outside of the difference. That face gives the
+ * normal and how far the bodies go into each other.
+ * GJK and EPA only give one point. For two hulls the sides facing each other are clipped to each other (see findPoints),
+ * so a box on a box gets all four corners in the same step and doesn't rock.
+ * Each thread needs its own ConvexCollision, everything it works with is kept in arrays that are used again for every pair.
+ * @author Isaac Zachmann
+ *
+ */
+final class ConvexCollision {
+
+	/**
+	 * Bodies that are apart by less than this in meters still get a contact, with a negative depth, so the solver can stop them
+	 * from going into each other on the next step instead of after (a speculative contact)
+	 */
+	static final float CONTACT_DISTANCE = .01f;
+
+	/**
+	 * The most contact points one pair can give
+	 */
+	static final int MAX_POINTS = 16;
+
+	/**
+	 * Set in the feature of a contact point where two edges cross, so it is never the same as the feature of a corner
+	 */
+	private static final long CROSSING = 1L << 61;
+
+	/**
+	 * The normal of the side a hull is clipped to is used instead of the EPA normal if the dot product of the two is more than this
+	 */
+	private static final float FACE_NORMAL_DOT = .99f;
+
+	/**
+	 * The most corners the side of a hull can have when finding contact points
+	 */
+	private static final int MAX_POLYGON = 32;
+
+	/**
+	 * The most times GJK looks for a new support point before giving up
+	 */
+	private static final int MAX_GJK_ITERATIONS = 32;
+
+	/**
+	 * The most points the EPA polytope can have
+	 */
+	private static final int MAX_EPA_VERTICES = 64;
+
+	/**
+	 * The most faces the EPA polytope can have
+	 */
+	private static final int MAX_EPA_FACES = 2*MAX_EPA_VERTICES;
+
+	/**
+	 * How close GJK and EPA have to get to the answer, as a part of the distance
+	 */
+	private static final float TOLERANCE = 1e-4f;
+
+	/**
+	 * The bodies are counted as touching when the closest point of the difference is closer than this to the origin
+	 */
+	private static final float TOUCHING = 1e-6f;
+
+	/**
+	 * A new EPA point this close to the plane of a face, in meters, counts as seeing it. Boxes have a lot of points in the
+	 * same plane, and a face the point is right on has to be taken out too or the new faces come out with no area.
+	 */
+	private static final float PLANE_TOLERANCE = 1e-5f;
+
+	/**
+	 * The rotation matrix of each body, row by row, and the point each body rotates around in local space and in world space
+	 */
+	final float[] rotation1 = new float[9], rotation2 = new float[9];
+	final float[] center1 = new float[6], center2 = new float[6];
+
+	/**
+	 * The shapes of the bodies being tested
+	 */
+	ConvexShape shape1, shape2;
+
+	/**
+	 * Used to get support points from the shapes
+	 */
+	private final float[] local = new float[3];
+
+	/**
+	 * The points of the simplex (or polytope for EPA), 3 floats each: the point of the difference and the points of body1 and
+	 * body2 that made it
+	 */
+	private final float[] w = new float[MAX_EPA_VERTICES*3], a = new float[MAX_EPA_VERTICES*3], b = new float[MAX_EPA_VERTICES*3];
+
+	/**
+	 * The number of points in the GJK simplex
+	 */
+	private int size;
+
+	/**
+	 * How much of each point of the simplex makes the closest point to the origin
+	 */
+	private final float[] lambda = new float[4];
+
+	/**
+	 * The lambdas of one face of a tetrahedron simplex, and of the closest face so far
+	 */
+	private final float[] faceLambda = new float[4], bestLambda = new float[4];
+
+	/**
+	 * The faces of a tetrahedron, the last number of each is the point that isn't on the face
+	 */
+	private static final int[][] SIDES = {{0, 1, 2, 3}, {0, 1, 3, 2}, {0, 2, 3, 1}, {1, 2, 3, 0}};
+
+	/**
+	 * The closest point of the simplex to the origin
+	 */
+	private float vx, vy, vz;
+
+	/**
+	 * The faces of the EPA polytope: 3 point indices each, and the unit normal and distance from the origin of each face
+	 */
+	private final int[] faces = new int[MAX_EPA_FACES*3];
+	private final float[] faceNormals = new float[MAX_EPA_FACES*4];
+	private int faceCount;
+
+	/**
+	 * A point inside the EPA polytope (the middle of the first tetrahedron). Faces are turned to point away from it, not from
+	 * the origin, since the origin can be right on a face when the bodies only just touch.
+	 */
+	private float insideX, insideY, insideZ;
+
+	/**
+	 * The edges around the hole made when EPA adds a point, 2 point indices each
+	 */
+	private final int[] edges = new int[MAX_EPA_FACES*3*2];
+	private int edgeCount;
+
+	/**
+	 * The deepest points of each body from GJK or EPA (the closest points if they are apart)
+	 */
+	float point1X, point1Y, point1Z, point2X, point2Y, point2Z;
+
+	/**
+	 * The answer: the normal from body2 to body1, and how far the bodies go into each other (negative if they are apart)
+	 */
+	float normalX, normalY, normalZ;
+	float depth;
+
+	/**
+	 * The answer: the contact points, 6 floats each (the point of body1 then the point of body2), the deepest first
+	 */
+	final float[] points = new float[MAX_POINTS*6];
+
+	/**
+	 * What made each contact point, the same from step to step while the same corner touches
+	 */
+	final long[] features = new long[MAX_POINTS];
+
+	/**
+	 * The normal of each contact point, 3 floats each, only used if pointNormals is true. A round body touching the
+	 * triangles of a mesh has a different normal for each triangle.
+	 */
+	final float[] normals = new float[MAX_POINTS*3];
+	boolean pointNormals;
+
+	/**
+	 * The triangle of body2 each contact point is on, for a round body touching the triangles of a mesh
+	 */
+	final PhysicsFace[] pointFaces = new PhysicsFace[MAX_POINTS];
+
+	/**
+	 * The sides of the hulls facing each other, 3 floats for each corner, and the index of each corner
+	 */
+	private final float[] polygon1 = new float[MAX_POLYGON*3], polygon2 = new float[MAX_POLYGON*3];
+	private final long[] polygonFeatures1 = new long[MAX_POLYGON], polygonFeatures2 = new long[MAX_POLYGON];
+
+	/**
+	 * The incident side while it is clipped, swapped after every edge
+	 */
+	private final float[] clipA = new float[MAX_POLYGON*6], clipB = new float[MAX_POLYGON*6];
+	private final long[] clipFeaturesA = new long[MAX_POLYGON*2], clipFeaturesB = new long[MAX_POLYGON*2];
+
+	/**
+	 * The number of contact points
+	 */
+	int pointCount;
+
+	/**
+	 * Finds if two convex bodies touch or are closer than CONTACT_DISTANCE
+	 * @param body1 the first body, it must have a shape
+	 * @param body2 the second body, it must have a shape
+	 * @return the intersection of the bodies, null if they are farther apart than CONTACT_DISTANCE
+	 */
+	BodyIntersection collide(PhysicsBody body1, PhysicsBody body2){
+		if(!test(body1, body2, CONTACT_DISTANCE)){
+			return null;
+		}
+		findPoints();
+		return toIntersection(body1, body2);
+	}
+
+	/**
+	 * Gets the shapes and poses of two bodies ready, before testing them
+	 * @param body1 the first body
+	 * @param body2 the second body
+	 */
+	void prepare(PhysicsBody body1, PhysicsBody body2){
+		shape1 = body1.getShape();
+		shape2 = body2.getShape();
+		pose(body1, rotation1, center1);
+		pose(body2, rotation2, center2);
+		pointNormals = false;
+	}
+
+	/**
+	 * Makes an intersection out of the answer in the fields
+	 * @param body1 the first body
+	 * @param body2 the second body
+	 * @return the intersection
+	 */
+	BodyIntersection toIntersection(PhysicsBody body1, PhysicsBody body2){
+		Point[] points1 = new Point[pointCount], points2 = new Point[pointCount];
+		for(int i = 0; i < pointCount; i++){
+			points1[i] = new Point(points[i*6], points[i*6+1], points[i*6+2]);
+			points2[i] = new Point(points[i*6+3], points[i*6+4], points[i*6+5]);
+		}
+		Vector[] pointNormalVectors = null;
+		PhysicsFace[] faces = null;
+		if(pointNormals){
+			pointNormalVectors = new Vector[pointCount];
+			for(int i = 0; i < pointCount; i++){
+				pointNormalVectors[i] = new Vector(normals[i*3], normals[i*3+1], normals[i*3+2]);
+			}
+			faces = Arrays.copyOf(pointFaces, pointCount);
+		}
+		return new BodyIntersection(body1, body2, points1, points2, Arrays.copyOf(features, pointCount),
+				new Vector(normalX, normalY, normalZ), depth, pointNormalVectors, faces);
+	}
+
+	/**
+	 * Finds the contact points after the normal was found. For two shapes with corners (hulls and boxes) the sides facing each
+	 * other are found (the corners that are within CONTACT_DISTANCE of being the farthest along the normal), and the side of one
+	 * is clipped to the side of the other (Sutherland-Hodgman), so a box on a box gets the corners of the area they share.
+	 * Anything else (round shapes, or two shapes that only touch edge to edge or at a corner) gets point1 and point2.
+	 * NOTE: the side that is clipped also gets the corners that are less than the depth from the farthest one, or a box that
+	 * is tipped a little and pushed in only has one edge touching and keeps sinking on it.
+	 */
+	void findPoints(){
+		pointCount = 0;
+		float[] corners1 = shape1.getCorners(), corners2 = shape2.getCorners();
+		if(corners1 != null && corners2 != null){
+			//the side of body1 towards body2 is along minus the normal
+			int count1 = side(corners1, rotation1, center1, -normalX, -normalY, -normalZ, CONTACT_DISTANCE,
+					polygon1, polygonFeatures1);
+			int count2 = side(corners2, rotation2, center2, normalX, normalY, normalZ, CONTACT_DISTANCE,
+					polygon2, polygonFeatures2);
+			float incidentDistance = CONTACT_DISTANCE + Math.max(0, depth);
+			if(count1 >= 3){
+				count2 = side(corners2, rotation2, center2, normalX, normalY, normalZ, incidentDistance,
+						polygon2, polygonFeatures2);
+				clip(polygon1, polygonFeatures1, count1, polygon2, polygonFeatures2, count2, normalX, normalY, normalZ, true);
+			} else if(count2 >= 3){
+				count1 = side(corners1, rotation1, center1, -normalX, -normalY, -normalZ, incidentDistance,
+						polygon1, polygonFeatures1);
+				clip(polygon2, polygonFeatures2, count2, polygon1, polygonFeatures1, count1, -normalX, -normalY, -normalZ, false);
+			}
+		}
+		if(pointCount == 0){
+			points[0] = point1X;
+			points[1] = point1Y;
+			points[2] = point1Z;
+			points[3] = point2X;
+			points[4] = point2Y;
+			points[5] = point2Z;
+			features[0] = -1;
+			pointCount = 1;
+		}
+	}
+
+	/**
+	 * Finds the side of a shape facing a direction: every corner close enough to the farthest one along it, in world space and
+	 * in order around the side
+	 * @param corners the corners of the shape in local space
+	 * @param m the rotation of its body
+	 * @param center the centers of its body
+	 * @param dx the x of the direction
+	 * @param dy the y of the direction
+	 * @param dz the z of the direction
+	 * @param distance how much less far along the direction than the farthest corner a corner can be
+	 * @param polygon where to put the corners, 3 floats each
+	 * @param polygonFeatures where to put the index of each corner
+	 * @return the number of corners, at most MAX_POLYGON
+	 */
+	private static int side(float[] corners, float[] m, float[] center, float dx, float dy, float dz, float distance,
+			float[] polygon, long[] polygonFeatures){
+		//the direction in the local space of the shape, so the corners don't all have to be moved to find the side
+		float lx = m[0]*dx + m[3]*dy + m[6]*dz, ly = m[1]*dx + m[4]*dy + m[7]*dz, lz = m[2]*dx + m[5]*dy + m[8]*dz;
+		float[] v = corners;
+		float top = Float.NEGATIVE_INFINITY;
+		for(int i = 0; i < v.length; i += 3){
+			top = Math.max(top, v[i]*lx + v[i+1]*ly + v[i+2]*lz);
+		}
+		int count = 0;
+		float mx = 0, my = 0, mz = 0;
+		for(int i = 0; i < v.length && count < MAX_POLYGON; i += 3){
+			if(v[i]*lx + v[i+1]*ly + v[i+2]*lz < top - distance){
+				continue;
+			}
+			toWorld(m, center, v[i], v[i+1], v[i+2], polygon, count*3);
+			polygonFeatures[count] = i/3;
+			mx += polygon[count*3];
+			my += polygon[count*3+1];
+			mz += polygon[count*3+2];
+			count++;
+		}
+		if(count < 3){
+			return count;
+		}
+		//put the corners in order by their angle around the middle of the side
+		mx /= count;
+		my /= count;
+		mz /= count;
+		float ux, uy, uz;
+		if(Math.abs(dx) > .57735f){
+			ux = dy; uy = -dx; uz = 0;
+		} else {
+			ux = 0; uy = dz; uz = -dy;
+		}
+		float wx = dy*uz - dz*uy, wy = dz*ux - dx*uz, wz = dx*uy - dy*ux;
+		float[] angles = new float[count];
+		for(int i = 0; i < count; i++){
+			float px = polygon[i*3] - mx, py = polygon[i*3+1] - my, pz = polygon[i*3+2] - mz;
+			angles[i] = (float)Math.atan2(px*wx + py*wy + pz*wz, px*ux + py*uy + pz*uz);
+		}
+		for(int i = 1; i < count; i++){
+			for(int j = i; j > 0 && angles[j-1] > angles[j]; j--){
+				float angle = angles[j];
+				angles[j] = angles[j-1];
+				angles[j-1] = angle;
+				for(int c = 0; c < 3; c++){
+					float temp = polygon[j*3+c];
+					polygon[j*3+c] = polygon[(j-1)*3+c];
+					polygon[(j-1)*3+c] = temp;
+				}
+				long feature = polygonFeatures[j];
+				polygonFeatures[j] = polygonFeatures[j-1];
+				polygonFeatures[j-1] = feature;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Clips the side of one body (the incident side) to the side of the other (the reference side) and makes a contact point
+	 * for every point left that is close enough to the plane of the reference side. The deepest point is kept first.
+	 * @param reference the corners of the reference side in order, at least 3
+	 * @param referenceFeatures the index of each corner of the reference side
+	 * @param referenceCount the number of corners of the reference side
+	 * @param incident the corners of the incident side in order
+	 * @param incidentFeatures the index of each corner of the incident side
+	 * @param incidentCount the number of corners of the incident side
+	 * @param tx the x of the direction from the incident body to the reference body
+	 * @param ty the y of the direction
+	 * @param tz the z of the direction
+	 * @param incidentBody2 true if the incident side is of body2
+	 */
+	private void clip(float[] reference, long[] referenceFeatures, int referenceCount, float[] incident, long[] incidentFeatures, int incidentCount,
+			float tx, float ty, float tz, boolean incidentBody2){
+		float[] in = clipA, out = clipB;
+		long[] inFeatures = clipFeaturesA, outFeatures = clipFeaturesB;
+		System.arraycopy(incident, 0, in, 0, incidentCount*3);
+		System.arraycopy(incidentFeatures, 0, inFeatures, 0, incidentCount);
+		int inCount = incidentCount;
+		float mx = 0, my = 0, mz = 0;
+		for(int i = 0; i < referenceCount; i++){
+			mx += reference[i*3];
+			my += reference[i*3+1];
+			mz += reference[i*3+2];
+		}
+		mx /= referenceCount;
+		my /= referenceCount;
+		mz /= referenceCount;
+		//use the real normal of the reference side (Newell's method), EPA only gets the normal to within its tolerance and a
+		//normal that is a little off pushes resting bodies sideways
+		float rx = 0, ry = 0, rz = 0;
+		for(int i = 0; i < referenceCount; i++){
+			int next = (i + 1) % referenceCount;
+			float ax = reference[i*3], ay = reference[i*3+1], az = reference[i*3+2];
+			float bx = reference[next*3], by = reference[next*3+1], bz = reference[next*3+2];
+			rx += (ay - by)*(az + bz);
+			ry += (az - bz)*(ax + bx);
+			rz += (ax - bx)*(ay + by);
+		}
+		float length = (float)Math.sqrt(rx*rx + ry*ry + rz*rz);
+		if(length > 0){
+			rx /= length;
+			ry /= length;
+			rz /= length;
+			float dot = rx*tx + ry*ty + rz*tz;
+			if(Math.abs(dot) > FACE_NORMAL_DOT){
+				//the side of the reference body faces the incident body, so against t
+				float sign = dot > 0 ? 1 : -1;
+				tx = rx*sign;
+				ty = ry*sign;
+				tz = rz*sign;
+				normalX = incidentBody2 ? tx : -tx;
+				normalY = incidentBody2 ? ty : -ty;
+				normalZ = incidentBody2 ? tz : -tz;
+			}
+		}
+		for(int k = 0; k < referenceCount && inCount > 0; k++){
+			int next = (k + 1) % referenceCount;
+			float ax = reference[k*3], ay = reference[k*3+1], az = reference[k*3+2];
+			float ex = reference[next*3] - ax, ey = reference[next*3+1] - ay, ez = reference[next*3+2] - az;
+			//the plane through the edge along the normal, with its normal pointing into the side
+			float px = ey*tz - ez*ty, py = ez*tx - ex*tz, pz = ex*ty - ey*tx;
+			if(px*(mx - ax) + py*(my - ay) + pz*(mz - az) < 0){
+				px = -px;
+				py = -py;
+				pz = -pz;
+			}
+			int outCount = 0;
+			for(int i = 0; i < inCount && outCount < MAX_POLYGON*2 - 1; i++){
+				int j = (i + 1) % inCount;
+				float di = px*(in[i*3] - ax) + py*(in[i*3+1] - ay) + pz*(in[i*3+2] - az);
+				float dj = px*(in[j*3] - ax) + py*(in[j*3+1] - ay) + pz*(in[j*3+2] - az);
+				if(di >= 0){
+					System.arraycopy(in, i*3, out, outCount*3, 3);
+					outFeatures[outCount++] = inFeatures[i];
+				}
+				if((di >= 0) != (dj >= 0)){
+					float t = di/(di - dj);
+					out[outCount*3] = in[i*3] + t*(in[j*3] - in[i*3]);
+					out[outCount*3+1] = in[i*3+1] + t*(in[j*3+1] - in[i*3+1]);
+					out[outCount*3+2] = in[i*3+2] + t*(in[j*3+2] - in[i*3+2]);
+					//where an edge of the incident side crosses an edge of the reference side, named by the corners of both edges
+					//so it is the same next step even if the sides are found in another order
+					long edge = Math.min(referenceFeatures[k], referenceFeatures[next])*31 + Math.max(referenceFeatures[k], referenceFeatures[next]);
+					outFeatures[outCount++] = CROSSING | ((inFeatures[i]*31 + inFeatures[j])*961 + edge);
+				}
+			}
+			float[] temp = in;
+			in = out;
+			out = temp;
+			long[] tempFeatures = inFeatures;
+			inFeatures = outFeatures;
+			outFeatures = tempFeatures;
+			inCount = outCount;
+		}
+
+		//the plane of the reference side is the points x with x dot -t = side
+		float side = Float.NEGATIVE_INFINITY;
+		for(int i = 0; i < referenceCount; i++){
+			side = Math.max(side, -(reference[i*3]*tx + reference[i*3+1]*ty + reference[i*3+2]*tz));
+		}
+		for(int i = 0; i < inCount && pointCount < MAX_POINTS; i++){
+			float x = in[i*3], y = in[i*3+1], z = in[i*3+2];
+			//how far the point is past the plane of the reference side
+			float past = side + x*tx + y*ty + z*tz;
+			if(past < -CONTACT_DISTANCE){
+				continue;
+			}
+			int p = pointCount++;
+			int onIncident = incidentBody2 ? p*6 + 3 : p*6, onReference = incidentBody2 ? p*6 : p*6 + 3;
+			points[onIncident] = x;
+			points[onIncident+1] = y;
+			points[onIncident+2] = z;
+			points[onReference] = x - tx*past;
+			points[onReference+1] = y - ty*past;
+			points[onReference+2] = z - tz*past;
+			features[p] = (inFeatures[i] << 1) | (incidentBody2 ? 1 : 0);
+			if(p > 0 && past > pointDepth(0)){
+				swapPoints(0, p);
+			}
+		}
+	}
+
+	/**
+	 * Gets how far the bodies go into each other at a contact point along the normal
+	 */
+	private float pointDepth(int p){
+		return (points[p*6+3] - points[p*6])*normalX + (points[p*6+4] - points[p*6+1])*normalY + (points[p*6+5] - points[p*6+2])*normalZ;
+	}
+
+	/**
+	 * Swaps two contact points
+	 */
+	private void swapPoints(int p, int q){
+		for(int c = 0; c < 6; c++){
+			float temp = points[p*6+c];
+			points[p*6+c] = points[q*6+c];
+			points[q*6+c] = temp;
+		}
+		long temp = features[p];
+		features[p] = features[q];
+		features[q] = temp;
+	}
+
+	/**
+	 * Runs GJK, and EPA if the bodies go into each other, and puts the answer in the fields
+	 * @param body1 the first body
+	 * @param body2 the second body
+	 * @param maxDistance how far apart the bodies can be and still have an answer
+	 * @return true if the bodies are closer than maxDistance
+	 */
+	boolean test(PhysicsBody body1, PhysicsBody body2, float maxDistance){
+		prepare(body1, body2);
+
+		//start from the difference of the centers, that is usually close to the direction between the bodies
+		size = 0;
+		float dx = center2[3] - center1[3], dy = center2[4] - center1[4], dz = center2[5] - center1[5];
+		if(dx == 0 && dy == 0 && dz == 0){
+			dx = 1;
+		}
+		addSupport(dx, dy, dz, 0);
+		size = 1;
+		lambda[0] = 1;
+		vx = w[0];
+		vy = w[1];
+		vz = w[2];
+		boolean touching = false;
+		for(int iteration = 0; iteration < MAX_GJK_ITERATIONS; iteration++){
+			float vv = vx*vx + vy*vy + vz*vz;
+			if(vv < TOUCHING*TOUCHING){
+				touching = true;
+				break;
+			}
+			int next = size;
+			addSupport(-vx, -vy, -vz, next);
+			float vw = vx*w[next*3] + vy*w[next*3+1] + vz*w[next*3+2];
+			//the difference has nothing closer to the origin than vw/|v| along v, so if that is more than maxDistance they are apart
+			if(vw > 0 && vw*vw > vv*maxDistance*maxDistance){
+				return false;
+			}
+			//no point of the difference is much closer than v, so v is the closest point
+			if(vv - vw <= TOLERANCE*vv){
+				break;
+			}
+			size++;
+			if(!closestPoint()){
+				touching = true;
+				break;
+			}
+		}
+
+		if(!touching){
+			float distance = (float)Math.sqrt(vx*vx + vy*vy + vz*vz);
+			if(distance > maxDistance){
+				return false;
+			}
+			closestPoints();
+			//v is from body2 to body1 when they are apart
+			normalX = vx/distance;
+			normalY = vy/distance;
+			normalZ = vz/distance;
+			depth = -distance;
+			return true;
+		}
+		return penetration();
+	}
+
+	/**
+	 * Gets the rotation matrix, the local center of mass and the world center of mass of a body, so points of the shape can
+	 * be moved into world space: world = rotation*(local - centroid) + centroid + position
+	 */
+	static void pose(PhysicsBody body, float[] m, float[] center){
+		BodyStore s = body.store;
+		int i = body.index;
+		float qw = s.orientationW[i], qx = s.orientationX[i], qy = s.orientationY[i], qz = s.orientationZ[i];
+		m[0] = 1 - 2*(qy*qy + qz*qz);
+		m[1] = 2*(qx*qy - qw*qz);
+		m[2] = 2*(qx*qz + qw*qy);
+		m[3] = 2*(qx*qy + qw*qz);
+		m[4] = 1 - 2*(qx*qx + qz*qz);
+		m[5] = 2*(qy*qz - qw*qx);
+		m[6] = 2*(qx*qz - qw*qy);
+		m[7] = 2*(qy*qz + qw*qx);
+		m[8] = 1 - 2*(qx*qx + qy*qy);
+		Point c = body.getLocalCentroid();
+		center[0] = c.x;
+		center[1] = c.y;
+		center[2] = c.z;
+		center[3] = c.x + s.positionX[i];
+		center[4] = c.y + s.positionY[i];
+		center[5] = c.z + s.positionZ[i];
+	}
+
+	/**
+	 * Finds the support point of the difference along a direction: the farthest point of body1 along it minus the farthest
+	 * point of body2 the other way
+	 * @param dx the x of the direction in world space
+	 * @param dy the y of the direction
+	 * @param dz the z of the direction
+	 * @param i where to put the point
+	 */
+	private void addSupport(float dx, float dy, float dz, int i){
+		support(shape1, rotation1, center1, dx, dy, dz, a, i*3);
+		support(shape2, rotation2, center2, -dx, -dy, -dz, b, i*3);
+		w[i*3] = a[i*3] - b[i*3];
+		w[i*3+1] = a[i*3+1] - b[i*3+1];
+		w[i*3+2] = a[i*3+2] - b[i*3+2];
+	}
+
+	/**
+	 * Finds the farthest point of one body along a world direction, turning the direction into local space and the point back
+	 */
+	private void support(ConvexShape shape, float[] m, float[] center, float dx, float dy, float dz, float[] out, int offset){
+		//the inverse of a rotation is its transpose
+		shape.support(m[0]*dx + m[3]*dy + m[6]*dz, m[1]*dx + m[4]*dy + m[7]*dz, m[2]*dx + m[5]*dy + m[8]*dz, local);
+		toWorld(m, center, local[0], local[1], local[2], out, offset);
+	}
+
+	/**
+	 * Moves a point from the local space of a body to world space
+	 * @param m the rotation of the body, from pose
+	 * @param center the centers of the body, from pose
+	 * @param x the x of the point in local space
+	 * @param y the y of the point
+	 * @param z the z of the point
+	 * @param out where to put the point in world space
+	 * @param offset where in out to put it
+	 */
+	static void toWorld(float[] m, float[] center, float x, float y, float z, float[] out, int offset){
+		float lx = x - center[0], ly = y - center[1], lz = z - center[2];
+		out[offset] = m[0]*lx + m[1]*ly + m[2]*lz + center[3];
+		out[offset+1] = m[3]*lx + m[4]*ly + m[5]*lz + center[4];
+		out[offset+2] = m[6]*lx + m[7]*ly + m[8]*lz + center[5];
+	}
+
+	/**
+	 * Finds the closest point of the simplex to the origin, puts it in v, and takes out the points of the simplex that aren't
+	 * needed for it
+	 * @return false if the origin is inside the simplex (a tetrahedron), so the bodies touch
+	 */
+	private boolean closestPoint(){
+		if(size == 2){
+			segment(0, 1);
+		} else if(size == 3){
+			triangleLambda(0, 1, 2, lambda);
+		} else {
+			//the closest point is on one of the faces the origin is in front of, if there aren't any it is inside
+			float best = Float.POSITIVE_INFINITY;
+			for(int[] side : SIDES){
+				if(!originOutside(side[0], side[1], side[2], side[3])){
+					continue;
+				}
+				triangleLambda(side[0], side[1], side[2], faceLambda);
+				float x = 0, y = 0, z = 0;
+				for(int i = 0; i < 4; i++){
+					x += faceLambda[i]*w[i*3];
+					y += faceLambda[i]*w[i*3+1];
+					z += faceLambda[i]*w[i*3+2];
+				}
+				float distance = x*x + y*y + z*z;
+				if(distance < best){
+					best = distance;
+					System.arraycopy(faceLambda, 0, bestLambda, 0, 4);
+				}
+			}
+			if(best == Float.POSITIVE_INFINITY){
+				return false;
+			}
+			System.arraycopy(bestLambda, 0, lambda, 0, 4);
+		}
+		reduce();
+		return true;
+	}
+
+	/**
+	 * Finds the closest point to the origin on the segment between two points of the simplex and sets the lambdas
+	 */
+	private void segment(int i, int j){
+		lambda[0] = lambda[1] = lambda[2] = lambda[3] = 0;
+		float ex = w[j*3] - w[i*3], ey = w[j*3+1] - w[i*3+1], ez = w[j*3+2] - w[i*3+2];
+		float length = ex*ex + ey*ey + ez*ez;
+		float t = length == 0 ? 0 : -(w[i*3]*ex + w[i*3+1]*ey + w[i*3+2]*ez)/length;
+		t = Math.max(0, Math.min(1, t));
+		lambda[i] = 1 - t;
+		lambda[j] = t;
+	}
+
+	/**
+	 * Finds the closest point to the origin on a triangle of points, by finding which corner, edge or the inside of the
+	 * triangle it is in front of (Ericson, Real-Time Collision Detection 5.1.5)
+	 * @param out where to put how much of each point makes the closest point, 0 for the other points
+	 */
+	private void triangleLambda(int i, int j, int k, float[] out){
+		out[0] = out[1] = out[2] = out[3] = 0;
+		float ax = w[i*3], ay = w[i*3+1], az = w[i*3+2];
+		float abx = w[j*3] - ax, aby = w[j*3+1] - ay, abz = w[j*3+2] - az;
+		float acx = w[k*3] - ax, acy = w[k*3+1] - ay, acz = w[k*3+2] - az;
+		//from a to the origin
+		float apx = -ax, apy = -ay, apz = -az;
+		float d1 = abx*apx + aby*apy + abz*apz, d2 = acx*apx + acy*apy + acz*apz;
+		if(d1 <= 0 && d2 <= 0){
+			out[i] = 1;
+			return;
+		}
+		float bpx = -w[j*3], bpy = -w[j*3+1], bpz = -w[j*3+2];
+		float d3 = abx*bpx + aby*bpy + abz*bpz, d4 = acx*bpx + acy*bpy + acz*bpz;
+		if(d3 >= 0 && d4 <= d3){
+			out[j] = 1;
+			return;
+		}
+		float vc = d1*d4 - d3*d2;
+		if(vc <= 0 && d1 >= 0 && d3 <= 0){
+			float t = d1/(d1 - d3);
+			out[i] = 1 - t;
+			out[j] = t;
+			return;
+		}
+		float cpx = -w[k*3], cpy = -w[k*3+1], cpz = -w[k*3+2];
+		float d5 = abx*cpx + aby*cpy + abz*cpz, d6 = acx*cpx + acy*cpy + acz*cpz;
+		if(d6 >= 0 && d5 <= d6){
+			out[k] = 1;
+			return;
+		}
+		float vb = d5*d2 - d1*d6;
+		if(vb <= 0 && d2 >= 0 && d6 <= 0){
+			float t = d2/(d2 - d6);
+			out[i] = 1 - t;
+			out[k] = t;
+			return;
+		}
+		float va = d3*d6 - d5*d4;
+		if(va <= 0 && (d4 - d3) >= 0 && (d5 - d6) >= 0){
+			float t = (d4 - d3)/((d4 - d3) + (d5 - d6));
+			out[j] = 1 - t;
+			out[k] = t;
+			return;
+		}
+		float sum = va + vb + vc;
+		if(sum == 0){
+			//the triangle is flat, just use the closest corner
+			out[i] = 1;
+			return;
+		}
+		out[i] = va/sum;
+		out[j] = vb/sum;
+		out[k] = vc/sum;
+	}
+
+	/**
+	 * Checks if the origin is on the other side of the plane of a triangle from the fourth point of a tetrahedron
+	 */
+	private boolean originOutside(int i, int j, int k, int other){
+		float ax = w[i*3], ay = w[i*3+1], az = w[i*3+2];
+		float abx = w[j*3] - ax, aby = w[j*3+1] - ay, abz = w[j*3+2] - az;
+		float acx = w[k*3] - ax, acy = w[k*3+1] - ay, acz = w[k*3+2] - az;
+		float nx = aby*acz - abz*acy, ny = abz*acx - abx*acz, nz = abx*acy - aby*acx;
+		float origin = -(nx*ax + ny*ay + nz*az);
+		float fourth = nx*(w[other*3] - ax) + ny*(w[other*3+1] - ay) + nz*(w[other*3+2] - az);
+		if(fourth == 0){
+			//a flat tetrahedron, the origin can't be inside it
+			return true;
+		}
+		return origin*fourth < 0;
+	}
+
+	/**
+	 * Takes the points with a lambda of 0 out of the simplex and works out v from the ones left
+	 */
+	private void reduce(){
+		int kept = 0;
+		vx = vy = vz = 0;
+		for(int i = 0; i < size; i++){
+			if(lambda[i] <= 0){
+				continue;
+			}
+			if(kept != i){
+				copyPoint(i, kept);
+			}
+			lambda[kept] = lambda[i];
+			vx += lambda[kept]*w[kept*3];
+			vy += lambda[kept]*w[kept*3+1];
+			vz += lambda[kept]*w[kept*3+2];
+			kept++;
+		}
+		size = kept;
+	}
+
+	/**
+	 * Copies a point of the simplex to another spot
+	 */
+	private void copyPoint(int from, int to){
+		for(int c = 0; c < 3; c++){
+			w[to*3+c] = w[from*3+c];
+			a[to*3+c] = a[from*3+c];
+			b[to*3+c] = b[from*3+c];
+		}
+	}
+
+	/**
+	 * Works out the closest points of the bodies from the simplex, with the same lambdas as v
+	 */
+	private void closestPoints(){
+		point1X = point1Y = point1Z = point2X = point2Y = point2Z = 0;
+		for(int i = 0; i < size; i++){
+			float l = lambda[i];
+			point1X += l*a[i*3];
+			point1Y += l*a[i*3+1];
+			point1Z += l*a[i*3+2];
+			point2X += l*b[i*3];
+			point2Y += l*b[i*3+1];
+			point2Z += l*b[i*3+2];
+		}
+	}
+
+	/**
+	 * Finds how far the bodies go into each other with EPA, starting from the simplex GJK ended with
+	 * @return false if it can't be worked out because the bodies only just touch (the difference is flat around the origin)
+	 */
+	private boolean penetration(){
+		if(!makeTetrahedron()){
+			return false;
+		}
+		faceCount = 0;
+		insideX = (w[0] + w[3] + w[6] + w[9])/4;
+		insideY = (w[1] + w[4] + w[7] + w[10])/4;
+		insideZ = (w[2] + w[5] + w[8] + w[11])/4;
+		//make every face point away from the inside of the tetrahedron
+		if(!addFace(0, 1, 2) || !addFace(0, 3, 1) || !addFace(0, 2, 3) || !addFace(1, 3, 2)){
+			return false;
+		}
+		int vertexCount = 4;
+		while(true){
+			int closest = 0;
+			for(int f = 1; f < faceCount; f++){
+				if(faceNormals[f*4+3] < faceNormals[closest*4+3]){
+					closest = f;
+				}
+			}
+			float nx = faceNormals[closest*4], ny = faceNormals[closest*4+1], nz = faceNormals[closest*4+2];
+			float distance = faceNormals[closest*4+3];
+			int i0 = faces[closest*3], i1 = faces[closest*3+1], i2 = faces[closest*3+2];
+			if(vertexCount == MAX_EPA_VERTICES || faceCount + 2*vertexCount > MAX_EPA_FACES){
+				return finishPenetration(i0, i1, i2, nx, ny, nz, distance);
+			}
+			addSupport(nx, ny, nz, vertexCount);
+			float far = nx*w[vertexCount*3] + ny*w[vertexCount*3+1] + nz*w[vertexCount*3+2];
+			//the face is on the outside of the difference, so nothing is closer to the origin
+			if(far - distance <= TOLERANCE*Math.max(distance, 1e-3f)){
+				return finishPenetration(i0, i1, i2, nx, ny, nz, distance);
+			}
+			//take out every face the new point can see, and join it to the edges of the hole
+			edgeCount = 0;
+			int p = vertexCount;
+			for(int f = 0; f < faceCount; f++){
+				int i = faces[f*3];
+				float see = faceNormals[f*4]*(w[p*3] - w[i*3]) + faceNormals[f*4+1]*(w[p*3+1] - w[i*3+1]) +
+						faceNormals[f*4+2]*(w[p*3+2] - w[i*3+2]);
+				if(see > -PLANE_TOLERANCE){
+					addEdge(faces[f*3], faces[f*3+1]);
+					addEdge(faces[f*3+1], faces[f*3+2]);
+					addEdge(faces[f*3+2], faces[f*3]);
+					removeFace(f);
+					f--;
+				}
+			}
+			vertexCount++;
+			for(int e = 0; e < edgeCount; e++){
+				if(!addFace(edges[e*2], edges[e*2+1], p)){
+					return false;//the polytope is broken, it only happens when the bodies only just touch
+				}
+			}
+			if(faceCount == 0){
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Turns the GJK simplex into a tetrahedron around the origin by adding support points, since GJK can end with fewer
+	 * points if the origin is right on the simplex
+	 * @return false if the difference is flat, so it has no inside
+	 */
+	private boolean makeTetrahedron(){
+		if(size == 1){
+			float[][] directions = {{1, 0, 0}, {-1, 0, 0}, {0, 1, 0}, {0, -1, 0}, {0, 0, 1}, {0, 0, -1}};
+			for(float[] d : directions){
+				addSupport(d[0], d[1], d[2], 1);
+				float ex = w[3] - w[0], ey = w[4] - w[1], ez = w[5] - w[2];
+				if(ex*ex + ey*ey + ez*ez > TOUCHING){
+					size = 2;
+					break;
+				}
+			}
+			if(size == 1){
+				return false;
+			}
+		}
+		if(size == 2){
+			//try directions at right angles to the segment until one gives a point that isn't on it
+			float ex = w[3] - w[0], ey = w[4] - w[1], ez = w[5] - w[2];
+			float px, py, pz;
+			if(Math.abs(ex) < Math.abs(ey) && Math.abs(ex) < Math.abs(ez)){
+				px = 0; py = ez; pz = -ey;
+			} else if(Math.abs(ey) < Math.abs(ez)){
+				px = ez; py = 0; pz = -ex;
+			} else {
+				px = ey; py = -ex; pz = 0;
+			}
+			float qx = ey*pz - ez*py, qy = ez*px - ex*pz, qz = ex*py - ey*px;
+			float length = (float)Math.sqrt(qx*qx + qy*qy + qz*qz)/(float)Math.sqrt(px*px + py*py + pz*pz);
+			for(int turn = 0; turn < 6 && size == 2; turn++){
+				double angle = turn*Math.PI/3;
+				float c = (float)Math.cos(angle), s = (float)Math.sin(angle)/length;
+				addSupport(px*c + qx*s, py*c + qy*s, pz*c + qz*s, 2);
+				float fx = w[6] - w[0], fy = w[7] - w[1], fz = w[8] - w[2];
+				float cx = ey*fz - ez*fy, cy = ez*fx - ex*fz, cz = ex*fy - ey*fx;
+				if(cx*cx + cy*cy + cz*cz > TOUCHING){
+					size = 3;
+				}
+			}
+			if(size == 2){
+				return false;
+			}
+		}
+		if(size == 3){
+			float abx = w[3] - w[0], aby = w[4] - w[1], abz = w[5] - w[2];
+			float acx = w[6] - w[0], acy = w[7] - w[1], acz = w[8] - w[2];
+			float nx = aby*acz - abz*acy, ny = abz*acx - abx*acz, nz = abx*acy - aby*acx;
+			addSupport(nx, ny, nz, 3);
+			if(Math.abs(nx*(w[9] - w[0]) + ny*(w[10] - w[1]) + nz*(w[11] - w[2])) <= TOUCHING){
+				addSupport(-nx, -ny, -nz, 3);
+				if(Math.abs(nx*(w[9] - w[0]) + ny*(w[10] - w[1]) + nz*(w[11] - w[2])) <= TOUCHING){
+					return false;
+				}
+			}
+			size = 4;
+		}
+		return true;
+	}
+
+	/**
+	 * Adds a face to the polytope, turned so its normal points out
+	 * @return false if the face has no area
+	 */
+	private boolean addFace(int i, int j, int k){
+		if(faceCount == MAX_EPA_FACES){
+			return false;
+		}
+		float ax = w[i*3], ay = w[i*3+1], az = w[i*3+2];
+		float abx = w[j*3] - ax, aby = w[j*3+1] - ay, abz = w[j*3+2] - az;
+		float acx = w[k*3] - ax, acy = w[k*3+1] - ay, acz = w[k*3+2] - az;
+		float nx = aby*acz - abz*acy, ny = abz*acx - abx*acz, nz = abx*acy - aby*acx;
+		float length = (float)Math.sqrt(nx*nx + ny*ny + nz*nz);
+		if(length == 0){
+			return false;
+		}
+		nx /= length;
+		ny /= length;
+		nz /= length;
+		if(nx*(ax - insideX) + ny*(ay - insideY) + nz*(az - insideZ) < 0){
+			nx = -nx;
+			ny = -ny;
+			nz = -nz;
+			int temp = j;
+			j = k;
+			k = temp;
+		}
+		//the origin is inside, so this is only less than 0 by rounding
+		float distance = Math.max(0, nx*ax + ny*ay + nz*az);
+		int f = faceCount++;
+		faces[f*3] = i;
+		faces[f*3+1] = j;
+		faces[f*3+2] = k;
+		faceNormals[f*4] = nx;
+		faceNormals[f*4+1] = ny;
+		faceNormals[f*4+2] = nz;
+		faceNormals[f*4+3] = distance;
+		return true;
+	}
+
+	/**
+	 * Takes a face out of the polytope by moving the last face into its spot
+	 */
+	private void removeFace(int f){
+		faceCount--;
+		System.arraycopy(faces, faceCount*3, faces, f*3, 3);
+		System.arraycopy(faceNormals, faceCount*4, faceNormals, f*4, 4);
+	}
+
+	/**
+	 * Adds an edge of a face that was taken out. An edge that was already added is between two faces that were both taken
+	 * out, so it isn't on the edge of the hole and is taken out instead.
+	 */
+	private void addEdge(int i, int j){
+		for(int e = 0; e < edgeCount; e++){
+			if((edges[e*2] == j && edges[e*2+1] == i) || (edges[e*2] == i && edges[e*2+1] == j)){
+				edgeCount--;
+				edges[e*2] = edges[edgeCount*2];
+				edges[e*2+1] = edges[edgeCount*2+1];
+				return;
+			}
+		}
+		edges[edgeCount*2] = i;
+		edges[edgeCount*2+1] = j;
+		edgeCount++;
+	}
+
+	/**
+	 * Puts the answer from the closest face of the polytope in the fields. The points of the bodies are found by where the
+	 * origin is over the face, with the same weights on the points of the bodies that made the face.
+	 * @param i the first point of the closest face
+	 * @param j the second point
+	 * @param k the third point
+	 * @param nx the x of the unit normal of the face
+	 * @param ny the y of the normal
+	 * @param nz the z of the normal
+	 * @param distance how far the face is from the origin
+	 * @return true
+	 */
+	private boolean finishPenetration(int i, int j, int k, float nx, float ny, float nz, float distance){
+		//barycentric coordinates of n*distance on the face
+		float px = nx*distance, py = ny*distance, pz = nz*distance;
+		float v0x = w[j*3] - w[i*3], v0y = w[j*3+1] - w[i*3+1], v0z = w[j*3+2] - w[i*3+2];
+		float v1x = w[k*3] - w[i*3], v1y = w[k*3+1] - w[i*3+1], v1z = w[k*3+2] - w[i*3+2];
+		float v2x = px - w[i*3], v2y = py - w[i*3+1], v2z = pz - w[i*3+2];
+		float d00 = v0x*v0x + v0y*v0y + v0z*v0z, d01 = v0x*v1x + v0y*v1y + v0z*v1z, d11 = v1x*v1x + v1y*v1y + v1z*v1z;
+		float d20 = v2x*v0x + v2y*v0y + v2z*v0z, d21 = v2x*v1x + v2y*v1y + v2z*v1z;
+		float denominator = d00*d11 - d01*d01;
+		float u = 0, v = 0;
+		if(denominator != 0){
+			u = (d11*d20 - d01*d21)/denominator;
+			v = (d00*d21 - d01*d20)/denominator;
+		}
+		float l0 = 1 - u - v;
+		point1X = l0*a[i*3] + u*a[j*3] + v*a[k*3];
+		point1Y = l0*a[i*3+1] + u*a[j*3+1] + v*a[k*3+1];
+		point1Z = l0*a[i*3+2] + u*a[j*3+2] + v*a[k*3+2];
+		point2X = l0*b[i*3] + u*b[j*3] + v*b[k*3];
+		point2Y = l0*b[i*3+1] + u*b[j*3+1] + v*b[k*3+1];
+		point2Z = l0*b[i*3+2] + u*b[j*3+2] + v*b[k*3+2];
+		//the face is where body1 minus body2 is pushed out the easiest, so body1 has to go the other way from its normal
+		normalX = -nx;
+		normalY = -ny;
+		normalZ = -nz;
+		depth = distance;
+		return true;
+	}
+}
@@ -0,0 +1,303 @@
+package physics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The convex hull of a set of points: the smallest convex shape that has all of them inside. Only the points on the outside
+ * (the corners of the hull) are kept, so the hull of a crate is 8 points no matter how many triangles the crate has.
+ * The hull is found by adding the points one at a time (incremental hull): a point that is outside the hull so far takes out
+ * every face it can see and is joined to the edges around the hole.
+ * NOTE: it is O(n^2) in the worst case, so make it once when the mesh is loaded (see PhysicsMesh.getConvexHull), not every step.
+ * @author Isaac Zachmann
+ *
+ */
+public final class ConvexHull extends ConvexShape {
+
+	/**
+	 * The corners of the hull, 3 floats each
+	 */
+	final float[] vertices;
+
+	/**
+	 * The triangles of the hull, 3 indices into vertices each, pointing out. Empty if the points were all in one plane.
+	 */
+	final int[] indices;
+
+	/**
+	 * Makes the hull of the vertices of a mesh. The friction and restitution of the hull are the averages of the triangles.
+	 * @param mesh the mesh
+	 */
+	public ConvexHull(PhysicsMesh mesh){
+		this(mesh.vertices);
+		int triangles = mesh.getTriangleCount();
+		if(triangles > 0){
+			float friction = 0, restitution = 0;
+			for(int i = 0; i < triangles; i++){
+				friction += mesh.friction[i];
+				restitution += mesh.restitution[i];
+			}
+			this.friction = friction/triangles;
+			this.restitution = restitution/triangles;
+		}
+	}
+
+	/**
+	 * Makes the hull of some points. If they are all on a line or in a plane the hull has no triangles and keeps every
+	 * point, which still works for collision.
+	 * @param points the points, 3 floats each
+	 */
+	public ConvexHull(float[] points){
+		int count = points.length/3;
+		if(count == 0){
+			throw new IllegalArgumentException("a hull needs at least one point");
+		}
+		List<HullFace> faces = build(points, count);
+		if(faces == null){
+			vertices = Arrays.copyOf(points, count*3);
+			indices = new int[0];
+			return;
+		}
+		//only keep the points that are corners of the hull
+		int[] newIndex = new int[count];
+		Arrays.fill(newIndex, -1);
+		float[] kept = new float[count*3];
+		int keptCount = 0;
+		indices = new int[faces.size()*3];
+		for(int f = 0; f < faces.size(); f++){
+			HullFace face = faces.get(f);
+			int[] corners = {face.a, face.b, face.c};
+			for(int c = 0; c < 3; c++){
+				int p = corners[c];
+				if(newIndex[p] < 0){
+					newIndex[p] = keptCount;
+					kept[keptCount*3] = points[p*3];
+					kept[keptCount*3+1] = points[p*3+1];
+					kept[keptCount*3+2] = points[p*3+2];
+					keptCount++;
+				}
+				indices[f*3+c] = newIndex[p];
+			}
+		}
+		vertices = Arrays.copyOf(kept, keptCount*3);
+	}
+
+	/**
+	 * Gets the number of corners of the hull
+	 * @return the number of vertices
+	 */
+	public int getVertexCount(){
+		return vertices.length/3;
+	}
+
+	/**
+	 * Gets the number of triangles of the hull
+	 * @return the number of triangles, 0 if the hull is flat
+	 */
+	public int getTriangleCount(){
+		return indices.length/3;
+	}
+
+	@Override
+	public PhysicsMesh toMesh(){
+		return new PhysicsMesh(vertices.clone(), indices.clone());
+	}
+
+	@Override
+	public MassProperties getMassProperties(float density){
+		return MassProperties.calculate(toMesh(), density);
+	}
+
+	@Override
+	int getType(){
+		return HULL;
+	}
+
+	@Override
+	float[] getCorners(){
+		return vertices;
+	}
+
+	@Override
+	public void support(float dx, float dy, float dz, float[] out){
+		//hulls of props are small, so going through every corner is faster than walking the edges
+		float[] v = vertices;
+		int best = 0;
+		float bestDot = Float.NEGATIVE_INFINITY;
+		for(int i = 0; i < v.length; i += 3){
+			float dot = v[i]*dx + v[i+1]*dy + v[i+2]*dz;
+			if(dot > bestDot){
+				bestDot = dot;
+				best = i;
+			}
+		}
+		out[0] = v[best];
+		out[1] = v[best+1];
+		out[2] = v[best+2];
+	}
+
+	/**
+	 * Finds the faces of the hull of the points
+	 * @param p the points, 3 floats each
+	 * @param count the number of points
+	 * @return the faces of the hull pointing out, or null if the points are all in one plane
+	 */
+	private static List<HullFace> build(float[] p, int count){
+		//start with a tetrahedron that is as big as it can be, so the points in the middle are thrown out right away
+		int i0 = 0;
+		for(int i = 1; i < count; i++){
+			if(p[i*3] < p[i0*3]){
+				i0 = i;
+			}
+		}
+		int i1 = farthest(p, count, i0);
+		double size = Math.sqrt(distanceSquared(p, i0, i1));
+		if(size == 0){
+			return null;
+		}
+		//points closer than this to a face are counted as on it, so points that are almost on a face don't make thin triangles
+		double epsilon = size*1e-5;
+		int i2 = -1;
+		double best = 0;
+		for(int i = 0; i < count; i++){
+			double ux = p[i*3] - p[i0*3], uy = p[i*3+1] - p[i0*3+1], uz = p[i*3+2] - p[i0*3+2];
+			double vx = p[i1*3] - p[i0*3], vy = p[i1*3+1] - p[i0*3+1], vz = p[i1*3+2] - p[i0*3+2];
+			double cx = uy*vz - uz*vy, cy = uz*vx - ux*vz, cz = ux*vy - uy*vx;
+			double distance = Math.sqrt(cx*cx + cy*cy + cz*cz)/size;
+			if(distance > best){
+				best = distance;
+				i2 = i;
+			}
+		}
+		if(best <= epsilon){
+			return null;
+		}
+		HullFace base = new HullFace(p, i0, i1, i2);
+		int i3 = -1;
+		best = 0;
+		for(int i = 0; i < count; i++){
+			double distance = Math.abs(base.distance(p, i));
+			if(distance > best){
+				best = distance;
+				i3 = i;
+			}
+		}
+		if(best <= epsilon){
+			return null;
+		}
+		List<HullFace> faces = new ArrayList<HullFace>();
+		if(base.distance(p, i3) > 0){
+			faces.add(new HullFace(p, i0, i2, i1));
+			faces.add(new HullFace(p, i0, i1, i3));
+			faces.add(new HullFace(p, i1, i2, i3));
+			faces.add(new HullFace(p, i2, i0, i3));
+		} else {
+			faces.add(base);
+			faces.add(new HullFace(p, i0, i3, i1));
+			faces.add(new HullFace(p, i1, i3, i2));
+			faces.add(new HullFace(p, i2, i3, i0));
+		}
+
+		List<HullFace> visible = new ArrayList<HullFace>();
+		List<int[]> horizon = new ArrayList<int[]>();
+		for(int i = 0; i < count; i++){
+			if(i == i0 || i == i1 || i == i2 || i == i3){
+				continue;
+			}
+			visible.clear();
+			for(HullFace face : faces){
+				if(face.distance(p, i) > epsilon){
+					visible.add(face);
+				}
+			}
+			if(visible.isEmpty()){
+				continue;//inside the hull so far
+			}
+			//the edges of the hole are the edges of visible faces whose other face is not visible
+			horizon.clear();
+			for(HullFace face : visible){
+				addHorizon(visible, face.a, face.b, horizon);
+				addHorizon(visible, face.b, face.c, horizon);
+				addHorizon(visible, face.c, face.a, horizon);
+			}
+			faces.removeAll(visible);
+			for(int[] edge : horizon){
+				faces.add(new HullFace(p, edge[0], edge[1], i));
+			}
+		}
+		return faces;
+	}
+
+	/**
+	 * Adds the edge from a to b to the horizon if the face on the other side of it (which has the edge from b to a) isn't visible
+	 */
+	private static void addHorizon(List<HullFace> visible, int a, int b, List<int[]> horizon){
+		for(HullFace face : visible){
+			if((face.a == b && face.b == a) || (face.b == b && face.c == a) || (face.c == b && face.a == a)){
+				return;
+			}
+		}
+		horizon.add(new int[]{a, b});
+	}
+
+	/**
+	 * Finds the point farthest from another point
+	 */
+	private static int farthest(float[] p, int count, int from){
+		int best = from;
+		double bestDistance = 0;
+		for(int i = 0; i < count; i++){
+			double distance = distanceSquared(p, from, i);
+			if(distance > bestDistance){
+				bestDistance = distance;
+				best = i;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Gets the distance squared between two points
+	 */
+	private static double distanceSquared(float[] p, int a, int b){
+		double dx = p[a*3] - p[b*3], dy = p[a*3+1] - p[b*3+1], dz = p[a*3+2] - p[b*3+2];
+		return dx*dx + dy*dy + dz*dz;
+	}
+
+	/**
+	 * A triangle of the hull while it is being made, with its plane. Worked out in doubles since the hull is only made once.
+	 */
+	private static final class HullFace {
+		final int a, b, c;
+
+		/**
+		 * The unit normal pointing out, and the distance of the plane from the origin along it
+		 */
+		final double nx, ny, nz, d;
+
+		HullFace(float[] p, int a, int b, int c){
+			this.a = a;
+			this.b = b;
+			this.c = c;
+			double ux = p[b*3] - p[a*3], uy = p[b*3+1] - p[a*3+1], uz = p[b*3+2] - p[a*3+2];
+			double vx = p[c*3] - p[a*3], vy = p[c*3+1] - p[a*3+1], vz = p[c*3+2] - p[a*3+2];
+			double x = uy*vz - uz*vy, y = uz*vx - ux*vz, z = ux*vy - uy*vx;
+			double length = Math.sqrt(x*x + y*y + z*z);
+			if(length == 0){
+				length = 1;
+			}
+			nx = x/length;
+			ny = y/length;
+			nz = z/length;
+			d = nx*p[a*3] + ny*p[a*3+1] + nz*p[a*3+2];
+		}
+
+		/**
+		 * Gets how far a point is in front of the face, negative if it is behind
+		 */
+		double distance(float[] p, int i){
+			return nx*p[i*3] + ny*p[i*3+1] + nz*p[i*3+2] - d;
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package physics;
+
+/**
+ * A convex shape a physics body can collide as instead of its triangles. A convex shape is only described by its support point,
+ * the point of the shape that is the farthest along a direction. That is all GJK and EPA (see ConvexCollision) need to find out
+ * if two shapes touch and how far they go into each other, so a pair of convex bodies costs about the same no matter how many
+ * triangles they have.
+ * The shape is in the local space of the body, the same space as its mesh.
+ * @author Isaac Zachmann
+ *
+ */
+public abstract class ConvexShape {
+
+	/**
+	 * The kinds of shapes, used by CollisionDetection to pick the test for a pair of bodies
+	 */
+	static final int HULL = 0, SPHERE = 1, BOX = 2, CAPSULE = 3;
+
+	/**
+	 * The number of kinds of shapes
+	 */
+	static final int TYPES = 4;
+
+	/**
+	 * The friction of the shape, used for every contact since there are no triangles to get it from
+	 */
+	public float friction = PhysicsMesh.DEFAULT_FRICTION;
+
+	/**
+	 * The restitution (bounciness) of the shape
+	 */
+	public float restitution = PhysicsMesh.DEFAULT_RESTITUTION;
+
+	/**
+	 * Finds the point of the shape that is the farthest along a direction. The direction doesn't have to be a unit vector.
+	 * @param dx the x of the direction in local space
+	 * @param dy the y of the direction in local space
+	 * @param dz the z of the direction in local space
+	 * @param out where to put the x, y and z of the point in local space
+	 */
+	public abstract void support(float dx, float dy, float dz, float[] out);
+
+	/**
+	 * Works out the volume, mass, center of mass and inertia tensor of the shape as a solid
+	 * @param density the density in kilograms/m^3
+	 * @return the mass properties in the local space of the shape
+	 */
+	public abstract MassProperties getMassProperties(float density);
+
+	/**
+	 * Makes a mesh of the shape, for drawing it, for rays, and for colliding with bodies that aren't convex
+	 * @return the mesh, with the default material
+	 */
+	public abstract PhysicsMesh toMesh();
+
+	/**
+	 * Gets which kind of shape this is
+	 * @return HULL, SPHERE, BOX or CAPSULE
+	 */
+	abstract int getType();
+
+	/**
+	 * Gets the corners of the shape, used to find all the points where it touches a flat side of another shape
+	 * @return the corners in local space, 3 floats each, or null if the shape is round
+	 */
+	float[] getCorners(){
+		return null;
+	}
+
+	/**
+	 * Finds how far the farthest point of the shape is from a point, for the bounding sphere of a body. Shapes without corners
+	 * have to override this.
+	 * @param x the x of the point in local space
+	 * @param y the y of the point
+	 * @param z the z of the point
+	 * @return the distance in meters
+	 */
+	float getRadiusAround(float x, float y, float z){
+		float[] corners = getCorners();
+		float radius = 0;
+		for(int i = 0; i < corners.length; i += 3){
+			float dx = corners[i] - x, dy = corners[i+1] - y, dz = corners[i+2] - z;
+			radius = Math.max(radius, dx*dx + dy*dy + dz*dz);
+		}
+		return (float)Math.sqrt(radius);
+	}
+}
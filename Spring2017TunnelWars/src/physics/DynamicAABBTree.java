@@ -0,0 +1,697 @@
+package physics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A broadphase that keeps the boxes of all the bodies in a balanced binary tree that stays around between ticks.
+ * The boxes in the tree are made a little bigger (fattened) than the bodies, so a body that moves a little bit stays inside its
+ * box and doesn't have to be put in the tree again. Only the bodies the tree is told moved (see bodyMoved) have their boxes fit
+ * again, only those are checked against the tree, and only their pairs are looked at again. Pairs between bodies that didn't
+ * move are kept from the last tick, so the work done each tick depends on how many bodies moved instead of how many bodies
+ * there are.
+ * Based on the dynamic tree in Box2D.
+ * @author Isaac Zachmann
+ *
+ */
+public class DynamicAABBTree implements Broadphase {
+
+	/**
+	 * Used in place of a node index when there is no node
+	 */
+	private static final int NULL_NODE = -1;
+
+	/**
+	 * The default amount to make the boxes bigger on every side
+	 */
+	public static final float DEFAULT_MARGIN = 0.1f;
+
+	/**
+	 * How much bigger the boxes in the tree are than the bodies, on every side
+	 */
+	private float margin;
+
+	/**
+	 * The boxes of the nodes. Every node uses 6 floats: min x, y, z then max x, y, z
+	 */
+	private float[] bounds;
+
+	/**
+	 * The parent of each node, or the next free node if the node is not being used
+	 */
+	private int[] parent;
+
+	/**
+	 * The first child of each node, NULL_NODE for leaves
+	 */
+	private int[] child1;
+
+	/**
+	 * The second child of each node, NULL_NODE for leaves
+	 */
+	private int[] child2;
+
+	/**
+	 * The height of each node in the tree, leaves are 0. -1 if the node is not being used
+	 */
+	private int[] height;
+
+	/**
+	 * The tight box of the body for each leaf
+	 */
+	private BodyBox[] leafBoxes;
+
+	/**
+	 * The pairs each leaf is in, the same arrays as in pairs
+	 */
+	private List<List<BodyBox[]>> leafPairs = new ArrayList<List<BodyBox[]>>();
+
+	/**
+	 * True for the leaves that are in dirty
+	 */
+	private boolean[] leafDirty;
+
+	/**
+	 * The top node of the tree
+	 */
+	private int root = NULL_NODE;
+
+	/**
+	 * The first node that is not being used
+	 */
+	private int freeList = NULL_NODE;
+
+	/**
+	 * The leaf of each body
+	 */
+	private Map<PhysicsBody, Integer> leaves = new HashMap<PhysicsBody, Integer>();
+
+	/**
+	 * Leaves that were put in the tree again since the last findPairs and need to look for new pairs
+	 */
+	private int[] moved = new int[16];
+
+	/**
+	 * The number of leaves in moved
+	 */
+	private int movedCount = 0;
+
+	/**
+	 * Leaves whose bodies moved since the last findPairs, their boxes have to be fit again (the move buffer in Box2D)
+	 */
+	private int[] dirty = new int[16];
+
+	/**
+	 * The number of leaves in dirty
+	 */
+	private int dirtyCount = 0;
+
+	/**
+	 * All the pairs of leaves whose fat boxes are overlapping, keyed by CollisionDetection.pairKey
+	 */
+	private Map<Long, BodyBox[]> pairs = new HashMap<Long, BodyBox[]>();
+
+	/**
+	 * The pairs whose real boxes are touching, the ones findPairs can return
+	 */
+	private Map<Long, BodyBox[]> touching = new HashMap<Long, BodyBox[]>();
+
+	/**
+	 * Used for walking through the tree without recursion
+	 */
+	private int[] stack = new int[64];
+
+	/**
+	 * Used for walking through the tree in raycast, one for every thread so rays can be cast at the same time
+	 */
+	private static final ThreadLocal<int[]> rayStacks = new ThreadLocal<int[]>(){
+		@Override
+		protected int[] initialValue(){
+			return new int[64];
+		}
+	};
+
+	/**
+	 * Creates a new empty tree with the default margin
+	 */
+	public DynamicAABBTree(){
+		this(DEFAULT_MARGIN);
+	}
+
+	/**
+	 * Creates a new empty tree
+	 * @param margin how much bigger to make the boxes than the bodies on every side. A bigger margin means bodies are put in the
+	 * tree again less often, but more pairs need to be checked.
+	 */
+	public DynamicAABBTree(float margin){
+		this.margin = margin;
+		int capacity = 16;
+		bounds = new float[capacity*6];
+		parent = new int[capacity];
+		child1 = new int[capacity];
+		child2 = new int[capacity];
+		height = new int[capacity];
+		leafBoxes = new BodyBox[capacity];
+		leafDirty = new boolean[capacity];
+		for(int i = 0; i < capacity; i++){
+			leafPairs.add(new ArrayList<BodyBox[]>());
+		}
+		addToFreeList(0, capacity);
+	}
+
+	@Override
+	public void addBody(PhysicsBody body){
+		if(leaves.containsKey(body)){
+			return;
+		}
+		int leaf = allocateNode();
+		BodyBox box = new BodyBox(body);
+		leafBoxes[leaf] = box;
+		setFatBounds(leaf, box);
+		height[leaf] = 0;
+		insertLeaf(leaf);
+		leaves.put(body, leaf);
+		addMoved(leaf);
+		markDirty(leaf);
+	}
+
+	@Override
+	public void removeBody(PhysicsBody body){
+		Integer leaf = leaves.remove(body);
+		if(leaf == null){
+			return;
+		}
+		List<BodyBox[]> list = leafPairs.get(leaf);
+		for(BodyBox[] pair : list){
+			BodyBox other = pair[0] == leafBoxes[leaf] ? pair[1] : pair[0];
+			leafPairs.get(leaves.get(other.getBody())).remove(pair);
+			long key = CollisionDetection.pairKey(pair[0].getBody(), pair[1].getBody());
+			pairs.remove(key);
+			touching.remove(key);
+		}
+		list.clear();
+		removeLeaf(leaf);
+		for(int i = 0; i < movedCount; i++){
+			if(moved[i] == leaf){
+				moved[i] = moved[--movedCount];
+				break;
+			}
+		}
+		for(int i = 0; i < dirtyCount; i++){
+			if(dirty[i] == leaf){
+				dirty[i] = dirty[--dirtyCount];
+				break;
+			}
+		}
+		leafDirty[leaf] = false;
+		freeNode(leaf);
+	}
+
+	@Override
+	public void bodyMoved(PhysicsBody body){
+		Integer leaf = leaves.get(body);
+		if(leaf != null){
+			markDirty(leaf);
+		}
+	}
+
+	@Override
+	public List<BodyBox[]> findPairs(){
+		//only refit the bodies that moved, and only put them in the tree again if they left their fat box
+		for(int i = 0; i < dirtyCount; i++){
+			int leaf = dirty[i];
+			BodyBox box = leafBoxes[leaf];
+			box.update();
+			if(!fatBoxContains(leaf, box)){
+				removeLeaf(leaf);
+				setFatBounds(leaf, box);
+				insertLeaf(leaf);
+				addMoved(leaf);
+			}
+		}
+
+		//find the new pairs for leaves that were put in the tree again
+		for(int i = 0; i < movedCount; i++){
+			int leaf = moved[i];
+			int stackCount = 0;
+			stack[stackCount++] = root;
+			while(stackCount > 0){
+				int node = stack[--stackCount];
+				if(node == NULL_NODE || !nodesOverlap(node, leaf)){
+					continue;
+				}
+				if(child1[node] == NULL_NODE){
+					if(node != leaf){
+						long key = CollisionDetection.pairKey(leafBoxes[leaf].getBody(), leafBoxes[node].getBody());
+						if(!pairs.containsKey(key)){
+							BodyBox[] pair = new BodyBox[]{leafBoxes[leaf], leafBoxes[node]};
+							pairs.put(key, pair);
+							leafPairs.get(leaf).add(pair);
+							leafPairs.get(node).add(pair);
+						}
+					}
+				} else {
+					if(stackCount + 2 > stack.length){
+						stack = Arrays.copyOf(stack, stack.length*2);
+					}
+					stack[stackCount++] = child1[node];
+					stack[stackCount++] = child2[node];
+				}
+			}
+		}
+		movedCount = 0;
+
+		//only the pairs of bodies that moved can have changed: pairs whose fat boxes don't overlap any more are dropped, the
+		//rest are touching if the real boxes are
+		for(int i = 0; i < dirtyCount; i++){
+			int leaf = dirty[i];
+			leafDirty[leaf] = false;
+			List<BodyBox[]> list = leafPairs.get(leaf);
+			for(int p = list.size() - 1; p >= 0; p--){
+				BodyBox[] pair = list.get(p);
+				BodyBox other = pair[0] == leafBoxes[leaf] ? pair[1] : pair[0];
+				int otherLeaf = leaves.get(other.getBody());
+				long key = CollisionDetection.pairKey(pair[0].getBody(), pair[1].getBody());
+				if(!nodesOverlap(leaf, otherLeaf)){
+					list.remove(p);
+					leafPairs.get(otherLeaf).remove(pair);
+					pairs.remove(key);
+					touching.remove(key);
+				} else if(BodyBox.areBoxesIntersecting(pair[0], pair[1])){
+					touching.put(key, pair);
+				} else {
+					touching.remove(key);
+				}
+			}
+		}
+		dirtyCount = 0;
+
+		//two bodies that are both sleeping or floors can't start touching, so they aren't returned
+		List<BodyBox[]> result = new ArrayList<BodyBox[]>();
+		for(BodyBox[] pair : touching.values()){
+			if(pair[0].getBody().isMoving() || pair[1].getBody().isMoving()){
+				result.add(pair);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public void raycast(float ox, float oy, float oz, float dx, float dy, float dz, float maxT, RayCallback callback){
+		if(root == NULL_NODE){
+			return;
+		}
+		float invX = 1/dx, invY = 1/dy, invZ = 1/dz;
+		int[] rayStack = rayStacks.get();
+		int stackCount = 0;
+		rayStack[stackCount++] = root;
+		while(stackCount > 0){
+			int node = rayStack[--stackCount];
+			int b = node*6;
+			if(!BodyBox.rayHitsBox(ox, oy, oz, invX, invY, invZ,
+					bounds[b], bounds[b+1], bounds[b+2], bounds[b+3], bounds[b+4], bounds[b+5], maxT)){
+				continue;
+			}
+			if(child1[node] == NULL_NODE){
+				maxT = callback.hit(leafBoxes[node].getBody(), maxT);
+			} else {
+				if(stackCount + 2 > rayStack.length){
+					rayStack = Arrays.copyOf(rayStack, rayStack.length*2);
+					rayStacks.set(rayStack);
+				}
+				rayStack[stackCount++] = child1[node];
+				rayStack[stackCount++] = child2[node];
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of bodies in the tree
+	 * @return the number of bodies
+	 */
+	public int getBodyCount(){
+		return leaves.size();
+	}
+
+	/**
+	 * Gets the height of the tree. Useful for checking that the tree is balanced.
+	 * @return the height of the root, 0 if the tree is empty
+	 */
+	public int getHeight(){
+		return root == NULL_NODE ? 0 : height[root];
+	}
+
+	/**
+	 * Adds the leaf to the list of leaves that need to look for new pairs
+	 * @param leaf the leaf to add
+	 */
+	private void addMoved(int leaf){
+		if(movedCount == moved.length){
+			moved = Arrays.copyOf(moved, movedCount*2);
+		}
+		moved[movedCount++] = leaf;
+	}
+
+	/**
+	 * Adds the leaf to the list of leaves whose boxes have to be fit again, if it isn't in it yet
+	 * @param leaf the leaf to add
+	 */
+	private void markDirty(int leaf){
+		if(leafDirty[leaf]){
+			return;
+		}
+		leafDirty[leaf] = true;
+		if(dirtyCount == dirty.length){
+			dirty = Arrays.copyOf(dirty, dirtyCount*2);
+		}
+		dirty[dirtyCount++] = leaf;
+	}
+
+	/**
+	 * Sets the box of the leaf to the body's box plus the margin on every side
+	 * @param leaf the leaf to set
+	 * @param box the tight box of the body
+	 */
+	private void setFatBounds(int leaf, BodyBox box){
+		int b = leaf*6;
+		bounds[b] = box.getMin().x - margin;
+		bounds[b+1] = box.getMin().y - margin;
+		bounds[b+2] = box.getMin().z - margin;
+		bounds[b+3] = box.getMax().x + margin;
+		bounds[b+4] = box.getMax().y + margin;
+		bounds[b+5] = box.getMax().z + margin;
+	}
+
+	/**
+	 * Checks if the body's box is still inside the fat box of the leaf
+	 * @param leaf the leaf to check
+	 * @param box the tight box of the body
+	 * @return true if the box is completely inside the fat box
+	 */
+	private boolean fatBoxContains(int leaf, BodyBox box){
+		int b = leaf*6;
+		return bounds[b] <= box.getMin().x && bounds[b+1] <= box.getMin().y && bounds[b+2] <= box.getMin().z &&
+				bounds[b+3] >= box.getMax().x && bounds[b+4] >= box.getMax().y && bounds[b+5] >= box.getMax().z;
+	}
+
+	/**
+	 * Checks if the boxes of two nodes overlap
+	 * @param n1 the first node
+	 * @param n2 the second node
+	 * @return true if the boxes overlap or touch
+	 */
+	private boolean nodesOverlap(int n1, int n2){
+		int a = n1*6;
+		int b = n2*6;
+		return bounds[a] <= bounds[b+3] && bounds[a+3] >= bounds[b] &&
+				bounds[a+1] <= bounds[b+4] && bounds[a+4] >= bounds[b+1] &&
+				bounds[a+2] <= bounds[b+5] && bounds[a+5] >= bounds[b+2];
+	}
+
+	/**
+	 * Sets the box of a node to the box that fits around the boxes of two other nodes
+	 * @param node the node to set
+	 * @param n1 the first node to fit around
+	 * @param n2 the second node to fit around
+	 */
+	private void setUnion(int node, int n1, int n2){
+		int d = node*6, a = n1*6, b = n2*6;
+		bounds[d] = Math.min(bounds[a], bounds[b]);
+		bounds[d+1] = Math.min(bounds[a+1], bounds[b+1]);
+		bounds[d+2] = Math.min(bounds[a+2], bounds[b+2]);
+		bounds[d+3] = Math.max(bounds[a+3], bounds[b+3]);
+		bounds[d+4] = Math.max(bounds[a+4], bounds[b+4]);
+		bounds[d+5] = Math.max(bounds[a+5], bounds[b+5]);
+	}
+
+	/**
+	 * Finds the surface area of the box of a node
+	 * @param node the node
+	 * @return the surface area
+	 */
+	private float area(int node){
+		int b = node*6;
+		float x = bounds[b+3] - bounds[b], y = bounds[b+4] - bounds[b+1], z = bounds[b+5] - bounds[b+2];
+		return 2*(x*y + y*z + z*x);
+	}
+
+	/**
+	 * Finds the surface area of the box that fits around two nodes
+	 * @param n1 the first node
+	 * @param n2 the second node
+	 * @return the surface area of the combined box
+	 */
+	private float unionArea(int n1, int n2){
+		int a = n1*6, b = n2*6;
+		float x = Math.max(bounds[a+3], bounds[b+3]) - Math.min(bounds[a], bounds[b]);
+		float y = Math.max(bounds[a+4], bounds[b+4]) - Math.min(bounds[a+1], bounds[b+1]);
+		float z = Math.max(bounds[a+5], bounds[b+5]) - Math.min(bounds[a+2], bounds[b+2]);
+		return 2*(x*y + y*z + z*x);
+	}
+
+	/**
+	 * Puts a leaf into the tree next to the node that makes the smallest total box area, then balances the tree
+	 * @param leaf the leaf to insert
+	 */
+	private void insertLeaf(int leaf){
+		if(root == NULL_NODE){
+			root = leaf;
+			parent[leaf] = NULL_NODE;
+			return;
+		}
+
+		//find the best sibling
+		int index = root;
+		while(child1[index] != NULL_NODE){
+			int c1 = child1[index];
+			int c2 = child2[index];
+			float area = area(index);
+			float combinedArea = unionArea(index, leaf);
+			//cost of making a new parent for this node and the leaf
+			float cost = 2*combinedArea;
+			//cost of pushing the leaf further down the tree
+			float inheritanceCost = 2*(combinedArea - area);
+			float cost1 = unionArea(c1, leaf) + inheritanceCost;
+			if(child1[c1] != NULL_NODE){
+				cost1 -= area(c1);
+			}
+			float cost2 = unionArea(c2, leaf) + inheritanceCost;
+			if(child1[c2] != NULL_NODE){
+				cost2 -= area(c2);
+			}
+			if(cost < cost1 && cost < cost2){
+				break;
+			}
+			index = cost1 < cost2 ? c1 : c2;
+		}
+		int sibling = index;
+
+		//make a new parent
+		int oldParent = parent[sibling];
+		int newParent = allocateNode();
+		parent[newParent] = oldParent;
+		setUnion(newParent, sibling, leaf);
+		height[newParent] = height[sibling] + 1;
+		if(oldParent != NULL_NODE){
+			if(child1[oldParent] == sibling){
+				child1[oldParent] = newParent;
+			} else {
+				child2[oldParent] = newParent;
+			}
+		} else {
+			root = newParent;
+		}
+		child1[newParent] = sibling;
+		child2[newParent] = leaf;
+		parent[sibling] = newParent;
+		parent[leaf] = newParent;
+
+		refitFrom(parent[leaf]);
+	}
+
+	/**
+	 * Takes a leaf out of the tree. The leaf's node is not freed.
+	 * @param leaf the leaf to remove
+	 */
+	private void removeLeaf(int leaf){
+		if(leaf == root){
+			root = NULL_NODE;
+			return;
+		}
+		int p = parent[leaf];
+		int grandParent = parent[p];
+		int sibling = child1[p] == leaf ? child2[p] : child1[p];
+		if(grandParent != NULL_NODE){
+			if(child1[grandParent] == p){
+				child1[grandParent] = sibling;
+			} else {
+				child2[grandParent] = sibling;
+			}
+			parent[sibling] = grandParent;
+			freeNode(p);
+			refitFrom(grandParent);
+		} else {
+			root = sibling;
+			parent[sibling] = NULL_NODE;
+			freeNode(p);
+		}
+	}
+
+	/**
+	 * Walks from the node up to the root, balancing and fixing the boxes and heights on the way
+	 * @param node the node to start at
+	 */
+	private void refitFrom(int node){
+		while(node != NULL_NODE){
+			node = balance(node);
+			int c1 = child1[node];
+			int c2 = child2[node];
+			height[node] = 1 + Math.max(height[c1], height[c2]);
+			setUnion(node, c1, c2);
+			node = parent[node];
+		}
+	}
+
+	/**
+	 * If one child of the node is more than one level taller than the other, rotates the taller child up
+	 * @param a the node to balance
+	 * @return the node that is now where a was in the tree
+	 */
+	private int balance(int a){
+		if(child1[a] == NULL_NODE || height[a] < 2){
+			return a;
+		}
+		int b = child1[a];
+		int c = child2[a];
+		int difference = height[c] - height[b];
+
+		if(difference > 1){
+			//rotate c up
+			int f = child1[c];
+			int g = child2[c];
+			child1[c] = a;
+			parent[c] = parent[a];
+			parent[a] = c;
+			replaceChild(parent[c], a, c);
+			if(height[f] > height[g]){
+				child2[c] = f;
+				child2[a] = g;
+				parent[g] = a;
+				setUnion(a, b, g);
+				setUnion(c, a, f);
+				height[a] = 1 + Math.max(height[b], height[g]);
+				height[c] = 1 + Math.max(height[a], height[f]);
+			} else {
+				child2[c] = g;
+				child2[a] = f;
+				parent[f] = a;
+				setUnion(a, b, f);
+				setUnion(c, a, g);
+				height[a] = 1 + Math.max(height[b], height[f]);
+				height[c] = 1 + Math.max(height[a], height[g]);
+			}
+			return c;
+		}
+
+		if(difference < -1){
+			//rotate b up
+			int d = child1[b];
+			int e = child2[b];
+			child1[b] = a;
+			parent[b] = parent[a];
+			parent[a] = b;
+			replaceChild(parent[b], a, b);
+			if(height[d] > height[e]){
+				child2[b] = d;
+				child1[a] = e;
+				parent[e] = a;
+				setUnion(a, c, e);
+				setUnion(b, a, d);
+				height[a] = 1 + Math.max(height[c], height[e]);
+				height[b] = 1 + Math.max(height[a], height[d]);
+			} else {
+				child2[b] = e;
+				child1[a] = d;
+				parent[d] = a;
+				setUnion(a, c, d);
+				setUnion(b, a, e);
+				height[a] = 1 + Math.max(height[c], height[d]);
+				height[b] = 1 + Math.max(height[a], height[e]);
+			}
+			return b;
+		}
+		return a;
+	}
+
+	/**
+	 * Changes which node is the child of p, or changes the root if p is NULL_NODE
+	 * @param p the parent
+	 * @param oldChild the child to replace
+	 * @param newChild the child to put in its place
+	 */
+	private void replaceChild(int p, int oldChild, int newChild){
+		if(p == NULL_NODE){
+			root = newChild;
+		} else if(child1[p] == oldChild){
+			child1[p] = newChild;
+		} else {
+			child2[p] = newChild;
+		}
+	}
+
+	/**
+	 * Gets a node that isn't being used, making the arrays bigger if there are none left
+	 * @return the index of the node
+	 */
+	private int allocateNode(){
+		if(freeList == NULL_NODE){
+			int oldCapacity = parent.length;
+			int capacity = oldCapacity*2;
+			bounds = Arrays.copyOf(bounds, capacity*6);
+			parent = Arrays.copyOf(parent, capacity);
+			child1 = Arrays.copyOf(child1, capacity);
+			child2 = Arrays.copyOf(child2, capacity);
+			height = Arrays.copyOf(height, capacity);
+			leafBoxes = Arrays.copyOf(leafBoxes, capacity);
+			leafDirty = Arrays.copyOf(leafDirty, capacity);
+			for(int i = oldCapacity; i < capacity; i++){
+				leafPairs.add(new ArrayList<BodyBox[]>());
+			}
+			addToFreeList(oldCapacity, capacity);
+		}
+		int node = freeList;
+		freeList = parent[node];
+		parent[node] = NULL_NODE;
+		child1[node] = NULL_NODE;
+		child2[node] = NULL_NODE;
+		height[node] = 0;
+		return node;
+	}
+
+	/**
+	 * Gives a node back to the free list
+	 * @param node the node to free
+	 */
+	private void freeNode(int node){
+		parent[node] = freeList;
+		height[node] = -1;
+		leafBoxes[node] = null;
+		freeList = node;
+	}
+
+	/**
+	 * Puts a range of new nodes on the free list
+	 * @param from the first node
+	 * @param to one past the last node
+	 */
+	private void addToFreeList(int from, int to){
+		for(int i = to - 1; i >= from; i--){
+			parent[i] = freeList;
+			height[i] = -1;
+			freeList = i;
+		}
+	}
+}
@@ -0,0 +1,542 @@
+package physics;
+
+import geometry.Face;
+import geometry.Point;
+import geometry.TriangleIntersection;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A bounding volume hierarchy over the faces of one mesh. Every node has a box around all the faces under it and
+ * the leaves have a few faces each. Two trees can be walked down together so only faces whose boxes overlap are tested
+ * against each other, instead of every face of one body against every face of the other.
+ * The tree is built once over the local faces of the mesh and never changes, so every body using the mesh shares it and
+ * nothing has to be refit when a body moves. The static methods move the question (the other body, the ray or the box) into
+ * the local space of the body instead, and give back the world faces of the body.
+ * @author Isaac Zachmann
+ *
+ */
+public class FaceTree {
+
+	/**
+	 * The most faces a leaf can have
+	 */
+	public static final int MAX_FACES_PER_LEAF = 4;
+
+	/**
+	 * The local faces of the mesh, in the order the leaves use them
+	 */
+	private PhysicsFace[] faces;
+
+	/**
+	 * The triangle of each face in faces, so the world face of a body in the same spot can be found without looking at the local face
+	 */
+	private int[] triangles;
+
+	/**
+	 * The boxes of the nodes. Every node uses 6 floats: min x, y, z then max x, y, z
+	 */
+	private float[] bounds;
+
+	/**
+	 * For leaves, the index of the first face in faces. For other nodes, the index of the first child.
+	 * The second child is always right after the first child's whole subtree, see secondChild.
+	 */
+	private int[] first;
+
+	/**
+	 * The number of faces in a leaf, 0 if the node isn't a leaf
+	 */
+	private int[] count;
+
+	/**
+	 * The index of the second child of each node that isn't a leaf
+	 */
+	private int[] secondChild;
+
+	/**
+	 * The number of nodes in the tree
+	 */
+	private int nodeCount = 0;
+
+	/**
+	 * Used for walking down two trees together without recursion. Holds pairs of nodes.
+	 * Every thread has its own, so different pairs of trees can be collided at the same time.
+	 */
+	private static final ThreadLocal<int[]> stacks = new ThreadLocal<int[]>(){
+		@Override
+		protected int[] initialValue(){
+			return new int[64];
+		}
+	};
+
+	/**
+	 * Where the ends of the segment of two faces that go through each other are put in collide, one for every thread
+	 */
+	private static final ThreadLocal<float[]> segments = new ThreadLocal<float[]>(){
+		@Override
+		protected float[] initialValue(){
+			return new float[TriangleIntersection.BUFFER_SIZE];
+		}
+	};
+
+	/**
+	 * The transforms between the spaces of the bodies, 12 floats each (see PhysicsBody.getWorldToLocal), one for every thread
+	 */
+	private static final ThreadLocal<float[]> transforms = new ThreadLocal<float[]>(){
+		@Override
+		protected float[] initialValue(){
+			return new float[64];
+		}
+	};
+
+	/**
+	 * Builds a tree over the faces
+	 * @param faces the local faces of the mesh, their triangle has to be their index in the mesh
+	 * @throws IllegalArgumentException if there are no faces, an empty root would never stop being split
+	 */
+	public FaceTree(PhysicsFace[] faces){
+		if(faces.length == 0){
+			throw new IllegalArgumentException("a face tree needs at least one face");
+		}
+		this.faces = Arrays.copyOf(faces, faces.length);
+		int maxNodes = 2*faces.length;
+		bounds = new float[maxNodes*6];
+		first = new int[maxNodes];
+		count = new int[maxNodes];
+		secondChild = new int[maxNodes];
+		float[] centers = new float[faces.length*3];
+		for(int i = 0; i < faces.length; i++){
+			Face f = faces[i];
+			centers[i*3] = (f.point1.x + f.point2.x + f.point3.x)/3;
+			centers[i*3+1] = (f.point1.y + f.point2.y + f.point3.y)/3;
+			centers[i*3+2] = (f.point1.z + f.point2.z + f.point3.z)/3;
+		}
+		int[] order = new int[faces.length];
+		for(int i = 0; i < order.length; i++){
+			order[i] = i;
+		}
+		build(order, centers, 0, faces.length);
+		PhysicsFace[] ordered = new PhysicsFace[faces.length];
+		for(int i = 0; i < order.length; i++){
+			ordered[i] = this.faces[order[i]];
+		}
+		this.faces = ordered;
+		triangles = new int[faces.length];
+		for(int i = 0; i < triangles.length; i++){
+			triangles[i] = ordered[i].triangle;
+		}
+		fit();
+	}
+
+	/**
+	 * Makes a node for the faces from start to end and the nodes under it. Splits the faces in half along the longest
+	 * side of the box around their centers.
+	 * @param order the face indices, sorted in place
+	 * @param centers the center of every face, 3 floats each
+	 * @param start the first face of the node
+	 * @param end one past the last face of the node
+	 * @return the index of the node
+	 */
+	private int build(int[] order, float[] centers, int start, int end){
+		int node = nodeCount++;
+		if(end - start <= MAX_FACES_PER_LEAF){
+			first[node] = start;
+			count[node] = end - start;
+			return node;
+		}
+		float[] min = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE};
+		float[] max = {-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+		for(int i = start; i < end; i++){
+			for(int a = 0; a < 3; a++){
+				min[a] = Math.min(min[a], centers[order[i]*3+a]);
+				max[a] = Math.max(max[a], centers[order[i]*3+a]);
+			}
+		}
+		int axis = 0;
+		for(int a = 1; a < 3; a++){
+			if(max[a] - min[a] > max[axis] - min[axis]){
+				axis = a;
+			}
+		}
+		int middle = (start + end)/2;
+		selectMedian(order, centers, axis, start, end - 1, middle);
+		count[node] = 0;
+		first[node] = build(order, centers, start, middle);
+		secondChild[node] = build(order, centers, middle, end);
+		return node;
+	}
+
+	/**
+	 * Moves the faces around so the face at k is the one that would be there if they were sorted along the axis, with smaller
+	 * ones before it and bigger ones after it (quickselect)
+	 * @param order the face indices
+	 * @param centers the center of every face
+	 * @param axis 0 for x, 1 for y, 2 for z
+	 * @param low the first index to look at
+	 * @param high the last index to look at
+	 * @param k the index to find
+	 */
+	private static void selectMedian(int[] order, float[] centers, int axis, int low, int high, int k){
+		while(low < high){
+			float pivot = centers[order[(low + high) >>> 1]*3+axis];
+			int i = low, j = high;
+			while(i <= j){
+				while(centers[order[i]*3+axis] < pivot){
+					i++;
+				}
+				while(centers[order[j]*3+axis] > pivot){
+					j--;
+				}
+				if(i <= j){
+					int temp = order[i];
+					order[i] = order[j];
+					order[j] = temp;
+					i++;
+					j--;
+				}
+			}
+			if(k <= j){
+				high = j;
+			} else if(k >= i){
+				low = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Fits all the boxes around the faces. Children always come after their parent,
+	 * so going backwards through the nodes fits the children before the parents.
+	 */
+	private void fit(){
+		for(int node = nodeCount - 1; node >= 0; node--){
+			int b = node*6;
+			if(count[node] > 0){
+				float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+				float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+				for(int i = first[node]; i < first[node] + count[node]; i++){
+					PhysicsFace f = faces[i];
+					minX = Math.min(minX, Math.min(f.point1.x, Math.min(f.point2.x, f.point3.x)));
+					minY = Math.min(minY, Math.min(f.point1.y, Math.min(f.point2.y, f.point3.y)));
+					minZ = Math.min(minZ, Math.min(f.point1.z, Math.min(f.point2.z, f.point3.z)));
+					maxX = Math.max(maxX, Math.max(f.point1.x, Math.max(f.point2.x, f.point3.x)));
+					maxY = Math.max(maxY, Math.max(f.point1.y, Math.max(f.point2.y, f.point3.y)));
+					maxZ = Math.max(maxZ, Math.max(f.point1.z, Math.max(f.point2.z, f.point3.z)));
+				}
+				bounds[b] = minX;
+				bounds[b+1] = minY;
+				bounds[b+2] = minZ;
+				bounds[b+3] = maxX;
+				bounds[b+4] = maxY;
+				bounds[b+5] = maxZ;
+			} else {
+				int c1 = first[node]*6;
+				int c2 = secondChild[node]*6;
+				for(int a = 0; a < 3; a++){
+					bounds[b+a] = Math.min(bounds[c1+a], bounds[c2+a]);
+					bounds[b+3+a] = Math.max(bounds[c1+3+a], bounds[c2+3+a]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds where the faces of two bodies go through each other. The tree of body2 is moved into the local space of body1
+	 * to see which leaves overlap, then the world faces in those leaves are tested.
+	 * @param body1 the first body
+	 * @param body2 the second body
+	 * @param intersections where to put the intersections that are found, with the world faces of body1 first
+	 */
+	static void collide(PhysicsBody body1, PhysicsBody body2, List<PhysicsFaceIntersection> intersections){
+		float[] m = transforms.get();
+		body1.getWorldToLocal(m, 0);
+		body2.getLocalToWorld(m, 12);
+		//local space of body2 into the local space of body1, then the size of its rotation
+		for(int r = 0; r < 3; r++){
+			for(int c = 0; c < 3; c++){
+				m[24+r*3+c] = m[r*3]*m[12+c] + m[r*3+1]*m[15+c] + m[r*3+2]*m[18+c];
+				m[36+r*3+c] = Math.abs(m[24+r*3+c]);
+			}
+			m[33+r] = m[r*3]*m[21] + m[r*3+1]*m[22] + m[r*3+2]*m[23] + m[9+r];
+		}
+		//and the other way, so boxes can be tested in both spaces
+		for(int r = 0; r < 3; r++){
+			m[45+r] = -(m[24+r]*m[33] + m[27+r]*m[34] + m[30+r]*m[35]);
+		}
+		body1.getFaceTree().collide(body2.getFaceTree(), m, body1.getWorldFaces(), body2.getWorldFaces(), intersections);
+	}
+
+	/**
+	 * Walks down this tree and the other tree together and tests the faces in leaves whose boxes overlap.
+	 * When both nodes have children, the bigger one is split first.
+	 * @param other the tree of the other body
+	 * @param m the transform from the local space of the other body to the local space of this one at m[24..35], the
+	 * absolute values of its rotation at m[36..44] and the translation of the opposite transform at m[45..47]
+	 * @param worldFaces the world faces of this body
+	 * @param otherWorldFaces the world faces of the other body
+	 * @param intersections where to put the intersections that are found
+	 */
+	private void collide(FaceTree other, float[] m, PhysicsFace[] worldFaces, PhysicsFace[] otherWorldFaces,
+			List<PhysicsFaceIntersection> intersections){
+		int[] stack = stacks.get();
+		int stackCount = 0;
+		stack[stackCount++] = 0;
+		stack[stackCount++] = 0;
+		float[] segment = segments.get();
+		while(stackCount > 0){
+			int b = stack[--stackCount];
+			int a = stack[--stackCount];
+			if(!overlaps(a, other, b, m)){
+				continue;
+			}
+			boolean aLeaf = count[a] > 0;
+			boolean bLeaf = other.count[b] > 0;
+			if(aLeaf && bLeaf){
+				for(int i = first[a]; i < first[a] + count[a]; i++){
+					PhysicsFace face1 = worldFaces[triangles[i]];
+					for(int j = other.first[b]; j < other.first[b] + other.count[b]; j++){
+						PhysicsFace face2 = otherWorldFaces[other.triangles[j]];
+						int ends = PhysicsFace.intersectSegment(face1, face2, segment);
+						if(ends > 0){
+							intersections.add(new PhysicsFaceIntersection(PhysicsFace.toPoints(segment, ends), face1, face2));
+						}
+					}
+				}
+				continue;
+			}
+			if(stackCount + 4 > stack.length){
+				stack = Arrays.copyOf(stack, stack.length*2);
+				stacks.set(stack);
+			}
+			if(bLeaf || (!aLeaf && size(a) >= other.size(b))){
+				stack[stackCount++] = first[a];
+				stack[stackCount++] = b;
+				stack[stackCount++] = secondChild[a];
+				stack[stackCount++] = b;
+			} else {
+				stack[stackCount++] = a;
+				stack[stackCount++] = other.first[b];
+				stack[stackCount++] = a;
+				stack[stackCount++] = other.secondChild[b];
+			}
+		}
+	}
+
+	/**
+	 * Finds the world faces of a body in every leaf whose box overlaps a box in world space, for testing a shape that isn't
+	 * made of faces against the body. The box is moved into the local space of the body, and made bigger so it still holds
+	 * everything the world box did.
+	 * @param body the body
+	 * @param minX the smallest x of the box
+	 * @param minY the smallest y of the box
+	 * @param minZ the smallest z of the box
+	 * @param maxX the largest x of the box
+	 * @param maxY the largest y of the box
+	 * @param maxZ the largest z of the box
+	 * @param found where to put the world faces
+	 */
+	static void query(PhysicsBody body, float minX, float minY, float minZ, float maxX, float maxY, float maxZ, List<PhysicsFace> found){
+		float[] m = transforms.get();
+		body.getWorldToLocal(m, 0);
+		float cx = (minX + maxX)/2, cy = (minY + maxY)/2, cz = (minZ + maxZ)/2;
+		float hx = (maxX - minX)/2, hy = (maxY - minY)/2, hz = (maxZ - minZ)/2;
+		float lx = m[0]*cx + m[1]*cy + m[2]*cz + m[9];
+		float ly = m[3]*cx + m[4]*cy + m[5]*cz + m[10];
+		float lz = m[6]*cx + m[7]*cy + m[8]*cz + m[11];
+		float ex = Math.abs(m[0])*hx + Math.abs(m[1])*hy + Math.abs(m[2])*hz;
+		float ey = Math.abs(m[3])*hx + Math.abs(m[4])*hy + Math.abs(m[5])*hz;
+		float ez = Math.abs(m[6])*hx + Math.abs(m[7])*hy + Math.abs(m[8])*hz;
+		int start = found.size();
+		body.getFaceTree().query(lx - ex, ly - ey, lz - ez, lx + ex, ly + ey, lz + ez, found);
+		PhysicsFace[] worldFaces = body.getWorldFaces();
+		for(int i = start; i < found.size(); i++){
+			found.set(i, worldFaces[found.get(i).triangle]);
+		}
+	}
+
+	/**
+	 * Finds the faces in every leaf whose box overlaps a box, for testing a shape that isn't made of faces against this tree
+	 * @param minX the smallest x of the box
+	 * @param minY the smallest y of the box
+	 * @param minZ the smallest z of the box
+	 * @param maxX the largest x of the box
+	 * @param maxY the largest y of the box
+	 * @param maxZ the largest z of the box
+	 * @param found where to put the local faces
+	 */
+	public void query(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, List<PhysicsFace> found){
+		int[] stack = stacks.get();
+		int stackCount = 0;
+		stack[stackCount++] = 0;
+		while(stackCount > 0){
+			int node = stack[--stackCount];
+			int b = node*6;
+			if(bounds[b] > maxX || bounds[b+3] < minX || bounds[b+1] > maxY || bounds[b+4] < minY ||
+					bounds[b+2] > maxZ || bounds[b+5] < minZ){
+				continue;
+			}
+			if(count[node] > 0){
+				for(int i = first[node]; i < first[node] + count[node]; i++){
+					found.add(faces[i]);
+				}
+				continue;
+			}
+			if(stackCount + 2 > stack.length){
+				stack = Arrays.copyOf(stack, stack.length*2);
+				stacks.set(stack);
+			}
+			stack[stackCount++] = first[node];
+			stack[stackCount++] = secondChild[node];
+		}
+	}
+
+	/**
+	 * Finds the first world face of a body a ray in world space hits. The ray is moved into the local space of the body, turning
+	 * it doesn't change its length so the distance is the same in both.
+	 * @param body the body
+	 * @param ox the x of the start of the ray
+	 * @param oy the y of the start of the ray
+	 * @param oz the z of the start of the ray
+	 * @param dx the x of the direction, doesn't have to be a unit vector
+	 * @param dy the y of the direction
+	 * @param dz the z of the direction
+	 * @param maxT the farthest to look, in lengths of the direction
+	 * @param distance how far along the ray the first hit is in lengths of the direction is put in distance[0], left alone if nothing is hit
+	 * @return the world face hit first, or null if nothing is hit
+	 */
+	static PhysicsFace raycast(PhysicsBody body, float ox, float oy, float oz, float dx, float dy, float dz, float maxT, float[] distance){
+		float[] m = transforms.get();
+		body.getWorldToLocal(m, 0);
+		PhysicsFace hit = body.getFaceTree().raycast(
+				m[0]*ox + m[1]*oy + m[2]*oz + m[9], m[3]*ox + m[4]*oy + m[5]*oz + m[10], m[6]*ox + m[7]*oy + m[8]*oz + m[11],
+				m[0]*dx + m[1]*dy + m[2]*dz, m[3]*dx + m[4]*dy + m[5]*dz, m[6]*dx + m[7]*dy + m[8]*dz, maxT, distance);
+		return hit == null ? null : body.getWorldFaces()[hit.triangle];
+	}
+
+	/**
+	 * Finds the first face a ray hits. Only goes down into nodes whose boxes the ray goes through.
+	 * @param ox the x of the start of the ray
+	 * @param oy the y of the start of the ray
+	 * @param oz the z of the start of the ray
+	 * @param dx the x of the direction, doesn't have to be a unit vector
+	 * @param dy the y of the direction
+	 * @param dz the z of the direction
+	 * @param maxT the farthest to look, in lengths of the direction
+	 * @param distance how far along the ray the first hit is in lengths of the direction is put in distance[0], left alone if nothing is hit
+	 * @return the first local face hit, or null if nothing is hit
+	 */
+	public PhysicsFace raycast(float ox, float oy, float oz, float dx, float dy, float dz, float maxT, float[] distance){
+		float invX = 1/dx, invY = 1/dy, invZ = 1/dz;
+		float best = Float.POSITIVE_INFINITY;
+		PhysicsFace hit = null;
+		int[] stack = stacks.get();
+		int stackCount = 0;
+		stack[stackCount++] = 0;
+		while(stackCount > 0){
+			int node = stack[--stackCount];
+			int b = node*6;
+			if(!BodyBox.rayHitsBox(ox, oy, oz, invX, invY, invZ,
+					bounds[b], bounds[b+1], bounds[b+2], bounds[b+3], bounds[b+4], bounds[b+5], Math.min(maxT, best))){
+				continue;
+			}
+			if(count[node] > 0){
+				//the local faces never move, so the edges cached on them are always right
+				for(int i = first[node]; i < first[node] + count[node]; i++){
+					float t = faces[i].intersectRay(ox, oy, oz, dx, dy, dz);
+					if(t >= 0 && t <= maxT && t < best){
+						best = t;
+						hit = faces[i];
+					}
+				}
+				continue;
+			}
+			if(stackCount + 2 > stack.length){
+				stack = Arrays.copyOf(stack, stack.length*2);
+				stacks.set(stack);
+			}
+			stack[stackCount++] = first[node];
+			stack[stackCount++] = secondChild[node];
+		}
+		if(hit != null){
+			distance[0] = best;
+		}
+		return hit;
+	}
+
+	/**
+	 * Checks if a node of this tree overlaps a node of another tree. The box of the other node is moved into the space of this
+	 * tree and made bigger to hold it, then the boxes are compared along the axes of this tree. Then the same is done the other
+	 * way around, since a box that is turned a lot gets a lot bigger and could be far from the other box along its own axes.
+	 * @param node the node in this tree
+	 * @param other the other tree
+	 * @param otherNode the node in the other tree
+	 * @param m the transform from the space of the other tree to this one, see collide
+	 * @return true if the boxes overlap or touch
+	 */
+	private boolean overlaps(int node, FaceTree other, int otherNode, float[] m){
+		int a = node*6;
+		int b = otherNode*6;
+		float[] o = other.bounds;
+		float cx = (o[b] + o[b+3])/2, cy = (o[b+1] + o[b+4])/2, cz = (o[b+2] + o[b+5])/2;
+		float hx = (o[b+3] - o[b])/2, hy = (o[b+4] - o[b+1])/2, hz = (o[b+5] - o[b+2])/2;
+		for(int k = 0; k < 3; k++){
+			float center = m[24+k*3]*cx + m[25+k*3]*cy + m[26+k*3]*cz + m[33+k];
+			float half = m[36+k*3]*hx + m[37+k*3]*hy + m[38+k*3]*hz;
+			if(bounds[a+k] > center + half || bounds[a+3+k] < center - half){
+				return false;
+			}
+		}
+		//the box of this node in the space of the other tree, with the rotation turned over
+		cx = (bounds[a] + bounds[a+3])/2;
+		cy = (bounds[a+1] + bounds[a+4])/2;
+		cz = (bounds[a+2] + bounds[a+5])/2;
+		hx = (bounds[a+3] - bounds[a])/2;
+		hy = (bounds[a+4] - bounds[a+1])/2;
+		hz = (bounds[a+5] - bounds[a+2])/2;
+		for(int k = 0; k < 3; k++){
+			float center = m[24+k]*cx + m[27+k]*cy + m[30+k]*cz + m[45+k];
+			float half = m[36+k]*hx + m[39+k]*hy + m[42+k]*hz;
+			if(o[b+k] > center + half || o[b+3+k] < center - half){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets how big the box of a node is, the sum of its side lengths
+	 * @param node the node
+	 * @return the size of the node
+	 */
+	private float size(int node){
+		int b = node*6;
+		return (bounds[b+3] - bounds[b]) + (bounds[b+4] - bounds[b+1]) + (bounds[b+5] - bounds[b+2]);
+	}
+
+	/**
+	 * Gets the smallest point of the box around the whole tree, in local space
+	 * @return the minimum corner of the root
+	 */
+	public Point getMin(){
+		return new Point(bounds[0], bounds[1], bounds[2]);
+	}
+
+	/**
+	 * Gets the largest point of the box around the whole tree, in local space
+	 * @return the maximum corner of the root
+	 */
+	public Point getMax(){
+		return new Point(bounds[3], bounds[4], bounds[5]);
+	}
+
+	/**
+	 * Gets the number of nodes in the tree
+	 * @return the number of nodes
+	 */
+	public int getNodeCount(){
+		return nodeCount;
+	}
+}
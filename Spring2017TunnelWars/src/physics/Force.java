@@ -32,7 +32,8 @@ public class Force {
 	 * @param the position relative to the center of the body for the force to be applied
 	 */
 	public Force(Vector force, float time, Point position){
-		this.force = force;
+		//copied, the vector could be changed after by whoever made it
+		this.force = new Vector(force.getX(), force.getY(), force.getZ());
 		this.time = time;
 		this.position = position;
 	}
@@ -0,0 +1,334 @@
+package physics;
+
+import java.util.Random;
+
+import geometry.Face;
+import geometry.Point;
+import math.Matrix;
+import math.Vector;
+
+/**
+ * The volume, mass, center of mass and inertia tensor of a solid made of triangles.
+ * They are found exactly in one pass over the faces by turning the volume integrals into integrals over the surface
+ * (divergence theorem). The faces must make a closed mesh, the winding can be either way as long as it is the same for all faces.
+ * Based on "Polyhedral Mass Properties (Revisited)" by David Eberly.
+ * @author Isaac Zachmann
+ *
+ */
+public class MassProperties {
+
+	/**
+	 * If the volume is smaller than this the mesh is treated as not closed
+	 */
+	private static final double MIN_VOLUME = 1e-9;
+
+	/**
+	 * The volume of the solid
+	 */
+	public final float volume;
+
+	/**
+	 * The mass of the solid in kilograms
+	 */
+	public final float mass;
+
+	/**
+	 * The center of mass
+	 */
+	public final Point centroid;
+
+	/**
+	 * The 3x3 inertia tensor around the center of mass in kg*m^2, using the x, y, and z axes.
+	 * The diagonal is the moment of inertia around each axis, the rest are the products of inertia.
+	 */
+	public final Matrix inertiaTensor;
+
+	/**
+	 * Creates mass properties from values that are already known
+	 * @param volume the volume
+	 * @param mass the mass
+	 * @param centroid the center of mass
+	 * @param inertiaTensor the inertia tensor around the center of mass
+	 */
+	public MassProperties(float volume, float mass, Point centroid, Matrix inertiaTensor){
+		this.volume = volume;
+		this.mass = mass;
+		this.centroid = centroid;
+		this.inertiaTensor = inertiaTensor;
+	}
+
+	/**
+	 * Gets the moments of inertia around the x, y, and z axes, the diagonal of the inertia tensor
+	 * @return the moments of inertia as a vector
+	 */
+	public Vector getMomentOfInertia(){
+		return new Vector((float)inertiaTensor.getItemAt(0, 0), (float)inertiaTensor.getItemAt(1, 1), (float)inertiaTensor.getItemAt(2, 2));
+	}
+
+	/**
+	 * Checks these mass properties against an estimate from random points inside the mesh, see estimate. Both are in the
+	 * local space of the mesh, so the moments of inertia are around the same axes.
+	 * Very slow and a little different every time, only for checking calculate from a benchmark or test.
+	 * @param mesh the mesh these mass properties are for
+	 * @param samples how many random points to pick, see estimate
+	 * @param random the random numbers to use
+	 * @return {the distance between the centers of mass over the cube root of the volume, the size of the difference of the
+	 * inertia tensors over the size of this tensor}, or null if the estimate gave up
+	 */
+	public float[] validate(PhysicsMesh mesh, int samples, Random random){
+		MassProperties estimate = estimate(mesh, mass/volume, samples, random);
+		if(estimate == null){
+			return null;
+		}
+		float centroidError = (float)(Point.distance(centroid, estimate.centroid)/Math.cbrt(volume));
+		double difference = 0, size = 0;
+		for(int r = 0; r < 3; r++){
+			for(int c = 0; c < 3; c++){
+				double d = inertiaTensor.getItemAt(r, c) - estimate.inertiaTensor.getItemAt(r, c);
+				difference += d*d;
+				size += inertiaTensor.getItemAt(r, c)*inertiaTensor.getItemAt(r, c);
+			}
+		}
+		return new float[]{centroidError, (float)Math.sqrt(difference/size)};
+	}
+
+	/**
+	 * Estimates the mass properties of a closed mesh by picking random points in the box around it and keeping the ones inside
+	 * (the old way PhysicsBody found them). Picks the same number of points no matter what, so a mesh with no volume can't make
+	 * it go forever.
+	 * @param mesh the mesh, in its local space
+	 * @param density the density in kilograms/m^3
+	 * @param samples how many random points to pick in the box
+	 * @param random the random numbers to use
+	 * @return the estimated mass properties, or null if none of the points were inside the mesh
+	 */
+	public static MassProperties estimate(PhysicsMesh mesh, float density, int samples, Random random){
+		float[] v = mesh.vertices;
+		float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+		for(int p = 0; p < v.length; p += 3){
+			minX = Math.min(minX, v[p]);
+			minY = Math.min(minY, v[p+1]);
+			minZ = Math.min(minZ, v[p+2]);
+			maxX = Math.max(maxX, v[p]);
+			maxY = Math.max(maxY, v[p+1]);
+			maxZ = Math.max(maxZ, v[p+2]);
+		}
+		//the same 10 sums as the integrals in calculate, but over the points instead of the volume
+		double[] sums = new double[10];
+		int inside = 0;
+		for(int i = 0; i < samples; i++){
+			float x = minX + random.nextFloat()*(maxX - minX);
+			float y = minY + random.nextFloat()*(maxY - minY);
+			float z = minZ + random.nextFloat()*(maxZ - minZ);
+			if(!mesh.containsPoint(x, y, z)){
+				continue;
+			}
+			inside++;
+			sums[1] += x;
+			sums[2] += y;
+			sums[3] += z;
+			sums[4] += x*x;
+			sums[5] += y*y;
+			sums[6] += z*z;
+			sums[7] += x*y;
+			sums[8] += y*z;
+			sums[9] += z*x;
+		}
+		if(inside == 0){
+			return null;
+		}
+		//every point stands for the same part of the volume of the box
+		double pointVolume = (double)(maxX - minX)*(maxY - minY)*(maxZ - minZ)/samples;
+		sums[0] = inside;
+		for(int i = 0; i < sums.length; i++){
+			sums[i] *= pointVolume;
+		}
+		return fromSums(sums, density);
+	}
+
+	/**
+	 * Calculates the mass properties of the closed mesh made by the faces
+	 * @param faces the faces of the mesh
+	 * @param density the density in kilograms/m^3
+	 * @return the mass properties
+	 */
+	public static MassProperties calculate(Face[] faces, float density){
+		//the integrals of 1, x, y, z, x^2, y^2, z^2, xy, yz, zx over the volume
+		double[] integrals = new double[10];
+		for(Face face : faces){
+			addTriangle(face.point1.x, face.point1.y, face.point1.z, face.point2.x, face.point2.y, face.point2.z,
+					face.point3.x, face.point3.y, face.point3.z, integrals);
+		}
+		MassProperties properties = fromIntegrals(integrals, density);
+		if(properties == null){
+			return calculateForBox(faces, density);
+		}
+		return properties;
+	}
+
+	/**
+	 * Calculates the mass properties of a closed indexed mesh, same as calculate(faces, density) without making faces
+	 * @param mesh the mesh
+	 * @param density the density in kilograms/m^3
+	 * @return the mass properties
+	 */
+	public static MassProperties calculate(PhysicsMesh mesh, float density){
+		double[] integrals = new double[10];
+		float[] v = mesh.vertices;
+		int[] indices = mesh.indices;
+		for(int t = 0; t < indices.length; t += 3){
+			int a = indices[t]*3, b = indices[t+1]*3, c = indices[t+2]*3;
+			addTriangle(v[a], v[a+1], v[a+2], v[b], v[b+1], v[b+2], v[c], v[c+1], v[c+2], integrals);
+		}
+		MassProperties properties = fromIntegrals(integrals, density);
+		if(properties == null){
+			return calculateForBox(mesh.toFaces(), density);
+		}
+		return properties;
+	}
+
+	/**
+	 * Turns the added up integrals into the mass properties
+	 * @param integrals the 10 integrals from addTriangle, before they are divided by the constants
+	 * @param density the density in kilograms/m^3
+	 * @return the mass properties, or null if the mesh has no volume
+	 */
+	private static MassProperties fromIntegrals(double[] integrals, float density){
+		integrals[0] /= 6;
+		for(int i = 1; i < 4; i++){
+			integrals[i] /= 24;
+		}
+		for(int i = 4; i < 7; i++){
+			integrals[i] /= 60;
+		}
+		for(int i = 7; i < 10; i++){
+			integrals[i] /= 120;
+		}
+		if(integrals[0] < 0){
+			//faces wound the other way, everything comes out negative
+			for(int i = 0; i < integrals.length; i++){
+				integrals[i] = -integrals[i];
+			}
+		}
+		if(integrals[0] < MIN_VOLUME){
+			return null;
+		}
+		return fromSums(integrals, density);
+	}
+
+	/**
+	 * Turns the integrals of 1, x, y, z, x^2, y^2, z^2, xy, yz and zx over the volume into the mass properties
+	 * @param integrals the 10 integrals
+	 * @param density the density in kilograms/m^3
+	 * @return the mass properties
+	 */
+	private static MassProperties fromSums(double[] integrals, float density){
+		double volume = integrals[0];
+		double cx = integrals[1]/volume;
+		double cy = integrals[2]/volume;
+		double cz = integrals[3]/volume;
+
+		//inertia around the center of mass using the parallel axis theorem
+		Matrix tensor = new Matrix(3, 3);
+		tensor.setItemAt(density*(integrals[5] + integrals[6] - volume*(cy*cy + cz*cz)), 0, 0);
+		tensor.setItemAt(density*(integrals[4] + integrals[6] - volume*(cz*cz + cx*cx)), 1, 1);
+		tensor.setItemAt(density*(integrals[4] + integrals[5] - volume*(cx*cx + cy*cy)), 2, 2);
+		double xy = -density*(integrals[7] - volume*cx*cy);
+		double yz = -density*(integrals[8] - volume*cy*cz);
+		double zx = -density*(integrals[9] - volume*cz*cx);
+		tensor.setItemAt(xy, 0, 1);
+		tensor.setItemAt(xy, 1, 0);
+		tensor.setItemAt(yz, 1, 2);
+		tensor.setItemAt(yz, 2, 1);
+		tensor.setItemAt(zx, 0, 2);
+		tensor.setItemAt(zx, 2, 0);
+		return new MassProperties((float)volume, (float)(density*volume), new Point((float)cx, (float)cy, (float)cz), tensor);
+	}
+
+	/**
+	 * Adds what one triangle adds to the integrals (before they are divided by the constants)
+	 * @param x0 the x of the first point
+	 * @param y0 the y of the first point
+	 * @param z0 the z of the first point
+	 * @param x1 the x of the second point
+	 * @param y1 the y of the second point
+	 * @param z1 the z of the second point
+	 * @param x2 the x of the third point
+	 * @param y2 the y of the third point
+	 * @param z2 the z of the third point
+	 * @param integrals the 10 integrals to add to
+	 */
+	private static void addTriangle(double x0, double y0, double z0, double x1, double y1, double z1, double x2, double y2, double z2, double[] integrals){
+		//normal times twice the area, from the cross product of two sides
+		double ax = x1 - x0, ay = y1 - y0, az = z1 - z0;
+		double bx = x2 - x0, by = y2 - y0, bz = z2 - z0;
+		double dx = ay*bz - az*by;
+		double dy = az*bx - ax*bz;
+		double dz = ax*by - ay*bx;
+
+		double[] x = subexpressions(x0, x1, x2);
+		double[] y = subexpressions(y0, y1, y2);
+		double[] z = subexpressions(z0, z1, z2);
+
+		integrals[0] += dx*x[0];
+		integrals[1] += dx*x[1];
+		integrals[2] += dy*y[1];
+		integrals[3] += dz*z[1];
+		integrals[4] += dx*x[2];
+		integrals[5] += dy*y[2];
+		integrals[6] += dz*z[2];
+		integrals[7] += dx*(y0*x[3] + y1*x[4] + y2*x[5]);
+		integrals[8] += dy*(z0*y[3] + z1*y[4] + z2*y[5]);
+		integrals[9] += dz*(x0*z[3] + x1*z[4] + x2*z[5]);
+	}
+
+	/**
+	 * Works out the sums of powers of one coordinate of the three points of a face that the integrals need
+	 * @param w0 the coordinate of the first point
+	 * @param w1 the coordinate of the second point
+	 * @param w2 the coordinate of the third point
+	 * @return f1, f2, f3, g0, g1, g2
+	 */
+	private static double[] subexpressions(double w0, double w1, double w2){
+		double temp0 = w0 + w1;
+		double f1 = temp0 + w2;
+		double temp1 = w0*w0;
+		double temp2 = temp1 + w1*temp0;
+		double f2 = temp2 + w2*f1;
+		double f3 = w0*temp1 + w1*temp2 + w2*f2;
+		double g0 = f2 + w0*(f1 + w0);
+		double g1 = f2 + w1*(f1 + w1);
+		double g2 = f2 + w2*(f1 + w2);
+		return new double[]{f1, f2, f3, g0, g1, g2};
+	}
+
+	/**
+	 * Used when the mesh isn't closed and has no volume. Treats the body like a solid box that fits around the faces.
+	 * @param faces the faces
+	 * @param density the density in kilograms/m^3
+	 * @return the mass properties of the box
+	 */
+	private static MassProperties calculateForBox(Face[] faces, float density){
+		float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+		for(Face face : faces){
+			for(Point p : face.getPoints()){
+				minX = Math.min(minX, p.x);
+				minY = Math.min(minY, p.y);
+				minZ = Math.min(minZ, p.z);
+				maxX = Math.max(maxX, p.x);
+				maxY = Math.max(maxY, p.y);
+				maxZ = Math.max(maxZ, p.z);
+			}
+		}
+		float x = maxX - minX, y = maxY - minY, z = maxZ - minZ;
+		float volume = x*y*z;
+		float mass = density*volume;
+		Matrix tensor = new Matrix(3, 3);
+		tensor.setItemAt(mass*(y*y + z*z)/12, 0, 0);
+		tensor.setItemAt(mass*(x*x + z*z)/12, 1, 1);
+		tensor.setItemAt(mass*(x*x + y*y)/12, 2, 2);
+		return new MassProperties(volume, mass, new Point((minX + maxX)/2, (minY + maxY)/2, (minZ + maxZ)/2), tensor);
+	}
+}
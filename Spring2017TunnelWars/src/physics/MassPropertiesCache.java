@@ -0,0 +1,313 @@
+package physics;
+
+import geometry.Face;
+import geometry.Point;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import math.Matrix;
+
+/**
+ * Remembers the mass properties of meshes so the same mesh doesn't have to be calculated again every time a body is made from it.
+ * Mass properties are found by a hash of the points of all the faces. They are kept for a density of 1 and scaled to the density
+ * that is asked for, since the mass and inertia go up with the density and the volume and centroid don't change.
+ * They are kept in memory, and saved to a small binary file in the folder of the .obj files so they are still there the next
+ * time the game starts. New entries are only written when flush is called (usually with flushAll after loading the objects),
+ * so loading a lot of meshes doesn't write the file again for every one of them.
+ * @author Isaac Zachmann
+ *
+ */
+public class MassPropertiesCache {
+
+	/**
+	 * The name of the file the cache is saved to
+	 */
+	public static final String FILE_NAME = "massproperties.cache";
+
+	/**
+	 * Written at the start of the file to make sure it is a cache file. Change VERSION if the format changes.
+	 */
+	private static final int MAGIC = 0x4D415353;
+
+	/**
+	 * The version of the file format
+	 */
+	private static final int VERSION = 2;
+
+	/**
+	 * The cache for every folder, so each file is only loaded once
+	 */
+	private static Map<File, MassPropertiesCache> caches = new HashMap<File, MassPropertiesCache>();
+
+	/**
+	 * The cache that is only kept in memory, for bodies that were not loaded from a file
+	 */
+	private static MassPropertiesCache memoryCache = new MassPropertiesCache(null);
+
+	/**
+	 * The file the cache is saved to, null if it is only kept in memory
+	 */
+	private File file;
+
+	/**
+	 * The mass properties for a density of 1, keyed by the hash of the faces
+	 */
+	private Map<Long, MassProperties> entries = new HashMap<Long, MassProperties>();
+
+	/**
+	 * True if there are entries that are not in the file yet
+	 */
+	private boolean dirty = false;
+
+	/**
+	 * Creates a cache
+	 * @param file the file to save to, or null to only keep it in memory
+	 */
+	private MassPropertiesCache(File file){
+		this.file = file;
+	}
+
+	/**
+	 * Gets the cache for the folder, loading it from the file the first time. A file that isn't a cache file or is from an old
+	 * version is ignored and written over on the next flush.
+	 * @param directory the folder the cache file goes in, usually the folder of the .obj files
+	 * @return the cache for the folder
+	 * @throws IOException if the file is there but can't be read
+	 */
+	public static synchronized MassPropertiesCache forDirectory(File directory) throws IOException{
+		File file = new File(directory, FILE_NAME).getAbsoluteFile();
+		MassPropertiesCache cache = caches.get(file);
+		if(cache == null){
+			cache = new MassPropertiesCache(file);
+			if(file.exists()){
+				cache.load();
+			}
+			caches.put(file, cache);
+		}
+		return cache;
+	}
+
+	/**
+	 * Writes the new entries of every folder's cache to their files, see flush
+	 * @throws IOException if a file can't be written, the other caches are still written
+	 */
+	public static void flushAll() throws IOException{
+		List<MassPropertiesCache> all;
+		synchronized(MassPropertiesCache.class){
+			all = new ArrayList<MassPropertiesCache>(caches.values());
+		}
+		IOException failure = null;
+		for(MassPropertiesCache cache : all){
+			try {
+				cache.flush();
+			} catch (IOException e) {
+				if(failure == null){
+					failure = e;
+				} else {
+					failure.addSuppressed(e);
+				}
+			}
+		}
+		if(failure != null){
+			throw failure;
+		}
+	}
+
+	/**
+	 * Gets the cache that is only kept in memory
+	 * @return the memory cache
+	 */
+	public static MassPropertiesCache getMemoryCache(){
+		return memoryCache;
+	}
+
+	/**
+	 * Gets the mass properties of the mesh, calculating them if they are not in the cache yet
+	 * @param faces the faces of the closed mesh
+	 * @param density the density in kilograms/m^3
+	 * @return the mass properties
+	 */
+	public synchronized MassProperties get(Face[] faces, float density){
+		long key = hash(faces);
+		MassProperties properties = entries.get(key);
+		if(properties == null){
+			properties = MassProperties.calculate(faces, 1);
+			entries.put(key, properties);
+			dirty = true;
+		}
+		return withDensity(properties, density);
+	}
+
+	/**
+	 * Gets the mass properties of the indexed mesh, calculating them if they are not in the cache yet.
+	 * Gives the same answer as get(faces, density) for the faces of the mesh.
+	 * @param mesh the closed mesh
+	 * @param density the density in kilograms/m^3
+	 * @return the mass properties
+	 */
+	public synchronized MassProperties get(PhysicsMesh mesh, float density){
+		long key = hash(mesh);
+		MassProperties properties = entries.get(key);
+		if(properties == null){
+			properties = MassProperties.calculate(mesh, 1);
+			entries.put(key, properties);
+			dirty = true;
+		}
+		return withDensity(properties, density);
+	}
+
+	/**
+	 * Writes the cache to its file if anything was added since it was loaded or last written. It is written to a new file
+	 * first and then moved over the old one, so if the game stops in the middle the old file is still all there.
+	 * Does nothing for the memory cache.
+	 * @throws IOException if the file can't be written, the entries are still kept to try again next time
+	 */
+	public synchronized void flush() throws IOException{
+		if(file == null || !dirty){
+			return;
+		}
+		File temp = new File(file.getPath()+".tmp");
+		save(temp);
+		try {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		dirty = false;
+	}
+
+	/**
+	 * Scales mass properties for a density of 1 to another density
+	 * @param properties the mass properties for a density of 1, from the cache
+	 * @param density the density in kilograms/m^3
+	 * @return new mass properties, so the cached ones can't be changed
+	 */
+	private static MassProperties withDensity(MassProperties properties, float density){
+		return new MassProperties(properties.volume, properties.mass*density, properties.centroid,
+				Matrix.multiplyMatrixByScalar(properties.inertiaTensor, density));
+	}
+
+	/**
+	 * Gets the number of meshes in the cache
+	 * @return the number of entries
+	 */
+	public synchronized int size(){
+		return entries.size();
+	}
+
+	/**
+	 * Makes a 64 bit hash of the points of all the faces (FNV-1a on the bits of every float)
+	 * @param faces the faces
+	 * @return the hash
+	 */
+	public static long hash(Face[] faces){
+		long hash = 0xcbf29ce484222325L;
+		hash = (hash ^ faces.length) * 0x100000001b3L;
+		for(Face face : faces){
+			hash = (hash ^ Float.floatToIntBits(face.point1.x)) * 0x100000001b3L;
+			hash = (hash ^ Float.floatToIntBits(face.point1.y)) * 0x100000001b3L;
+			hash = (hash ^ Float.floatToIntBits(face.point1.z)) * 0x100000001b3L;
+			hash = (hash ^ Float.floatToIntBits(face.point2.x)) * 0x100000001b3L;
+			hash = (hash ^ Float.floatToIntBits(face.point2.y)) * 0x100000001b3L;
+			hash = (hash ^ Float.floatToIntBits(face.point2.z)) * 0x100000001b3L;
+			hash = (hash ^ Float.floatToIntBits(face.point3.x)) * 0x100000001b3L;
+			hash = (hash ^ Float.floatToIntBits(face.point3.y)) * 0x100000001b3L;
+			hash = (hash ^ Float.floatToIntBits(face.point3.z)) * 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * Makes the same hash as hash(faces) for the faces of the mesh, going through the triangles in order
+	 * @param mesh the mesh
+	 * @return the hash
+	 */
+	public static long hash(PhysicsMesh mesh){
+		float[] v = mesh.vertices;
+		int[] indices = mesh.indices;
+		long hash = 0xcbf29ce484222325L;
+		hash = (hash ^ (indices.length/3)) * 0x100000001b3L;
+		for(int index : indices){
+			hash = (hash ^ Float.floatToIntBits(v[index*3])) * 0x100000001b3L;
+			hash = (hash ^ Float.floatToIntBits(v[index*3+1])) * 0x100000001b3L;
+			hash = (hash ^ Float.floatToIntBits(v[index*3+2])) * 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * Reads all the entries from the file. If the file is cut short or an old version it is ignored and written again on the
+	 * next flush.
+	 * @throws IOException if the file can't be read
+	 */
+	private void load() throws IOException{
+		Map<Long, MassProperties> loaded = new HashMap<Long, MassProperties>();
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if(in.readInt() != MAGIC || in.readInt() != VERSION){
+				dirty = true;
+				return;
+			}
+			int count = in.readInt();
+			for(int i = 0; i < count; i++){
+				long key = in.readLong();
+				float volume = in.readFloat();
+				float mass = in.readFloat();
+				Point centroid = new Point(in.readFloat(), in.readFloat(), in.readFloat());
+				Matrix tensor = new Matrix(3, 3);
+				for(int r = 0; r < 3; r++){
+					for(int c = 0; c < 3; c++){
+						tensor.setItemAt(in.readDouble(), r, c);
+					}
+				}
+				loaded.put(key, new MassProperties(volume, mass, centroid, tensor));
+			}
+		} catch (EOFException e) {
+			//cut short, none of it is used
+			dirty = true;
+			return;
+		}
+		entries.putAll(loaded);
+	}
+
+	/**
+	 * Writes all the entries to a file
+	 * @param to the file to write
+	 * @throws IOException if the file can't be written
+	 */
+	private void save(File to) throws IOException{
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(to)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(entries.size());
+			for(Map.Entry<Long, MassProperties> entry : entries.entrySet()){
+				MassProperties properties = entry.getValue();
+				out.writeLong(entry.getKey());
+				out.writeFloat(properties.volume);
+				out.writeFloat(properties.mass);
+				out.writeFloat(properties.centroid.x);
+				out.writeFloat(properties.centroid.y);
+				out.writeFloat(properties.centroid.z);
+				for(int r = 0; r < 3; r++){
+					for(int c = 0; c < 3; c++){
+						out.writeDouble(properties.inertiaTensor.getItemAt(r, c));
+					}
+				}
+			}
+		}
+	}
+}
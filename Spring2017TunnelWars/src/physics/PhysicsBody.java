@@ -1,11 +1,13 @@
 package physics;
 
-import java.util.ArrayList;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import geometry.Face;
 import geometry.ObjectImporter;
 import geometry.Point;
-import math.Ray;
+import math.Matrix;
 import math.Vector;
 
 /**
@@ -22,36 +24,84 @@ public class PhysicsBody {
 	public static final int CENTROID_ACCURACY = 100000;
 
 	/**
-	 * All the faces that make up this physics body
+	 * How many forces a body has room for before the arrays have to grow
 	 */
-	ArrayList<PhysicsFace> faces = new ArrayList<PhysicsFace>();
+	private static final int FORCE_CAPACITY = 4;
 
 	/**
-	 * An array list to store the remaining time for each torque/force
+	 * A force runs out when less than this part of a step is left on it
 	 */
-	ArrayList<Float> times = new ArrayList<Float>();
+	private static final float FORCE_TIME_ROUNDING = .001f;
 
 	/**
-	 * All the forces acting upon this body
+	 * The id to give to the next physics body that is made
 	 */
-	ArrayList<Vector> forces = new ArrayList<Vector>();
+	private static final AtomicInteger nextId = new AtomicInteger();
 
 	/**
-	 * All the torques acting upon this body
+	 * A number that is different for every physics body. Used to keep track of pairs of bodies.
 	 */
-	ArrayList<Vector> torques = new ArrayList<Vector>();
+	public final int id = nextId.getAndIncrement();
+
+	/**
+	 * The mesh of this physics body in local space. It never changes after the body is made, and can be shared with other bodies.
+	 * The position and orientation in the store say where the body is, and the world faces are made from this.
+	 */
+	private PhysicsMesh mesh;
+
+	/**
+	 * The faces in world space, with the pose of the body applied. Faces that share a vertex share the same Point, and the
+	 * points are changed in place when the body moves, so anything holding on to these faces sees the new positions.
+	 * Only updated when someone asks for them.
+	 */
+	private PhysicsFace[] worldFaces;
+
+	/**
+	 * The world point of each vertex of the mesh
+	 */
+	private Point[] worldPoints;
+
+	/**
+	 * The poseVersion when the world faces were last updated
+	 */
+	private int worldVersion = -1;
+
+	/**
+	 * The time left in seconds for each force/torque
+	 */
+	private float[] times = new float[FORCE_CAPACITY];
+
+	/**
+	 * All the forces acting upon this body, 3 floats each
+	 */
+	private float[] forces = new float[FORCE_CAPACITY*3];
+
+	/**
+	 * The torque of each force around the center of mass, 3 floats each
+	 */
+	private float[] torques = new float[FORCE_CAPACITY*3];
+
+	/**
+	 * How many forces are in use in times, forces and torques
+	 */
+	private int forceCount = 0;
+
+	/**
+	 * The sum of every force and torque in use, kept up to date as forces are added and run out so they never have to be
+	 * added up again every step
+	 */
+	private float netForceX, netForceY, netForceZ, netTorqueX, netTorqueY, netTorqueZ;
 
 	/**
 	 * The moment of inertia around the local x, y, and z axes in kg*m^2
-	 * Calculated when getMomentOfInertia() is called
 	 * NOTE: When doing math with momentOfInerta, you will usually want to use element by element multiplication.
 	 */
-	public Vector momentOfInertia = Vector.ZERO_VECTOR;
+	private Vector momentOfInertia = Vector.zero();
 
 	/**
-	 * The mass in kilograms of the physics body
+	 * The full 3x3 inertia tensor around the center of mass in kg*m^2. The diagonal is the same as momentOfInertia.
 	 */
-	public float mass;
+	private Matrix inertiaTensor = new Matrix(3, 3);
 
 	/**
 	 * The density in kilograms/m^3 of the physics body
@@ -59,78 +109,190 @@ public class PhysicsBody {
 	public float density = 10;
 
 	/**
-	 * Defines if this physics body is a "floor" if it is it will not be affected by gravity or move due to other forces
+	 * The body can fall asleep when its speed has been below this, in m/s, for sleepTime seconds
+	 */
+	public float sleepLinearVelocity = .05f;
+
+	/**
+	 * The body can fall asleep when its angular speed has been below this, in rad/s, for sleepTime seconds
 	 */
-	public boolean floor;
+	public float sleepAngularVelocity = .05f;
 
 	/**
-	 * The current position of the (center of mass?) of the body relative to the origin
-	 * NOTE: use move() function to set position to make sure faces move. Should make this private?
+	 * How long the body has to be slow before it falls asleep in seconds. Float.POSITIVE_INFINITY to never sleep.
 	 */
-	private Point position = Point.ORIGIN;
+	public float sleepTime = .5f;
 
 	/**
-	 * The current orientation of the physics body relative to the origin axes. Represented as a point because somehow???
+	 * True if the body is fast and small, like a shell. Bullets are swept along their path every step so they can't go through thin walls.
 	 */
-	private Point rotation = Point.ORIGIN;
+	private boolean bullet = false;
 
 	/**
-	 * The current linear velocity of the physics body
+	 * The convex shape the body collides as with other convex bodies, or null to always collide with the triangles of the mesh
 	 */
-	Vector linearVelocity = Vector.ZERO_VECTOR;
+	private ConvexShape shape = null;
 
 	/**
-	 * The current angular velocity of the physics body
+	 * The box around the mesh and shape in local space: the smallest x, y and z then the largest. Found when the mesh or shape
+	 * is set, BodyBox turns it into a box in world space from the pose every step without looking at the points.
 	 */
-	Vector angularVelocity = Vector.ZERO_VECTOR;
+	final float[] localBounds = new float[6];
 
 	/**
-	 * The acceleration of the physics body. Updated every engine update.
+	 * The radius of a sphere around the middle of localBounds that holds the whole body
 	 */
-	Vector acceleration = Vector.ZERO_VECTOR;
+	float boundingRadius;
 
 	/**
-	 * The angular acceleration of the physics body. Updated every engine update.
+	 * The store that holds the motion of this body (position, rotation, velocities, accelerations, mass).
+	 * Each body starts with its own store and is moved into the world's store when it is added to a physics engine.
 	 */
-	Vector angularAcceleration = Vector.ZERO_VECTOR;
+	BodyStore store = new BodyStore(1);
 
 	/**
-	 * The center of mass of this object. All objects have uniform density. This should be equal to the position.?
+	 * The row of this body in the store
+	 */
+	int index = store.add(this);
+
+	/**
+	 * The center of mass of this object in local space. All objects have uniform density. The body rotates around this point.
 	 **/
-	public Point centroid = Point.ORIGIN;
+	private Point localCentroid = Point.ORIGIN;
+
+	/**
+	 * Goes up by one every time the body moves or rotates. Lets other classes tell if the body moved since they last looked at it.
+	 */
+	int poseVersion = 0;
+
+	/**
+	 * True if the body is in the list of bodies that moved in its store, see poseChanged
+	 */
+	boolean poseQueued = false;
+
+	/**
+	 * The transform from local space to world space that updateWorldGeometry last used, see getLocalToWorld
+	 */
+	private final float[] localToWorld = new float[12];
 
 	/**
 	 * Creates a physics body using the specified faces
 	 * @param faces All the faces to add to the physics body
 	 */
 	public PhysicsBody(PhysicsFace faces[]){
-		for(PhysicsFace face : faces){
-			this.faces.add(face);
-		}
-		mass = 0;
+		this(PhysicsMesh.fromFaces(faces));
+	}
+
+	/**
+	 * Creates a physics body using the specified mesh
+	 * @param mesh the mesh of the body in local space
+	 */
+	public PhysicsBody(PhysicsMesh mesh){
+		setMesh(mesh);
 		density = 0;
-		recalculateCentroidAndMomentOfInertia();		
-		floor = false;
+		recalculateCentroidAndMomentOfInertia();
 	}
 
 	/**
-	 * Creates a physics body from the .obj file loaded from ObjectImporter
+	 * Creates a physics body with a convex shape like a sphere, box or capsule. The mesh is made from the shape (for drawing
+	 * and rays) and the mass properties are found exactly from the shape with a density of 10.
+	 * @param shape the shape of the body in local space
+	 */
+	public PhysicsBody(ConvexShape shape){
+		setMesh(shape.toMesh());
+		setShape(shape);
+		density = 10;
+		setMassProperties(shape.getMassProperties(density));
+	}
+
+	/**
+	 * Creates a physics body using the specified faces and mass properties that are already known, so they do not have to be
+	 * calculated again. Useful when making lots of copies of the same shape.
+	 * @param faces All the faces to add to the physics body
+	 * @param mass the mass in kilograms
+	 * @param centroid the center of mass in the same space as the faces
+	 * @param momentOfInertia the moment of inertia around the x, y, and z axes
+	 */
+	public PhysicsBody(PhysicsFace faces[], float mass, Point centroid, Vector momentOfInertia){
+		this(PhysicsMesh.fromFaces(faces), mass, centroid, momentOfInertia);
+	}
+
+	/**
+	 * Creates a physics body using the specified mesh and mass properties that are already known, so they do not have to be
+	 * calculated again. Useful when making lots of copies of the same shape, they can all use the same mesh.
+	 * @param mesh the mesh of the body in local space
+	 * @param mass the mass in kilograms
+	 * @param centroid the center of mass in the same space as the mesh
+	 * @param momentOfInertia the moment of inertia around the x, y, and z axes
+	 */
+	public PhysicsBody(PhysicsMesh mesh, float mass, Point centroid, Vector momentOfInertia){
+		setMesh(mesh);
+		store.mass[index] = mass;
+		this.localCentroid = centroid;
+		this.momentOfInertia = new Vector(momentOfInertia.getX(), momentOfInertia.getY(), momentOfInertia.getZ());
+		inertiaTensor.setItemAt(momentOfInertia.getX(), 0, 0);
+		inertiaTensor.setItemAt(momentOfInertia.getY(), 1, 1);
+		inertiaTensor.setItemAt(momentOfInertia.getZ(), 2, 2);
+		updateInverseMass();
+	}
+
+	/**
+	 * Creates a physics body from the .obj file loaded from ObjectImporter. The mass properties come from the cache file in the
+	 * folder of the .obj file, call MassPropertiesCache.flushAll() after loading the objects to save the new ones.
 	 * @param object the object to create a physics body from
+	 * @throws IOException if the cache file is there but can't be read
+	 */
+	public PhysicsBody(ObjectImporter object) throws IOException{
+		this(object.mesh, MassPropertiesCache.forDirectory(new File(object.fileName).getAbsoluteFile().getParentFile()));
+	}
+
+	/**
+	 * Creates a physics body using the specified mesh, getting the mass properties from the cache
+	 * @param mesh the mesh of the body in local space
+	 * @param cache the cache to get the mass properties from
 	 */
-	public PhysicsBody(ObjectImporter object){
-		this(PhysicsFace.generateFromFaces(object.faces.toArray(new Face[object.faces.size()])));
+	private PhysicsBody(PhysicsMesh mesh, MassPropertiesCache cache){
+		setMesh(mesh);
+		density = 10;
+		setMassProperties(cache.get(mesh, density));
 	}
 
 	/**
 	 * Applies a constant force to the of mass of the body. Force is then translated
-	 * into linear and angular motion (Torques and Forces).
+	 * into linear and angular motion (Torques and Forces). Forces on floors are dropped, floors can't move.
 	 * @param newForce the force (in newtons) to be applied to the body
 	 */
 	public void applyForce(Force newForce){
-		forces.add(newForce.force);
-		//T=R x F (wikipidia)
-		torques.add(Vector.corssMultiply(new Vector(centroid, newForce.position), newForce.force));//center to vector in local coords
-		times.add(newForce.time);
+		if(isFloor()){
+			return;
+		}
+		if(newForce.force.getX() != 0 || newForce.force.getY() != 0 || newForce.force.getZ() != 0){
+			wake();
+		}
+		if(forceCount == times.length){
+			times = Arrays.copyOf(times, forceCount*2);
+			forces = Arrays.copyOf(forces, forceCount*6);
+			torques = Arrays.copyOf(torques, forceCount*6);
+		}
+		float fx = newForce.force.getX(), fy = newForce.force.getY(), fz = newForce.force.getZ();
+		//T=R x F (wikipidia), R is from the center of mass to where the force is
+		Point centroid = getCentroid();
+		float rx = newForce.position.x - centroid.x, ry = newForce.position.y - centroid.y, rz = newForce.position.z - centroid.z;
+		float tx = ry*fz - rz*fy, ty = rz*fx - rx*fz, tz = rx*fy - ry*fx;
+		int f = forceCount++;
+		times[f] = newForce.time;
+		forces[f*3] = fx;
+		forces[f*3+1] = fy;
+		forces[f*3+2] = fz;
+		torques[f*3] = tx;
+		torques[f*3+1] = ty;
+		torques[f*3+2] = tz;
+		netForceX += fx;
+		netForceY += fy;
+		netForceZ += fz;
+		netTorqueX += tx;
+		netTorqueY += ty;
+		netTorqueZ += tz;
 	}
 
 	/**
@@ -138,7 +300,18 @@ public class PhysicsBody {
 	 * @param vel The vector that represents the velocity
 	 */
 	public void setLinearVelocity(Vector vel){
-		linearVelocity = vel;
+		wake();
+		store.velocityX[index] = vel.getX();
+		store.velocityY[index] = vel.getY();
+		store.velocityZ[index] = vel.getZ();
+	}
+
+	/**
+	 * Returns the velocity in m/s of the physics body
+	 * @return the velocity as a vector
+	 */
+	public Vector getLinearVelocity(){
+		return new Vector(store.velocityX[index], store.velocityY[index], store.velocityZ[index]);
 	}
 
 	/**
@@ -146,7 +319,18 @@ public class PhysicsBody {
 	 * @param vel The vector that represent angular velocity. 
 	 */
 	public void setAngularVelocity(Vector vel){
-		angularVelocity = vel;
+		wake();
+		store.angularVelocityX[index] = vel.getX();
+		store.angularVelocityY[index] = vel.getY();
+		store.angularVelocityZ[index] = vel.getZ();
+	}
+
+	/**
+	 * Returns the angular velocity in rad/s of the physics body
+	 * @return the angular velocity as a vector
+	 */
+	public Vector getAngularVelocity(){
+		return new Vector(store.angularVelocityX[index], store.angularVelocityY[index], store.angularVelocityZ[index]);
 	}
 
 	/**
@@ -154,7 +338,11 @@ public class PhysicsBody {
 	 * @param pos The new middle position
 	 */
 	public void setPosition(Point pos){
-		move(new Vector(position, pos));
+		move(new Vector(pos.x - store.positionX[index], pos.y - store.positionY[index], pos.z - store.positionZ[index]));
+		//it was put here, not moved here, so don't blend from where it was
+		store.previousPositionX[index] = pos.x;
+		store.previousPositionY[index] = pos.y;
+		store.previousPositionZ[index] = pos.z;
 	}
 
 	/**
@@ -162,15 +350,415 @@ public class PhysicsBody {
 	 * @return the position as a point
 	 */
 	public Point getPosition(){
-		return position;
+		return new Point(store.positionX[index], store.positionY[index], store.positionZ[index]);
+	}
+
+	/**
+	 * Returns the current orientation of the physics body, the rotation from local space to world space around the center of mass
+	 * @return the orientation as a unit quaternion {w, x, y, z}
+	 */
+	public float[] getOrientation(){
+		return new float[]{store.orientationW[index], store.orientationX[index], store.orientationY[index], store.orientationZ[index]};
+	}
+
+	/**
+	 * Gets the position between the last two physics steps, for drawing the body smoothly when the frame rate
+	 * is not the same as the physics step rate.
+	 * @param alpha how far between the steps, 0 for the step before the last and 1 for the last step, see PhysicsEngine.getInterpolationAlpha()
+	 * @return the blended position
+	 */
+	public Point getInterpolatedPosition(float alpha){
+		BodyStore s = store;
+		int i = index;
+		return new Point(s.previousPositionX[i] + (s.positionX[i] - s.previousPositionX[i])*alpha,
+				s.previousPositionY[i] + (s.positionY[i] - s.previousPositionY[i])*alpha,
+				s.previousPositionZ[i] + (s.positionZ[i] - s.previousPositionZ[i])*alpha);
+	}
+
+	/**
+	 * Gets the orientation between the last two physics steps, the same way as getInterpolatedPosition. The two quaternions
+	 * are blended and made unit length again (nlerp), which is close enough to slerp for how little a body turns in one step.
+	 * @param alpha how far between the steps, 0 to 1
+	 * @return the blended orientation as a unit quaternion {w, x, y, z}
+	 */
+	public float[] getInterpolatedOrientation(float alpha){
+		BodyStore s = store;
+		int i = index;
+		float w = s.orientationW[i], x = s.orientationX[i], y = s.orientationY[i], z = s.orientationZ[i];
+		float pw = s.previousOrientationW[i], px = s.previousOrientationX[i], py = s.previousOrientationY[i], pz = s.previousOrientationZ[i];
+		//q and -q are the same orientation, blend the short way around
+		if(pw*w + px*x + py*y + pz*z < 0){
+			pw = -pw;
+			px = -px;
+			py = -py;
+			pz = -pz;
+		}
+		float bw = pw + (w - pw)*alpha, bx = px + (x - px)*alpha, by = py + (y - py)*alpha, bz = pz + (z - pz)*alpha;
+		float scale = 1/(float)Math.sqrt(bw*bw + bx*bx + by*by + bz*bz);
+		return new float[]{bw*scale, bx*scale, by*scale, bz*scale};
+	}
+
+	/**
+	 * Gets the mass of the physics body
+	 * @return the mass in kilograms
+	 */
+	public float getMass(){
+		return store.mass[index];
+	}
+
+	/**
+	 * Sets the mass of the physics body. Call recalculateCentroidAndMomentOfInertia() after to change the moments of inertia too.
+	 * @param mass the mass in kilograms
+	 */
+	public void setMass(float mass){
+		store.mass[index] = mass;
+		updateInverseMass();
+	}
+
+	/**
+	 * Checks if this physics body is a "floor", if it is it will not be affected by gravity or move due to other forces
+	 * @return true if the body is a floor
+	 */
+	public boolean isFloor(){
+		return store.dynamic[index] == 0;
 	}
 
 	/**
-	 * Returns the current rotation of the physics body
-	 * @return the rotation as a point
+	 * Sets if this physics body is a "floor", if it is it will not be affected by gravity or move due to other forces.
+	 * Making a body a floor drops the forces on it.
+	 * @param floor true to make the body a floor
 	 */
-	public Point getRotation(){
-		return rotation;
+	public void setFloor(boolean floor){
+		store.dynamic[index] = floor ? 0 : 1;
+		store.updateMoving(index);
+		updateInverseMass();
+		if(floor){
+			//floors don't keep forces, see applyForce
+			forceCount = 0;
+			netForceX = netForceY = netForceZ = netTorqueX = netTorqueY = netTorqueZ = 0;
+		}
+	}
+
+	/**
+	 * Checks if the body is a bullet, see setBullet
+	 * @return true if the body is a bullet
+	 */
+	public boolean isBullet(){
+		return bullet;
+	}
+
+	/**
+	 * Makes the body a bullet or not. Bullets use continuous collision detection: the physics engine finds the first time in a step
+	 * that the body hits something and moves it back to there, so it can't go through something that is thinner than how far it moves
+	 * in one step. It takes more time than normal bodies, so only use it for fast bodies.
+	 * @param bullet true to make it a bullet
+	 */
+	public void setBullet(boolean bullet){
+		this.bullet = bullet;
+	}
+
+	/**
+	 * Checks if the body collides as a convex shape, see setConvex
+	 * @return true if the body has a convex shape
+	 */
+	public boolean isConvex(){
+		return shape != null;
+	}
+
+	/**
+	 * Makes the body collide as the convex hull of its mesh or with its triangles. Two convex bodies are tested with GJK and
+	 * EPA, which costs about the same no matter how many triangles they have, instead of testing their triangles against each
+	 * other. Use it for props that are convex (crates, shells), concave bodies like the tunnels have to use their triangles.
+	 * A convex body against a body that isn't convex still uses the triangles.
+	 * NOTE: the hull is made from the mesh the first time, so it costs the same as loading the mesh again.
+	 * @param convex true to use the convex hull of the mesh
+	 */
+	public void setConvex(boolean convex){
+		setShape(convex ? mesh.getConvexHull() : null);
+	}
+
+	/**
+	 * Gets the convex shape of the body
+	 * @return the shape, or null if the body collides with its triangles
+	 */
+	public ConvexShape getShape(){
+		return shape;
+	}
+
+	/**
+	 * Sets the convex shape of the body, in the same local space as its mesh. The mesh is still used for drawing, rays and
+	 * for collisions with bodies that aren't convex (spheres and capsules use their shape against those too).
+	 * Call recalculateCentroidAndMomentOfInertia() after to get the mass properties from the shape.
+	 * @param shape the shape, or null to collide with the triangles
+	 */
+	public void setShape(ConvexShape shape){
+		this.shape = shape;
+		updateLocalBounds();
+		//the box around the body changed
+		poseChanged();
+	}
+
+	/**
+	 * Checks if the body is awake. Sleeping bodies are not moved by the physics engine until something wakes them.
+	 * @return true if the body is awake
+	 */
+	public boolean isAwake(){
+		return store.awake[index] != 0;
+	}
+
+	/**
+	 * Wakes the body up so it is moved by the physics engine again. Applying a force or touching a moving body also wakes it.
+	 */
+	public void wake(){
+		store.setAwake(index, true);
+	}
+
+	/**
+	 * Puts the body to sleep and stops it. It stays where it is until it is woken up.
+	 */
+	public void sleep(){
+		BodyStore s = store;
+		int i = index;
+		s.setAwake(i, false);
+		s.velocityX[i] = s.velocityY[i] = s.velocityZ[i] = 0;
+		s.angularVelocityX[i] = s.angularVelocityY[i] = s.angularVelocityZ[i] = 0;
+		s.accelerationX[i] = s.accelerationY[i] = s.accelerationZ[i] = 0;
+		s.angularAccelerationX[i] = s.angularAccelerationY[i] = s.angularAccelerationZ[i] = 0;
+	}
+
+	/**
+	 * Checks if the body is moved by the physics engine, so it is awake and not a floor
+	 * @return true if the body moves
+	 */
+	boolean isMoving(){
+		return store.moving[index] != 0;
+	}
+
+	/**
+	 * Gets the moment of inertia around the local x, y, and z axes
+	 * @return a copy of the moment of inertia in kg*m^2
+	 */
+	public Vector getMomentOfInertia(){
+		return new Vector(momentOfInertia.getX(), momentOfInertia.getY(), momentOfInertia.getZ());
+	}
+
+	/**
+	 * Gets the full inertia tensor around the center of mass
+	 * @return the 3x3 inertia tensor in kg*m^2
+	 */
+	public Matrix getInertiaTensor(){
+		return inertiaTensor;
+	}
+
+	/**
+	 * Sets the inverse mass and inverse moments of inertia in the store from the mass and moment of inertia.
+	 * Floors get 0 so forces don't move them.
+	 */
+	private void updateInverseMass(){
+		float m = store.mass[index];
+		boolean floor = isFloor();
+		store.inverseMass[index] = floor || m == 0 ? 0 : 1/m;
+		store.inverseInertiaX[index] = floor || momentOfInertia.getX() == 0 ? 0 : 1/momentOfInertia.getX();
+		store.inverseInertiaY[index] = floor || momentOfInertia.getY() == 0 ? 0 : 1/momentOfInertia.getY();
+		store.inverseInertiaZ[index] = floor || momentOfInertia.getZ() == 0 ? 0 : 1/momentOfInertia.getZ();
+	}
+
+	/**
+	 * Returns all the faces that make up the physics body, where the body is now (world space)
+	 * @return the faces as an array
+	 */
+	public PhysicsFace[] getFaces(){
+		return Arrays.copyOf(getWorldFaces(), worldFaces.length);
+	}
+
+	/**
+	 * Returns the faces of the physics body in local space, before it was moved or rotated
+	 * @return the local faces as an array
+	 */
+	public PhysicsFace[] getLocalFaces(){
+		return mesh.toFaces();
+	}
+
+	/**
+	 * Returns the mesh of the physics body in local space
+	 * @return the mesh
+	 */
+	public PhysicsMesh getMesh(){
+		return mesh;
+	}
+
+	/**
+	 * Gets the center of mass of the body where it is now
+	 * @return the center of mass in world space
+	 */
+	public Point getCentroid(){
+		return new Point(localCentroid.x + store.positionX[index], localCentroid.y + store.positionY[index], localCentroid.z + store.positionZ[index]);
+	}
+
+	/**
+	 * Gets the center of mass of the body in local space, the point it rotates around
+	 * @return the local center of mass
+	 */
+	public Point getLocalCentroid(){
+		return localCentroid;
+	}
+
+	/**
+	 * Gets the world faces, updating them first if the body moved since the last time
+	 * @return the world faces, not a copy
+	 */
+	PhysicsFace[] getWorldFaces(){
+		updateWorldGeometry();
+		return worldFaces;
+	}
+
+	/**
+	 * Gets every different point of the world faces, updating them first if the body moved since the last time
+	 * @return the world points, not a copy
+	 */
+	Point[] getWorldPoints(){
+		updateWorldGeometry();
+		return worldPoints;
+	}
+
+	/**
+	 * Sets the mesh and makes the world faces to go with it, one world point for each vertex
+	 * @param mesh the mesh in local space
+	 */
+	private void setMesh(PhysicsMesh mesh){
+		this.mesh = mesh;
+		worldPoints = new Point[mesh.getVertexCount()];
+		for(int i = 0; i < worldPoints.length; i++){
+			worldPoints[i] = new Point(0, 0, 0);
+		}
+		worldFaces = mesh.makeFaces(worldPoints);
+		worldVersion = -1;
+		updateLocalBounds();
+	}
+
+	/**
+	 * Finds the box and sphere around the mesh and shape in local space, see localBounds
+	 */
+	private void updateLocalBounds(){
+		float[] vertices = mesh.vertices;
+		float[] b = localBounds;
+		b[0] = b[1] = b[2] = Float.POSITIVE_INFINITY;
+		b[3] = b[4] = b[5] = Float.NEGATIVE_INFINITY;
+		for(int p = 0; p < vertices.length; p += 3){
+			for(int k = 0; k < 3; k++){
+				b[k] = Math.min(b[k], vertices[p+k]);
+				b[k+3] = Math.max(b[k+3], vertices[p+k]);
+			}
+		}
+		if(shape != null){
+			//round shapes stick out past the points of their mesh
+			float[] support = new float[3];
+			for(int k = 0; k < 3; k++){
+				shape.support(k == 0 ? -1 : 0, k == 1 ? -1 : 0, k == 2 ? -1 : 0, support);
+				b[k] = Math.min(b[k], support[k]);
+				shape.support(k == 0 ? 1 : 0, k == 1 ? 1 : 0, k == 2 ? 1 : 0, support);
+				b[k+3] = Math.max(b[k+3], support[k]);
+			}
+		}
+		float cx = (b[0] + b[3])/2, cy = (b[1] + b[4])/2, cz = (b[2] + b[5])/2;
+		float radius = 0;
+		for(int p = 0; p < vertices.length; p += 3){
+			float dx = vertices[p] - cx, dy = vertices[p+1] - cy, dz = vertices[p+2] - cz;
+			radius = Math.max(radius, dx*dx + dy*dy + dz*dz);
+		}
+		radius = (float)Math.sqrt(radius);
+		if(shape != null){
+			radius = Math.max(radius, shape.getRadiusAround(cx, cy, cz));
+		}
+		boundingRadius = radius;
+	}
+
+	/**
+	 * Moves the world points to where the pose says they are and works out the cached numbers of the world faces again,
+	 * if the body moved since they were last updated.
+	 */
+	private void updateWorldGeometry(){
+		if(worldVersion == poseVersion){
+			return;
+		}
+		float[] m = localToWorld;
+		getLocalToWorld(m, 0);
+		//moved around the centroid like the pose says, not with the translation of m, so points don't lose precision far from the origin
+		float cx = localCentroid.x, cy = localCentroid.y, cz = localCentroid.z;
+		float tx = cx + store.positionX[index], ty = cy + store.positionY[index], tz = cz + store.positionZ[index];
+		float[] vertices = mesh.vertices;
+		for(int p = 0; p < worldPoints.length; p++){
+			float lx = vertices[p*3] - cx, ly = vertices[p*3+1] - cy, lz = vertices[p*3+2] - cz;
+			Point world = worldPoints[p];
+			world.x = m[0]*lx + m[1]*ly + m[2]*lz + tx;
+			world.y = m[3]*lx + m[4]*ly + m[5]*lz + ty;
+			world.z = m[6]*lx + m[7]*ly + m[8]*lz + tz;
+		}
+		for(PhysicsFace face : worldFaces){
+			face.updateCache();
+		}
+		worldVersion = poseVersion;
+	}
+
+	/**
+	 * Puts the transform from the local space of this body to world space in m, 12 floats from offset: the rotation row by row,
+	 * then the translation. world = rotation*(local - localCentroid) + localCentroid + position
+	 * @param m where to put the transform
+	 * @param offset the index of the first float
+	 */
+	void getLocalToWorld(float[] m, int offset){
+		BodyStore s = store;
+		int i = index;
+		float w = s.orientationW[i], x = s.orientationX[i], y = s.orientationY[i], z = s.orientationZ[i];
+		//rotation matrix from the quaternion
+		float m00 = 1 - 2*(y*y + z*z), m01 = 2*(x*y - w*z), m02 = 2*(x*z + w*y);
+		float m10 = 2*(x*y + w*z), m11 = 1 - 2*(x*x + z*z), m12 = 2*(y*z - w*x);
+		float m20 = 2*(x*z - w*y), m21 = 2*(y*z + w*x), m22 = 1 - 2*(x*x + y*y);
+		float cx = localCentroid.x, cy = localCentroid.y, cz = localCentroid.z;
+		m[offset] = m00;
+		m[offset+1] = m01;
+		m[offset+2] = m02;
+		m[offset+3] = m10;
+		m[offset+4] = m11;
+		m[offset+5] = m12;
+		m[offset+6] = m20;
+		m[offset+7] = m21;
+		m[offset+8] = m22;
+		m[offset+9] = cx + s.positionX[i] - (m00*cx + m01*cy + m02*cz);
+		m[offset+10] = cy + s.positionY[i] - (m10*cx + m11*cy + m12*cz);
+		m[offset+11] = cz + s.positionZ[i] - (m20*cx + m21*cy + m22*cz);
+	}
+
+	/**
+	 * Puts the transform from world space to the local space of this body in m, the opposite of getLocalToWorld.
+	 * local = rotation^T*(world - localCentroid - position) + localCentroid
+	 * @param m where to put the transform, 12 floats from offset: the rotation row by row, then the translation
+	 * @param offset the index of the first float
+	 */
+	void getWorldToLocal(float[] m, int offset){
+		getLocalToWorld(m, offset);
+		//the rotation is turned over, and the translation is turned back and flipped
+		float temp = m[offset+1];
+		m[offset+1] = m[offset+3];
+		m[offset+3] = temp;
+		temp = m[offset+2];
+		m[offset+2] = m[offset+6];
+		m[offset+6] = temp;
+		temp = m[offset+5];
+		m[offset+5] = m[offset+7];
+		m[offset+7] = temp;
+		float tx = m[offset+9], ty = m[offset+10], tz = m[offset+11];
+		for(int r = 0; r < 3; r++){
+			m[offset+9+r] = -(m[offset+r*3]*tx + m[offset+r*3+1]*ty + m[offset+r*3+2]*tz);
+		}
+	}
+
+	/**
+	 * Gets the tree of the local faces of the mesh of this body, see FaceTree for how to ask it about the body where it is now
+	 * @return the face tree
+	 */
+	FaceTree getFaceTree(){
+		return mesh.getFaceTree();
 	}
 
 	/**
@@ -178,66 +766,33 @@ public class PhysicsBody {
 	 * @param change the vector to move the body
 	 */
 	public void move(Vector change){
-		position = new Point(position, change);
-		centroid = new Point(centroid, change);
-		for(PhysicsFace f : faces){
-			f.point1 = new Point(f.point1, change);
-			f.point2 = new Point(f.point2, change);
-			f.point3 = new Point(f.point3, change);
-		}
+		store.positionX[index] += change.getX();
+		store.positionY[index] += change.getY();
+		store.positionZ[index] += change.getZ();
+		poseChanged();
 	}
 
 	/**
-	 * Rotates the body by the specified amount in rad around each axis
-	 * @param change
+	 * Rotates the body around its center of mass by the specified amount in rad. The direction of the vector is the axis
+	 * and the magnitude is the angle, so rotating by (0, 0, 1) turns 1 rad around the z axis.
+	 * @param change the rotation vector
 	 */
 	public void rotate(Vector change){
-		rotation = new Point(rotation, change);
-		Point originalCentroid = centroid;
-		this.move(new Vector(centroid, Point.ORIGIN));
-		for(PhysicsFace f : faces){
-				//Rotate around z, then x, then y axis: https://www.siggraph.org/education/materials/HyperGraph/modeling/mod_tran/3drota.htm
-			{
-				f.point1.x = (float) (f.point1.x*Math.cos(change.getZ())-f.point1.y*Math.sin(change.getZ()));
-				f.point1.y = (float) (f.point1.x*Math.sin(change.getZ())-f.point1.y*Math.cos(change.getZ()));
-				f.point1.z = f.point1.z;
-
-				f.point1.y = (float) (f.point1.y*Math.cos(change.getX())-f.point1.z*Math.sin(change.getX()));
-				f.point1.z = (float) (f.point1.y*Math.sin(change.getX())+f.point1.z*Math.cos(change.getX()));
-				f.point1.x = f.point1.x;
-
-				f.point1.z = (float) (f.point1.z*Math.cos(change.getY())-f.point1.x*Math.sin(change.getY()));
-				f.point1.x = (float) (f.point1.x*Math.sin(change.getY())+f.point1.x*Math.cos(change.getY()));
-				f.point1.y = f.point1.y;	
-			}
-			{
-				f.point2.x = (float) (f.point2.x*Math.cos(change.getZ())-f.point2.y*Math.sin(change.getZ()));
-				f.point2.y = (float) (f.point2.x*Math.sin(change.getZ())-f.point2.y*Math.cos(change.getZ()));
-				f.point2.z = f.point2.z;
-
-				f.point2.y = (float) (f.point2.y*Math.cos(change.getX())-f.point2.z*Math.sin(change.getX()));
-				f.point2.z = (float) (f.point2.y*Math.sin(change.getX())+f.point2.z*Math.cos(change.getX()));
-				f.point2.x = f.point2.x;
-
-				f.point2.z = (float) (f.point2.z*Math.cos(change.getY())-f.point2.x*Math.sin(change.getY()));
-				f.point2.x = (float) (f.point2.x*Math.sin(change.getY())+f.point2.x*Math.cos(change.getY()));
-				f.point2.y = f.point2.y;	
-			}
-			{
-				f.point3.x = (float) (f.point3.x*Math.cos(change.getZ())-f.point3.y*Math.sin(change.getZ()));
-				f.point3.y = (float) (f.point3.x*Math.sin(change.getZ())-f.point3.y*Math.cos(change.getZ()));
-				f.point3.z = f.point3.z;
-
-				f.point3.y = (float) (f.point3.y*Math.cos(change.getX())-f.point3.z*Math.sin(change.getX()));
-				f.point3.z = (float) (f.point3.y*Math.sin(change.getX())+f.point3.z*Math.cos(change.getX()));
-				f.point3.x = f.point3.x;
-
-				f.point3.z = (float) (f.point3.z*Math.cos(change.getY())-f.point3.x*Math.sin(change.getY()));
-				f.point3.x = (float) (f.point3.x*Math.sin(change.getY())+f.point3.x*Math.cos(change.getY()));
-				f.point3.y = f.point3.y;	
-			}
+		store.rotateOrientation(index, change.getX(), change.getY(), change.getZ());
+		poseChanged();
+	}
+
+	/**
+	 * Lets everything that looks at the pose know the body moved or rotated: poseVersion goes up so the world faces and face
+	 * tree are moved the next time they are needed, and the body is put in the list of bodies that moved in its store so the
+	 * engine can tell the broadphase. Not safe to call for two bodies of the same store at the same time.
+	 */
+	void poseChanged(){
+		poseVersion++;
+		if(!poseQueued){
+			poseQueued = true;
+			store.addMoved(this);
 		}
-		this.move(new Vector(Point.ORIGIN, originalCentroid));
 	}
 
 	/**
@@ -246,18 +801,27 @@ public class PhysicsBody {
 	 * @return true if the point is on the inside of the body, false if otherwise
 	 */
 	public boolean isPointInBody(Point point){
-		int numberOfFaceIntersections = 0;
-		Ray testRay = new Ray(point, new Vector(1,0,0));
-		for(PhysicsFace face : faces){
-			if(testRay.intersectsFace(face) != null){ //Direction dont matter, can be any direction for a closed object
-				numberOfFaceIntersections++;
-			}
-		}
-		if(numberOfFaceIntersections % 2 == 1){
-			return true;
-		} else {
-			return false;
-		}
+		//test the local mesh with the point moved into local space, so the world faces don't have to be updated
+		Point local = toLocal(point);
+		return mesh.containsPoint(local.x, local.y, local.z);
+	}
+
+	/**
+	 * Moves a point from world space into the local space of this body, the opposite of what updateWorldGeometry does
+	 * @param point the point in world space
+	 * @return the point in local space
+	 */
+	Point toLocal(Point point){
+		BodyStore s = store;
+		int i = index;
+		float w = s.orientationW[i], x = -s.orientationX[i], y = -s.orientationY[i], z = -s.orientationZ[i];//inverse rotation
+		float cx = localCentroid.x, cy = localCentroid.y, cz = localCentroid.z;
+		float px = point.x - cx - s.positionX[i], py = point.y - cy - s.positionY[i], pz = point.z - cz - s.positionZ[i];
+		//v + 2w(q x v) + 2q x (q x v)
+		float ax = 2*(y*pz - z*py), ay = 2*(z*px - x*pz), az = 2*(x*py - y*px);
+		return new Point(px + w*ax + (y*az - z*ay) + cx, 
+				py + w*ay + (z*ax - x*az) + cy, 
+				pz + w*az + (x*ay - y*ax) + cz);
 	}
 
 	/**
@@ -265,11 +829,7 @@ public class PhysicsBody {
 	 * @return the net force acting upon the physics body
 	 */
 	public Vector getNetForce(){
-		Vector totalForce = Vector.ZERO_VECTOR;
-		for(Vector force : forces){
-			totalForce = Vector.addVectors(force, totalForce);
-		}
-		return totalForce;
+		return new Vector(netForceX, netForceY, netForceZ);
 	}
 
 	/**
@@ -277,85 +837,92 @@ public class PhysicsBody {
 	 * @return the net torque acting upon the physics body
 	 */
 	public Vector getNetTorque(){
-		Vector totalTorque = Vector.ZERO_VECTOR;
-		for(Vector torque : torques){
-			totalTorque = Vector.addVectors(torque, totalTorque);
-		}
-		return totalTorque;
+		return new Vector(netTorqueX, netTorqueY, netTorqueZ);
 	}
 
 	/**
-	 * Recalculates center of mass and moments of inertia for this physics body. Do this after changing mass, or density.
+	 * Puts the net force and torque on the body into the force and torque columns of the store
 	 */
-	public void recalculateCentroidAndMomentOfInertia(){
-		float maxX = 0, maxY = 0, maxZ = 0, minX = 0, minY = 0, minZ = 0;
-		for(PhysicsFace face : this.faces){
-			for(Point point : face.getPoints()){
-				if(point.x < minX){
-					minX = point.x;
-				} else if (point.x > maxX){
-					maxX = point.x;
-				}
-
-				if(point.y < minY){
-					minY = point.y;
-				} else if (point.y > maxY){
-					maxY = point.y;
-				}
-
-				if(point.z < minZ){
-					minZ = point.z;
-				} else if (point.z > maxZ){
-					maxZ = point.z;
-				}
+	void sumForces(){
+		store.forceX[index] = netForceX;
+		store.forceY[index] = netForceY;
+		store.forceZ[index] = netForceZ;
+		store.torqueX[index] = netTorqueX;
+		store.torqueY[index] = netTorqueY;
+		store.torqueZ[index] = netTorqueZ;
+	}
+
+	/**
+	 * Takes the time of a step off every force and removes the ones that ran out, moving the rest down to fill the gaps.
+	 * Call it after sumForces so a force is used for every step that starts before its time runs out.
+	 * @param timeBetween the time of the step in seconds
+	 */
+	void expireForces(float timeBetween){
+		int kept = 0;
+		for(int f = 0; f < forceCount; f++){
+			float left = times[f] - timeBetween;
+			//a force with a tiny bit of time left from rounding would get a whole extra step
+			if(left <= timeBetween*FORCE_TIME_ROUNDING){
+				continue;
 			}
+			times[kept] = left;
+			if(kept != f){
+				System.arraycopy(forces, f*3, forces, kept*3, 3);
+				System.arraycopy(torques, f*3, torques, kept*3, 3);
+			}
+			kept++;
 		}
+		if(kept == forceCount){
+			return;
+		}
+		forceCount = kept;
+		//add up the ones that are left instead of taking away the ones that ran out, so rounding doesn't build up
+		netForceX = netForceY = netForceZ = netTorqueX = netTorqueY = netTorqueZ = 0;
+		for(int f = 0; f < forceCount; f++){
+			netForceX += forces[f*3];
+			netForceY += forces[f*3+1];
+			netForceZ += forces[f*3+2];
+			netTorqueX += torques[f*3];
+			netTorqueY += torques[f*3+1];
+			netTorqueZ += torques[f*3+2];
+		}
+	}
 
-
+	/**
+	 * Recalculates center of mass and moments of inertia for this physics body. Do this after changing mass, or density.
+	 * These are found exactly from the faces (see MassProperties), and kept in memory for the next body with the same faces.
+	 * Spheres, boxes and capsules have formulas for them so they come from the shape instead.
+	 */
+	public void recalculateCentroidAndMomentOfInertia(){
 		//Set default mass
 		if(density == 0){
 			density = 10;
 		}
-		if(mass == 0){
-			mass = density*(maxX-minX)*(maxY-minY)*(maxZ-minZ);
-		}
-		//calc centroid;
-		ArrayList<Point> inBody = new ArrayList<Point>();
-		for(int i = 0; i < CENTROID_ACCURACY; i++){
-			Point randomPoint = new Point(
-					(float)(minX+Math.random()*(maxX-minX)),
-					(float)(minY+Math.random()*(maxY-minY)),
-					(float)(minZ+Math.random()*(maxZ-minZ)));
-			while (!isPointInBody(randomPoint)) {
-				randomPoint = new Point(
-						(float)(minX+Math.random()*(maxX-minX)),
-						(float)(minY+Math.random()*(maxY-minY)),
-						(float)(minZ+Math.random()*(maxZ-minZ)));
-			}
-			inBody.add(randomPoint);
-		}
-		float totalX = 0, totalY = 0, totalZ = 0;
-		for(Point p : inBody){
-			totalX += p.x;
-			totalY += p.y;
-			totalZ += p.z;
+		if(shape != null && shape.getType() != ConvexShape.HULL){
+			setMassProperties(shape.getMassProperties(density));
+			return;
 		}
-		centroid = new Point(totalX/CENTROID_ACCURACY, 
-				totalY/CENTROID_ACCURACY, 
-				totalZ/CENTROID_ACCURACY);
-		//position = centroid;
-		//calc Moment of inertias for x, y, and z axis
-		float massOfOnePoint = mass/CENTROID_ACCURACY;
-		Ray xAxis = new Ray(centroid, new Vector(1,0,0));
-		Ray yAxis = new Ray(centroid, new Vector(0,1,0));
-		Ray zAxis = new Ray(centroid, new Vector(0,0,1));
-		momentOfInertia = Vector.ZERO_VECTOR;
-		for(Point p : inBody){//mr^2
-			momentOfInertia = Vector.addVectors(momentOfInertia, new Vector(
-					(float)(massOfOnePoint*Math.pow(xAxis.distanceFromPointToLine(p), 2)),
-					(float)(massOfOnePoint*Math.pow(yAxis.distanceFromPointToLine(p), 2)),
-					(float)(massOfOnePoint*Math.pow(zAxis.distanceFromPointToLine(p), 2))));
+		setMassProperties(MassPropertiesCache.getMemoryCache().get(mesh, density));
+	}
+
+	/**
+	 * Sets the center of mass and moments of inertia from the mass properties of the faces. If mass is 0 it is set from the
+	 * properties, otherwise the density is set from the mass and volume.
+	 * @param properties the mass properties of the faces with the current density
+	 */
+	private void setMassProperties(MassProperties properties){
+		float mass = store.mass[index];
+		if(mass == 0){
+			mass = properties.mass;
+			store.mass[index] = mass;
+		} else {
+			density = mass/properties.volume;
 		}
+		//scaling also copies the tensor, the cached one is shared
+		inertiaTensor = Matrix.multiplyMatrixByScalar(properties.inertiaTensor, mass/properties.mass);
+		localCentroid = properties.centroid;
+		momentOfInertia = new Vector((float)inertiaTensor.getItemAt(0, 0), (float)inertiaTensor.getItemAt(1, 1), (float)inertiaTensor.getItemAt(2, 2));
+		updateInverseMass();
 	}
 
 	//no longer needed: calculate center of mass in constructor
@@ -383,33 +950,13 @@ public class PhysicsBody {
 	}*/
 
 	/**
-	 * Gets the middle point of the physics body. Calculated by the middle of the largest and smallest coordinates.
+	 * Gets the middle point of the physics body. Calculated by the middle of the box around the body in local space, moved
+	 * to where the body is.
 	 * @return The middle of this physics body
 	 * @deprecated should do all calculations on center of mass instead
 	 */
 	public Point getMiddlePoint(){
-		float maxX = 0, maxY = 0, maxZ = 0, minX = 0, minY = 0, minZ = 0;
-		for(PhysicsFace face : this.faces){
-			for(Point point : face.getPoints()){
-				if(point.x < minX){
-					minX = point.x;
-				} else if (point.x > maxX){
-					maxX = point.x;
-				}
-
-				if(point.y < minY){
-					minY = point.y;
-				} else if (point.y > maxY){
-					maxY = point.y;
-				}
-
-				if(point.z < minZ){
-					minZ = point.z;
-				} else if (point.z > maxZ){
-					maxZ = point.z;
-				}
-			}
-		}
-		return Point.midpoint(new Point(maxX, maxY, maxZ), new Point(minX, minY, minZ));
+		BodyBox box = new BodyBox(this);
+		return Point.midpoint(box.getMin(), box.getMax());
 	}
 }
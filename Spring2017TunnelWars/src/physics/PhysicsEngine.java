@@ -4,7 +4,10 @@ import geometry.Point;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
 
+import math.Ray;
 import math.Vector;
 
 /**
@@ -15,24 +18,131 @@ import math.Vector;
 public class PhysicsEngine {
 
 	/**
-	 * All the physics bodies in this physics world, except one tick behind actual time.
+	 * All the physics bodies in this physics world, in the order they were added.
+	 * The state of earlier steps is in snapshots, not in copies of the bodies.
 	 */
 	List<PhysicsBody> bodies = new ArrayList<PhysicsBody>();
 
 	/**
-	 * All the physics bodies in this physics world
+	 * The default number of steps kept in the snapshot buffer, about half a second at the default step
 	 */
-	private List<PhysicsBody> pastBodies = new ArrayList<PhysicsBody>();
+	public static final int DEFAULT_SNAPSHOTS = 64;
 
 	/**
-	 * All the physics bodies in this physics world, except one tick ahead of the actual time.
+	 * The state of the bodies for the last few steps
 	 */
-	private List<PhysicsBody> futureBodies = new ArrayList<PhysicsBody>();
+	private SnapshotBuffer snapshots = new SnapshotBuffer(DEFAULT_SNAPSHOTS);
 
 	/**
-	 * The time of the last physics update
+	 * The physics time of the end of the last step in seconds, all the steps added up
 	 */
-	private long lastTime;
+	private double time = 0;
+
+	/**
+	 * The motion of all the bodies in this physics world, one row per body
+	 */
+	private BodyStore store = new BodyStore(16);
+
+	/**
+	 * Finds the bodies that could be colliding, keeps its data between updates
+	 */
+	private Broadphase broadphase = new SweepAndPrune();
+
+	/**
+	 * Pushes touching bodies apart, keeps the contacts between steps
+	 */
+	private ContactSolver solver = new ContactSolver();
+
+	/**
+	 * Sweeps the bodies set as bullets so they can't go through thin things
+	 */
+	private ContinuousCollision continuous = new ContinuousCollision();
+
+	/**
+	 * The island of each row for the last step, see updateSleep. Kept so it isn't made again every step.
+	 */
+	private int[] islands = new int[16];
+
+	/**
+	 * If every body of the island with this root can sleep
+	 */
+	private boolean[] islandCanSleep = new boolean[16];
+
+	/**
+	 * The number of bodies that were awake after the last step, not counting floors
+	 */
+	private int awakeCount = 0;
+
+	/**
+	 * The number of bodies that were sleeping after the last step, not counting floors
+	 */
+	private int sleepingCount = 0;
+
+	/**
+	 * The most bodies one parallel task integrates
+	 */
+	private static final int BODIES_PER_TASK = 1024;
+
+	/**
+	 * The number of threads used for the physics update. 1 means everything runs on the thread that calls physicsUpdate.
+	 */
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * The threads used when parallelism is more than 1. Made the first time they are needed.
+	 */
+	private ForkJoinPool workers = null;
+
+	/**
+	 * Worlds with fewer bodies than this are integrated on one thread, splitting the work up would take longer than doing it
+	 */
+	private int minParallelBodies = 4096;
+
+	/**
+	 * If there are fewer pairs than this, stage 3 of collision detection runs on one thread
+	 */
+	private int minParallelPairs = 32;
+
+	/**
+	 * The most rays one task casts in a batch
+	 */
+	private static final int RAYS_PER_TASK = 64;
+
+	/**
+	 * If a batch has fewer rays than this, they are cast on one thread
+	 */
+	private int minParallelRays = 256;
+
+	/**
+	 * The default length of one physics step in seconds
+	 */
+	public static final float DEFAULT_STEP = 1/120f;
+
+	/**
+	 * The default most steps one physicsUpdate can do
+	 */
+	public static final int DEFAULT_MAX_STEPS = 8;
+
+	/**
+	 * The time of the last physics update from System.nanoTime(), 0 before the first update
+	 */
+	private long lastTime = 0;
+
+	/**
+	 * The length of one physics step in seconds. Every step is this long, no matter how long the frames are.
+	 */
+	private float fixedStep = DEFAULT_STEP;
+
+	/**
+	 * The most steps one physicsUpdate can do. If the game falls further behind than this the extra time is dropped,
+	 * otherwise a slow update would need more steps next time, which would be even slower (the "spiral of death").
+	 */
+	private int maxSteps = DEFAULT_MAX_STEPS;
+
+	/**
+	 * The time that has passed but not been stepped yet, always less than one step after an update
+	 */
+	private float accumulator = 0;
 
 	/**
 	 * The time multiplier of the physics world.
@@ -57,147 +167,555 @@ public class PhysicsEngine {
 	 */
 	public void addBody(PhysicsBody body){
 		bodies.add(body);
-		pastBodies.add(body);
-		futureBodies.add(body);
+		store.moveHere(body);
+		broadphase.addBody(body);
+	}
+
+	/**
+	 * Removes the specified physics body from this physics world
+	 * @param body the body to remove
+	 */
+	public void removeBody(PhysicsBody body){
+		if(body.store != store){
+			return;
+		}
+		bodies.remove(body);
+		//the body gets its own store again so it still works outside of the world
+		new BodyStore(1).moveHere(body);
+		broadphase.removeBody(body);
+	}
+
+	/**
+	 * Tells the broadphase about every body that moved since the last step, from the step or from move and rotate
+	 */
+	private void tellBroadphaseMoved(){
+		BodyStore s = store;
+		for(int i = 0; i < s.movedCount; i++){
+			PhysicsBody body = s.movedBodies[i];
+			s.movedBodies[i] = null;
+			//a body that was taken out of the world is in another store now
+			if(body.store == s){
+				body.poseQueued = false;
+				broadphase.bodyMoved(body);
+			}
+		}
+		s.movedCount = 0;
+	}
+
+	/**
+	 * Changes how this physics world finds bodies that could be colliding. All the bodies are added to the new broadphase.
+	 * @param broadphase the new broadphase, for example a SweepAndPrune or a DynamicAABBTree
+	 */
+	public void setBroadphase(Broadphase broadphase){
+		for(PhysicsBody body : bodies){
+			this.broadphase.removeBody(body);
+			broadphase.addBody(body);
+		}
+		this.broadphase = broadphase;
+	}
+
+	/**
+	 * Gets the broadphase this physics world uses to find bodies that could be colliding
+	 * @return the broadphase
+	 */
+	public Broadphase getBroadphase(){
+		return broadphase;
+	}
+
+	/**
+	 * Sets how many threads the physics update can use. The results are the same no matter how many threads are used.
+	 * @param parallelism the number of threads, 1 to do everything on the thread that calls physicsUpdate
+	 */
+	public void setParallelism(int parallelism){
+		if(parallelism < 1){
+			throw new IllegalArgumentException("parallelism must be at least 1");
+		}
+		if(parallelism != this.parallelism && workers != null){
+			workers.shutdown();
+			workers = null;
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Gets how many threads the physics update can use
+	 * @return the parallelism
+	 */
+	public int getParallelism(){
+		return parallelism;
+	}
+
+	/**
+	 * Sets how big the world has to be before the work is split between threads. Small worlds are faster on one thread.
+	 * @param minBodies the fewest bodies to integrate in parallel
+	 * @param minPairs the fewest pairs from the broadphase to run stage 3 in parallel
+	 */
+	public void setParallelThreshold(int minBodies, int minPairs){
+		minParallelBodies = minBodies;
+		minParallelPairs = minPairs;
+	}
+
+	/**
+	 * Gets the threads to use for work of the given size
+	 * @param size the number of things to work on
+	 * @param minSize the fewest things that are worth using more threads for
+	 * @return the pool, or null if the work should run on this thread
+	 */
+	private ForkJoinPool getWorkers(int size, int minSize){
+		if(parallelism <= 1 || size < minSize){
+			return null;
+		}
+		if(workers == null){
+			workers = new ForkJoinPool(parallelism);
+		}
+		return workers;
+	}
+
+	/**
+	 * Sets how long one physics step is. Shorter steps are more accurate but take more time.
+	 * @param step the length of a step in seconds
+	 * @param maxSteps the most steps one physicsUpdate can do before dropping time
+	 */
+	public void setFixedStep(float step, int maxSteps){
+		if(step <= 0 || maxSteps < 1){
+			throw new IllegalArgumentException("the step must be more than 0 and maxSteps at least 1");
+		}
+		fixedStep = step;
+		this.maxSteps = maxSteps;
+		accumulator = Math.min(accumulator, step);
+	}
+
+	/**
+	 * Gets the length of one physics step
+	 * @return the step in seconds
+	 */
+	public float getFixedStep(){
+		return fixedStep;
+	}
+
+	/**
+	 * Gets the most steps one physicsUpdate can do
+	 * @return the max steps
+	 */
+	public int getMaxSteps(){
+		return maxSteps;
+	}
+
+	/**
+	 * Gets how far the time is between the last two physics steps, to blend the bodies with getInterpolatedPosition() and
+	 * getInterpolatedOrientation() when drawing them. The bodies are drawn a little bit behind the physics, but they move smoothly.
+	 * @return 0 to 1, the time left over after the last step divided by the step
+	 */
+	public float getInterpolationAlpha(){
+		return accumulator/fixedStep;
 	}
 
 	/**
 	 * Updates all physics for this engine. Should be called every update to move all physics bodies, calculate forces, etc.
-	 * Note: should probably change from Euler Integration to Velocity Verlet
-	 * Note: Perhaps best to run this in a new thread
-	 * @return the time, in milliseconds, between this update and the last update
+	 * The time since the last update is measured with System.nanoTime() and used up in steps of getFixedStep(), the time left
+	 * over is saved for the next update. The first update only starts the clock.
+	 * Integration and stage 3 of collision detection are split between threads for big worlds, see setParallelism.
+	 * @return the physics time that was stepped in seconds
 	 */
 	public float physicsUpdate(){
-		float timeBetween = (float) timeMultiplier*((System.currentTimeMillis() - lastTime)/1000);
+		long now = System.nanoTime();
+		if(lastTime != 0){
+			accumulator += timeMultiplier*(now - lastTime)/1e9f;
+		}
+		lastTime = now;
+		int steps = 0;
+		while(accumulator >= fixedStep && steps < maxSteps){
+			step(fixedStep);
+			accumulator -= fixedStep;
+			steps++;
+		}
+		if(accumulator >= fixedStep){
+			//too far behind, drop the time that couldn't be done
+			accumulator %= fixedStep;
+		}
+		return steps*fixedStep;
+	}
+
+	/**
+	 * Moves the physics world forward by exactly the time given. physicsUpdate() calls this with the fixed step,
+	 * it can also be called on its own to step the world without a clock.
+	 * @param timeBetween the time to step in seconds
+	 */
+	public void step(float timeBetween){
 		if(timeBetween > 0){
-			int index = 0;
-			for(PhysicsBody body : bodies){
-				if (!body.floor){
-					//Linear motion
-					{
-						//F=ma...a = F/m = F*1/m
-						Vector new_acceleration = Vector.multiplyVectorByScalar(body.getNetForce(), 1/body.mass); //calc new accel
-						Vector acceleration = Vector.multiplyVectorByScalar(  //use average accel
-								Vector.addVectors(body.acceleration, new_acceleration), 
-								1/2);
-
-						//set for the past
-						pastBodies.get(index).acceleration = body.acceleration;
-						pastBodies.get(index).linearVelocity = body.linearVelocity;
-						pastBodies.get(index).position = body.position;
-
-						//Calculate
-						Vector dVel = Vector.multiplyVectorByScalar(acceleration, timeBetween);//dVel for change in velocity
-						Vector dPos = Vector.multiplyVectorByScalar(
-								acceleration, 
-								(float)(.5*Math.pow(timeBetween,2)
-										));
-
-						//set for present
-						body.acceleration = new_acceleration; //set new accel
-						body.linearVelocity = Vector.addVectors(body.linearVelocity, dVel);//velocity = oldVelocity + acceleration * time
-						body.move(dPos);
-
-						//set for future (assuming no forces change, hence no acceleration change)
-						futureBodies.get(index).acceleration = body.acceleration;
-						futureBodies.get(index).linearVelocity = body.linearVelocity;
-						futureBodies.get(index).position = body.position;
-
-						//accleration is constant so not here
-						futureBodies.get(index).linearVelocity = Vector.addVectors(body.linearVelocity, dVel);//adding dVel again, that way future is ahead
-						futureBodies.get(index).move(dPos);//move again, same amount.
+			final BodyStore s = store;
+			final float dt = timeBetween;
+			//every body only touches its own row, so the chunks can run at the same time
+			RangeTask.run(getWorkers(s.count, minParallelBodies), s.count, BODIES_PER_TASK, (from, to) -> {
+				s.savePrevious(from, to);
+				//timed forces run out on sleeping bodies too, and the force column is always right for when they wake up
+				for(int i = from; i < to; i++){
+					PhysicsBody body = s.bodies[i];
+					body.sumForces();
+					body.expireForces(dt);
+				}
+				integrate(from, to, dt);
+				updateRestTime(from, to, dt);
+			});
+			//let everything that looks at the pose know which bodies moved, on this thread since they all go in one list.
+			//Only moving bodies can have moved.
+			for(int i = 0; i < s.count; i++){
+				if(s.moving[i] != 0 && (s.moveX[i] != 0 || s.moveY[i] != 0 || s.moveZ[i] != 0 ||
+						s.turnX[i] != 0 || s.turnY[i] != 0 || s.turnZ[i] != 0)){
+					s.bodies[i].poseChanged();
+				}
+			}
+			tellBroadphaseMoved();
+
+			List<BodyBox[]> pairs = broadphase.findPairs();
+			continuous.sweepBullets(pairs, s);
+			List<BodyIntersection> intersections = CollisionDetection.stage3(pairs, getWorkers(pairs.size(), minParallelPairs));
+
+			solver.solve(intersections, s, timeBetween);
+			updateSleep(intersections);
+			time += timeBetween;
+			snapshots.record(time, s);
+		}
+	}
+
+	/**
+	 * Finds the first body a ray hits. The broadphase finds the bodies whose boxes the ray goes through, then the face tree of each of
+	 * those bodies finds the first face. Bodies are found where their boxes were at the end of the last step, so a body moved with
+	 * setPosition since then can be missed until the next step. Don't call this while the engine is stepping.
+	 * @param ray the ray, its direction doesn't have to be a unit vector
+	 * @param maxDistance the farthest to look in meters
+	 * @param filter only bodies it accepts can be hit, or null to hit every body
+	 * @return the closest hit, or null if the ray doesn't hit anything
+	 */
+	public RaycastHit raycast(Ray ray, float maxDistance, Predicate<PhysicsBody> filter){
+		float dx = ray.direction.getX(), dy = ray.direction.getY(), dz = ray.direction.getZ();
+		float length = (float)Math.sqrt(dx*dx + dy*dy + dz*dz);
+		if(length == 0){
+			return null;
+		}
+		dx /= length;
+		dy /= length;
+		dz /= length;
+		final float ox = ray.initalPoint.x, oy = ray.initalPoint.y, oz = ray.initalPoint.z;
+		final float rx = dx, ry = dy, rz = dz;
+		final float[] distance = {maxDistance};
+		final PhysicsFace[] face = new PhysicsFace[1];
+		final PhysicsBody[] hitBody = new PhysicsBody[1];
+		broadphase.raycast(ox, oy, oz, rx, ry, rz, maxDistance, (body, maxT) -> {
+			if(filter != null && !filter.test(body)){
+				return maxT;
+			}
+			PhysicsFace hit = FaceTree.raycast(body, ox, oy, oz, rx, ry, rz, maxT, distance);
+			if(hit == null){
+				return maxT;
+			}
+			face[0] = hit;
+			hitBody[0] = body;
+			return distance[0];
+		});
+		if(face[0] == null){
+			return null;
+		}
+		float t = distance[0];
+		Point point = new Point(ox + rx*t, oy + ry*t, oz + rz*t);
+		Point a = face[0].point1, b = face[0].point2, c = face[0].point3;
+		Vector normal = Vector.cross(new Vector(a, b), new Vector(a, c), new Vector(0, 0, 0)).normalize();
+		if(normal.getX()*rx + normal.getY()*ry + normal.getZ()*rz > 0){
+			normal.set(-normal.getX(), -normal.getY(), -normal.getZ());
+		}
+		return new RaycastHit(hitBody[0], face[0], point, normal, t);
+	}
+
+	/**
+	 * Casts a lot of rays at once, like raycast for every ray. Big batches are split between the threads of the engine
+	 * (see setParallelism). Don't call this while the engine is stepping.
+	 * @param rays the rays to cast
+	 * @param maxDistance the farthest to look in meters
+	 * @param filter only bodies it accepts can be hit, or null to hit every body. Called from more than one thread for big batches.
+	 * @return the closest hit of every ray, in the same order, null for rays that don't hit anything
+	 */
+	public RaycastHit[] raycast(final Ray[] rays, final float maxDistance, final Predicate<PhysicsBody> filter){
+		final RaycastHit[] hits = new RaycastHit[rays.length];
+		ForkJoinPool pool = getWorkers(rays.length, minParallelRays);
+		if(pool != null){
+			//move the world faces first so the rays only read them. Only the bodies whose boxes some ray goes through are updated,
+			//found by running every ray through the broadphase on this thread first
+			final BodyStore s = store;
+			final boolean[] crossed = new boolean[s.count];
+			final int[] rows = new int[s.count];
+			final int[] rowCount = {0};
+			for(Ray ray : rays){
+				float dx = ray.direction.getX(), dy = ray.direction.getY(), dz = ray.direction.getZ();
+				float length = (float)Math.sqrt(dx*dx + dy*dy + dz*dz);
+				if(length == 0){
+					continue;
+				}
+				broadphase.raycast(ray.initalPoint.x, ray.initalPoint.y, ray.initalPoint.z, dx/length, dy/length, dz/length, maxDistance,
+						(body, maxT) -> {
+					if(!crossed[body.index] && (filter == null || filter.test(body))){
+						crossed[body.index] = true;
+						rows[rowCount[0]++] = body.index;
 					}
+					return maxT;
+				});
+			}
+			RangeTask.run(pool, rowCount[0], BODIES_PER_TASK, (from, to) -> {
+				for(int i = from; i < to; i++){
+					s.bodies[rows[i]].getWorldFaces();
+				}
+			});
+		}
+		RangeTask.run(pool, rays.length, RAYS_PER_TASK, (from, to) -> {
+			for(int i = from; i < to; i++){
+				hits[i] = raycast(rays[i], maxDistance, filter);
+			}
+		});
+		return hits;
+	}
 
+	/**
+	 * Sets how many rays a batch needs before it is split between threads
+	 * @param minRays the fewest rays to cast in parallel
+	 */
+	public void setParallelRayThreshold(int minRays){
+		minParallelRays = minRays;
+	}
 
+	/**
+	 * Gets the state of the bodies for the last few steps. Every step writes one snapshot.
+	 * @return the snapshot buffer
+	 */
+	public SnapshotBuffer getSnapshots(){
+		return snapshots;
+	}
 
-					Vector new_angularAccl = Vector.elementDivide(body.getNetTorque(), body.momentOfInertia);
-					Vector angularAccl = Vector.multiplyVectorByScalar(Vector.addVectors(body.angularAcceleration, new_angularAccl), 1/2);
+	/**
+	 * Writes the state of the bodies after the last step into a snapshot that isn't in the snapshot buffer
+	 * @param snapshot the snapshot to write over
+	 */
+	void writeSnapshot(SnapshotBuffer.Snapshot snapshot){
+		snapshot.write(snapshots.getLatestTick(), time, store);
+	}
 
-					body.angularAcceleration = new_angularAccl;
-					body.angularVelocity = Vector.addVectors(body.angularVelocity, Vector.multiplyVectorByScalar(angularAccl, timeBetween));
-					body.rotate(Vector.multiplyVectorByScalar(angularAccl, (float)(.5*Math.pow(timeBetween, 2))));
+	/**
+	 * Sets how many steps of snapshots are kept. The old snapshots are lost.
+	 * @param count the number of steps
+	 */
+	public void setSnapshotCount(int count){
+		snapshots = new SnapshotBuffer(count);
+	}
 
-					for(int i = 0; i < body.times.size(); i++){
-						if(body.times.get(i) <= 0){
-							body.forces.remove(i);
-							body.torques.remove(i);
-						}
-					}
+	/**
+	 * Gets the physics time, all the steps added up
+	 * @return the time in seconds
+	 */
+	public double getTime(){
+		return time;
+	}
+
+	/**
+	 * Adds the time to the rest time of every awake body that is slower than its sleep thresholds, and sets it back
+	 * to 0 for the ones that are faster
+	 * @param from the first row
+	 * @param to one past the last row
+	 * @param dt the time of the step
+	 */
+	private void updateRestTime(int from, int to, float dt){
+		BodyStore s = store;
+		for(int i = from; i < to; i++){
+			if(s.moving[i] == 0){
+				continue;
+			}
+			//uses how far the body actually went this step, with Verlet a body resting on the ground still has a
+			//velocity of g*dt/2 that the contact takes away again every step
+			PhysicsBody body = s.bodies[i];
+			float linear = body.sleepLinearVelocity*dt;
+			float angular = body.sleepAngularVelocity*dt;
+			float d2 = s.moveX[i]*s.moveX[i] + s.moveY[i]*s.moveY[i] + s.moveZ[i]*s.moveZ[i];
+			float t2 = s.turnX[i]*s.turnX[i] + s.turnY[i]*s.turnY[i] + s.turnZ[i]*s.turnZ[i];
+			s.restTime[i] = d2 <= linear*linear && t2 <= angular*angular ? s.restTime[i] + dt : 0;
+		}
+	}
+
+	/**
+	 * Puts islands of bodies to sleep or wakes them up. An island is a group of bodies that are touching each other
+	 * (floors don't join islands, or everything on the ground would be one island). Every body of an island sleeps if
+	 * all of them have been slow for long enough, and every body wakes if any of them is still moving. So a sleeping
+	 * body that is hit by a moving one is woken up, and a stack only sleeps when the whole stack is still.
+	 * @param intersections the bodies that are touching this step
+	 */
+	private void updateSleep(List<BodyIntersection> intersections){
+		BodyStore s = store;
+		int n = s.count;
+		if(islands.length < n){
+			islands = new int[s.bodies.length];
+			islandCanSleep = new boolean[s.bodies.length];
+		}
+		for(int i = 0; i < n; i++){
+			islands[i] = i;
+			islandCanSleep[i] = true;
+		}
+		for(BodyIntersection intersection : intersections){
+			if(!intersection.body1.isFloor() && !intersection.body2.isFloor()){
+				int root1 = findIsland(intersection.body1.index);
+				int root2 = findIsland(intersection.body2.index);
+				if(root1 != root2){
+					islands[root1] = root2;
 				}
-				index++;
 			}
+		}
+		for(int i = 0; i < n; i++){
+			if(s.dynamic[i] != 0 && s.awake[i] != 0 && !(s.restTime[i] >= s.bodies[i].sleepTime)){
+				islandCanSleep[findIsland(i)] = false;
+			}
+		}
+		awakeCount = 0;
+		sleepingCount = 0;
+		for(int i = 0; i < n; i++){
+			if(s.dynamic[i] == 0){
+				continue;
+			}
+			boolean canSleep = islandCanSleep[findIsland(i)];
+			if(canSleep && s.awake[i] != 0){
+				s.bodies[i].sleep();
+			} else if(!canSleep && s.awake[i] == 0){
+				s.bodies[i].wake();
+			}
+			if(s.awake[i] != 0){
+				awakeCount++;
+			} else {
+				sleepingCount++;
+			}
+		}
+	}
 
-			for(BodyIntersection intersection : CollisionDetection.stage3(CollisionDetection.stage2(CollisionDetection.stage1(futureBodies)))){
-				//APPLY FORCES FROM INTERSECTION
-				PhysicsBody pB1 = bodies.get(futureBodies.indexOf(intersection.body1));//pB1 for presentBody1. pB1 and intersection.body1 are the same, but intersection.body1 is one tick ahead
-				PhysicsBody pB2 = bodies.get(futureBodies.indexOf(intersection.body2));
-
-				Vector m1in = Vector.multiplyVectorByScalar(new Vector(pB1.position, intersection.body1.position), 1/timeBetween);//average velocity of body 1 into the collision
-				Vector m2in = Vector.multiplyVectorByScalar(new Vector(pB2.position, intersection.body2.position), 1/timeBetween);
-				//p=mv
-				Vector p1in = Vector.multiplyVectorByScalar(m1in, pB1.mass);
-				Vector p2in = Vector.multiplyVectorByScalar(m2in, pB2.mass);
-				Vector tP = Vector.addVectors(p1in, p2in);//tP = total momentum
-				float R = intersection.getAverageRestitution();
-				Point poi = intersection.getAverageImpactPoint();
-				//Math is hard... I think i found: http://physics.tutorvista.com/momentum/inelastic-collision.html
-				Vector v1o = 
-						Vector.multiplyVectorByScalar(
-								Vector.addVectors(
-										Vector.multiplyVectorByScalar(
-												Vector.subtractVectors(
-														p2in, 
-														Vector.multiplyVectorByScalar(m1in, pB2.mass)), 
-														R), 
-														tP), 
-														1/(pB1.mass+pB2.mass));
-				Vector v2o = 
-						Vector.multiplyVectorByScalar(
-								Vector.addVectors(
-										Vector.multiplyVectorByScalar(
-												Vector.subtractVectors(
-														Vector.multiplyVectorByScalar(m1in, pB2.mass), 
-														p2in), 
-														R), 
-														tP), 
-														1/(pB1.mass+pB2.mass));
-				pB1.applyForce(new Force(Vector.multiplyVectorByScalar(Vector.subtractVectors(v1o, m1in), pB1.mass/timeBetween), timeBetween, poi));
-				pB2.applyForce(new Force(Vector.multiplyVectorByScalar(Vector.subtractVectors(v2o, m2in), pB2.mass/timeBetween), timeBetween, poi));//F=ma a=v/t F=mv/t F=vm/t
-				
-				
-				//Do we actually need to calculate this rotation stuff? IDK
-				Vector r1in = Vector.multiplyVectorByScalar(new Vector(pB1.rotation, intersection.body1.rotation), 1/timeBetween);//rotation of body 1 into the collision
-				Vector r2in = Vector.multiplyVectorByScalar(new Vector(pB2.rotation, intersection.body2.rotation), 1/timeBetween);
-				Vector L1in = Vector.elementMultiply(r1in, pB1.momentOfInertia);
-				Vector L2in = Vector.elementMultiply(r2in, pB2.momentOfInertia);
-				Vector tL = Vector.addVectors(L1in, L2in);
-				Vector w1o = 
-						Vector.elementDivide(
-								Vector.addVectors(
-										Vector.multiplyVectorByScalar(
-												Vector.subtractVectors(
-														L2in, 
-														Vector.elementMultiply(r1in, pB2.momentOfInertia)), 
-														R), 
-														tL), 
-														Vector.addVectors(pB1.momentOfInertia, pB2.momentOfInertia));
-				Vector w2o = 
-						Vector.elementDivide(
-								Vector.addVectors(
-										Vector.multiplyVectorByScalar(
-												Vector.subtractVectors(
-														Vector.elementMultiply(r1in, pB2.momentOfInertia),
-														L2in), 
-														R), 
-														tL), 
-														Vector.addVectors(pB1.momentOfInertia, pB2.momentOfInertia));
-				//THIS ISNT quite RIGHT!!!!:
-				//pB1.applyForce(new Force(Vector.elementMultiply(Vector.subtractVectors(w1o, r1in), Vector.multiplyVectorByScalar(pB1.momentOfInertia,1/timeBetween)), timeBetween, poi));
-				//pB2.applyForce(new Force(Vector.elementMultiply(Vector.subtractVectors(w2o, r2in), Vector.multiplyVectorByScalar(pB2.momentOfInertia,1/timeBetween)), timeBetween, poi));//F=ma a=v/t F=mv/t F=vm/t
+	/**
+	 * Finds the root of the island of a row, making the path shorter on the way
+	 * @param i the row
+	 * @return the row that is the root of its island
+	 */
+	private int findIsland(int i){
+		while(islands[i] != i){
+			islands[i] = islands[islands[i]];
+			i = islands[i];
+		}
+		return i;
+	}
 
+	/**
+	 * Sets how many times the contact solver goes over every contact in one step. More iterations make stacks of bodies
+	 * more stable but take more time.
+	 * @param iterations the number of iterations, at least 1
+	 */
+	public void setSolverIterations(int iterations){
+		if(iterations < 1){
+			throw new IllegalArgumentException("iterations must be at least 1");
+		}
+		solver.iterations = iterations;
+	}
+
+	/**
+	 * Gets how many times the contact solver goes over every contact in one step
+	 * @return the number of iterations
+	 */
+	public int getSolverIterations(){
+		return solver.iterations;
+	}
+
+	/**
+	 * Gets the number of bodies that are awake, not counting floors. Updated every step.
+	 * @return the number of awake bodies
+	 */
+	public int getAwakeBodyCount(){
+		return awakeCount;
+	}
+
+	/**
+	 * Gets the number of bodies that are sleeping. Updated every step.
+	 * @return the number of sleeping bodies
+	 */
+	public int getSleepingBodyCount(){
+		return sleepingCount;
+	}
+
+	/**
+	 * Moves the bodies in the store from one row to another forward by the time with velocity Verlet, using the net forces
+	 * and torques that are already in the store. Only works on the arrays, so nothing new is made.
+	 * @param from the first row
+	 * @param n one past the last row
+	 * @param timeBetween the time to move forward in seconds
+	 */
+	private void integrate(int from, int n, float timeBetween){
+		BodyStore s = store;
+		//Linear motion, F=ma...a = F/m = F*1/m
+		integrateAxis(from, n, timeBetween, s.forceX, s.inverseMass, s.moving, s.accelerationX, s.velocityX, s.positionX, s.moveX);
+		integrateAxis(from, n, timeBetween, s.forceY, s.inverseMass, s.moving, s.accelerationY, s.velocityY, s.positionY, s.moveY);
+		integrateAxis(from, n, timeBetween, s.forceZ, s.inverseMass, s.moving, s.accelerationZ, s.velocityZ, s.positionZ, s.moveZ);
+		//Angular motion, around the local axes like momentOfInertia. There is no angle to add the turn to, it goes into the orientation.
+		integrateAxis(from, n, timeBetween, s.torqueX, s.inverseInertiaX, s.moving, s.angularAccelerationX, s.angularVelocityX, null, s.turnX);
+		integrateAxis(from, n, timeBetween, s.torqueY, s.inverseInertiaY, s.moving, s.angularAccelerationY, s.angularVelocityY, null, s.turnY);
+		integrateAxis(from, n, timeBetween, s.torqueZ, s.inverseInertiaZ, s.moving, s.angularAccelerationZ, s.angularVelocityZ, null, s.turnZ);
+		integrateOrientation(from, n, s.turnX, s.turnY, s.turnZ, s.orientationW, s.orientationX, s.orientationY, s.orientationZ);
+	}
+
+	/**
+	 * Turns the orientation of every body by how much it rotated this step. Uses the small angle version
+	 * q += (turn * q)/2 and then makes q a unit quaternion again, so there is no sin or cos in the loop.
+	 * @param from the first body
+	 * @param n one past the last body
+	 * @param turnX how far each body rotated around x
+	 * @param turnY how far each body rotated around y
+	 * @param turnZ how far each body rotated around z
+	 * @param w the w of each orientation, updated
+	 * @param x the x of each orientation, updated
+	 * @param y the y of each orientation, updated
+	 * @param z the z of each orientation, updated
+	 */
+	private static void integrateOrientation(int from, int n, float[] turnX, float[] turnY, float[] turnZ, float[] w, float[] x, float[] y, float[] z){
+		for(int i = from; i < n; i++){
+			float tx = .5f*turnX[i], ty = .5f*turnY[i], tz = .5f*turnZ[i];
+			float qw = w[i], qx = x[i], qy = y[i], qz = z[i];
+			float nw = qw - tx*qx - ty*qy - tz*qz;
+			float nx = qx + tx*qw + ty*qz - tz*qy;
+			float ny = qy - tx*qz + ty*qw + tz*qx;
+			float nz = qz + tx*qy - ty*qx + tz*qw;
+			float scale = 1/(float)Math.sqrt(nw*nw + nx*nx + ny*ny + nz*nz);
+			w[i] = nw*scale;
+			x[i] = nx*scale;
+			y[i] = ny*scale;
+			z[i] = nz*scale;
+		}
+	}
+
+	/**
+	 * Integrates one axis of every body. Kept as one simple loop over arrays so the JIT can vectorize it.
+	 * position += velocity*t + acceleration*t^2/2, then velocity += the average of the old and new acceleration * t
+	 * @param from the first body
+	 * @param n one past the last body
+	 * @param t the time step in seconds
+	 * @param force the force (or torque) on each body
+	 * @param inverse 1/mass (or 1/moment of inertia) of each body
+	 * @param dynamic 1 for bodies that move, 0 for floors and sleeping bodies
+	 * @param acceleration the acceleration from the last step, set to the new acceleration
+	 * @param velocity the velocity, updated
+	 * @param position the position, updated, or null to only set move
+	 * @param move set to how far each body moved
+	 */
+	private static void integrateAxis(int from, int n, float t, float[] force, float[] inverse, float[] dynamic,
+			float[] acceleration, float[] velocity, float[] position, float[] move){
+		float halfT = .5f*t;
+		float halfT2 = .5f*t*t;
+		for(int i = from; i < n; i++){
+			float newAcceleration = force[i]*inverse[i];
+			float d = (velocity[i]*t + acceleration[i]*halfT2)*dynamic[i];
+			velocity[i] += (acceleration[i] + newAcceleration)*halfT*dynamic[i];
+			acceleration[i] = newAcceleration;
+			move[i] = d;
+		}
+		if(position != null){
+			for(int i = from; i < n; i++){
+				position[i] += move[i];
 			}
 		}
-		lastTime = System.currentTimeMillis();
-		return timeBetween;
 	}
 }
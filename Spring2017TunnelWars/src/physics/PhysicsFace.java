@@ -2,9 +2,16 @@ package physics;
 
 import geometry.Face;
 import geometry.Point;
+import geometry.TriangleArrays;
+import geometry.TriangleIntersection;
 
 /**
- * A class that defines faces for physical interaction
+ * A class that defines faces for physical interaction.
+ * Every physics face keeps the numbers about its triangle that every geometric test needs (edges, normal and plane offset),
+ * so they are only worked out when the face moves instead of every time it is tested. Rays use the edges with the test in
+ * TriangleArrays, so there is only one ray against triangle test.
+ * NOTE: if the points of the face are moved, updateCache has to be called before it is tested again. A physics body does
+ * this for its world faces every time it moves them.
  * @author Isaac Zachmann
  *
  */
@@ -26,6 +33,26 @@ public class PhysicsFace extends Face{
 	 */
 	public double strength = 100000;
 
+	/**
+	 * The index of the triangle in the mesh of its body, -1 if it isn't from a mesh. Used to keep track of contacts between steps.
+	 */
+	int triangle = -1;
+
+	/**
+	 * The edge from point1 to point2, and from point1 to point3
+	 */
+	float edge1X, edge1Y, edge1Z, edge2X, edge2Y, edge2Z;
+
+	/**
+	 * The normal of the face, edge1 cross edge2. Not a unit vector, its length is two times the area.
+	 */
+	float normalX, normalY, normalZ;
+
+	/**
+	 * normal dot point1, so a point p is on the plane of the face when normal dot p equals this
+	 */
+	float planeOffset;
+
 	/**
 	 * Creates a new face with the specified points 
 	 * @param ptA The first point
@@ -34,6 +61,7 @@ public class PhysicsFace extends Face{
 	 */
 	public PhysicsFace(Point ptA, Point ptB, Point ptC){
 		super(ptA, ptB, ptC);
+		updateCache();
 	}
 
 	/**
@@ -47,7 +75,88 @@ public class PhysicsFace extends Face{
 			this.friction = ((PhysicsFace)f).friction;
 			this.restitution = ((PhysicsFace)f).restitution;
 			this.strength = ((PhysicsFace)f).strength;
+			this.triangle = ((PhysicsFace)f).triangle;
+		}
+		updateCache();
+	}
+
+	/**
+	 * Works out the edges, normal and plane again from the points. Call this after the points move.
+	 */
+	public void updateCache(){
+		float ax = point1.x, ay = point1.y, az = point1.z;
+		float e1x = point2.x - ax, e1y = point2.y - ay, e1z = point2.z - az;
+		float e2x = point3.x - ax, e2y = point3.y - ay, e2z = point3.z - az;
+		edge1X = e1x;
+		edge1Y = e1y;
+		edge1Z = e1z;
+		edge2X = e2x;
+		edge2Y = e2y;
+		edge2Z = e2z;
+		normalX = e1y*e2z - e1z*e2y;
+		normalY = e1z*e2x - e1x*e2z;
+		normalZ = e1x*e2y - e1y*e2x;
+		planeOffset = normalX*ax + normalY*ay + normalZ*az;
+	}
+
+	/**
+	 * Finds where the line through o in the direction d hits this face from either side, with the Moller-Trumbore test in
+	 * TriangleArrays on the cached edges.
+	 * @param ox the x of the start of the ray
+	 * @param oy the y of the start of the ray
+	 * @param oz the z of the start of the ray
+	 * @param dx the x of the direction
+	 * @param dy the y of the direction
+	 * @param dz the z of the direction
+	 * @return how far along the line the hit is in lengths of the direction (negative if it is behind o), NaN if it misses
+	 */
+	public float intersectRay(float ox, float oy, float oz, float dx, float dy, float dz){
+		return TriangleArrays.intersect(ox, oy, oz, dx, dy, dz, point1.x, point1.y, point1.z,
+				edge1X, edge1Y, edge1Z, edge2X, edge2Y, edge2Z);
+	}
+
+	/**
+	 * Finds the segment where two physics faces go through each other, with the planes cached on the faces. Nothing is made, so it
+	 * is fast for testing a lot of pairs.
+	 * @param face1 the first face
+	 * @param face2 the second face
+	 * @param out where the ends of the segment are put (x, y, z each), must be at least TriangleIntersection.BUFFER_SIZE long
+	 * @return the number of ends written, 0 if the faces don't touch
+	 * @see TriangleIntersection
+	 */
+	public static int intersectSegment(PhysicsFace face1, PhysicsFace face2, float[] out){
+		return TriangleIntersection.intersect(face1, face1.normalX, face1.normalY, face1.normalZ, face1.planeOffset,
+				face2, face2.normalX, face2.normalY, face2.normalZ, face2.planeOffset, out);
+	}
+
+	/**
+	 * Tests to see if two physics faces intersect, the same as Face.doFacesIntersect but with the planes cached on the faces.
+	 * The faces in the intersection are these faces, not copies.
+	 * @param face1 the first face to test
+	 * @param face2 the second face to test
+	 * @return the ends of the segment where the faces go through each other, null if the faces do not intersect
+	 */
+	public static PhysicsFaceIntersection doFacesIntersect(PhysicsFace face1, PhysicsFace face2){
+		float[] segment = new float[TriangleIntersection.BUFFER_SIZE];
+		int count = intersectSegment(face1, face2, segment);
+		if(count == 0){
+			return null;
+		}
+		return new PhysicsFaceIntersection(toPoints(segment, count), face1, face2);
+	}
+
+	/**
+	 * Makes points for the ends of a segment from TriangleIntersection
+	 * @param segment the ends, x, y, z each
+	 * @param count the number of ends
+	 * @return the points
+	 */
+	static Point[] toPoints(float[] segment, int count){
+		Point[] points = new Point[count];
+		for(int i = 0; i < count; i++){
+			points[i] = new Point(segment[i*3], segment[i*3+1], segment[i*3+2]);
 		}
+		return points;
 	}
 
 	/**
@@ -0,0 +1,305 @@
+package physics;
+
+import geometry.Face;
+import geometry.Point;
+import geometry.TriangleArrays;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A triangle mesh for physics stored with indices, so every vertex is only kept once no matter how many triangles use it.
+ * The vertices are one array of floats (x, y, z for each vertex) and every triangle is three indices into it.
+ * The friction, restitution and strength of each triangle are kept in arrays next to the indices.
+ * Meshes are never changed after they are made, so one mesh can be used by many physics bodies.
+ * @author Isaac Zachmann
+ *
+ */
+public class PhysicsMesh {
+
+	/**
+	 * The friction a triangle gets if it isn't given one, the same as PhysicsFace
+	 */
+	public static final float DEFAULT_FRICTION = .2f;
+
+	/**
+	 * The restitution a triangle gets if it isn't given one, the same as PhysicsFace
+	 */
+	public static final float DEFAULT_RESTITUTION = .2f;
+
+	/**
+	 * The strength a triangle gets if it isn't given one, the same as PhysicsFace
+	 */
+	public static final double DEFAULT_STRENGTH = 100000;
+
+	/**
+	 * The vertices, 3 floats each: x, y, z
+	 */
+	final float[] vertices;
+
+	/**
+	 * The triangles, 3 vertex indices each
+	 */
+	final int[] indices;
+
+	/**
+	 * The friction of each triangle
+	 */
+	final float[] friction;
+
+	/**
+	 * The restitution of each triangle
+	 */
+	final float[] restitution;
+
+	/**
+	 * The strength of each triangle in pascals
+	 */
+	final double[] strength;
+
+	/**
+	 * Faces at the vertices of the mesh, only made if something needs them
+	 */
+	private PhysicsFace[] localFaces = null;
+
+	/**
+	 * The triangles as arrays with their edges worked out, for testing rays. Only made if something needs them
+	 */
+	private TriangleArrays localTriangles = null;
+
+	/**
+	 * The tree of the local faces, only made if something needs it. Every body using the mesh shares it.
+	 */
+	private FaceTree faceTree = null;
+
+	/**
+	 * The convex hull of the vertices, only made if a body using the mesh is made convex
+	 */
+	private ConvexHull convexHull = null;
+
+	/**
+	 * Creates a mesh from vertices and triangle indices. Every triangle gets the default friction, restitution and strength.
+	 * @param vertices the vertices, 3 floats each
+	 * @param indices the triangles, 3 vertex indices each (starting at 0)
+	 */
+	public PhysicsMesh(float[] vertices, int[] indices){
+		this(vertices, indices, null, null, null);
+	}
+
+	/**
+	 * Creates a mesh from vertices, triangle indices and the material of each triangle
+	 * @param vertices the vertices, 3 floats each
+	 * @param indices the triangles, 3 vertex indices each (starting at 0)
+	 * @param friction the friction of each triangle, or null for the default
+	 * @param restitution the restitution of each triangle, or null for the default
+	 * @param strength the strength of each triangle, or null for the default
+	 */
+	public PhysicsMesh(float[] vertices, int[] indices, float[] friction, float[] restitution, double[] strength){
+		if(vertices.length % 3 != 0 || indices.length % 3 != 0){
+			throw new IllegalArgumentException("vertices and indices must come in groups of 3");
+		}
+		int vertexCount = vertices.length/3;
+		for(int index : indices){
+			if(index < 0 || index >= vertexCount){
+				throw new IllegalArgumentException("index "+index+" is not a vertex");
+			}
+		}
+		int triangleCount = indices.length/3;
+		this.vertices = vertices;
+		this.indices = indices;
+		if(friction == null){
+			friction = new float[triangleCount];
+			Arrays.fill(friction, DEFAULT_FRICTION);
+		}
+		if(restitution == null){
+			restitution = new float[triangleCount];
+			Arrays.fill(restitution, DEFAULT_RESTITUTION);
+		}
+		if(strength == null){
+			strength = new double[triangleCount];
+			Arrays.fill(strength, DEFAULT_STRENGTH);
+		}
+		this.friction = friction;
+		this.restitution = restitution;
+		this.strength = strength;
+	}
+
+	/**
+	 * Makes a mesh from faces. Points that are used by more than one face, or are at exactly the same place, become one vertex.
+	 * If the faces are PhysicsFaces their friction, restitution and strength are kept.
+	 * @param faces the faces
+	 * @return the mesh
+	 */
+	public static PhysicsMesh fromFaces(Face[] faces){
+		Map<VertexKey, Integer> vertexIndices = new HashMap<VertexKey, Integer>();
+		float[] vertices = new float[faces.length*9];
+		int[] indices = new int[faces.length*3];
+		float[] friction = new float[faces.length];
+		float[] restitution = new float[faces.length];
+		double[] strength = new double[faces.length];
+		int vertexCount = 0;
+		for(int f = 0; f < faces.length; f++){
+			Face face = faces[f];
+			Point[] points = {face.point1, face.point2, face.point3};
+			for(int p = 0; p < 3; p++){
+				VertexKey key = new VertexKey(points[p]);
+				Integer index = vertexIndices.get(key);
+				if(index == null){
+					index = vertexCount++;
+					vertexIndices.put(key, index);
+					vertices[index*3] = points[p].x;
+					vertices[index*3+1] = points[p].y;
+					vertices[index*3+2] = points[p].z;
+				}
+				indices[f*3+p] = index;
+			}
+			if(face instanceof PhysicsFace){
+				friction[f] = ((PhysicsFace)face).friction;
+				restitution[f] = ((PhysicsFace)face).restitution;
+				strength[f] = ((PhysicsFace)face).strength;
+			} else {
+				friction[f] = DEFAULT_FRICTION;
+				restitution[f] = DEFAULT_RESTITUTION;
+				strength[f] = DEFAULT_STRENGTH;
+			}
+		}
+		return new PhysicsMesh(Arrays.copyOf(vertices, vertexCount*3), indices, friction, restitution, strength);
+	}
+
+	/**
+	 * Gets the number of vertices
+	 * @return the number of vertices
+	 */
+	public int getVertexCount(){
+		return vertices.length/3;
+	}
+
+	/**
+	 * Gets the number of triangles
+	 * @return the number of triangles
+	 */
+	public int getTriangleCount(){
+		return indices.length/3;
+	}
+
+	/**
+	 * Makes PhysicsFaces for the triangles of the mesh that use the given points, one point for each vertex.
+	 * Faces that share a vertex share the same Point, so changing a point moves every face that uses it.
+	 * @param points the point of each vertex
+	 * @return the faces, with the friction, restitution and strength of each triangle
+	 */
+	public PhysicsFace[] makeFaces(Point[] points){
+		PhysicsFace[] faces = new PhysicsFace[getTriangleCount()];
+		for(int f = 0; f < faces.length; f++){
+			PhysicsFace face = new PhysicsFace(points[indices[f*3]], points[indices[f*3+1]], points[indices[f*3+2]]);
+			face.friction = friction[f];
+			face.restitution = restitution[f];
+			face.strength = strength[f];
+			face.triangle = f;
+			faces[f] = face;
+		}
+		return faces;
+	}
+
+	/**
+	 * Makes new PhysicsFaces at the vertices of the mesh
+	 * @return the faces of the mesh
+	 */
+	public PhysicsFace[] toFaces(){
+		Point[] points = new Point[getVertexCount()];
+		for(int i = 0; i < points.length; i++){
+			points[i] = new Point(vertices[i*3], vertices[i*3+1], vertices[i*3+2]);
+		}
+		return makeFaces(points);
+	}
+
+	/**
+	 * Gets faces at the vertices of the mesh, making them the first time. The same faces are given back every time, so they must not be changed.
+	 * @return the local faces
+	 */
+	synchronized PhysicsFace[] getLocalFaces(){
+		if(localFaces == null){
+			localFaces = toFaces();
+		}
+		return localFaces;
+	}
+
+	/**
+	 * Gets the triangles of the mesh as arrays, making them the first time. The mesh never changes so their edges are always right.
+	 * @return the local triangles, in the same order as the indices
+	 */
+	synchronized TriangleArrays getLocalTriangles(){
+		if(localTriangles == null){
+			localTriangles = new TriangleArrays(vertices, indices);
+		}
+		return localTriangles;
+	}
+
+	/**
+	 * Gets the tree of the local faces of the mesh, making it the first time. It never changes after that.
+	 * @return the face tree
+	 * @throws IllegalArgumentException if the mesh has no triangles
+	 */
+	synchronized FaceTree getFaceTree(){
+		if(faceTree == null){
+			faceTree = new FaceTree(getLocalFaces());
+		}
+		return faceTree;
+	}
+
+	/**
+	 * Checks if a point is inside the mesh by counting how many triangles a ray from it goes through. The mesh must be closed.
+	 * @param x the x of the point in local space
+	 * @param y the y of the point
+	 * @param z the z of the point
+	 * @return true if the point is inside
+	 */
+	public boolean containsPoint(float x, float y, float z){
+		TriangleArrays triangles = getLocalTriangles();
+		//Direction dont matter, can be any direction for a closed object
+		int numberOfFaceIntersections = triangles.countHits(x, y, z, 1, 0, 0, 0, triangles.size(), Float.POSITIVE_INFINITY);
+		return numberOfFaceIntersections % 2 == 1;
+	}
+
+	/**
+	 * Gets the convex hull of the mesh, making it the first time. Every body that uses the mesh shares the same hull, so an
+	 * imported object only has its hull worked out once no matter how many copies of it there are.
+	 * @return the convex hull
+	 */
+	public synchronized ConvexHull getConvexHull(){
+		if(convexHull == null){
+			convexHull = new ConvexHull(this);
+		}
+		return convexHull;
+	}
+
+	/**
+	 * Used to find vertices that are at exactly the same place. Point doesn't have a hashCode so it can't be used in a HashMap.
+	 */
+	private static final class VertexKey {
+		private final float x, y, z;
+
+		VertexKey(Point point){
+			x = point.x;
+			y = point.y;
+			z = point.z;
+		}
+
+		@Override
+		public boolean equals(Object o){
+			if(!(o instanceof VertexKey)){
+				return false;
+			}
+			VertexKey other = (VertexKey)o;
+			return Float.floatToIntBits(x) == Float.floatToIntBits(other.x) &&
+					Float.floatToIntBits(y) == Float.floatToIntBits(other.y) &&
+					Float.floatToIntBits(z) == Float.floatToIntBits(other.z);
+		}
+
+		@Override
+		public int hashCode(){
+			return (Float.floatToIntBits(x)*31 + Float.floatToIntBits(y))*31 + Float.floatToIntBits(z);
+		}
+	}
+}
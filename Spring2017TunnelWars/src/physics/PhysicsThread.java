@@ -0,0 +1,278 @@
+package physics;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a physics engine on its own thread at its own rate, so a slow physics step doesn't make the game drop frames.
+ * After every update the state of the bodies is published through a triple buffer: the physics thread writes to the back state,
+ * then swaps it with the middle one, and the render thread swaps the middle one with its front state when there is a new one.
+ * Neither thread ever waits for the other. If the physics thread publishes twice before the render thread reads, the older state
+ * is dropped.
+ * NOTE: while the thread is running, only change the bodies or the engine from invokeLater, and read the bodies from getLatestState.
+ * If an update or a command throws, the thread stops and the exception is thrown again from stop().
+ * @author Isaac Zachmann
+ *
+ */
+public class PhysicsThread implements Runnable {
+
+	/**
+	 * Set in the middle index when the physics thread put a state there the render thread hasn't taken yet
+	 */
+	private static final int FRESH = 4;
+
+	/**
+	 * Gets the index of a state out of the middle index
+	 */
+	private static final int INDEX = 3;
+
+	/**
+	 * The engine that is updated
+	 */
+	private final PhysicsEngine engine;
+
+	/**
+	 * The thread that runs the engine, null when it isn't running
+	 */
+	private Thread thread;
+
+	/**
+	 * False to make the thread stop after its current update, the thread sets it to false itself when it stops
+	 */
+	private volatile boolean running = false;
+
+	/**
+	 * What the thread threw if it stopped because of an exception, until stop() throws it
+	 */
+	private volatile Throwable failure;
+
+	/**
+	 * Work for the physics thread to do before its next update
+	 */
+	private final ConcurrentLinkedQueue<Runnable> commands = new ConcurrentLinkedQueue<Runnable>();
+
+	/**
+	 * The three states of the triple buffer
+	 */
+	private final SnapshotBuffer.Snapshot[] states = {new SnapshotBuffer.Snapshot(), new SnapshotBuffer.Snapshot(), new SnapshotBuffer.Snapshot()};
+
+	/**
+	 * The System.nanoTime() each state was published at
+	 */
+	private final long[] publishTimes = new long[3];
+
+	/**
+	 * The index of the middle state, and FRESH if it is new
+	 */
+	private final AtomicInteger middle = new AtomicInteger(1);
+
+	/**
+	 * The index of the state the physics thread writes to. Only used by the physics thread.
+	 */
+	private int back = 0;
+
+	/**
+	 * The index of the state the render thread reads from. Only used by the render thread.
+	 */
+	private int front = 2;
+
+	/**
+	 * The number of states published
+	 */
+	private volatile long publishedCount = 0;
+
+	/**
+	 * The number of states that were written over before the render thread read them
+	 */
+	private volatile long droppedCount = 0;
+
+	/**
+	 * The number of new states the render thread read
+	 */
+	private volatile long readCount = 0;
+
+	/**
+	 * The time from publishing to reading, added up for every state that was read, in nanoseconds
+	 */
+	private volatile long totalLatency = 0;
+
+	/**
+	 * The longest time from publishing to reading in nanoseconds
+	 */
+	private volatile long maxLatency = 0;
+
+	/**
+	 * Creates a thread for the engine. Call start() to start it.
+	 * @param engine the engine to update, the rate is its fixed step
+	 */
+	public PhysicsThread(PhysicsEngine engine){
+		this.engine = engine;
+	}
+
+	/**
+	 * Starts updating the engine on a new thread
+	 */
+	public synchronized void start(){
+		if(thread != null){
+			return;
+		}
+		running = true;
+		thread = new Thread(this, "PHYSICS_THREAD");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops the thread and waits for it to finish its update. The lock isn't held while waiting, the thread takes it to
+	 * clear itself when it ends.
+	 * @throws IllegalStateException if the thread stopped because an update or a command threw, with that as the cause
+	 */
+	public void stop(){
+		Thread stopping;
+		synchronized(this){
+			stopping = thread;
+			running = false;
+		}
+		if(stopping != null){
+			LockSupport.unpark(stopping);
+			try {
+				stopping.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		Throwable failed = failure;
+		if(failed != null){
+			failure = null;
+			throw new IllegalStateException("The physics thread stopped because of an exception", failed);
+		}
+	}
+
+	/**
+	 * Checks if the thread is running. It is false after the thread stopped by itself because of an exception, call stop()
+	 * to get it.
+	 * @return true if it is running
+	 */
+	public boolean isRunning(){
+		return running;
+	}
+
+	/**
+	 * Gets the engine. Only change it from invokeLater while the thread is running.
+	 * @return the engine
+	 */
+	public PhysicsEngine getEngine(){
+		return engine;
+	}
+
+	/**
+	 * Runs the work on the physics thread before the next update, for example adding a body or applying a force.
+	 * If the thread isn't running it is done at the next update after it starts.
+	 * @param command the work to do
+	 */
+	public void invokeLater(Runnable command){
+		commands.add(command);
+	}
+
+	@Override
+	public void run(){
+		try {
+			long next = System.nanoTime();
+			while(running){
+				Runnable command;
+				while((command = commands.poll()) != null){
+					command.run();
+				}
+				long stepNanos = (long)(engine.getFixedStep()*1e9);
+				if(engine.physicsUpdate() > 0){
+					publish();
+				}
+				next += stepNanos;
+				long wait = next - System.nanoTime();
+				if(wait > 0){
+					LockSupport.parkNanos(this, wait);
+				} else if(-wait > stepNanos*engine.getMaxSteps()){
+					//too far behind, physicsUpdate dropped the time so stop trying to catch up with it
+					next = System.nanoTime();
+				}
+			}
+		} catch (RuntimeException | Error e) {
+			//kept for stop() to throw, so it isn't lost on a daemon thread
+			failure = e;
+		} finally {
+			//so isRunning is right and start works again, even if the loop ended by throwing
+			synchronized(this){
+				running = false;
+				if(thread == Thread.currentThread()){
+					thread = null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the state of the engine to the back state and swaps it into the middle
+	 */
+	private void publish(){
+		engine.writeSnapshot(states[back]);
+		publishTimes[back] = System.nanoTime();
+		int old = middle.getAndSet(back | FRESH);
+		if((old & FRESH) != 0){
+			droppedCount++;
+		}
+		back = old & INDEX;
+		publishedCount++;
+	}
+
+	/**
+	 * Gets the newest state the physics thread published. Never waits. Should only be called from one thread (the render thread),
+	 * and the state must not be used after the next call.
+	 * @return the newest state, or null if nothing was published yet
+	 */
+	public SnapshotBuffer.Snapshot getLatestState(){
+		if((middle.get() & FRESH) != 0){
+			front = middle.getAndSet(front) & INDEX;
+			long latency = System.nanoTime() - publishTimes[front];
+			totalLatency += latency;
+			maxLatency = Math.max(maxLatency, latency);
+			readCount++;
+		}
+		SnapshotBuffer.Snapshot state = states[front];
+		return state.getTick() > 0 ? state : null;
+	}
+
+	/**
+	 * Gets the number of states the physics thread published
+	 * @return the number of states
+	 */
+	public long getPublishedStates(){
+		return publishedCount;
+	}
+
+	/**
+	 * Gets the number of states that were replaced by a newer one before getLatestState was called
+	 * @return the number of dropped states
+	 */
+	public long getDroppedStates(){
+		return droppedCount;
+	}
+
+	/**
+	 * Gets the average time between a state being published and getLatestState picking it up
+	 * @return the average latency in milliseconds
+	 */
+	public double getAverageLatency(){
+		long reads = readCount;
+		return reads == 0 ? 0 : totalLatency/(double)reads/TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * Gets the longest time between a state being published and getLatestState picking it up
+	 * @return the max latency in milliseconds
+	 */
+	public double getMaxLatency(){
+		return maxLatency/(double)TimeUnit.MILLISECONDS.toNanos(1);
+	}
+}
@@ -0,0 +1,671 @@
+package physics;
+
+import geometry.Point;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The tests for pairs of shapes that have a faster answer than GJK: sphere against sphere, sphere against box, box against box
+ * (separating axis test) and spheres and capsules against the triangles of a mesh. CollisionDetection picks the test for a pair
+ * from the kinds of shapes, pairs that don't have one here use GJK or their triangles.
+ * The answer is put in the fields of a ConvexCollision the same way GJK does, so it is made into an intersection the same way.
+ * Each thread needs its own PrimitiveCollision, like ConvexCollision.
+ * @author Isaac Zachmann
+ *
+ */
+final class PrimitiveCollision {
+
+	/**
+	 * An edge axis of two boxes has to overlap less than the best face axis by this part of the overlap (and EDGE_SLOP) to be
+	 * used. A box lying flat on another box would flip between a face and an edge from rounding otherwise.
+	 */
+	private static final float EDGE_TOLERANCE = .05f;
+
+	/**
+	 * How much less in meters an edge axis has to overlap than the best face axis to be used, on top of EDGE_TOLERANCE
+	 */
+	private static final float EDGE_SLOP = .001f;
+
+	/**
+	 * Cross products of box axes shorter than this are skipped, the axes are almost parallel so a face axis does the job
+	 */
+	private static final float PARALLEL = 1e-5f;
+
+	/**
+	 * Distances shorter than this count as 0
+	 */
+	private static final float TOUCHING = 1e-6f;
+
+	/**
+	 * Where the answer goes, and the test for convex pairs that don't have one here
+	 */
+	final ConvexCollision convex = new ConvexCollision();
+
+	/**
+	 * Points being worked with, 3 floats each
+	 */
+	private final float[] world = new float[9];
+
+	/**
+	 * Closest points being worked out, 3 floats each
+	 */
+	private final float[] closest = new float[6], candidate = new float[6];
+
+	/**
+	 * The axes of each box in world space, 3 floats each
+	 */
+	private final float[] axes1 = new float[9], axes2 = new float[9];
+
+	/**
+	 * The half sizes of each box
+	 */
+	private final float[] half1 = new float[3], half2 = new float[3];
+
+	/**
+	 * How far the bodies go into each other at each contact point against triangles
+	 */
+	private final float[] depths = new float[ConvexCollision.MAX_POINTS];
+
+	/**
+	 * The triangles close to a round body
+	 */
+	private final List<PhysicsFace> faces = new ArrayList<PhysicsFace>();
+
+	/**
+	 * Tests two spheres
+	 * @param body1 a body with a SphereShape
+	 * @param body2 a body with a SphereShape
+	 * @return the intersection, null if they are farther apart than CONTACT_DISTANCE
+	 */
+	BodyIntersection sphereSphere(PhysicsBody body1, PhysicsBody body2){
+		ConvexCollision c = convex;
+		c.prepare(body1, body2);
+		SphereShape sphere1 = (SphereShape)c.shape1, sphere2 = (SphereShape)c.shape2;
+		ConvexCollision.toWorld(c.rotation1, c.center1, sphere1.centerX, sphere1.centerY, sphere1.centerZ, world, 0);
+		ConvexCollision.toWorld(c.rotation2, c.center2, sphere2.centerX, sphere2.centerY, sphere2.centerZ, world, 3);
+		float nx = world[0] - world[3], ny = world[1] - world[4], nz = world[2] - world[5];
+		float radius = sphere1.radius + sphere2.radius;
+		float reach = radius + ConvexCollision.CONTACT_DISTANCE;
+		float distance = nx*nx + ny*ny + nz*nz;
+		if(distance > reach*reach){
+			return null;
+		}
+		distance = (float)Math.sqrt(distance);
+		if(distance > TOUCHING){
+			nx /= distance;
+			ny /= distance;
+			nz /= distance;
+		} else {
+			//same center, any way out works
+			nx = 0;
+			ny = 1;
+			nz = 0;
+		}
+		setOnePoint(world[0] - nx*sphere1.radius, world[1] - ny*sphere1.radius, world[2] - nz*sphere1.radius,
+				world[3] + nx*sphere2.radius, world[4] + ny*sphere2.radius, world[5] + nz*sphere2.radius, nx, ny, nz, radius - distance);
+		return c.toIntersection(body1, body2);
+	}
+
+	/**
+	 * Tests a sphere against a box by finding the closest point of the box to the center of the sphere in the space of the box
+	 * @param body1 a body with a SphereShape
+	 * @param body2 a body with a BoxShape
+	 * @return the intersection, null if they are farther apart than CONTACT_DISTANCE
+	 */
+	BodyIntersection sphereBox(PhysicsBody body1, PhysicsBody body2){
+		ConvexCollision c = convex;
+		c.prepare(body1, body2);
+		SphereShape sphere = (SphereShape)c.shape1;
+		BoxShape box = (BoxShape)c.shape2;
+		ConvexCollision.toWorld(c.rotation1, c.center1, sphere.centerX, sphere.centerY, sphere.centerZ, world, 0);
+		//the center of the sphere from the center of the box, in the space of the box (the inverse of a rotation is its transpose)
+		float[] m = c.rotation2, center = c.center2;
+		float wx = world[0] - center[3], wy = world[1] - center[4], wz = world[2] - center[5];
+		float qx = m[0]*wx + m[3]*wy + m[6]*wz + center[0] - box.centerX;
+		float qy = m[1]*wx + m[4]*wy + m[7]*wz + center[1] - box.centerY;
+		float qz = m[2]*wx + m[5]*wy + m[8]*wz + center[2] - box.centerZ;
+		float px = Math.max(-box.halfX, Math.min(box.halfX, qx));
+		float py = Math.max(-box.halfY, Math.min(box.halfY, qy));
+		float pz = Math.max(-box.halfZ, Math.min(box.halfZ, qz));
+		float nx, ny, nz, depth;
+		if(px != qx || py != qy || pz != qz){
+			nx = qx - px;
+			ny = qy - py;
+			nz = qz - pz;
+			float reach = sphere.radius + ConvexCollision.CONTACT_DISTANCE;
+			float distance = nx*nx + ny*ny + nz*nz;
+			if(distance > reach*reach){
+				return null;
+			}
+			distance = (float)Math.sqrt(distance);
+			nx /= distance;
+			ny /= distance;
+			nz /= distance;
+			depth = sphere.radius - distance;
+		} else {
+			//the center is inside the box, push it out of the closest side
+			float inX = box.halfX - Math.abs(qx), inY = box.halfY - Math.abs(qy), inZ = box.halfZ - Math.abs(qz);
+			nx = ny = nz = 0;
+			if(inX <= inY && inX <= inZ){
+				nx = qx >= 0 ? 1 : -1;
+				px = nx*box.halfX;
+				depth = sphere.radius + inX;
+			} else if(inY <= inZ){
+				ny = qy >= 0 ? 1 : -1;
+				py = ny*box.halfY;
+				depth = sphere.radius + inY;
+			} else {
+				nz = qz >= 0 ? 1 : -1;
+				pz = nz*box.halfZ;
+				depth = sphere.radius + inZ;
+			}
+		}
+		ConvexCollision.toWorld(m, center, px + box.centerX, py + box.centerY, pz + box.centerZ, world, 3);
+		float worldX = m[0]*nx + m[1]*ny + m[2]*nz, worldY = m[3]*nx + m[4]*ny + m[5]*nz, worldZ = m[6]*nx + m[7]*ny + m[8]*nz;
+		setOnePoint(world[0] - worldX*sphere.radius, world[1] - worldY*sphere.radius, world[2] - worldZ*sphere.radius,
+				world[3], world[4], world[5], worldX, worldY, worldZ, depth);
+		return c.toIntersection(body1, body2);
+	}
+
+	/**
+	 * Tests two boxes with the separating axis test. The axis they overlap the least along is the normal. If it is the axis of
+	 * a side the sides facing each other are clipped to get every corner that touches (see ConvexCollision.findPoints), if it
+	 * is the cross product of two edges the closest points of the edges are the contact.
+	 * @param body1 a body with a BoxShape
+	 * @param body2 a body with a BoxShape
+	 * @return the intersection, null if they are farther apart than CONTACT_DISTANCE along any axis
+	 */
+	BodyIntersection boxBox(PhysicsBody body1, PhysicsBody body2){
+		ConvexCollision c = convex;
+		c.prepare(body1, body2);
+		BoxShape box1 = (BoxShape)c.shape1, box2 = (BoxShape)c.shape2;
+		axes(c.rotation1, axes1);
+		axes(c.rotation2, axes2);
+		half1[0] = box1.halfX;
+		half1[1] = box1.halfY;
+		half1[2] = box1.halfZ;
+		half2[0] = box2.halfX;
+		half2[1] = box2.halfY;
+		half2[2] = box2.halfZ;
+		ConvexCollision.toWorld(c.rotation1, c.center1, box1.centerX, box1.centerY, box1.centerZ, world, 0);
+		ConvexCollision.toWorld(c.rotation2, c.center2, box2.centerX, box2.centerY, box2.centerZ, world, 3);
+		float tx = world[0] - world[3], ty = world[1] - world[4], tz = world[2] - world[5];
+
+		float best = Float.POSITIVE_INFINITY;
+		int bestAxis = -1;
+		float nx = 0, ny = 0, nz = 0;
+		//the axes of the sides of both boxes
+		for(int i = 0; i < 6; i++){
+			float[] axes = i < 3 ? axes1 : axes2;
+			int k = (i % 3)*3;
+			float overlap = overlap(axes[k], axes[k+1], axes[k+2], tx, ty, tz);
+			if(overlap < -ConvexCollision.CONTACT_DISTANCE){
+				return null;
+			}
+			if(overlap < best){
+				best = overlap;
+				bestAxis = i;
+				nx = axes[k];
+				ny = axes[k+1];
+				nz = axes[k+2];
+			}
+		}
+		//the cross products of an edge of each box
+		for(int i = 0; i < 3; i++){
+			for(int j = 0; j < 3; j++){
+				float ax = axes1[i*3], ay = axes1[i*3+1], az = axes1[i*3+2];
+				float bx = axes2[j*3], by = axes2[j*3+1], bz = axes2[j*3+2];
+				float lx = ay*bz - az*by, ly = az*bx - ax*bz, lz = ax*by - ay*bx;
+				float length = (float)Math.sqrt(lx*lx + ly*ly + lz*lz);
+				if(length < PARALLEL){
+					continue;
+				}
+				lx /= length;
+				ly /= length;
+				lz /= length;
+				float overlap = overlap(lx, ly, lz, tx, ty, tz);
+				if(overlap < -ConvexCollision.CONTACT_DISTANCE){
+					return null;
+				}
+				if(overlap < best - EDGE_TOLERANCE*Math.abs(best) - EDGE_SLOP){
+					best = overlap;
+					bestAxis = 6 + i*3 + j;
+					nx = lx;
+					ny = ly;
+					nz = lz;
+				}
+			}
+		}
+		//from body2 to body1
+		if(nx*tx + ny*ty + nz*tz < 0){
+			nx = -nx;
+			ny = -ny;
+			nz = -nz;
+		}
+		c.normalX = nx;
+		c.normalY = ny;
+		c.normalZ = nz;
+		c.depth = best;
+
+		if(bestAxis < 6){
+			//only used if clipping finds nothing: the corner of body1 that is the deepest
+			edgeMiddle(axes1, half1, world, 0, -nx, -ny, -nz, -1);
+			c.point1X = world[6];
+			c.point1Y = world[7];
+			c.point1Z = world[8];
+			c.point2X = world[6] + nx*best;
+			c.point2Y = world[7] + ny*best;
+			c.point2Z = world[8] + nz*best;
+		} else {
+			int i = (bestAxis - 6)/3, j = (bestAxis - 6) % 3;
+			//the edge of each box facing the other one, from the middle of the edge plus and minus half its length
+			edgeMiddle(axes1, half1, world, 0, -nx, -ny, -nz, i);
+			float ax = world[6], ay = world[7], az = world[8];
+			edgeMiddle(axes2, half2, world, 3, nx, ny, nz, j);
+			float bx = world[6], by = world[7], bz = world[8];
+			float ex1 = axes1[i*3]*half1[i], ey1 = axes1[i*3+1]*half1[i], ez1 = axes1[i*3+2]*half1[i];
+			float ex2 = axes2[j*3]*half2[j], ey2 = axes2[j*3+1]*half2[j], ez2 = axes2[j*3+2]*half2[j];
+			closestSegments(ax - ex1, ay - ey1, az - ez1, 2*ex1, 2*ey1, 2*ez1, bx - ex2, by - ey2, bz - ez2, 2*ex2, 2*ey2, 2*ez2, closest);
+			c.point1X = closest[0];
+			c.point1Y = closest[1];
+			c.point1Z = closest[2];
+			c.point2X = closest[3];
+			c.point2Y = closest[4];
+			c.point2Z = closest[5];
+		}
+		c.findPoints();
+		return c.toIntersection(body1, body2);
+	}
+
+	/**
+	 * Tests a sphere or capsule against the triangles of a body that isn't convex, like the tunnels. Only the triangles in
+	 * the leaves of the face tree that are close are tested. Every triangle within the radius of an end of the segment of the
+	 * capsule gets a point there (so a capsule lying on the ground gets two), and a triangle that only comes close to the
+	 * middle of the segment gets the closest point of the segment.
+	 * @param body1 a body with a SphereShape or a CapsuleShape
+	 * @param body2 a body without a convex shape
+	 * @return the intersection, null if no triangle is closer than CONTACT_DISTANCE
+	 */
+	BodyIntersection roundTriangles(PhysicsBody body1, PhysicsBody body2){
+		ConvexCollision c = convex;
+		c.prepare(body1, body2);
+		float radius, halfHeight, x, y, z;
+		if(c.shape1 instanceof SphereShape){
+			SphereShape sphere = (SphereShape)c.shape1;
+			radius = sphere.radius;
+			halfHeight = 0;
+			x = sphere.centerX;
+			y = sphere.centerY;
+			z = sphere.centerZ;
+		} else {
+			CapsuleShape capsule = (CapsuleShape)c.shape1;
+			radius = capsule.radius;
+			halfHeight = capsule.halfHeight;
+			x = capsule.centerX;
+			y = capsule.centerY;
+			z = capsule.centerZ;
+		}
+		//the ends of the segment in world space (the same point for a sphere), then the middle
+		ConvexCollision.toWorld(c.rotation1, c.center1, x, y + halfHeight, z, world, 0);
+		ConvexCollision.toWorld(c.rotation1, c.center1, x, y - halfHeight, z, world, 3);
+		for(int i = 0; i < 3; i++){
+			world[6+i] = (world[i] + world[3+i])/2;
+		}
+		float reach = radius + ConvexCollision.CONTACT_DISTANCE;
+		faces.clear();
+		FaceTree.query(body2, Math.min(world[0], world[3]) - reach, Math.min(world[1], world[4]) - reach,
+				Math.min(world[2], world[5]) - reach, Math.max(world[0], world[3]) + reach, Math.max(world[1], world[4]) + reach,
+				Math.max(world[2], world[5]) + reach, faces);
+		c.pointCount = 0;
+		int ends = halfHeight > 0 ? 2 : 1;
+		for(PhysicsFace face : faces){
+			boolean touching = false;
+			for(int end = 0; end < ends; end++){
+				closestOnTriangle(world[end*3], world[end*3+1], world[end*3+2], face, closest, 3);
+				closest[0] = world[end*3];
+				closest[1] = world[end*3+1];
+				closest[2] = world[end*3+2];
+				touching |= addTrianglePoint(face, end, radius, reach);
+			}
+			if(ends == 2 && !touching){
+				segmentTriangle(face);
+				addTrianglePoint(face, 2, radius, reach);
+			}
+		}
+		if(c.pointCount == 0){
+			return null;
+		}
+		//the pair gets the normal and depth of the deepest point
+		int deepest = 0;
+		for(int p = 1; p < c.pointCount; p++){
+			if(depths[p] > depths[deepest]){
+				deepest = p;
+			}
+		}
+		c.normalX = c.normals[deepest*3];
+		c.normalY = c.normals[deepest*3+1];
+		c.normalZ = c.normals[deepest*3+2];
+		c.depth = depths[deepest];
+		c.pointNormals = true;
+		return c.toIntersection(body1, body2);
+	}
+
+	/**
+	 * Adds a contact point between a point of the segment of a round body (in closest[0..2]) and the closest point of a
+	 * triangle to it (in closest[3..5]) if they are close enough. If there are already MAX_POINTS the shallowest is replaced.
+	 * @param face the triangle
+	 * @param end which point of the segment it is: 0 or 1 for the ends, 2 for somewhere in the middle
+	 * @param radius the radius of the round body
+	 * @param reach how far apart the points can be
+	 * @return true if they are close enough
+	 */
+	private boolean addTrianglePoint(PhysicsFace face, int end, float radius, float reach){
+		ConvexCollision c = convex;
+		float nx = closest[0] - closest[3], ny = closest[1] - closest[4], nz = closest[2] - closest[5];
+		float distance = nx*nx + ny*ny + nz*nz;
+		if(distance > reach*reach){
+			return false;
+		}
+		distance = (float)Math.sqrt(distance);
+		if(distance > TOUCHING){
+			nx /= distance;
+			ny /= distance;
+			nz /= distance;
+		} else {
+			//the segment goes through the triangle, push it out the side the middle of the segment is on
+			float length = (float)Math.sqrt(face.normalX*face.normalX + face.normalY*face.normalY + face.normalZ*face.normalZ);
+			if(length == 0){
+				return false;
+			}
+			nx = face.normalX/length;
+			ny = face.normalY/length;
+			nz = face.normalZ/length;
+			if(nx*(world[6] - closest[3]) + ny*(world[7] - closest[4]) + nz*(world[8] - closest[5]) < 0){
+				nx = -nx;
+				ny = -ny;
+				nz = -nz;
+			}
+		}
+		float depth = radius - distance;
+		int p;
+		if(c.pointCount < ConvexCollision.MAX_POINTS){
+			p = c.pointCount++;
+		} else {
+			p = 0;
+			for(int q = 1; q < c.pointCount; q++){
+				if(depths[q] < depths[p]){
+					p = q;
+				}
+			}
+			if(depths[p] >= depth){
+				return true;
+			}
+		}
+		depths[p] = depth;
+		c.points[p*6] = closest[0] - nx*radius;
+		c.points[p*6+1] = closest[1] - ny*radius;
+		c.points[p*6+2] = closest[2] - nz*radius;
+		c.points[p*6+3] = closest[3];
+		c.points[p*6+4] = closest[4];
+		c.points[p*6+5] = closest[5];
+		c.normals[p*3] = nx;
+		c.normals[p*3+1] = ny;
+		c.normals[p*3+2] = nz;
+		c.features[p] = ((long)face.triangle << 2) | end;
+		c.pointFaces[p] = face;
+		return true;
+	}
+
+	/**
+	 * Finds the closest points of the segment of a round body (world[0..5]) and a triangle, and puts them in closest
+	 * @param face the triangle
+	 */
+	private void segmentTriangle(PhysicsFace face){
+		float ax = world[0], ay = world[1], az = world[2];
+		float dx = world[3] - ax, dy = world[4] - ay, dz = world[5] - az;
+		//if the segment goes through the plane of the triangle inside the triangle they touch there
+		float da = face.normalX*ax + face.normalY*ay + face.normalZ*az - face.planeOffset;
+		float db = face.normalX*world[3] + face.normalY*world[4] + face.normalZ*world[5] - face.planeOffset;
+		if((da < 0 && db > 0) || (da > 0 && db < 0)){
+			float t = da/(da - db);
+			closest[0] = ax + t*dx;
+			closest[1] = ay + t*dy;
+			closest[2] = az + t*dz;
+			closestOnTriangle(closest[0], closest[1], closest[2], face, closest, 3);
+			if(distanceSquared(closest) <= TOUCHING*TOUCHING){
+				return;
+			}
+		}
+		//if not the closest points are on an edge of the triangle or an end of the segment
+		float best = Float.POSITIVE_INFINITY;
+		for(int end = 0; end < 2; end++){
+			candidate[0] = world[end*3];
+			candidate[1] = world[end*3+1];
+			candidate[2] = world[end*3+2];
+			closestOnTriangle(candidate[0], candidate[1], candidate[2], face, candidate, 3);
+			best = keepCloser(best);
+		}
+		Point p1 = face.point1, p2 = face.point2, p3 = face.point3;
+		closestSegments(ax, ay, az, dx, dy, dz, p1.x, p1.y, p1.z, p2.x - p1.x, p2.y - p1.y, p2.z - p1.z, candidate);
+		best = keepCloser(best);
+		closestSegments(ax, ay, az, dx, dy, dz, p2.x, p2.y, p2.z, p3.x - p2.x, p3.y - p2.y, p3.z - p2.z, candidate);
+		best = keepCloser(best);
+		closestSegments(ax, ay, az, dx, dy, dz, p3.x, p3.y, p3.z, p1.x - p3.x, p1.y - p3.y, p1.z - p3.z, candidate);
+		keepCloser(best);
+	}
+
+	/**
+	 * Copies the points in candidate to closest if they are closer together than best
+	 * @param best the distance squared of the closest points so far
+	 * @return the new best distance squared
+	 */
+	private float keepCloser(float best){
+		float distance = distanceSquared(candidate);
+		if(distance < best){
+			System.arraycopy(candidate, 0, closest, 0, 6);
+			return distance;
+		}
+		return best;
+	}
+
+	/**
+	 * Gets the distance squared between the two points in an array of 6 floats
+	 */
+	private static float distanceSquared(float[] points){
+		float dx = points[0] - points[3], dy = points[1] - points[4], dz = points[2] - points[5];
+		return dx*dx + dy*dy + dz*dz;
+	}
+
+	/**
+	 * Gets how much two boxes overlap along an axis: the half widths of both boxes along it minus the distance between their
+	 * centers along it. Negative if they are apart along the axis.
+	 * @param lx the x of the unit axis
+	 * @param ly the y of the axis
+	 * @param lz the z of the axis
+	 * @param tx the x of the vector from the center of box2 to the center of box1
+	 * @param ty the y of the vector
+	 * @param tz the z of the vector
+	 * @return the overlap in meters
+	 */
+	private float overlap(float lx, float ly, float lz, float tx, float ty, float tz){
+		float width = 0;
+		for(int k = 0; k < 3; k++){
+			width += half1[k]*Math.abs(axes1[k*3]*lx + axes1[k*3+1]*ly + axes1[k*3+2]*lz);
+			width += half2[k]*Math.abs(axes2[k*3]*lx + axes2[k*3+1]*ly + axes2[k*3+2]*lz);
+		}
+		return width - Math.abs(tx*lx + ty*ly + tz*lz);
+	}
+
+	/**
+	 * Gets the axes of a box in world space from the rotation of its body, they are the columns of the matrix
+	 * @param m the rotation, row by row
+	 * @param axes where to put the x, y and z axis, 3 floats each
+	 */
+	private static void axes(float[] m, float[] axes){
+		for(int i = 0; i < 3; i++){
+			axes[i*3] = m[i];
+			axes[i*3+1] = m[3+i];
+			axes[i*3+2] = m[6+i];
+		}
+	}
+
+	/**
+	 * Finds the middle of the edge of a box along one axis that is the farthest along a direction, or the corner that is the
+	 * farthest if no axis is given. Puts it in world[6..8].
+	 * @param axes the axes of the box
+	 * @param half the half sizes of the box
+	 * @param centers where the center of the box is in world
+	 * @param offset the index of the center in centers
+	 * @param dx the x of the direction
+	 * @param dy the y of the direction
+	 * @param dz the z of the direction
+	 * @param axis the axis the edge is along, or -1 for a corner
+	 */
+	private static void edgeMiddle(float[] axes, float[] half, float[] centers, int offset, float dx, float dy, float dz, int axis){
+		float x = centers[offset], y = centers[offset+1], z = centers[offset+2];
+		for(int k = 0; k < 3; k++){
+			if(k == axis){
+				continue;
+			}
+			float sign = axes[k*3]*dx + axes[k*3+1]*dy + axes[k*3+2]*dz >= 0 ? half[k] : -half[k];
+			x += axes[k*3]*sign;
+			y += axes[k*3+1]*sign;
+			z += axes[k*3+2]*sign;
+		}
+		centers[6] = x;
+		centers[7] = y;
+		centers[8] = z;
+	}
+
+	/**
+	 * Puts one contact point in the answer
+	 */
+	private void setOnePoint(float x1, float y1, float z1, float x2, float y2, float z2, float nx, float ny, float nz, float depth){
+		ConvexCollision c = convex;
+		c.normalX = nx;
+		c.normalY = ny;
+		c.normalZ = nz;
+		c.depth = depth;
+		c.points[0] = x1;
+		c.points[1] = y1;
+		c.points[2] = z1;
+		c.points[3] = x2;
+		c.points[4] = y2;
+		c.points[5] = z2;
+		c.features[0] = 0;
+		c.pointCount = 1;
+	}
+
+	/**
+	 * Finds the closest point of a triangle to a point, by finding which corner, edge or the inside of the triangle the point
+	 * is in front of (Ericson, Real-Time Collision Detection 5.1.5)
+	 * @param px the x of the point
+	 * @param py the y of the point
+	 * @param pz the z of the point
+	 * @param face the triangle, with its cached edges
+	 * @param out where to put the closest point
+	 * @param offset where in out to put it
+	 */
+	static void closestOnTriangle(float px, float py, float pz, PhysicsFace face, float[] out, int offset){
+		Point a = face.point1;
+		float abx = face.edge1X, aby = face.edge1Y, abz = face.edge1Z;
+		float acx = face.edge2X, acy = face.edge2Y, acz = face.edge2Z;
+		float apx = px - a.x, apy = py - a.y, apz = pz - a.z;
+		float d1 = abx*apx + aby*apy + abz*apz, d2 = acx*apx + acy*apy + acz*apz;
+		float u, v;
+		if(d1 <= 0 && d2 <= 0){
+			u = v = 0;
+		} else {
+			float bpx = apx - abx, bpy = apy - aby, bpz = apz - abz;
+			float d3 = abx*bpx + aby*bpy + abz*bpz, d4 = acx*bpx + acy*bpy + acz*bpz;
+			float cpx = apx - acx, cpy = apy - acy, cpz = apz - acz;
+			float d5 = abx*cpx + aby*cpy + abz*cpz, d6 = acx*cpx + acy*cpy + acz*cpz;
+			float vc = d1*d4 - d3*d2, vb = d5*d2 - d1*d6, va = d3*d6 - d5*d4;
+			if(d3 >= 0 && d4 <= d3){
+				u = 1;
+				v = 0;
+			} else if(vc <= 0 && d1 >= 0 && d3 <= 0){
+				u = d1/(d1 - d3);
+				v = 0;
+			} else if(d6 >= 0 && d5 <= d6){
+				u = 0;
+				v = 1;
+			} else if(vb <= 0 && d2 >= 0 && d6 <= 0){
+				u = 0;
+				v = d2/(d2 - d6);
+			} else if(va <= 0 && (d4 - d3) >= 0 && (d5 - d6) >= 0){
+				v = (d4 - d3)/((d4 - d3) + (d5 - d6));
+				u = 1 - v;
+			} else {
+				float sum = va + vb + vc;
+				u = sum == 0 ? 0 : vb/sum;
+				v = sum == 0 ? 0 : vc/sum;
+			}
+		}
+		out[offset] = a.x + u*abx + v*acx;
+		out[offset+1] = a.y + u*aby + v*acy;
+		out[offset+2] = a.z + u*abz + v*acz;
+	}
+
+	/**
+	 * Finds the closest points of two segments (Ericson, Real-Time Collision Detection 5.1.9)
+	 * @param px the x of the start of the first segment
+	 * @param py the y of the start of the first segment
+	 * @param pz the z of the start of the first segment
+	 * @param dx the x of the vector from the start to the end of the first segment
+	 * @param dy the y of the vector
+	 * @param dz the z of the vector
+	 * @param qx the x of the start of the second segment
+	 * @param qy the y of the start of the second segment
+	 * @param qz the z of the start of the second segment
+	 * @param ex the x of the vector from the start to the end of the second segment
+	 * @param ey the y of the vector
+	 * @param ez the z of the vector
+	 * @param out where to put the point on the first segment then the point on the second
+	 */
+	static void closestSegments(float px, float py, float pz, float dx, float dy, float dz,
+			float qx, float qy, float qz, float ex, float ey, float ez, float[] out){
+		float rx = px - qx, ry = py - qy, rz = pz - qz;
+		float a = dx*dx + dy*dy + dz*dz, e = ex*ex + ey*ey + ez*ez, f = ex*rx + ey*ry + ez*rz;
+		float s, t;
+		if(a <= TOUCHING && e <= TOUCHING){
+			s = t = 0;
+		} else if(a <= TOUCHING){
+			s = 0;
+			t = clamp(f/e);
+		} else {
+			float c = dx*rx + dy*ry + dz*rz;
+			if(e <= TOUCHING){
+				t = 0;
+				s = clamp(-c/a);
+			} else {
+				float b = dx*ex + dy*ey + dz*ez;
+				float denominator = a*e - b*b;
+				//parallel segments have no one closest pair, any s works
+				s = denominator != 0 ? clamp((b*f - c*e)/denominator) : 0;
+				t = (b*s + f)/e;
+				if(t < 0){
+					t = 0;
+					s = clamp(-c/a);
+				} else if(t > 1){
+					t = 1;
+					s = clamp((b - c)/a);
+				}
+			}
+		}
+		out[0] = px + dx*s;
+		out[1] = py + dy*s;
+		out[2] = pz + dz*s;
+		out[3] = qx + ex*t;
+		out[4] = qy + ey*t;
+		out[5] = qz + ez*t;
+	}
+
+	/**
+	 * Clamps a number between 0 and 1
+	 */
+	private static float clamp(float value){
+		return Math.max(0, Math.min(1, value));
+	}
+}
@@ -0,0 +1,88 @@
+package physics;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits the numbers from 0 to count into chunks and runs them on a ForkJoinPool. Used by the physics engine to
+ * work on many bodies or pairs at the same time. Every chunk is a range that doesn't overlap with any other, so
+ * as long as the work for one index only writes to things for that index no locks are needed.
+ * @author Isaac Zachmann
+ *
+ */
+final class RangeTask extends RecursiveAction {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The work to do for a range of indices
+	 */
+	interface RangeAction {
+		/**
+		 * Does the work for the indices from to to
+		 * @param from the first index
+		 * @param to one past the last index
+		 */
+		void run(int from, int to);
+	}
+
+	/**
+	 * The work to do
+	 */
+	private final RangeAction action;
+
+	/**
+	 * The first index of this task
+	 */
+	private final int from;
+
+	/**
+	 * One past the last index of this task
+	 */
+	private final int to;
+
+	/**
+	 * Ranges this size or smaller are not split any more
+	 */
+	private final int chunkSize;
+
+	/**
+	 * Creates a task for a range
+	 * @param action the work to do
+	 * @param from the first index
+	 * @param to one past the last index
+	 * @param chunkSize ranges this size or smaller are not split any more
+	 */
+	private RangeTask(RangeAction action, int from, int to, int chunkSize){
+		this.action = action;
+		this.from = from;
+		this.to = to;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Runs the action for every index from 0 to count and waits for it to finish. If pool is null, or there is only one chunk,
+	 * it all runs on the thread that called this.
+	 * @param pool the pool to run on, or null to use this thread
+	 * @param count the number of indices
+	 * @param chunkSize the most indices one task does
+	 * @param action the work to do
+	 */
+	static void run(ForkJoinPool pool, int count, int chunkSize, RangeAction action){
+		if(pool == null || count <= chunkSize){
+			action.run(0, count);
+		} else {
+			pool.invoke(new RangeTask(action, 0, count, Math.max(1, chunkSize)));
+		}
+	}
+
+	@Override
+	protected void compute(){
+		if(to - from <= chunkSize){
+			action.run(from, to);
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		invokeAll(new RangeTask(action, from, middle, chunkSize), new RangeTask(action, middle, to, chunkSize));
+	}
+}
@@ -0,0 +1,52 @@
+package physics;
+
+import geometry.Point;
+import math.Vector;
+
+/**
+ * Where a ray hit a body. Made by PhysicsEngine.raycast.
+ * @author Isaac Zachmann
+ *
+ */
+public class RaycastHit {
+	/**
+	 * The body that was hit
+	 */
+	public PhysicsBody body;
+
+	/**
+	 * The face that was hit, in world space. It is the body's own face, so it moves with the body on the next step.
+	 */
+	public PhysicsFace face;
+
+	/**
+	 * Where the ray hit the face
+	 */
+	public Point point;
+
+	/**
+	 * The unit normal of the face, turned to point back at the start of the ray
+	 */
+	public Vector normal;
+
+	/**
+	 * How far from the start of the ray the hit is in meters
+	 */
+	public float distance;
+
+	/**
+	 * Creates a hit
+	 * @param body the body that was hit
+	 * @param face the face that was hit
+	 * @param point where the ray hit
+	 * @param normal the unit normal of the face towards the ray
+	 * @param distance how far along the ray the hit is
+	 */
+	public RaycastHit(PhysicsBody body, PhysicsFace face, Point point, Vector normal, float distance){
+		this.body = body;
+		this.face = face;
+		this.point = point;
+		this.normal = normal;
+		this.distance = distance;
+	}
+}
@@ -0,0 +1,375 @@
+package physics;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the state of every body for the last few physics steps, so the renderer, the network code or lag compensation can look
+ * at where the bodies were without copying the bodies. The physics engine writes one snapshot at the end of every step,
+ * and when the buffer is full the oldest one is written over.
+ * The snapshots only hold numbers (position, orientation, velocities), one row per body like the BodyStore.
+ * NOTE: a snapshot is reused when the buffer goes around, so don't keep one for longer than the buffer is long. Check getTick()
+ * again after reading if it could have been written over.
+ * @author Isaac Zachmann
+ *
+ */
+public class SnapshotBuffer {
+
+	/**
+	 * The state of all the bodies after one step
+	 */
+	public static final class Snapshot {
+
+		/**
+		 * The number of the step, starting at 1. -1 if nothing was written yet.
+		 */
+		private volatile long tick = -1;
+
+		/**
+		 * The physics time at the end of the step in seconds
+		 */
+		private double time;
+
+		/**
+		 * The number of rows
+		 */
+		private int count;
+
+		/**
+		 * The id of the body of each row
+		 */
+		private int[] ids = new int[0];
+
+		/**
+		 * The position of each body
+		 */
+		private float[] positionX = new float[0], positionY = new float[0], positionZ = new float[0];
+
+		/**
+		 * The orientation of each body as a unit quaternion (w, x, y, z)
+		 */
+		private float[] orientationW = new float[0], orientationX = new float[0], orientationY = new float[0], orientationZ = new float[0];
+
+		/**
+		 * The linear velocity of each body in m/s
+		 */
+		private float[] velocityX = new float[0], velocityY = new float[0], velocityZ = new float[0];
+
+		/**
+		 * The angular velocity of each body in rad/s
+		 */
+		private float[] angularVelocityX = new float[0], angularVelocityY = new float[0], angularVelocityZ = new float[0];
+
+		/**
+		 * A hash table from body id to row, open addressing. Every slot is row + 1, 0 for an empty slot.
+		 */
+		private int[] table = new int[0];
+
+		/**
+		 * Copies the rows of the store into this snapshot
+		 * @param tick the number of the step
+		 * @param time the physics time
+		 * @param s the store
+		 */
+		void write(long tick, double time, BodyStore s){
+			this.tick = -1;
+			int n = s.count;
+			if(ids.length < n){
+				int capacity = Math.max(n, ids.length*2);
+				ids = new int[capacity];
+				positionX = new float[capacity];
+				positionY = new float[capacity];
+				positionZ = new float[capacity];
+				orientationW = new float[capacity];
+				orientationX = new float[capacity];
+				orientationY = new float[capacity];
+				orientationZ = new float[capacity];
+				velocityX = new float[capacity];
+				velocityY = new float[capacity];
+				velocityZ = new float[capacity];
+				angularVelocityX = new float[capacity];
+				angularVelocityY = new float[capacity];
+				angularVelocityZ = new float[capacity];
+				table = new int[Integer.highestOneBit(capacity)*4];
+			}
+			for(int i = 0; i < n; i++){
+				ids[i] = s.bodies[i].id;
+			}
+			System.arraycopy(s.positionX, 0, positionX, 0, n);
+			System.arraycopy(s.positionY, 0, positionY, 0, n);
+			System.arraycopy(s.positionZ, 0, positionZ, 0, n);
+			System.arraycopy(s.orientationW, 0, orientationW, 0, n);
+			System.arraycopy(s.orientationX, 0, orientationX, 0, n);
+			System.arraycopy(s.orientationY, 0, orientationY, 0, n);
+			System.arraycopy(s.orientationZ, 0, orientationZ, 0, n);
+			System.arraycopy(s.velocityX, 0, velocityX, 0, n);
+			System.arraycopy(s.velocityY, 0, velocityY, 0, n);
+			System.arraycopy(s.velocityZ, 0, velocityZ, 0, n);
+			System.arraycopy(s.angularVelocityX, 0, angularVelocityX, 0, n);
+			System.arraycopy(s.angularVelocityY, 0, angularVelocityY, 0, n);
+			System.arraycopy(s.angularVelocityZ, 0, angularVelocityZ, 0, n);
+			Arrays.fill(table, 0);
+			int mask = table.length - 1;
+			for(int i = 0; i < n; i++){
+				int slot = hash(ids[i]) & mask;
+				while(table[slot] != 0){
+					slot = (slot + 1) & mask;
+				}
+				table[slot] = i + 1;
+			}
+			count = n;
+			this.time = time;
+			this.tick = tick;
+		}
+
+		/**
+		 * Finds the row of a body
+		 * @param bodyId the id of the body
+		 * @return the row, or -1 if the body wasn't in the world at this step
+		 */
+		public int indexOf(int bodyId){
+			if(table.length == 0){
+				return -1;
+			}
+			int mask = table.length - 1;
+			int slot = hash(bodyId) & mask;
+			while(table[slot] != 0){
+				int row = table[slot] - 1;
+				if(ids[row] == bodyId){
+					return row;
+				}
+				slot = (slot + 1) & mask;
+			}
+			return -1;
+		}
+
+		/**
+		 * Spreads out ids that are close together
+		 */
+		private static int hash(int id){
+			return id*0x9E3779B9;
+		}
+
+		/**
+		 * Gets the number of the step this snapshot is from
+		 * @return the tick, -1 if this snapshot is empty
+		 */
+		public long getTick(){
+			return tick;
+		}
+
+		/**
+		 * Gets the physics time at the end of the step
+		 * @return the time in seconds
+		 */
+		public double getTime(){
+			return time;
+		}
+
+		/**
+		 * Gets the number of bodies in the snapshot
+		 * @return the number of rows
+		 */
+		public int getBodyCount(){
+			return count;
+		}
+
+		/**
+		 * Gets the id of the body of a row
+		 * @param row the row
+		 * @return the id of the body
+		 */
+		public int getBodyId(int row){
+			return ids[row];
+		}
+
+		/**
+		 * Gets the x of the position of a row
+		 * @param row the row
+		 * @return the x
+		 */
+		public float getPositionX(int row){
+			return positionX[row];
+		}
+
+		/**
+		 * Gets the y of the position of a row
+		 * @param row the row
+		 * @return the y
+		 */
+		public float getPositionY(int row){
+			return positionY[row];
+		}
+
+		/**
+		 * Gets the z of the position of a row
+		 * @param row the row
+		 * @return the z
+		 */
+		public float getPositionZ(int row){
+			return positionZ[row];
+		}
+
+		/**
+		 * Gets the w of the orientation quaternion of a row
+		 * @param row the row
+		 * @return the w
+		 */
+		public float getOrientationW(int row){
+			return orientationW[row];
+		}
+
+		/**
+		 * Gets the x of the orientation quaternion of a row
+		 * @param row the row
+		 * @return the x
+		 */
+		public float getOrientationX(int row){
+			return orientationX[row];
+		}
+
+		/**
+		 * Gets the y of the orientation quaternion of a row
+		 * @param row the row
+		 * @return the y
+		 */
+		public float getOrientationY(int row){
+			return orientationY[row];
+		}
+
+		/**
+		 * Gets the z of the orientation quaternion of a row
+		 * @param row the row
+		 * @return the z
+		 */
+		public float getOrientationZ(int row){
+			return orientationZ[row];
+		}
+
+		/**
+		 * Gets the x of the velocity in m/s of a row
+		 * @param row the row
+		 * @return the x
+		 */
+		public float getVelocityX(int row){
+			return velocityX[row];
+		}
+
+		/**
+		 * Gets the y of the velocity in m/s of a row
+		 * @param row the row
+		 * @return the y
+		 */
+		public float getVelocityY(int row){
+			return velocityY[row];
+		}
+
+		/**
+		 * Gets the z of the velocity in m/s of a row
+		 * @param row the row
+		 * @return the z
+		 */
+		public float getVelocityZ(int row){
+			return velocityZ[row];
+		}
+
+		/**
+		 * Gets the x of the angular velocity in rad/s of a row
+		 * @param row the row
+		 * @return the x
+		 */
+		public float getAngularVelocityX(int row){
+			return angularVelocityX[row];
+		}
+
+		/**
+		 * Gets the y of the angular velocity in rad/s of a row
+		 * @param row the row
+		 * @return the y
+		 */
+		public float getAngularVelocityY(int row){
+			return angularVelocityY[row];
+		}
+
+		/**
+		 * Gets the z of the angular velocity in rad/s of a row
+		 * @param row the row
+		 * @return the z
+		 */
+		public float getAngularVelocityZ(int row){
+			return angularVelocityZ[row];
+		}
+	}
+
+	/**
+	 * The snapshots, used as a ring
+	 */
+	private final Snapshot[] snapshots;
+
+	/**
+	 * The number of the last step that was written, 0 before the first
+	 */
+	private volatile long latestTick = 0;
+
+	/**
+	 * Creates a buffer for the last few steps
+	 * @param capacity the number of steps to keep
+	 */
+	public SnapshotBuffer(int capacity){
+		if(capacity < 1){
+			throw new IllegalArgumentException("capacity must be at least 1");
+		}
+		snapshots = new Snapshot[capacity];
+		for(int i = 0; i < capacity; i++){
+			snapshots[i] = new Snapshot();
+		}
+	}
+
+	/**
+	 * Writes the state of every body in the store as the next step
+	 * @param time the physics time at the end of the step
+	 * @param store the store of the bodies
+	 */
+	void record(double time, BodyStore store){
+		long tick = latestTick + 1;
+		snapshots[(int)(tick % snapshots.length)].write(tick, time, store);
+		latestTick = tick;
+	}
+
+	/**
+	 * Gets the number of steps this buffer keeps
+	 * @return the capacity
+	 */
+	public int getCapacity(){
+		return snapshots.length;
+	}
+
+	/**
+	 * Gets the number of the last step that was written
+	 * @return the latest tick, 0 if nothing was written yet
+	 */
+	public long getLatestTick(){
+		return latestTick;
+	}
+
+	/**
+	 * Gets the snapshot of a step some steps ago
+	 * @param ticksAgo 0 for the last step, 1 for the one before it, and so on
+	 * @return the snapshot, or null if it is too old or wasn't written
+	 */
+	public Snapshot getRecent(int ticksAgo){
+		return getTick(latestTick - ticksAgo);
+	}
+
+	/**
+	 * Gets the snapshot of a step
+	 * @param tick the number of the step
+	 * @return the snapshot, or null if it is too old or wasn't written
+	 */
+	public Snapshot getTick(long tick){
+		if(tick < 1 || tick > latestTick || tick <= latestTick - snapshots.length){
+			return null;
+		}
+		Snapshot snapshot = snapshots[(int)(tick % snapshots.length)];
+		return snapshot.getTick() == tick ? snapshot : null;
+	}
+}
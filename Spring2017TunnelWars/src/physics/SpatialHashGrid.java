@@ -0,0 +1,150 @@
+package physics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A uniform grid of cubic cells used for the first stage of collision detection. Every BodyBox is put into each cell it overlaps,
+ * so only bodies that share a cell need to be compared with each other. Cells are stored in a hash map so the world does not need
+ * a fixed size.
+ * @author Isaac Zachmann
+ *
+ */
+public class SpatialHashGrid {
+
+	/**
+	 * If a box overlaps more than this many cells it is not put into the cells, instead it is added to every group.
+	 * This stops huge bodies like the floor from filling thousands of cells every tick.
+	 */
+	public static final int MAX_CELLS_PER_BOX = 64;
+
+	/**
+	 * The length of one side of a cell
+	 */
+	private float cellSize;
+
+	/**
+	 * All the cells that have been used, keyed by their packed cell coordinates. The lists are kept between ticks so they
+	 * don't have to be made again.
+	 */
+	private Map<Long, List<BodyBox>> cells = new HashMap<Long, List<BodyBox>>();
+
+	/**
+	 * Boxes that are too big to put in the cells
+	 */
+	private List<BodyBox> oversized = new ArrayList<BodyBox>();
+
+	/**
+	 * Creates a new empty grid
+	 * @param cellSize the length of one side of a cell, must be greater than 0
+	 */
+	public SpatialHashGrid(float cellSize){
+		if(cellSize <= 0){
+			throw new IllegalArgumentException("cell size must be greater than 0");
+		}
+		this.cellSize = cellSize;
+	}
+
+	/**
+	 * Gets the length of one side of a cell
+	 * @return the cell size
+	 */
+	public float getCellSize(){
+		return cellSize;
+	}
+
+	/**
+	 * Removes all boxes from the grid. Cells that were empty since the last clear are thrown away, the rest are emptied
+	 * and kept for the next tick.
+	 */
+	public void clear(){
+		Iterator<List<BodyBox>> it = cells.values().iterator();
+		while(it.hasNext()){
+			List<BodyBox> cell = it.next();
+			if(cell.isEmpty()){
+				it.remove();
+			} else {
+				cell.clear();
+			}
+		}
+		oversized.clear();
+	}
+
+	/**
+	 * Puts the box into every cell that it overlaps
+	 * @param box the box to add
+	 */
+	public void insert(BodyBox box){
+		int minX = cellCoordinate(box.getMin().x), maxX = cellCoordinate(box.getMax().x);
+		int minY = cellCoordinate(box.getMin().y), maxY = cellCoordinate(box.getMax().y);
+		int minZ = cellCoordinate(box.getMin().z), maxZ = cellCoordinate(box.getMax().z);
+		long cellCount = (long)(maxX-minX+1)*(maxY-minY+1)*(maxZ-minZ+1);
+		if(cellCount > MAX_CELLS_PER_BOX){
+			oversized.add(box);
+			return;
+		}
+		for(int x = minX; x <= maxX; x++){
+			for(int y = minY; y <= maxY; y++){
+				for(int z = minZ; z <= maxZ; z++){
+					Long key = cellKey(x, y, z);
+					List<BodyBox> cell = cells.get(key);
+					if(cell == null){
+						cell = new ArrayList<BodyBox>();
+						cells.put(key, cell);
+					}
+					cell.add(box);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns one group for every occupied cell. Oversized boxes are added to every group.
+	 * If there are only oversized boxes they are returned as one group.
+	 * @return the groups of boxes that share a cell
+	 */
+	public List<BodyBox[]> getGroups(){
+		List<BodyBox[]> groups = new ArrayList<BodyBox[]>();
+		for(List<BodyBox> cell : cells.values()){
+			if(cell.isEmpty()){
+				continue;
+			}
+			BodyBox[] group = new BodyBox[cell.size() + oversized.size()];
+			int i = 0;
+			for(BodyBox box : cell){
+				group[i++] = box;
+			}
+			for(BodyBox box : oversized){
+				group[i++] = box;
+			}
+			groups.add(group);
+		}
+		if(groups.isEmpty() && !oversized.isEmpty()){
+			groups.add(oversized.toArray(new BodyBox[oversized.size()]));
+		}
+		return groups;
+	}
+
+	/**
+	 * Finds which cell a coordinate is in along one axis
+	 * @param value the coordinate
+	 * @return the index of the cell
+	 */
+	private int cellCoordinate(float value){
+		return (int)Math.floor(value/cellSize);
+	}
+
+	/**
+	 * Packs three cell coordinates into one long. Each coordinate gets 21 bits.
+	 * @param x the x cell
+	 * @param y the y cell
+	 * @param z the z cell
+	 * @return the key of the cell
+	 */
+	static long cellKey(int x, int y, int z){
+		return (((long)x & 0x1FFFFF) << 42) | (((long)y & 0x1FFFFF) << 21) | ((long)z & 0x1FFFFF);
+	}
+}
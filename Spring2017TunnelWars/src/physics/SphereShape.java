@@ -0,0 +1,150 @@
+package physics;
+
+import geometry.Point;
+import math.Matrix;
+
+/**
+ * A sphere, for things like projectiles. Two spheres only need the distance between their centers to find out if they touch.
+ * @author Isaac Zachmann
+ *
+ */
+public final class SphereShape extends ConvexShape {
+
+	/**
+	 * How many rings and slices the mesh of a sphere has
+	 */
+	private static final int MESH_RINGS = 8, MESH_SLICES = 12;
+
+	/**
+	 * The center of the sphere in local space
+	 */
+	final float centerX, centerY, centerZ;
+
+	/**
+	 * The radius of the sphere
+	 */
+	final float radius;
+
+	/**
+	 * Makes a sphere
+	 * @param center the center in the local space of the body
+	 * @param radius the radius in meters
+	 */
+	public SphereShape(Point center, float radius){
+		if(radius <= 0){
+			throw new IllegalArgumentException("the radius of a sphere has to be more than 0");
+		}
+		centerX = center.x;
+		centerY = center.y;
+		centerZ = center.z;
+		this.radius = radius;
+	}
+
+	/**
+	 * Gets the radius of the sphere
+	 * @return the radius in meters
+	 */
+	public float getRadius(){
+		return radius;
+	}
+
+	@Override
+	public void support(float dx, float dy, float dz, float[] out){
+		float length = (float)Math.sqrt(dx*dx + dy*dy + dz*dz);
+		if(length == 0){
+			out[0] = centerX + radius;
+			out[1] = centerY;
+			out[2] = centerZ;
+			return;
+		}
+		out[0] = centerX + dx*radius/length;
+		out[1] = centerY + dy*radius/length;
+		out[2] = centerZ + dz*radius/length;
+	}
+
+	@Override
+	public MassProperties getMassProperties(float density){
+		float volume = (float)(4*Math.PI*radius*radius*radius/3);
+		float mass = density*volume;
+		Matrix tensor = new Matrix(3, 3);
+		for(int i = 0; i < 3; i++){
+			tensor.setItemAt(2*mass*radius*radius/5, i, i);
+		}
+		return new MassProperties(volume, mass, new Point(centerX, centerY, centerZ), tensor);
+	}
+
+	@Override
+	public PhysicsMesh toMesh(){
+		return roundMesh(centerX, centerY, centerZ, radius, 0);
+	}
+
+	@Override
+	int getType(){
+		return SPHERE;
+	}
+
+	@Override
+	float getRadiusAround(float x, float y, float z){
+		float dx = centerX - x, dy = centerY - y, dz = centerZ - z;
+		return (float)Math.sqrt(dx*dx + dy*dy + dz*dz) + radius;
+	}
+
+	/**
+	 * Makes the mesh of a sphere that is cut in half along y and pulled apart, which is a capsule. A half height of 0 is a sphere.
+	 * @param x the x of the center
+	 * @param y the y of the center
+	 * @param z the z of the center
+	 * @param radius the radius
+	 * @param halfHeight how far the centers of the two halves are from the center
+	 * @return the mesh
+	 */
+	static PhysicsMesh roundMesh(float x, float y, float z, float radius, float halfHeight){
+		//the top and bottom point, then MESH_SLICES points for every ring. The rings are split between the two halves.
+		int rings = MESH_RINGS;
+		float[] vertices = new float[(2 + rings*MESH_SLICES)*3];
+		vertices[0] = x;
+		vertices[1] = y + halfHeight + radius;
+		vertices[2] = z;
+		vertices[3] = x;
+		vertices[4] = y - halfHeight - radius;
+		vertices[5] = z;
+		for(int ring = 0; ring < rings; ring++){
+			double angle = Math.PI*(ring + 1)/(rings + 1);
+			float ringY = (float)Math.cos(angle)*radius + (ring < rings/2 ? halfHeight : -halfHeight);
+			float ringRadius = (float)Math.sin(angle)*radius;
+			for(int slice = 0; slice < MESH_SLICES; slice++){
+				double around = 2*Math.PI*slice/MESH_SLICES;
+				int v = (2 + ring*MESH_SLICES + slice)*3;
+				vertices[v] = x + (float)Math.cos(around)*ringRadius;
+				vertices[v+1] = y + ringY;
+				vertices[v+2] = z + (float)Math.sin(around)*ringRadius;
+			}
+		}
+		int[] indices = new int[(2*MESH_SLICES + 2*(rings - 1)*MESH_SLICES)*3];
+		int t = 0;
+		for(int slice = 0; slice < MESH_SLICES; slice++){
+			int next = (slice + 1) % MESH_SLICES;
+			//caps, wound so the normals point out
+			t = triangle(indices, t, 0, 2 + next, 2 + slice);
+			int last = 2 + (rings - 1)*MESH_SLICES;
+			t = triangle(indices, t, 1, last + slice, last + next);
+			for(int ring = 0; ring < rings - 1; ring++){
+				int top = 2 + ring*MESH_SLICES, bottom = top + MESH_SLICES;
+				t = triangle(indices, t, top + slice, top + next, bottom + slice);
+				t = triangle(indices, t, top + next, bottom + next, bottom + slice);
+			}
+		}
+		return new PhysicsMesh(vertices, indices);
+	}
+
+	/**
+	 * Puts a triangle in the indices
+	 * @return where the next triangle goes
+	 */
+	private static int triangle(int[] indices, int t, int a, int b, int c){
+		indices[t] = a;
+		indices[t+1] = b;
+		indices[t+2] = c;
+		return t + 3;
+	}
+}
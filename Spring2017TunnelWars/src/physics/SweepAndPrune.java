@@ -0,0 +1,250 @@
+package physics;
+
+import geometry.Point;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A broadphase that keeps the min and max x of every box in one sorted array. Bodies don't move much between ticks so the
+ * array is almost sorted already, and insertion sort only has to do a few swaps. Then one sweep along x finds all the
+ * boxes that overlap, checking y and z only for boxes that overlap on x. Rays use the sorted endpoints too, so only the boxes
+ * that overlap the ray on x are tested.
+ * @author Isaac Zachmann
+ *
+ */
+public class SweepAndPrune implements Broadphase {
+
+	/**
+	 * The boxes of all the bodies, in the order they were added
+	 */
+	private BodyBox[] boxes = new BodyBox[16];
+
+	/**
+	 * The number of boxes in use
+	 */
+	private int boxCount = 0;
+
+	/**
+	 * Where each body's box is in boxes
+	 */
+	private Map<PhysicsBody, Integer> indices = new HashMap<PhysicsBody, Integer>();
+
+	/**
+	 * The x values of the endpoints, kept sorted
+	 */
+	private float[] endpointValues = new float[32];
+
+	/**
+	 * The endpoints in the same order as endpointValues. Each one is the box index times 2, plus 1 if it is a max endpoint.
+	 */
+	private int[] endpoints = new int[32];
+
+	/**
+	 * The number of endpoints in use, always 2 times boxCount
+	 */
+	private int endpointCount = 0;
+
+	/**
+	 * The number of endpoints at the start of the arrays that are sorted. Bodies added since the last findPairs are after these.
+	 */
+	private int sortedCount = 0;
+
+	/**
+	 * The widest any box was on x at the last findPairs, so a ray knows how far back from its start to look for mins
+	 */
+	private float widest = 0;
+
+	/**
+	 * The boxes whose min has been passed but whose max hasn't yet, used while sweeping
+	 */
+	private int[] active = new int[16];
+
+	@Override
+	public void addBody(PhysicsBody body){
+		if(indices.containsKey(body)){
+			return;
+		}
+		if(boxCount == boxes.length){
+			boxes = Arrays.copyOf(boxes, boxCount*2);
+			active = Arrays.copyOf(active, boxCount*2);
+			endpointValues = Arrays.copyOf(endpointValues, boxCount*4);
+			endpoints = Arrays.copyOf(endpoints, boxCount*4);
+		}
+		BodyBox box = new BodyBox(body);
+		int index = boxCount++;
+		boxes[index] = box;
+		indices.put(body, index);
+		//added at the end, insertion sort moves them to the right place on the next update
+		endpoints[endpointCount] = index*2;
+		endpointValues[endpointCount++] = box.getMin().x;
+		endpoints[endpointCount] = index*2 + 1;
+		endpointValues[endpointCount++] = box.getMax().x;
+	}
+
+	@Override
+	public void removeBody(PhysicsBody body){
+		Integer removed = indices.remove(body);
+		if(removed == null){
+			return;
+		}
+		int index = removed;
+		int last = --boxCount;
+		//take out the endpoints of the removed box without changing the order of the others
+		int n = 0;
+		int sorted = 0;
+		for(int e = 0; e < endpointCount; e++){
+			if(endpoints[e] >> 1 != index){
+				endpoints[n] = endpoints[e];
+				endpointValues[n] = endpointValues[e];
+				n++;
+				if(e < sortedCount){
+					sorted++;
+				}
+			}
+		}
+		endpointCount = n;
+		sortedCount = sorted;
+		//move the last box into the empty spot
+		if(index != last){
+			boxes[index] = boxes[last];
+			indices.put(boxes[index].getBody(), index);
+			for(int e = 0; e < endpointCount; e++){
+				if(endpoints[e] >> 1 == last){
+					endpoints[e] = index*2 + (endpoints[e] & 1);
+				}
+			}
+		}
+		boxes[last] = null;
+	}
+
+	@Override
+	public void bodyMoved(PhysicsBody body){
+		//every box is fit again in findPairs, the sweep goes over all of them anyway
+	}
+
+	@Override
+	public List<BodyBox[]> findPairs(){
+		widest = 0;
+		for(int i = 0; i < boxCount; i++){
+			boxes[i].update();
+			widest = Math.max(widest, boxes[i].getMax().x - boxes[i].getMin().x);
+		}
+		for(int e = 0; e < endpointCount; e++){
+			BodyBox box = boxes[endpoints[e] >> 1];
+			endpointValues[e] = (endpoints[e] & 1) == 0 ? box.getMin().x : box.getMax().x;
+		}
+		sortEndpoints();
+		sortedCount = endpointCount;
+
+		List<BodyBox[]> pairs = new ArrayList<BodyBox[]>();
+		int activeCount = 0;
+		for(int e = 0; e < endpointCount; e++){
+			int index = endpoints[e] >> 1;
+			if((endpoints[e] & 1) == 0){
+				BodyBox box = boxes[index];
+				for(int a = 0; a < activeCount; a++){
+					BodyBox other = boxes[active[a]];
+					//two bodies that are both sleeping or floors can't start touching, so they aren't a pair
+					if((other.getBody().isMoving() || box.getBody().isMoving()) && BodyBox.areBoxesIntersecting(other, box)){
+						pairs.add(new BodyBox[]{other, box});
+					}
+				}
+				active[activeCount++] = index;
+			} else {
+				for(int a = 0; a < activeCount; a++){
+					if(active[a] == index){
+						active[a] = active[--activeCount];
+						break;
+					}
+				}
+			}
+		}
+		return pairs;
+	}
+
+	@Override
+	public void raycast(float ox, float oy, float oz, float dx, float dy, float dz, float maxT, RayCallback callback){
+		float invX = 1/dx, invY = 1/dy, invZ = 1/dz;
+		//the part of the x axis the ray covers. A box can only be hit if it overlaps that, so its min is at most high
+		//and at least low - widest
+		float endX = dx == 0 ? ox : ox + dx*maxT;
+		float low = Math.min(ox, endX), high = Math.max(ox, endX);
+		for(int e = firstEndpointAtLeast(low - widest); e < sortedCount && endpointValues[e] <= high; e++){
+			if((endpoints[e] & 1) == 0){
+				maxT = raycastBox(endpoints[e] >> 1, ox, oy, oz, invX, invY, invZ, maxT, callback);
+				if(dx > 0){
+					//going up x, so a hit makes the rest of the boxes to look at shorter too
+					high = ox + dx*maxT;
+				}
+			}
+		}
+		//boxes added since the last findPairs aren't sorted yet
+		for(int e = sortedCount; e < endpointCount; e++){
+			if((endpoints[e] & 1) == 0){
+				maxT = raycastBox(endpoints[e] >> 1, ox, oy, oz, invX, invY, invZ, maxT, callback);
+			}
+		}
+	}
+
+	/**
+	 * Tests a ray against one box and tells the callback if it goes through
+	 * @param index the index of the box
+	 * @return the new farthest to look
+	 */
+	private float raycastBox(int index, float ox, float oy, float oz, float invX, float invY, float invZ, float maxT, RayCallback callback){
+		Point min = boxes[index].getMin(), max = boxes[index].getMax();
+		if(BodyBox.rayHitsBox(ox, oy, oz, invX, invY, invZ, min.x, min.y, min.z, max.x, max.y, max.z, maxT)){
+			return callback.hit(boxes[index].getBody(), maxT);
+		}
+		return maxT;
+	}
+
+	/**
+	 * Finds the first sorted endpoint with a value at least as big as x with a binary search
+	 * @param x the value
+	 * @return the index of the endpoint, sortedCount if every endpoint is smaller
+	 */
+	private int firstEndpointAtLeast(float x){
+		int low = 0, high = sortedCount;
+		while(low < high){
+			int middle = (low + high) >>> 1;
+			if(endpointValues[middle] < x){
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Insertion sorts the endpoints by value. When two values are the same the min goes first, so boxes that are just touching
+	 * still count as overlapping like in BodyBox.areBoxesIntersecting.
+	 */
+	private void sortEndpoints(){
+		for(int i = 1; i < endpointCount; i++){
+			float value = endpointValues[i];
+			int endpoint = endpoints[i];
+			int j = i - 1;
+			while(j >= 0 && (endpointValues[j] > value || (endpointValues[j] == value && (endpoints[j] & 1) > (endpoint & 1)))){
+				endpointValues[j + 1] = endpointValues[j];
+				endpoints[j + 1] = endpoints[j];
+				j--;
+			}
+			endpointValues[j + 1] = value;
+			endpoints[j + 1] = endpoint;
+		}
+	}
+
+	/**
+	 * Gets the number of bodies in this broadphase
+	 * @return the number of bodies
+	 */
+	public int getBodyCount(){
+		return boxCount;
+	}
+}